@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.doube.geometry.FitEllipsoid;
 import org.doube.jama.EigenvalueDecomposition;
@@ -116,7 +117,7 @@ public class JParticleCounter implements PlugIn, DialogListener {
 	public final static int BACK = 0;
 
 	/** Particle joining method */
-	public final static int MULTI = 0, LINEAR = 1, MAPPED = 2;
+	public final static int MULTI = 0, LINEAR = 1, MAPPED = 2, UNION_FIND = 3;
 
 	/** Surface colour style */
 	public final static int GRADIENT = 0, SPLIT = 1;
@@ -1005,6 +1006,18 @@ public class JParticleCounter implements PlugIn, DialogListener {
 		final int[][] stitchRanges = getStitchRanges(imp, nChunks,
 				slicesPerChunk);
 		
+		//the union-find backend labels and connects in one go
+		if (labelMethod == UNION_FIND) {
+			int[][] particleLabels = unionFindLabels(imp, workArray, phase);
+			filterParticles(imp, workArray, particleLabels, minVol, maxVol, phase);
+			if (doExclude)
+				excludeOnEdges(imp, particleLabels, workArray);
+			minimiseLabels(particleLabels);
+			long[] particleSizes = getParticleSizes(particleLabels);
+			Object[] result = { workArray, particleLabels, particleSizes };
+			return result;
+		}
+		
 		//IJ.showStatus("Extracting pore-cluster labels ...");
 		int[][] particleLabels = firstIDAttribution(imp, workArray, phase);		
 		final int nParticles = getParticleSizes(particleLabels).length;
@@ -1359,6 +1372,290 @@ public class JParticleCounter implements PlugIn, DialogListener {
 		return particleLabels;
 	}
 
+	/**
+	 * Label all particles with an int-array union-find instead of the
+	 * chunk-and-stitch path. The stack is cut into slabs that are labelled in
+	 * parallel, each with its own union-find; the provisional labels of each
+	 * slab get a global offset and the seams between the slabs are merged in
+	 * parallel with lock-free unions (the larger root is always linked to the
+	 * smaller one, so no cycles can form). Connectivity is the same as in
+	 * firstIDAttribution: 26 for the foreground and 6 for the background.
+	 * 
+	 * The final labels are numbered in the order in which the particles first
+	 * appear in a z-y-x raster scan, which is the same order as the one that
+	 * firstIDAttribution and minimiseLabels produce.
+	 * 
+	 * @param imp
+	 *            input image, used for the dimensions
+	 * @param workArray
+	 *            binary foreground and background information
+	 * @param phase
+	 *            FORE or BACK for foreground or background respectively
+	 * @return particleLabels with all particles connected
+	 */
+	public int[][] unionFindLabels(ImagePlus imp, final byte[][] workArray,
+			final int phase) {
+		final int w = imp.getWidth();
+		final int h = imp.getHeight();
+		final int d = imp.getImageStackSize();
+		final int wh = w * h;
+		final int[][] particleLabels = new int[d][wh];
+		final boolean fullNeighbourhood = (phase == FORE);
+
+		// cut the stack into slabs, a few per thread for load balancing
+		Thread[] threads = Multithreader.newThreads();
+		final int slabThickness = Math.max(1,
+				(int) Math.ceil((double) d / (2 * threads.length)));
+		final int nSlabs = (d + slabThickness - 1) / slabThickness;
+		final int[][] slabParents = new int[nSlabs][];
+		final int[] slabLabelCounts = new int[nSlabs];
+
+		// label each slab on its own
+		final AtomicInteger ai = new AtomicInteger(0);
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(new Runnable() {
+				public void run() {
+					for (int s = ai.getAndIncrement(); s < nSlabs; s = ai
+							.getAndIncrement()) {
+						final int startZ = s * slabThickness;
+						final int endZ = Math.min(d, startZ + slabThickness);
+						int[] parent = new int[1024];
+						int nLabels = 0;
+						for (int z = startZ; z < endZ; z++) {
+							final byte[] slice = workArray[z];
+							final int[] labels = particleLabels[z];
+							for (int y = 0; y < h; y++) {
+								final int rowIndex = y * w;
+								for (int x = 0; x < w; x++) {
+									final int arrayIndex = rowIndex + x;
+									if (slice[arrayIndex] != phase)
+										continue;
+									int label = 0;
+									// visit the neighbours that were already
+									// scanned within this slab
+									if (fullNeighbourhood) {
+										for (int vZ = Math.max(startZ, z - 1); vZ <= z; vZ++) {
+											final int maxY = (vZ < z) ? Math.min(h - 1, y + 1) : y;
+											for (int vY = Math.max(0, y - 1); vY <= maxY; vY++) {
+												final int maxX = (vZ < z || vY < y) ? Math.min(w - 1, x + 1) : x - 1;
+												final int[] nLabelsRow = particleLabels[vZ];
+												final byte[] nSlice = workArray[vZ];
+												final int nRow = vY * w;
+												for (int vX = Math.max(0, x - 1); vX <= maxX; vX++) {
+													final int offset = nRow + vX;
+													if (nSlice[offset] != phase)
+														continue;
+													final int tagv = nLabelsRow[offset];
+													if (label == 0)
+														label = tagv;
+													else if (tagv != label)
+														localUnion(parent, label, tagv);
+												}
+											}
+										}
+									} else {
+										if (x > 0 && slice[arrayIndex - 1] == phase)
+											label = labels[arrayIndex - 1];
+										if (y > 0 && slice[arrayIndex - w] == phase) {
+											final int tagv = labels[arrayIndex - w];
+											if (label == 0)
+												label = tagv;
+											else if (tagv != label)
+												localUnion(parent, label, tagv);
+										}
+										if (z > startZ && workArray[z - 1][arrayIndex] == phase) {
+											final int tagv = particleLabels[z - 1][arrayIndex];
+											if (label == 0)
+												label = tagv;
+											else if (tagv != label)
+												localUnion(parent, label, tagv);
+										}
+									}
+									if (label == 0) {
+										// new provisional label, 1-based
+										nLabels++;
+										if (nLabels >= parent.length)
+											parent = Arrays.copyOf(parent, 2 * parent.length);
+										parent[nLabels] = nLabels;
+										label = nLabels;
+									}
+									labels[arrayIndex] = label;
+								}
+							}
+						}
+						// flatten, so that every provisional label points to its root
+						for (int l = 1; l <= nLabels; l++)
+							parent[l] = localFind(parent, l);
+						slabParents[s] = parent;
+						slabLabelCounts[s] = nLabels;
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		// global offsets of the slabs
+		final int[] slabOffsets = new int[nSlabs + 1];
+		for (int s = 0; s < nSlabs; s++) {
+			if ((long) slabOffsets[s] + slabLabelCounts[s] >= Integer.MAX_VALUE)
+				throw new IllegalStateException("Too many provisional labels for the union-find labelling");
+			slabOffsets[s + 1] = slabOffsets[s] + slabLabelCounts[s];
+		}
+		final int nProvisional = slabOffsets[nSlabs];
+		final AtomicIntegerArray globalParent = new AtomicIntegerArray(nProvisional + 1);
+
+		// translate the slab labels into global labels that already point to
+		// the roots within each slab
+		threads = Multithreader.newThreads();
+		final AtomicInteger ai2 = new AtomicInteger(0);
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(new Runnable() {
+				public void run() {
+					for (int s = ai2.getAndIncrement(); s < nSlabs; s = ai2
+							.getAndIncrement()) {
+						final int offset = slabOffsets[s];
+						final int[] parent = slabParents[s];
+						for (int l = 1; l <= slabLabelCounts[s]; l++)
+							globalParent.set(offset + l, offset + parent[l]);
+						final int startZ = s * slabThickness;
+						final int endZ = Math.min(d, startZ + slabThickness);
+						for (int z = startZ; z < endZ; z++) {
+							final int[] labels = particleLabels[z];
+							for (int i = 0; i < wh; i++)
+								if (labels[i] != 0)
+									labels[i] = offset + parent[labels[i]];
+						}
+						slabParents[s] = null;
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		// merge the seams: the first slice of each slab with the last one of
+		// the slab above
+		threads = Multithreader.newThreads();
+		final AtomicInteger ai3 = new AtomicInteger(1);
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(new Runnable() {
+				public void run() {
+					for (int s = ai3.getAndIncrement(); s < nSlabs; s = ai3
+							.getAndIncrement()) {
+						final int z = s * slabThickness;
+						final int[] labels = particleLabels[z];
+						final int[] labelsAbove = particleLabels[z - 1];
+						for (int y = 0; y < h; y++) {
+							final int rowIndex = y * w;
+							for (int x = 0; x < w; x++) {
+								final int arrayIndex = rowIndex + x;
+								final int label = labels[arrayIndex];
+								if (label == 0)
+									continue;
+								if (fullNeighbourhood) {
+									for (int vY = Math.max(0, y - 1); vY <= Math.min(h - 1, y + 1); vY++) {
+										for (int vX = Math.max(0, x - 1); vX <= Math.min(w - 1, x + 1); vX++) {
+											final int tagv = labelsAbove[vY * w + vX];
+											if (tagv != 0)
+												concurrentUnion(globalParent, label, tagv);
+										}
+									}
+								} else {
+									final int tagv = labelsAbove[arrayIndex];
+									if (tagv != 0)
+										concurrentUnion(globalParent, label, tagv);
+								}
+							}
+						}
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		// number the roots in the order of their first appearance; the root
+		// of a particle is its smallest provisional label, which belongs to
+		// its first voxel in the raster scan
+		final int[] finalLabel = new int[nProvisional + 1];
+		int nParticles = 0;
+		for (int l = 1; l <= nProvisional; l++) {
+			final int root = concurrentFind(globalParent, l);
+			if (root == l) {
+				nParticles++;
+				finalLabel[l] = nParticles;
+			} else
+				finalLabel[l] = finalLabel[root];
+		}
+
+		// and write the final labels
+		threads = Multithreader.newThreads();
+		final AtomicInteger ai4 = new AtomicInteger(0);
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(new Runnable() {
+				public void run() {
+					for (int z = ai4.getAndIncrement(); z < d; z = ai4
+							.getAndIncrement()) {
+						final int[] labels = particleLabels[z];
+						for (int i = 0; i < wh; i++)
+							if (labels[i] != 0)
+								labels[i] = finalLabel[labels[i]];
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		return particleLabels;
+	}
+
+	private int localFind(int[] parent, int i) {
+		// path halving
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	private void localUnion(int[] parent, int a, int b) {
+		final int rootA = localFind(parent, a);
+		final int rootB = localFind(parent, b);
+		// the smaller label stays the root
+		if (rootA < rootB)
+			parent[rootB] = rootA;
+		else if (rootB < rootA)
+			parent[rootA] = rootB;
+	}
+
+	private int concurrentFind(AtomicIntegerArray parent, int i) {
+		// path halving with compare-and-set, a failed set is harmless
+		int p = parent.get(i);
+		while (p != i) {
+			final int gp = parent.get(p);
+			if (gp != p)
+				parent.compareAndSet(i, p, gp);
+			i = p;
+			p = parent.get(i);
+		}
+		return i;
+	}
+
+	private void concurrentUnion(AtomicIntegerArray parent, int a, int b) {
+		while (true) {
+			a = concurrentFind(parent, a);
+			b = concurrentFind(parent, b);
+			if (a == b)
+				return;
+			// link the larger root to the smaller one, retry if it changed
+			if (a < b) {
+				final int t = a;
+				a = b;
+				b = t;
+			}
+			if (parent.compareAndSet(a, a, b))
+				return;
+		}
+	}
+
 	/**
 	 * Connect structures = minimisation of IDs
 	 * 
@@ -2512,7 +2809,7 @@ public class JParticleCounter implements PlugIn, DialogListener {
 	 *            one of ParticleCounter.MULTI or .LINEAR
 	 */
 	public void setLabelMethod(int label) {
-		if (label != MULTI && label != LINEAR && label != MAPPED) {
+		if (label != MULTI && label != LINEAR && label != MAPPED && label != UNION_FIND) {
 			throw new IllegalArgumentException();
 		}
 		labelMethod = label;
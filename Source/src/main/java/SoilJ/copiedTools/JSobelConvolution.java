@@ -122,17 +122,232 @@ public class JSobelConvolution implements PlugIn
     
     public ImagePlus getMeWhatIWant(ImagePlus nowTiff) {
     	
-    	ImagePlus outTiff = new ImagePlus();
-    	
-    	//apply the Sobel 3D filter with Black background and return image 
-    	ImageStack stack = nowTiff.getStack();
-        img = StackToFloatArray(stack);
-        
-        img = computeSobelMirror((FloatArray3D) img);
-    	
-        outTiff = FloatArrayToStack((FloatArray3D) img, "Sobel Filtered Image", getMin(img), getMax(img));
-                
-        return outTiff;
+    	//apply the Sobel 3D filter with mirrored borders and return a 32-bit image
+    	return getMeWhatIWant(nowTiff, false, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Same as computeSobelMirror, but the stack is streamed through a window of three float slices and the
+     * result is written directly into the output slices, so no float copy of the whole stack is needed.
+     * The slices are split into slabs that are filtered in parallel.
+     *
+     * @param nowTiff 8-bit, 16-bit or 32-bit stack
+     * @param sixteenBit write the gradient magnitudes into a 16-bit stack (rounded and clipped to 0..65535)
+     * @param numberOfThreads number of slabs filtered at the same time
+     */
+    public ImagePlus getMeWhatIWant(ImagePlus nowTiff, final boolean sixteenBit, int numberOfThreads)
+    {
+        final ImageStack stack = nowTiff.getStack();
+        final int width = stack.getWidth();
+        final int height = stack.getHeight();
+        final int depth = stack.getSize();
+
+        if (stack.getPixels(1) instanceof int[])
+        {
+            IJ.log("RGB images are not supported.");
+            return null;
+        }
+
+        final Object[] outSlices = new Object[depth];
+
+        numberOfThreads = Math.max(1, Math.min(numberOfThreads, depth));
+        final int slabThickness = (depth + numberOfThreads - 1) / numberOfThreads;
+        final float[][] slabMinMax = new float[numberOfThreads][];
+
+        Thread[] threads = new Thread[numberOfThreads];
+        for (int t = 0; t < numberOfThreads; t++)
+        {
+            final int slab = t;
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    int firstSlice = slab * slabThickness;
+                    int lastSlice = Math.min(depth, firstSlice + slabThickness);
+                    slabMinMax[slab] = sobelSlab(stack, firstSlice, lastSlice, sixteenBit, outSlices);
+                }
+            };
+            threads[t].start();
+        }
+
+        try
+        {
+            for (int t = 0; t < numberOfThreads; t++) threads[t].join();
+        }
+        catch (InterruptedException e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        float min = Float.MAX_VALUE;
+        float max = Float.MIN_VALUE;
+        for (int t = 0; t < numberOfThreads; t++)
+        {
+            if (slabMinMax[t] == null) throw new RuntimeException("Sobel filtering of slab " + (t + 1) + " failed");
+            min = Math.min(min, slabMinMax[t][0]);
+            max = Math.max(max, slabMinMax[t][1]);
+        }
+
+        ImageStack outStack = new ImageStack(width, height);
+        for (int z = 0; z < depth; z++)
+        {
+            ImageProcessor outIP;
+            if (sixteenBit) outIP = new ShortProcessor(width, height, (short[]) outSlices[z], null);
+            else outIP = new FloatProcessor(width, height, (float[]) outSlices[z]);
+            outSlices[z] = null;
+
+            if (min == max) outIP.resetMinAndMax();
+            else outIP.setMinAndMax(min, max);
+
+            outStack.addSlice("Slice " + z, outIP);
+        }
+
+        return new ImagePlus("Sobel Filtered Image", outStack);
+    }
+
+    /**
+     * Filters the slices firstSlice .. lastSlice - 1 into outSlices.
+     *
+     * @return minimum and maximum of the gradient magnitudes of the slab
+     */
+    private float[] sobelSlab(ImageStack stack, int firstSlice, int lastSlice, boolean sixteenBit, Object[] outSlices)
+    {
+        int width = stack.getWidth();
+        int height = stack.getHeight();
+        int depth = stack.getSize();
+        int wh = width * height;
+
+        float[] minMax = {Float.MAX_VALUE, Float.MIN_VALUE};
+        if (firstSlice >= lastSlice) return minMax;
+
+        //rolling window of the mirrored slices z - 1, z and z + 1
+        float[] below = sliceToFloat(stack, mirror(firstSlice - 1, depth), null);
+        float[] now = sliceToFloat(stack, firstSlice, null);
+        float[] above = sliceToFloat(stack, mirror(firstSlice + 1, depth), null);
+
+        float[] magnitude = new float[wh];
+
+        for (int z = firstSlice; z < lastSlice; z++)
+        {
+            IJ.showStatus("Sobel filtering slice " + (z + 1) + "/" + depth + " ...");
+
+            //interior, no bounds checks needed
+            for (int y = 1; y < height - 1; y++)
+            {
+                int row = y * width;
+                for (int x = 1; x < width - 1; x++)
+                    magnitude[row + x] = sobelAt(below, now, above, row - width, row, row + width, x - 1, x, x + 1);
+            }
+
+            //border rows and columns with mirrored neighbours
+            for (int y = 0; y < height; y++)
+            {
+                boolean borderRow = y == 0 || y == height - 1;
+                int row = y * width;
+                int rowUp = mirror(y - 1, height) * width;
+                int rowDown = mirror(y + 1, height) * width;
+                for (int x = 0; x < width; x++)
+                {
+                    if (!borderRow && x > 0 && x < width - 1) x = width - 1;
+                    magnitude[row + x] = sobelAt(below, now, above, rowUp, row, rowDown, mirror(x - 1, width), x, mirror(x + 1, width));
+                }
+            }
+
+            //write the output slice
+            if (sixteenBit)
+            {
+                short[] out = new short[wh];
+                for (int i = 0; i < wh; i++)
+                {
+                    float value = magnitude[i];
+                    if (value < minMax[0]) minMax[0] = value;
+                    if (value > minMax[1]) minMax[1] = value;
+                    if (value > 65535) value = 65535;
+                    out[i] = (short) (int) (value + 0.5f);
+                }
+                outSlices[z] = out;
+            }
+            else
+            {
+                float[] out = magnitude.clone();
+                for (int i = 0; i < wh; i++)
+                {
+                    float value = out[i];
+                    if (value < minMax[0]) minMax[0] = value;
+                    if (value > minMax[1]) minMax[1] = value;
+                }
+                outSlices[z] = out;
+            }
+
+            //move the window; the oldest slice array is reused
+            if (z + 1 < lastSlice)
+            {
+                float[] recycled = below;
+                below = now;
+                now = above;
+                above = sliceToFloat(stack, mirror(z + 2, depth), recycled);
+            }
+        }
+
+        return minMax;
+    }
+
+    /**
+     * Gradient magnitude of the voxel at column x of the row 'row' of the slice 'now', with the given
+     * neighbouring rows and columns. The terms are summed up in the same order as in computeSobelMirror.
+     */
+    private static float sobelAt(float[] below, float[] now, float[] above, int rowUp, int row, int rowDown, int xLeft, int x, int xRight)
+    {
+        float sobelX = below[row + xLeft] + ( -below[row + xRight]) +
+                       now[rowUp + xLeft] + (2 * now[row + xLeft]) + now[rowDown + xLeft] +
+                       ( -now[rowUp + xRight]) + ( -2 * now[row + xRight]) + ( -now[rowDown + xRight]) +
+                       above[row + xLeft] + ( -above[row + xRight]);
+
+        float sobelY = below[rowUp + x] + ( -below[rowDown + x]) +
+                       now[rowUp + xLeft] + (2 * now[rowUp + x]) + now[rowUp + xRight] +
+                       ( -now[rowDown + xLeft]) + ( -2 * now[rowDown + x]) + ( -now[rowDown + xRight]) +
+                       above[rowUp + x] + ( -above[rowDown + x]);
+
+        float sobelZ = below[rowUp + x] +
+                       below[row + xLeft] + (2 * below[row + x]) + below[row + xRight] +
+                       below[rowDown + x] +
+                       ( -above[rowUp + x]) +
+                       ( -above[row + xLeft]) + ( -2 * above[row + x]) + ( -above[row + xRight]) +
+                       ( -above[rowDown + x]);
+
+        return (float) Math.sqrt((double) sobelX * sobelX + (double) sobelY * sobelY + (double) sobelZ * sobelZ);
+    }
+
+    /**
+     * Mirrors an index at the borders without repeating the border voxel, like FloatArray3D.getMirror
+     */
+    private static int mirror(int i, int n)
+    {
+        if (n == 1) return 0;
+        if (i < 0) return -i;
+        if (i >= n) return 2 * n - 2 - i;
+        return i;
+    }
+
+    private static float[] sliceToFloat(ImageStack stack, int z, float[] out)
+    {
+        Object pixels = stack.getPixels(z + 1);
+        int wh = stack.getWidth() * stack.getHeight();
+        if (out == null) out = new float[wh];
+
+        if (pixels instanceof byte[])
+        {
+            byte[] in = (byte[]) pixels;
+            for (int i = 0; i < wh; i++) out[i] = in[i] & 0xff;
+        }
+        else if (pixels instanceof short[])
+        {
+            short[] in = (short[]) pixels;
+            for (int i = 0; i < wh; i++) out[i] = in[i] & 0xffff;
+        }
+        else System.arraycopy((float[]) pixels, 0, out, 0, wh);
+
+        return out;
     }
 
     private static float getAverage(FloatArray img)
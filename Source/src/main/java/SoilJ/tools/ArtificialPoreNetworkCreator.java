@@ -20,7 +20,16 @@ package SoilJ.tools;
  */
 
 import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ij.IJ;
 import ij.ImagePlus;
@@ -40,6 +49,8 @@ import SoilJ.tools.InputOutput;
 
 public class ArtificialPoreNetworkCreator implements PlugIn {
 
+	//the pores are distributed over slabs of this many slices; fixed so that a seed always gives the same field
+	public static final int SLICES_PER_SLAB = 16;
 	
 	public void run(String arg) {
 				//ok, this is not needed..
@@ -48,7 +59,13 @@ public class ArtificialPoreNetworkCreator implements PlugIn {
 	public void createASetOfRandomFields(String myPreOutPath, int randomSetNumber, MenuWaiter.RandomClusterGenerator mRCG) {
 	
 		InputOutput jIO = new InputOutput();
-		Random randomNumberGenerator = new Random();	
+		
+		//one stream per set of fields, so that a given seed always yields the same sets
+		SplittableRandom setRandom;
+		if (mRCG.seed == 0) setRandom = new SplittableRandom();
+		else setRandom = new SplittableRandom(mRCG.seed + 0x9E3779B97F4A7C15L * randomSetNumber);
+		Random randomNumberGenerator = new Random(setRandom.nextLong());
+		int numberOfThreads = Runtime.getRuntime().availableProcessors();
 		
 		//init some variables
 		int[] xyz = new int[]{mRCG.domainX, mRCG.domainY, mRCG.domainZ};		
@@ -81,39 +98,13 @@ public class ArtificialPoreNetworkCreator implements PlugIn {
 		
 		for (int k = 0 ; k < fieldsToCreate ; k++) {
 			
-			//create a new 3D image
-			IJ.showStatus("Creating an empty 3D image ...");
-			ImagePlus randomImage = new ImagePlus();
-			ByteProcessor mySeedIP = new ByteProcessor(xyz[0], xyz[1]); 
-			ImageStack randomStack = new ImageStack(xyz[0], xyz[1]);
-			for (int z = 0 ; z < xyz[2] ; z++) randomStack.addSlice(mySeedIP.duplicate());
-			randomImage.setStack(randomStack);		
-				
-			//create a random subset of 3D coordinates	
-			int[] randomCoords = new int[3];
+			//create the random subset of voxels
 			if (mRCG.mode.equalsIgnoreCase("predefinedList")) {
 				myPorosity = mRCG.porosityList[k];
 				numberOfPoreVoxels = numberOfPoreVoxelList[k];			
 			}
-			IJ.showStatus("Creating " + numberOfPoreVoxels + " random pores ... (this may take a while ...)");
-			for (int i = 0 ; i < numberOfPoreVoxels ; i++) {			
-				
-				boolean thisVoxelWasAlreadyAPore = true;
-				
-				while (thisVoxelWasAlreadyAPore == true) {
-					for (int j = 0 ; j < 3 ; j++) randomCoords[j] = (int)Math.floor(randomNumberGenerator.nextDouble() * xyz[j]);
-							
-					//check if pixel is alreaday a pore
-					randomImage.setSlice(randomCoords[2] + 1);
-					ImageProcessor nowIP = randomImage.getProcessor();			
-					
-					int nowPix = nowIP.getPixel(randomCoords[0], randomCoords[1]);
-					if (nowPix == 0) {
-						nowIP.putPixel(randomCoords[0], randomCoords[1], 255);
-						thisVoxelWasAlreadyAPore = false;
-					}
-				}
-			}
+			IJ.showStatus("Creating " + numberOfPoreVoxels + " random pores ...");
+			ImagePlus randomImage = createRandomField(xyz, numberOfPoreVoxels, setRandom.split(), numberOfThreads);
 			
 			//if a cylinder should be considered, cut it out..
 			if (mRCG.shape.equalsIgnoreCase("Cylindric") == true) {
@@ -137,4 +128,154 @@ public class ArtificialPoreNetworkCreator implements PlugIn {
 		}
 	}
 	
-}
\ No newline at end of file
+	/**
+	 * Creates a binary field in which exactly numberOfPoreVoxels voxels are pores (255), all subsets of that
+	 * size being equally likely. The pores are first distributed over slabs of SLICES_PER_SLAB slices by
+	 * drawing the number of pores of each slab from a hypergeometric distribution, then each slab picks its
+	 * pores with Floyd's sampling, i.e. a partial Fisher-Yates shuffle that uses the slab itself as the record
+	 * of the chosen voxels. Every slab gets its own split of fieldRandom, so the field does not depend on
+	 * the number of threads.
+	 */
+	public ImagePlus createRandomField(int[] xyz, long numberOfPoreVoxels, SplittableRandom fieldRandom, int numberOfThreads) {
+		
+		final int wh = xyz[0] * xyz[1];
+		int depth = xyz[2];
+		long numberOfVoxels = (long)wh * depth;
+		numberOfPoreVoxels = Math.max(0, Math.min(numberOfVoxels, numberOfPoreVoxels));
+		
+		final byte[][] pixels = new byte[depth][wh];
+		
+		//pores per slab
+		int numberOfSlabs = (depth + SLICES_PER_SLAB - 1) / SLICES_PER_SLAB;
+		long[] poresInSlab = new long[numberOfSlabs];
+		SplittableRandom[] slabRandom = new SplittableRandom[numberOfSlabs];
+		long remainingVoxels = numberOfVoxels;
+		long remainingPores = numberOfPoreVoxels;
+		for (int s = 0 ; s < numberOfSlabs ; s++) {
+			long slabVoxels = (long)wh * (Math.min(depth, (s + 1) * SLICES_PER_SLAB) - s * SLICES_PER_SLAB);
+			poresInSlab[s] = drawHypergeometric(fieldRandom, remainingVoxels, remainingPores, slabVoxels);
+			slabRandom[s] = fieldRandom.split();
+			remainingVoxels -= slabVoxels;
+			remainingPores -= poresInSlab[s];
+		}
+		
+		//place the pores
+		ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, Math.min(numberOfThreads, numberOfSlabs)));
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (int s = 0 ; s < numberOfSlabs ; s++) {
+			final int firstSlice = s * SLICES_PER_SLAB;
+			final int lastSlice = Math.min(depth, firstSlice + SLICES_PER_SLAB);
+			final long nowPores = poresInSlab[s];
+			final SplittableRandom nowRandom = slabRandom[s];
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() {
+					fillSlab(pixels, firstSlice, lastSlice, wh, nowPores, nowRandom);
+					return true;
+				}
+			});
+		}
+		
+		try {
+			List<Future<Boolean>> results = exec.invokeAll(tasks);
+			for (Future<Boolean> result : results) result.get();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			exec.shutdown();
+		}
+		
+		ImageStack randomStack = new ImageStack(xyz[0], xyz[1]);
+		for (int z = 0 ; z < depth ; z++) randomStack.addSlice(new ByteProcessor(xyz[0], xyz[1], pixels[z]));
+		
+		ImagePlus randomImage = new ImagePlus();
+		randomImage.setStack(randomStack);
+		
+		return randomImage;
+	}
+	
+	void fillSlab(byte[][] pixels, int firstSlice, int lastSlice, int wh, long numberOfPores, SplittableRandom rng) {
+		
+		long n = (long)wh * (lastSlice - firstSlice);
+		
+		//for porosities above 0.5 the solid voxels are picked instead
+		boolean pickSolid = numberOfPores > n / 2;
+		byte mark = pickSolid ? 0 : (byte)255;
+		long k = pickSolid ? n - numberOfPores : numberOfPores;
+		if (pickSolid) for (int z = firstSlice ; z < lastSlice ; z++) Arrays.fill(pixels[z], (byte)255);
+		
+		//Floyd: draw from 0 .. j, take j itself if the drawn voxel is already taken
+		for (long j = n - k ; j < n ; j++) {
+			long t = rng.nextLong(j + 1);
+			int z = firstSlice + (int)(t / wh);
+			int i = (int)(t % wh);
+			if (pixels[z][i] == mark) {
+				z = firstSlice + (int)(j / wh);
+				i = (int)(j % wh);
+			}
+			pixels[z][i] = mark;
+		}
+	}
+	
+	/**
+	 * @return number of pores among sampleSize voxels drawn without replacement from numberOfVoxels voxels of
+	 * which numberOfPores are pores; sampled by inversion, starting at the mode
+	 */
+	long drawHypergeometric(SplittableRandom rng, long numberOfVoxels, long numberOfPores, long sampleSize) {
+		
+		long lowest = Math.max(0, sampleSize + numberOfPores - numberOfVoxels);
+		long highest = Math.min(sampleSize, numberOfPores);
+		if (lowest >= highest) return lowest;
+		
+		double N = numberOfVoxels, K = numberOfPores, n = sampleSize;
+		long mode = (long)Math.floor((n + 1) * (K + 1) / (N + 2));
+		mode = Math.max(lowest, Math.min(highest, mode));
+		
+		double pMode = Math.exp(logChoose(K, mode) + logChoose(N - K, sampleSize - mode) - logChoose(N, n));
+		
+		//walk away from the mode to both sides, using the ratios of neighbouring probabilities
+		double u = rng.nextDouble() - pMode;
+		if (u < 0) return mode;
+		
+		long down = mode, up = mode;
+		double pDown = pMode, pUp = pMode;
+		while (down > lowest || up < highest) {
+			if (up < highest) {
+				pUp *= (K - up) * (n - up) / ((up + 1) * (N - K - n + up + 1));
+				up++;
+				u -= pUp;
+				if (u < 0) return up;
+			}
+			if (down > lowest) {
+				pDown *= down * (N - K - n + down) / ((K - down + 1) * (n - down + 1));
+				down--;
+				u -= pDown;
+				if (u < 0) return down;
+			}
+		}
+		
+		//only reached through rounding errors
+		return mode;
+	}
+	
+	double logChoose(double n, double k) {
+		return logFactorial(n) - logFactorial(k) - logFactorial(n - k);
+	}
+	
+	//Stirling series, summed up directly below 16
+	double logFactorial(double n) {
+		if (n < 16) {
+			double f = 0;
+			for (int i = 2 ; i <= n ; i++) f += Math.log(i);
+			return f;
+		}
+		double m = n + 1;
+		return (m - 0.5) * Math.log(m) - m + 0.5 * Math.log(2 * Math.PI) + 1 / (12 * m) - 1 / (360 * m * m * m) + 1 / (1260 * m * m * m * m * m);
+	}
+	
+}
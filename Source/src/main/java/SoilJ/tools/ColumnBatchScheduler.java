@@ -0,0 +1,244 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.plugin.PlugIn;
+
+/**
+ * ColumnBatchScheduler is a SoilJ class that runs the PoreSpaceAnalyzer on several columns at the same time.
+ * Each column is admitted only when its estimated memory demand fits into the heap that is still free, so
+ * that many small columns run side by side while a large one may run alone. A column that fails is logged
+ * and skipped, the others are analysed as usual.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class ColumnBatchScheduler implements PlugIn {
+
+	//share of the free heap that is handed out to the columns
+	public static final double HEAP_SHARE = 0.8;
+
+	static final long MEGABYTE = 1024L * 1024L;
+
+	public void run(String arg) {
+		//ok, this is not needed..
+	}
+
+	public class SamplePlan {
+
+		public int imageNumber;
+		public InputOutput.MyFileCollection mFC;
+		public MenuWaiter.PoreSpaceAnalyzerOptions mPSA;
+		public int[] colSlices;
+		public long estimatedBytes;
+
+	}
+
+	public class BatchReport {
+
+		public ArrayList<String> finished = new ArrayList<String>();
+		public ArrayList<String> failed = new ArrayList<String>();
+		public ArrayList<String> failureMessages = new ArrayList<String>();
+
+	}
+
+	/**
+	 * Estimates how much heap the analysis of one column needs at its peak.
+	 *
+	 * @param numberOfVoxels number of voxels of the loaded column
+	 * @param mPSA the options of the analyses
+	 * @return estimated number of bytes
+	 */
+	public long estimateBytesPerSample(long numberOfVoxels, MenuWaiter.PoreSpaceAnalyzerOptions mPSA) {
+
+		//the loaded stack and the cut ROI
+		double bytesPerVoxel = 2;
+
+		if (mPSA.removeHoles) bytesPerVoxel += 1;
+		if (mPSA.calcFractal) bytesPerVoxel += 0.25;						//half-size pyramid
+
+		if (mPSA.performParticleAnalyses) {
+			bytesPerVoxel += 8;												//int labels and the working copy of the particle counter
+			if (mPSA.plotLabels) bytesPerVoxel += 4;
+			if (mPSA.plotPoresConnected2Top || mPSA.calcVolCon2Top) bytesPerVoxel += 1;
+			if (mPSA.plotPercolation || mPSA.calcPercolatingVolume) bytesPerVoxel += 1;
+			if (mPSA.plotThickness || mPSA.plotPercolation || mPSA.calcThickness || mPSA.calcCriticalPoreDiameter) bytesPerVoxel += 8;		//local thickness
+			if (mPSA.calcCriticalPoreDiameter || mPSA.plotDistanceMap) {
+				bytesPerVoxel += 4;											//distance map
+				if (mPSA.calcCriticalPoreDiameter) bytesPerVoxel += 20;		//index, sort key, position and parent of the percolation engine
+				if (mPSA.calcKT87Volume) bytesPerVoxel += 1;
+			}
+		}
+
+		return (long)Math.ceil(bytesPerVoxel * numberOfVoxels);
+
+	}
+
+	/**
+	 * Finds the slices and the memory demand of each column. This is done one column after the other, as
+	 * findStartAndStopSlices modifies the ROI options like in the sequential analysis.
+	 */
+	public ArrayList<SamplePlan> planSamples(InputOutput.MyFileCollection mFC, MenuWaiter.PoreSpaceAnalyzerOptions mPSA, BatchReport mBR) {
+
+		InputOutput jIO = new InputOutput();
+		MenuWaiter menu = new MenuWaiter();
+
+		ArrayList<SamplePlan> plans = new ArrayList<SamplePlan>();
+
+		for (int i = 0 ; i < mFC.myTiffs.length ; i++) {
+
+			try {
+
+				SamplePlan mSP = new SamplePlan();
+				mSP.imageNumber = i;
+
+				InputOutput.MyFileCollection nowFC = jIO.copyMyFileCollection(mFC);
+				nowFC.fileName = mFC.myTiffs[i];
+				nowFC = jIO.addCurrentFileInfo8Bit(nowFC);
+
+				int[] startStopSlices = jIO.findStartAndStopSlices(nowFC, mPSA);
+				int[] colSlices = new int[startStopSlices[1] - startStopSlices[0]];
+				for (int j = 0 ; j < colSlices.length ; j++) colSlices[j] = startStopSlices[0] + j;
+				nowFC.startSlice = startStopSlices[0];
+				nowFC.stopSlice = startStopSlices[1];
+
+				mSP.mFC = nowFC;
+				mSP.mPSA = menu.copyPoreSpaceAnalyzerOptions(mPSA);
+				mSP.colSlices = colSlices;
+				mSP.estimatedBytes = estimateBytesPerSample((long)nowFC.nowWidth * nowFC.nowHeight * colSlices.length, mPSA);
+
+				plans.add(mSP);
+
+			}
+			catch (Exception e) {
+				mBR.failed.add(mFC.myTiffs[i]);
+				mBR.failureMessages.add(e.toString());
+				IJ.log("Could not prepare " + mFC.myTiffs[i] + " for the analysis: " + e.toString());
+			}
+		}
+
+		return plans;
+
+	}
+
+	/**
+	 * Analyses all columns in mFC.myTiffs, numberOfParallelColumns at most at the same time.
+	 *
+	 * @return the names of the columns that were analysed and of those that failed
+	 */
+	public BatchReport runBatch(InputOutput.MyFileCollection mFC, MenuWaiter.PoreSpaceAnalyzerOptions mPSA, int numberOfParallelColumns) {
+
+		final BatchReport mBR = new BatchReport();
+
+		ArrayList<SamplePlan> plans = planSamples(mFC, mPSA, mBR);
+		if (plans.isEmpty()) return mBR;
+
+		//heap budget in megabytes
+		Runtime rt = Runtime.getRuntime();
+		long freeHeap = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+		final int budgetMB = (int)Math.max(1, Math.min(Integer.MAX_VALUE, HEAP_SHARE * freeHeap / MEGABYTE));
+		final Semaphore heapBudget = new Semaphore(budgetMB, true);
+
+		int numberOfThreads = Math.max(1, Math.min(numberOfParallelColumns, plans.size()));
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (final SamplePlan mSP : plans) {
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+
+					//columns larger than the whole budget are run alone
+					int slotsMB = (int)Math.max(1, Math.min(budgetMB, mSP.estimatedBytes / MEGABYTE));
+					heapBudget.acquire(slotsMB);
+
+					try {
+						IJ.showStatus("Analysing " + mSP.mFC.colName + " ...");
+						analyzeSample(mSP);
+						synchronized (mBR) {
+							mBR.finished.add(mSP.mFC.fileName);
+						}
+					}
+					catch (Throwable t) {
+						synchronized (mBR) {
+							mBR.failed.add(mSP.mFC.fileName);
+							mBR.failureMessages.add(t.toString());
+						}
+						IJ.log("Analysis of " + mSP.mFC.fileName + " failed: " + t.toString());
+					}
+					finally {
+						heapBudget.release(slotsMB);
+					}
+
+					return true;
+				}
+			});
+		}
+
+		try {
+			List<Future<Boolean>> results = exec.invokeAll(tasks);
+			for (Future<Boolean> result : results) result.get();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			exec.shutdown();
+		}
+
+		IJ.log("Analysed " + mBR.finished.size() + " of " + mFC.myTiffs.length + " columns.");
+		for (int i = 0 ; i < mBR.failed.size() ; i++) IJ.log("Failed: " + mBR.failed.get(i) + " (" + mBR.failureMessages.get(i) + ")");
+
+		return mBR;
+
+	}
+
+	public void analyzeSample(SamplePlan mSP) {
+
+		InputOutput jIO = new InputOutput();
+		RoiHandler roi = new RoiHandler();
+		MorphologyAnalyzer morph = new MorphologyAnalyzer();
+
+		//load file
+		ImagePlus nowTiff = jIO.openTiff3DSomeSlices(mSP.mFC, mSP.colSlices);
+
+		//cut roi
+		RoiHandler.ColumnRoi colRoi = roi.prepareDesiredRoi(mSP.mFC, nowTiff, mSP.mPSA.mRSO);
+
+		//apply analyzes
+		morph.tailoredPoreSpaceAnalyzer(mSP.imageNumber, mSP.mFC, colRoi, mSP.mPSA);
+
+	}
+
+}
@@ -0,0 +1,295 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.plugin.PlugIn;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * DrainageEngine is a SoilJ class that calculates the air-filled pore space of a draining soil column for
+ * all tension steps in one sweep. A pore voxel becomes air-filled as soon as its thickness is larger than the
+ * depth-corrected cutoff of the capillary equation (the same as in ObjectDetector.extractAirFilledPores), so
+ * with increasing tension the voxels only ever switch from water to air. The voxels are therefore added to a
+ * union-find step by step, and each cluster remembers its voxels until it gets connected to the top. This
+ * yields the tension step at which each voxel drains, without labelling the image again for every step.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class DrainageEngine implements PlugIn {
+
+	public void run(String arg) {
+		//ok, this is not needed..
+	}
+
+	public class DrainageResult {
+
+		public double[] tensions;			//tension steps in the order in which they were given
+		public boolean[] solved;			//false for steps with a cutoff below 2 voxels, which need ObjectDetector.extractAirFilledPores
+		public long[] airFilledVoxels;		//number of air-filled voxels at each solved step
+
+		int[] rankOfStep;					//rank of each step among the sorted solved steps
+		short[][] drainMap;					//1 + rank of the step at which each voxel drains, 0 if it does not
+
+	}
+
+	/**
+	 * @return the thickness a pore must exceed in slice z (starting at 0) to be air-filled, or a negative
+	 * value if the slice is kept water-filled as in extractAirFilledPores
+	 */
+	public double getCutoffThickness(double tension, int z, int numberOfSlices, MenuWaiter.WRCCalculatorMenu mWRC) {
+
+		double columnHeight = numberOfSlices * mWRC.resolutionInMicroMeter;
+		double bboundary = tension * 10000;  //calculate in micrometer
+		double capillaryConstantInMicroMeter = 1.48e7 * Math.cos(mWRC.wettingAngle / 180 * Math.PI);
+
+		double columnNow = columnHeight - (z + 0.5) * mWRC.resolutionInMicroMeter;  //+0.5 to get to the voxel midpoint
+		double cutoffRadius = capillaryConstantInMicroMeter / (bboundary + columnNow);
+		double cutoffThickness = (2 * cutoffRadius) / mWRC.resolutionInMicroMeter;
+		if (cutoffThickness < 2) cutoffThickness = Math.round(cutoffThickness);
+		if (cutoffThickness < 2) return -1;
+
+		return cutoffThickness;
+	}
+
+	/**
+	 * Drains the column step by step.
+	 *
+	 * @param thickTiff thickness image (pore diameters in voxels)
+	 * @param surfTiff soil surface image as used in check4TouchingTheTop, or null if the top slice is the boundary
+	 * @param mWRC the menu with the tension steps and the capillary parameters
+	 * @return the drainage of all steps, or null if more than PercolationEngine.MAX_PORE_VOXELS voxels drain and
+	 * the steps have to be calculated one by one with ObjectDetector.extractAirFilledPores
+	 */
+	public DrainageResult drain(ImagePlus thickTiff, ImagePlus surfTiff, MenuWaiter.WRCCalculatorMenu mWRC) {
+
+		PercolationEngine pE = new PercolationEngine();
+		DrainageResult mDR = new DrainageResult();
+
+		int w = thickTiff.getWidth();
+		int h = thickTiff.getHeight();
+		int d = thickTiff.getNSlices();
+		int wh = w * h;
+		ImageStack thickStack = thickTiff.getStack();
+
+		double[] tensions = mWRC.tensionSteps;
+		mDR.tensions = tensions;
+		mDR.solved = new boolean[tensions.length];
+		mDR.rankOfStep = new int[tensions.length];
+
+		//sort the steps by tension; the steps are solved until one has a slice with a cutoff below 2 voxels
+		Integer[] order = new Integer[tensions.length];
+		for (int j = 0 ; j < tensions.length ; j++) order[j] = j;
+		final double[] sortTensions = tensions;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(sortTensions[a], sortTensions[b]);
+			}
+		});
+
+		int numberOfSteps = 0;
+		for (int k = 0 ; k < order.length ; k++) {
+			boolean allSlicesValid = true;
+			for (int z = 0 ; z < d ; z++) if (getCutoffThickness(tensions[order[k]], z, d, mWRC) < 0) {
+				allSlicesValid = false;
+				break;
+			}
+			if (!allSlicesValid) break;
+			mDR.solved[order[k]] = true;
+			mDR.rankOfStep[order[k]] = k;
+			numberOfSteps++;
+		}
+
+		mDR.airFilledVoxels = new long[tensions.length];
+		mDR.drainMap = new short[d][wh];
+		if (numberOfSteps == 0) return mDR;
+		if (numberOfSteps >= Short.MAX_VALUE) throw new IllegalArgumentException("Too many tension steps");
+
+		double[][] cutoff = new double[d][numberOfSteps];
+		for (int z = 0 ; z < d ; z++) for (int k = 0 ; k < numberOfSteps ; k++) cutoff[z][k] = getCutoffThickness(tensions[order[k]], z, d, mWRC);
+
+		//give each voxel that drains at some step a compact index and count the voxels per step
+		IJ.showStatus("Finding the tension at which each pore voxel drains ...");
+		int[][] voxelIndex = new int[d][];
+		int[] perStep = new int[numberOfSteps + 1];
+		int numberOfVoxels = 0;
+		for (int z = 0 ; z < d ; z++) {
+			ImageProcessor nowIP = thickStack.getProcessor(z + 1);
+			int[] nowIndex = new int[wh];
+			short[] nowStep = mDR.drainMap[z];
+			for (int i = 0 ; i < wh ; i++) {
+				float thick = nowIP.getf(i);
+				int k = 0;
+				while (k < numberOfSteps && thick <= cutoff[z][k]) k++;
+				if (k < numberOfSteps) {
+					
+					//the indices, the buckets and the union-find are int-indexed arrays
+					if (numberOfVoxels >= PercolationEngine.MAX_PORE_VOXELS) return null;
+					
+					nowIndex[i] = numberOfVoxels++;
+					nowStep[i] = (short)k;		//temporarily the step at which the voxel gets air-filled
+					perStep[k + 1]++;
+				}
+				else nowIndex[i] = -1;
+			}
+			voxelIndex[z] = nowIndex;
+		}
+
+		//bucket the voxels by step
+		for (int k = 0 ; k < numberOfSteps ; k++) perStep[k + 1] += perStep[k];
+		int[] bucketed = new int[numberOfVoxels];
+		int[] bucketZ = new int[numberOfVoxels];
+		int[] fill = Arrays.copyOf(perStep, numberOfSteps);
+		for (int z = 0 ; z < d ; z++) {
+			int[] nowIndex = voxelIndex[z];
+			for (int i = 0 ; i < wh ; i++) {
+				if (nowIndex[i] < 0) continue;
+				int k = mDR.drainMap[z][i];
+				bucketed[fill[k]] = i;
+				bucketZ[fill[k]] = z;
+				fill[k]++;
+			}
+		}
+		for (int z = 0 ; z < d ; z++) Arrays.fill(mDR.drainMap[z], (short)0);
+
+		//union-find with the top as an extra node; the top always has the largest index, so it stays the root
+		//of its cluster. The other clusters keep a list of their voxels.
+		int topNode = numberOfVoxels;
+		int[] parent = new int[numberOfVoxels + 1];
+		int[] head = new int[numberOfVoxels + 1];
+		int[] tail = new int[numberOfVoxels + 1];
+		int[] next = new int[numberOfVoxels + 1];
+		int[] position = new int[numberOfVoxels];
+		int[] slice = new int[numberOfVoxels];
+		Arrays.fill(parent, -1);
+		parent[topNode] = topNode;
+
+		byte[][] contacts = pE.findTopAndBottomContacts(w, h, d, surfTiff);
+
+		long airFilled = 0;
+		for (int k = 0 ; k < numberOfSteps ; k++) {
+
+			IJ.showStatus("Draining the column at " + String.format("%2.1f", tensions[order[k]]) + " cm tension ...");
+
+			for (int j = perStep[k] ; j < perStep[k + 1] ; j++) {
+
+				int i = bucketed[j];
+				int z = bucketZ[j];
+				int x = i % w;
+				int y = i / w;
+				int nowVox = voxelIndex[z][i];
+
+				parent[nowVox] = nowVox;
+				head[nowVox] = nowVox;
+				tail[nowVox] = nowVox;
+				next[nowVox] = -1;
+				position[nowVox] = i;
+				slice[nowVox] = z;
+
+				//join with the 26 neighbours that are already air-filled
+				for (int vZ = Math.max(0, z - 1) ; vZ <= Math.min(d - 1, z + 1) ; vZ++) {
+					int[] nowIndex = voxelIndex[vZ];
+					for (int vY = Math.max(0, y - 1) ; vY <= Math.min(h - 1, y + 1) ; vY++) {
+						for (int vX = Math.max(0, x - 1) ; vX <= Math.min(w - 1, x + 1) ; vX++) {
+							int neighbour = nowIndex[vY * w + vX];
+							if (neighbour >= 0 && parent[neighbour] >= 0) airFilled += join(parent, head, tail, next, position, slice, mDR.drainMap, nowVox, neighbour, topNode, k);
+						}
+					}
+				}
+
+				//join with the top
+				if (contacts[z] != null && (contacts[z][i] & PercolationEngine.TOUCHES_TOP) != 0) {
+					airFilled += join(parent, head, tail, next, position, slice, mDR.drainMap, nowVox, topNode, topNode, k);
+				}
+			}
+
+			mDR.airFilledVoxels[order[k]] = airFilled;
+		}
+
+		return mDR;
+	}
+
+	private long join(int[] parent, int[] head, int[] tail, int[] next, int[] position, int[] slice, short[][] drainMap, int a, int b, int topNode, int step) {
+
+		int rootA = PercolationEngine.find(parent, a);
+		int rootB = PercolationEngine.find(parent, b);
+		if (rootA == rootB) return 0;
+
+		//the larger index becomes the root
+		if (rootA < rootB) {
+			int swap = rootA;
+			rootA = rootB;
+			rootB = swap;
+		}
+		parent[rootB] = rootA;
+
+		//a cluster that gets connected to the top drains now
+		if (rootA == topNode) {
+			long drained = 0;
+			for (int v = head[rootB] ; v >= 0 ; v = next[v]) {
+				drainMap[slice[v]][position[v]] = (short)(step + 1);
+				drained++;
+			}
+			return drained;
+		}
+
+		//else just append the voxel list
+		next[tail[rootA]] = head[rootB];
+		tail[rootA] = tail[rootB];
+
+		return 0;
+	}
+
+	/**
+	 * @param mDR result of drain
+	 * @param tensionIndex index of the tension step in mWRC.tensionSteps, the step must be solved
+	 * @return binary image of the air-filled pores (255 = air)
+	 */
+	public ImagePlus getAirFilledPores(DrainageResult mDR, int tensionIndex, int width, int height) {
+
+		if (!mDR.solved[tensionIndex]) throw new IllegalArgumentException("Tension step " + mDR.tensions[tensionIndex] + " was not solved by the drainage engine");
+
+		int lastDrainValue = mDR.rankOfStep[tensionIndex] + 1;
+
+		ImageStack outStack = new ImageStack(width, height);
+		for (int z = 0 ; z < mDR.drainMap.length ; z++) {
+			short[] nowMap = mDR.drainMap[z];
+			byte[] outPixels = new byte[nowMap.length];
+			for (int i = 0 ; i < nowMap.length ; i++) {
+				if (nowMap[i] > 0 & nowMap[i] <= lastDrainValue) outPixels[i] = (byte)255;
+			}
+			outStack.addSlice(new ByteProcessor(width, height, outPixels));
+		}
+
+		ImagePlus outTiff = new ImagePlus();
+		outTiff.setStack(outStack);
+
+		return outTiff;
+	}
+
+}
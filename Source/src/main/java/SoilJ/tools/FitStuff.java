@@ -81,6 +81,19 @@ public class FitStuff implements PlugIn {
 
 
 	public GoodnessOfFit calculateR2OfEllipsoidFit(double[] angleAtThisAngle, float[] xOD, float[] yOD, EllipseFitter jEF) {
+		return calculateR2OfEllipsoidFit(angleAtThisAngle, xOD, yOD, jEF.xCenter, jEF.yCenter, jEF.major, jEF.minor, jEF.theta);
+	}
+	
+	public GoodnessOfFit calculateR2OfEllipsoidFit(double[] angleAtThisAngle, float[] xOD, float[] yOD, FittedEllipse fE) {
+		return calculateR2OfEllipsoidFit(angleAtThisAngle, xOD, yOD, fE.xCenter, fE.yCenter, 2 * fE.majorRadius, 2 * fE.minorRadius, fE.theta);
+	}
+	
+	/**
+	 * @param major major axis (not radius) of the ellipse
+	 * @param minor minor axis of the ellipse
+	 * @param theta angle of the major axis as in ImageJ's EllipseFitter
+	 */
+	public GoodnessOfFit calculateR2OfEllipsoidFit(double[] angleAtThisAngle, float[] xOD, float[] yOD, double xCenter, double yCenter, double major, double minor, double theta) {
 		
 		int j;
 		GoodnessOfFit gOF = new GoodnessOfFit();
@@ -103,12 +116,11 @@ public class FitStuff implements PlugIn {
 		for (j = 0 ; j < xOD.length ; j++) SSX = SSX + Math.pow(xOD[j] - MX, 2);
 		for (j = 0 ; j < yOD.length ; j++) SSY = SSY + Math.pow(yOD[j] - MY, 2);
 		for (j = 0 ; j < angleAtThisAngle.length ; j++) {			
-			double theta = jEF.theta;
 			double alpha = angleAtThisAngle[j] - theta + Math.PI/2;
-			double a = jEF.major / 2;
-			double b = jEF.minor / 2;			
-			xfit[j] = (float)(jEF.xCenter - a * Math.cos(alpha) * Math.cos(theta) + b * Math.sin(alpha) * Math.sin(theta));
-			yfit[j] = (float)(jEF.yCenter + a * Math.cos(alpha) * Math.sin(theta) + b * Math.sin(alpha) * Math.cos(theta));
+			double a = major / 2;
+			double b = minor / 2;			
+			xfit[j] = (float)(xCenter - a * Math.cos(alpha) * Math.cos(theta) + b * Math.sin(alpha) * Math.sin(theta));
+			yfit[j] = (float)(yCenter + a * Math.cos(alpha) * Math.sin(theta) + b * Math.sin(alpha) * Math.cos(theta));
 			
 			srx[j] = Math.pow(xOD[j] - xfit[j], 2);
 			sry[j] = Math.pow(yOD[j] - yfit[j], 2);
@@ -116,7 +128,7 @@ public class FitStuff implements PlugIn {
 			xhelp[j] = xOD[j];
 			yhelp[j] = yOD[j];		
 			
-			d2m[j] = Math.sqrt((jEF.xCenter - xOD[j]) * (jEF.xCenter - xOD[j]) + (jEF.yCenter - yOD[j]) * (jEF.yCenter - yOD[j]));
+			d2m[j] = Math.sqrt((xCenter - xOD[j]) * (xCenter - xOD[j]) + (yCenter - yOD[j]) * (yCenter - yOD[j]));
 	
 		}
 		
@@ -528,20 +540,17 @@ public class FitStuff implements PlugIn {
 	
 	public FittedEllipse doRobustEllipseFit(int i, float[] xD, float[] yD, double[] myAngle, ImageProcessor myIP, MenuWaiter.ColumnFinderMenuReturn jCFS, double para) {
 		
-		FittedEllipse fE = new FittedEllipse();
-		EllipseFitter jEF = new EllipseFitter();
-		
 		//kick out zero entries
-		ArrayList<Integer> badones = new ArrayList<Integer>();
+		int numberOfBadOnes = 0;
 		for (int j = 0 ; j < xD.length ; j++) {
-			if (xD[j] == 0 | yD[j] == 0) badones.add(j);
+			if (xD[j] == 0 | yD[j] == 0) numberOfBadOnes++;
 		}
-		float[] xC = new float[xD.length - badones.size()];
-		float[] yC = new float[xD.length - badones.size()];
-		double[] angleC = new double[xD.length - badones.size()];
+		float[] xC = new float[xD.length - numberOfBadOnes];
+		float[] yC = new float[xD.length - numberOfBadOnes];
+		double[] angleC = new double[xD.length - numberOfBadOnes];
 		int precc = 0;
 		for (int j = 0 ; j < xD.length ; j++) {
-			if (badones.contains(j)); 
+			if (xD[j] == 0 | yD[j] == 0); 
 			else {
 				xC[precc] = xD[j];
 				yC[precc] = yD[j];
@@ -551,51 +560,17 @@ public class FitStuff implements PlugIn {
 		}
 		
 		//fit with all available values
-		PolygonRoi pRoi = new PolygonRoi(xC, yC, Roi.POLYLINE); // create pRoi with outer Wall coordinates
-		ImageProcessor copy1 = myIP.duplicate();
-		copy1.setRoi(pRoi); 
-		jEF.fit(copy1, copy1.getStatistics());
-		FitStuff.GoodnessOfFit gOF = calculateR2OfEllipsoidFit(angleC, xC, yC, jEF);		
+		FittedEllipse fE = fitEllipse(xC, yC, myIP);
+		FitStuff.GoodnessOfFit gOF = calculateR2OfEllipsoidFit(angleC, xC, yC, fE);		
 		double[] relDevFromMedianRadius = new double[xC.length];
 		for (int j = 0 ; j < xC.length ; j++) {
 			relDevFromMedianRadius[j] = (gOF.d2m[j] - gOF.median2d2m) / gOF.median2d2m;
 		}
 		
-		PolygonRoi sRoi = new PolygonRoi(xC, yC, Roi.POLYLINE); // create pRoi with outer Wall coordinates
-		ImageProcessor copy2 = myIP.duplicate();
-		copy2.setRoi(sRoi);				
-		
-		ImagePlus newImg = new ImagePlus("layer " + i, copy2);
-		Overlay myO = new Overlay(sRoi);	
-		
-		if (jCFS.showFit) {
-			PointRoi innerFoundEdges = new PointRoi(xC, yC, yC.length);		
-			myO.add(innerFoundEdges);  
-		
-			copy2.setColor(Color.YELLOW);
-			Font font = new Font("Verdana", Font.PLAIN, 40);
-			TextRoi tRoi = new TextRoi((int)(0.01f * newImg.getWidth()), (int)(0.01f * newImg.getHeight()), String.format("%1.2f\t",(float)para), font);
-			tRoi.drawPixels(copy2);
-		
-			ContrastEnhancer myCE = new ContrastEnhancer();
-			myCE.stretchHistogram(copy2, 0.5);
-			myO.setStrokeColor(Color.RED);
-			newImg.setOverlay(myO);
-			newImg.updateAndDraw();
-			newImg.show();
-		
-			IJ.wait(500);
-			newImg.hide();
-			newImg.flush();		
-		}
+		if (jCFS.showFit) showEllipseFitPoints(i, xC, yC, myIP, para);
 		
 		//assign output variables
-		fE.xCenter = jEF.xCenter;
-		fE.yCenter = jEF.yCenter;
 		fE.zCenter = i;
-		fE.minorRadius = jEF.minor / 2;
-		fE.majorRadius = jEF.major / 2;				
-		fE.theta = jEF.theta;		
 		fE.R2 = gOF.R2;		
 		
 		//try to do the fit again but without outliers
@@ -615,100 +590,74 @@ public class FitStuff implements PlugIn {
 			}	
 			
 			//also add the badones as negative ones.. 
-
-			for (int j = 0 ; j < badones.size() ; j++) {				
+			for (int j = 0 ; j < numberOfBadOnes ; j++) {				
 				kickout.add((double) -1);				
 			}
 				 
-			//remove kickouts stepwise					
+			//remove kickouts stepwise, always the point farthest off the median radius of the last fit
 			int cc = 0;
-			ArrayList<Integer> kicked = new ArrayList<Integer>();
-			kicked.add(maxDev);
+			boolean[] kicked = new boolean[xC.length];
+			int numberOfKicked = 0;
+			if (xC.length > 0) {
+				kicked[maxDev] = true;
+				numberOfKicked++;
+			}
 			
 			//abort fitting if too many points were not found
-			if (badones.size() > xC.length / 6) cc = 999;
+			if (numberOfBadOnes > xC.length / 6) cc = 999;
 			
-			while (gOF.R2 < jCFS.r2Thresh & cc <= jCFS.maxNumberOfOutliers4PerimeterFits) {
+			//a fit needs at least 5 points
+			while (gOF.R2 < jCFS.r2Thresh & cc <= jCFS.maxNumberOfOutliers4PerimeterFits & xC.length - numberOfKicked >= 5) {
 			
 				//compile new array without kickouts	
-				float[] xOS = new float[xC.length - kicked.size()];
-				float[] yOS = new float[xC.length - kicked.size()];
-				double[] angleS = new double[xC.length - kicked.size()];
+				float[] xOS = new float[xC.length - numberOfKicked];
+				float[] yOS = new float[xC.length - numberOfKicked];
+				double[] angleS = new double[xC.length - numberOfKicked];
+				int[] originalIndex = new int[xC.length - numberOfKicked];
 				
 				int nowcc = 0;
 				for (int j = 0 ; j < xC.length ; j++){
-					if (!kicked.contains(j)) {
+					if (!kicked[j]) {
 						xOS[nowcc] = xC[j];
 						yOS[nowcc] = yC[j];
 						angleS[nowcc] = angleC[j];	
+						originalIndex[nowcc] = j;
 						nowcc++;
 					}						
 				}
 				
-				sRoi = new PolygonRoi(xOS, yOS, Roi.POLYLINE); // create pRoi with outer Wall coordinates
-				copy2 = myIP.duplicate();
-				copy2.setRoi(sRoi);				
-				
-				if (jCFS.showFit) {
-					newImg = new ImagePlus("layer " + i, copy2);
-					copy2.setColor(Color.YELLOW);
-					myO = new Overlay(sRoi);	
-					PointRoi innerFoundEdges = new PointRoi(xOS, yOS, yOS.length);
-					myO.add(innerFoundEdges);  
-					
-					Font font = new Font("Verdana", Font.PLAIN, 40);
-					TextRoi tRoi = new TextRoi((int)(0.01f * newImg.getWidth()), (int)(0.01f * newImg.getHeight()), String.format("%1.2f\t",(float)para), font);
-					tRoi.drawPixels(copy2);
-					
-					ContrastEnhancer myCE = new ContrastEnhancer();
-					myO.setStrokeColor(Color.RED);
-					myCE.stretchHistogram(copy2, 0.5);
-					newImg.setOverlay(myO);
-					newImg.updateAndDraw();
-					newImg.show();
-					
-					IJ.wait(500);
-					newImg.hide();
-					newImg.flush();
-				}
-								
+				if (jCFS.showFit) showEllipseFitPoints(i, xOS, yOS, myIP, para);
 
-				EllipseFitter jEFS = new EllipseFitter();
-				jEFS.fit(copy2, copy2.getStatistics());			
-				gOF = calculateR2OfEllipsoidFit(angleS, xOS, yOS, jEFS);
-				double[] newRelDevFromMedianRadius = new double[xC.length];
-				ArrayList<Double> newAbsDevFromMedianRadius = new ArrayList<Double>();
-				int kickRedu = 0;
+				FittedEllipse fS = fitEllipse(xOS, yOS, myIP);
+				gOF = calculateR2OfEllipsoidFit(angleS, xOS, yOS, fS);
+				
+				//find the next point to kick out
+				maxDev = -1;
+				maxDEV = 0;
 				for (int j = 0 ; j < xOS.length ; j++) {
-					if (!kicked.contains(j)) {
-						newRelDevFromMedianRadius[j] = Math.abs(gOF.d2m[j - kickRedu] - gOF.median2d2m) / gOF.median2d2m;		
-					}
-					else {
-						newRelDevFromMedianRadius[j] = 0;
-						newAbsDevFromMedianRadius.add(gOF.d2m[j - kickRedu] - gOF.median2d2m);
-						kickRedu++;
+					double relDev = Math.abs(gOF.d2m[j] - gOF.median2d2m) / gOF.median2d2m;
+					if (maxDev < 0 || relDev > maxDEV) {
+						maxDev = originalIndex[j];
+						maxDEV = relDev;
 					}
 				}
-				maxDev = 0;
-				maxDEV = 0;
-				for (int j = 0 ; j < newRelDevFromMedianRadius.length ; j++) {				
-					if (newRelDevFromMedianRadius[j] > maxDEV) {
-						maxDev = j;
-						maxDEV = newRelDevFromMedianRadius[j];
-					}
-				}	
 				
-				kicked.add(maxDev);
+				//deviations of the points kicked out so far from the median radius of this fit
+				double[] absDeviation = new double[numberOfKicked];
+				int kc = 0;
+				for (int j = 0 ; j < xC.length ; j++) {
+					if (kicked[j]) {
+						double dx = fS.xCenter - xC[j];
+						double dy = fS.yCenter - yC[j];
+						absDeviation[kc++] = Math.sqrt(dx * dx + dy * dy) - gOF.median2d2m;
+					}
+				}
 				
-				double[] absDeviation = new double[newAbsDevFromMedianRadius.size()];
-				for (int j = 0 ; j < absDeviation.length ; j++) absDeviation[j] = newAbsDevFromMedianRadius.get(j);
+				kicked[maxDev] = true;
+				numberOfKicked++;
 				
-				fE.xCenter = jEFS.xCenter;
-				fE.yCenter = jEFS.yCenter;
+				fE = fS;
 				fE.zCenter = i;
-				fE.minorRadius = jEFS.minor / 2;
-				fE.majorRadius = jEFS.major / 2;				
-				fE.theta = jEFS.theta;		
 				fE.R2 = gOF.R2;
 				fE.relDevFromMedianRadiusOfDiscPoints = kickout;
 				
@@ -722,6 +671,234 @@ public class FitStuff implements PlugIn {
 		return fE;
 		
 	}
+	
+	/**
+	 * Fits an ellipse directly to the points; only if that fails, ImageJ's EllipseFitter is run on the polygon
+	 * of the points as it used to be.
+	 */
+	public FittedEllipse fitEllipse(float[] x, float[] y, ImageProcessor myIP) {
+		
+		FittedEllipse fE = fitEllipseToPoints(x, y);
+		if (fE != null) return fE;
+		
+		fE = new FittedEllipse();
+		
+		PolygonRoi pRoi = new PolygonRoi(x, y, Roi.POLYLINE); // create pRoi with outer Wall coordinates
+		ImageProcessor copy1 = myIP.duplicate();
+		copy1.setRoi(pRoi); 
+		
+		EllipseFitter jEF = new EllipseFitter();
+		jEF.fit(copy1, copy1.getStatistics());
+		
+		fE.xCenter = jEF.xCenter;
+		fE.yCenter = jEF.yCenter;
+		fE.minorRadius = jEF.minor / 2;
+		fE.majorRadius = jEF.major / 2;				
+		fE.theta = jEF.theta;
+		
+		return fE;
+	}
+	
+	/**
+	 * Direct least-squares ellipse fit of Fitzgibbon et al. (1999), in the numerically stable form of Halir &
+	 * Flusser (1998). The points are centred and scaled before the fit.
+	 * 
+	 * @return the ellipse, with theta as in ImageJ's EllipseFitter (angle of the major axis, counter-clockwise
+	 * with the y-axis pointing down, 0 .. PI), or null if the points do not define an ellipse
+	 */
+	public FittedEllipse fitEllipseToPoints(float[] x, float[] y) {
+		
+		int n = x.length;
+		if (n < 5) return null;
+		
+		//centre and scale
+		double mx = 0, my = 0;
+		for (int j = 0 ; j < n ; j++) {
+			mx += x[j];
+			my += y[j];
+		}
+		mx /= n; my /= n;
+		double scale = 0;
+		for (int j = 0 ; j < n ; j++) scale += (x[j] - mx) * (x[j] - mx) + (y[j] - my) * (y[j] - my);
+		scale = Math.sqrt(scale / (2 * n));
+		if (!(scale > 0)) return null;
+		
+		//scatter matrices of the quadratic part D1 = (u^2, uv, v^2) and the linear part D2 = (u, v, 1)
+		double[][] s1 = new double[3][3], s2 = new double[3][3], s3 = new double[3][3];
+		for (int j = 0 ; j < n ; j++) {
+			double u = (x[j] - mx) / scale;
+			double v = (y[j] - my) / scale;
+			double[] d1 = {u * u, u * v, v * v};
+			double[] d2 = {u, v, 1};
+			for (int k = 0 ; k < 3 ; k++) for (int l = 0 ; l < 3 ; l++) {
+				s1[k][l] += d1[k] * d1[l];
+				s2[k][l] += d1[k] * d2[l];
+				s3[k][l] += d2[k] * d2[l];
+			}
+		}
+		
+		//T = -S3^-1 S2', M = S1 + S2 T
+		double[][] s3inv = invert3x3(s3);
+		if (s3inv == null) return null;
+		double[][] t = new double[3][3];
+		for (int k = 0 ; k < 3 ; k++) for (int l = 0 ; l < 3 ; l++) for (int m = 0 ; m < 3 ; m++) t[k][l] -= s3inv[k][m] * s2[l][m];
+		double[][] mm = new double[3][3];
+		for (int k = 0 ; k < 3 ; k++) for (int l = 0 ; l < 3 ; l++) {
+			mm[k][l] = s1[k][l];
+			for (int m = 0 ; m < 3 ; m++) mm[k][l] += s2[k][m] * t[m][l];
+		}
+		
+		//premultiply with the inverse of the constraint matrix
+		double[][] c = {
+				{mm[2][0] / 2, mm[2][1] / 2, mm[2][2] / 2},
+				{-mm[1][0], -mm[1][1], -mm[1][2]},
+				{mm[0][0] / 2, mm[0][1] / 2, mm[0][2] / 2}};
+		
+		//the eigenvector with 4ac - b^2 > 0 holds the quadratic coefficients
+		double[] best = null;
+		double bestCondition = 0;
+		for (double lambda : realEigenvalues3x3(c)) {
+			double[] a1 = nullVector3x3(c, lambda);
+			if (a1 == null) continue;
+			double norm = a1[0] * a1[0] + a1[1] * a1[1] + a1[2] * a1[2];
+			double condition = (4 * a1[0] * a1[2] - a1[1] * a1[1]) / norm;
+			if (condition > bestCondition) {
+				best = a1;
+				bestCondition = condition;
+			}
+		}
+		if (best == null) return null;
+		
+		double A = best[0], B = best[1], C = best[2];
+		double D = t[0][0] * A + t[0][1] * B + t[0][2] * C;
+		double E = t[1][0] * A + t[1][1] * B + t[1][2] * C;
+		double F = t[2][0] * A + t[2][1] * B + t[2][2] * C;
+		if (A + C < 0) {
+			A = -A; B = -B; C = -C; D = -D; E = -E; F = -F;
+		}
+		
+		//centre, semi-axes and angle
+		double den = B * B - 4 * A * C;
+		if (!(den < 0)) return null;
+		double uc = (2 * C * D - B * E) / den;
+		double vc = (2 * A * E - B * D) / den;
+		double fc = A * uc * uc + B * uc * vc + C * vc * vc + D * uc + E * vc + F;
+		double root = Math.sqrt((A - C) * (A - C) / 4 + B * B / 4);
+		double lambdaMax = (A + C) / 2 + root;
+		double lambdaMin = (A + C) / 2 - root;
+		if (!(fc < 0) || !(lambdaMin > 0)) return null;
+		
+		FittedEllipse fE = new FittedEllipse();
+		fE.xCenter = mx + scale * uc;
+		fE.yCenter = my + scale * vc;
+		fE.majorRadius = scale * Math.sqrt(-fc / lambdaMin);
+		fE.minorRadius = scale * Math.sqrt(-fc / lambdaMax);
+		
+		//direction of the major axis in image coordinates, turned into ImageJ's convention
+		double phi = 0.5 * Math.atan2(B, A - C) + Math.PI / 2;
+		double theta = -phi % Math.PI;
+		if (theta < 0) theta += Math.PI;
+		fE.theta = theta;
+		
+		return fE;
+	}
+	
+	double[][] invert3x3(double[][] m) {
+		
+		double det = m[0][0] * (m[1][1] * m[2][2] - m[1][2] * m[2][1]) - m[0][1] * (m[1][0] * m[2][2] - m[1][2] * m[2][0]) + m[0][2] * (m[1][0] * m[2][1] - m[1][1] * m[2][0]);
+		if (det == 0 || Double.isNaN(det)) return null;
+		
+		double[][] inv = new double[3][3];
+		for (int k = 0 ; k < 3 ; k++) for (int l = 0 ; l < 3 ; l++) {
+			int k1 = (l + 1) % 3, k2 = (l + 2) % 3, l1 = (k + 1) % 3, l2 = (k + 2) % 3;
+			inv[k][l] = (m[k1][l1] * m[k2][l2] - m[k1][l2] * m[k2][l1]) / det;
+		}
+		
+		return inv;
+	}
+	
+	/**
+	 * @return the real roots of the characteristic polynomial of m
+	 */
+	double[] realEigenvalues3x3(double[][] m) {
+		
+		//lambda^3 + a lambda^2 + b lambda + c = 0
+		double a = -(m[0][0] + m[1][1] + m[2][2]);
+		double b = m[0][0] * m[1][1] - m[0][1] * m[1][0] + m[0][0] * m[2][2] - m[0][2] * m[2][0] + m[1][1] * m[2][2] - m[1][2] * m[2][1];
+		double c = -(m[0][0] * (m[1][1] * m[2][2] - m[1][2] * m[2][1]) - m[0][1] * (m[1][0] * m[2][2] - m[1][2] * m[2][0]) + m[0][2] * (m[1][0] * m[2][1] - m[1][1] * m[2][0]));
+		
+		//depressed cubic t^3 + p t + q = 0 with lambda = t - a / 3
+		double p = b - a * a / 3;
+		double q = 2 * a * a * a / 27 - a * b / 3 + c;
+		double disc = q * q / 4 + p * p * p / 27;
+		
+		if (disc > 0) {
+			double sq = Math.sqrt(disc);
+			return new double[]{Math.cbrt(-q / 2 + sq) + Math.cbrt(-q / 2 - sq) - a / 3};
+		}
+		if (p == 0) return new double[]{-a / 3};
+		
+		double r = Math.sqrt(-p / 3);
+		double phi = Math.acos(Math.max(-1, Math.min(1, -q / (2 * r * r * r))));
+		double[] roots = new double[3];
+		for (int k = 0 ; k < 3 ; k++) roots[k] = 2 * r * Math.cos((phi - 2 * Math.PI * k) / 3) - a / 3;
+		
+		return roots;
+	}
+	
+	/**
+	 * @return a vector v with (m - lambda I) v = 0, as the largest cross product of two rows
+	 */
+	double[] nullVector3x3(double[][] m, double lambda) {
+		
+		double[][] r = new double[3][];
+		for (int k = 0 ; k < 3 ; k++) {
+			r[k] = m[k].clone();
+			r[k][k] -= lambda;
+		}
+		
+		double[] best = null;
+		double bestNorm = 0;
+		for (int k = 0 ; k < 3 ; k++) {
+			double[] u = r[k], w = r[(k + 1) % 3];
+			double[] v = {u[1] * w[2] - u[2] * w[1], u[2] * w[0] - u[0] * w[2], u[0] * w[1] - u[1] * w[0]};
+			double norm = v[0] * v[0] + v[1] * v[1] + v[2] * v[2];
+			if (norm > bestNorm) {
+				best = v;
+				bestNorm = norm;
+			}
+		}
+		
+		return best;
+	}
+	
+	void showEllipseFitPoints(int i, float[] x, float[] y, ImageProcessor myIP, double para) {
+		
+		PolygonRoi sRoi = new PolygonRoi(x, y, Roi.POLYLINE); // create pRoi with outer Wall coordinates
+		ImageProcessor copy2 = myIP.duplicate();
+		copy2.setRoi(sRoi);				
+		
+		ImagePlus newImg = new ImagePlus("layer " + i, copy2);
+		Overlay myO = new Overlay(sRoi);	
+		PointRoi innerFoundEdges = new PointRoi(x, y, y.length);		
+		myO.add(innerFoundEdges);  
+		
+		copy2.setColor(Color.YELLOW);
+		Font font = new Font("Verdana", Font.PLAIN, 40);
+		TextRoi tRoi = new TextRoi((int)(0.01f * newImg.getWidth()), (int)(0.01f * newImg.getHeight()), String.format("%1.2f\t",(float)para), font);
+		tRoi.drawPixels(copy2);
+		
+		ContrastEnhancer myCE = new ContrastEnhancer();
+		myCE.stretchHistogram(copy2, 0.5);
+		myO.setStrokeColor(Color.RED);
+		newImg.setOverlay(myO);
+		newImg.updateAndDraw();
+		newImg.show();
+		
+		IJ.wait(500);
+		newImg.hide();
+		newImg.flush();		
+	}
 
 	public class FractionalFunction2Params implements ParametricUnivariateFunction {
 	
@@ -0,0 +1,241 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.plugin.PlugIn;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * FusedScanner is a SoilJ class that reads a binary 8-bit stack once, slice by slice from the raw pixel
+ * arrays, and feeds all requested accumulators at the same time: the gray value histogram (and thus the
+ * phase volume), the intercept counts for the anisotropy analysis and the half-size majority-scaled stack
+ * that is the first step of the fractal box counting.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class FusedScanner implements PlugIn {
+
+	public void run(String arg) {
+		//ok, this is not needed..
+	}
+
+	public class ScanOptions {
+
+		public boolean sampleHistogram = true;
+		public boolean countIntercepts = false;
+		public boolean scale2HalfSize = false;
+
+	}
+
+	public class ScanResults {
+
+		public int xl;
+		public int yl;
+		public int zl;
+
+		public int[] histogram;
+		public double phaseVolume;
+
+		//intercept counts, same layout as in MorphologyAnalyzer.calculateAnisotropy
+		public int[][] interCountZ;
+		public int[][] interCountX;
+		public int[][] interCountY;
+		public int[][] interCountXY;
+		public int[][] interCountYX;
+
+		public int[][] interCountDXZ;
+		public int[][] interCountDYZ;
+		public int[][] interCountDXYZ;
+		public int[][] interCountDYXZ;
+
+		public int[][] interCountUXZ;
+		public int[][] interCountUYZ;
+		public int[][] interCountUXYZ;
+		public int[][] interCountUYXZ;
+
+		//half-sized image, voted with the same ImageManipulator.binaryVote2HalfSize as binaryScale2HalfSize
+		public ImagePlus halfSizeTiff;
+
+	}
+
+	public ScanResults scan(ImagePlus nowTiff, ScanOptions mSO) {
+
+		ImageManipulator jIM = new ImageManipulator();
+
+		ScanResults mSR = new ScanResults();
+
+		int xl = nowTiff.getWidth();
+		int yl = nowTiff.getHeight();
+		int zl = nowTiff.getNSlices();
+		int wh = xl * yl;
+
+		mSR.xl = xl;
+		mSR.yl = yl;
+		mSR.zl = zl;
+
+		ImageStack nowStack = nowTiff.getStack();
+
+		//init accumulators
+		int[] hist = new int[256];
+
+		int[] cZ = null, cXY = null, cYX = null;
+		int[] cDXZ = null, cDYZ = null, cDXYZ = null, cDYXZ = null;
+		int[] cUXZ = null, cUYZ = null, cUXYZ = null, cUYXZ = null;
+		int[][] interCountX = null;
+		int[][] interCountY = null;
+		if (mSO.countIntercepts) {
+			cZ = new int[wh]; cXY = new int[wh]; cYX = new int[wh];
+			cDXZ = new int[wh]; cDYZ = new int[wh]; cDXYZ = new int[wh]; cDYXZ = new int[wh];
+			cUXZ = new int[wh]; cUYZ = new int[wh]; cUXYZ = new int[wh]; cUYXZ = new int[wh];
+			interCountX = new int[zl][yl];
+			interCountY = new int[xl][zl];
+		}
+
+		int hxl = xl / 2;
+		int hyl = yl / 2;
+		ImageStack halfStack = null;
+		if (mSO.scale2HalfSize) halfStack = new ImageStack(hxl, hyl);
+
+		//rolling window of three slices
+		byte[] prev = null;
+		byte[] cur = getBytePixels(nowStack, 1);
+		byte[] next = null;
+
+		for (int z = 0 ; z < zl ; z++) {
+
+			IJ.showStatus("Scanning slice " + (z + 1) + "/" + zl + " ...");
+
+			if (z < zl - 1) next = getBytePixels(nowStack, z + 2);
+			else next = null;
+
+			//histogram
+			if (mSO.sampleHistogram) for (int i = 0 ; i < wh ; i++) hist[cur[i] & 0xff]++;
+
+			//intercepts
+			if (mSO.countIntercepts) {
+
+				int[] nowX = interCountX[z];
+
+				for (int y = 0 ; y < yl ; y++) {
+
+					int row = y * xl;
+					boolean up = y > 0;
+					boolean down = y < yl - 1;
+
+					for (int x = 0 ; x < xl ; x++) {
+
+						int p = row + x;
+						byte now = cur[p];
+						boolean left = x > 0;
+
+						//vertical and horizontal
+						if (prev != null && prev[p] != now) cZ[p]++;
+						if (left && cur[p - 1] != now) nowX[y]++;
+						if (up && cur[p - xl] != now) interCountY[x][z]++;
+						if (left & up && cur[p - xl - 1] != now) cXY[p]++;
+						if (left & down && cur[p + xl - 1] != now) cYX[p]++;
+
+						//skew 8 ones downwards
+						if (prev != null) {
+							if (left && prev[p - 1] != now) cDXZ[p]++;
+							if (up && prev[p - xl] != now) cDYZ[p]++;
+							if (left & up && prev[p - xl - 1] != now) cDXYZ[p]++;
+							if (left & down && prev[p + xl - 1] != now) cDYXZ[p]++;
+						}
+
+						//skew 8 ones upwards
+						if (next != null) {
+							if (left && next[p - 1] != now) cUXZ[p]++;
+							if (up && next[p - xl] != now) cUYZ[p]++;
+							if (left & up && next[p - xl - 1] != now) cUXYZ[p]++;
+							if (left & down && next[p + xl - 1] != now) cUYXZ[p]++;
+						}
+					}
+				}
+			}
+
+			//majority vote of 2x2x2 blocks, shared with ImageManipulator.binaryScale2HalfSize
+			if (mSO.scale2HalfSize && (z & 1) == 1) {
+				byte[] half = jIM.binaryVote2HalfSize(prev, cur, xl, yl);
+				halfStack.addSlice(new ByteProcessor(hxl, hyl, half, null));
+			}
+
+			prev = cur;
+			cur = next;
+		}
+
+		//assign results
+		mSR.histogram = hist;
+		mSR.phaseVolume = hist[255];
+
+		if (mSO.countIntercepts) {
+			mSR.interCountZ = flat2XY(cZ, xl, yl);
+			mSR.interCountX = interCountX;
+			mSR.interCountY = interCountY;
+			mSR.interCountXY = flat2XY(cXY, xl, yl);
+			mSR.interCountYX = flat2XY(cYX, xl, yl);
+			mSR.interCountDXZ = flat2XY(cDXZ, xl, yl);
+			mSR.interCountDYZ = flat2XY(cDYZ, xl, yl);
+			mSR.interCountDXYZ = flat2XY(cDXYZ, xl, yl);
+			mSR.interCountDYXZ = flat2XY(cDYXZ, xl, yl);
+			mSR.interCountUXZ = flat2XY(cUXZ, xl, yl);
+			mSR.interCountUYZ = flat2XY(cUYZ, xl, yl);
+			mSR.interCountUXYZ = flat2XY(cUXYZ, xl, yl);
+			mSR.interCountUYXZ = flat2XY(cUYXZ, xl, yl);
+		}
+
+		if (mSO.scale2HalfSize) {
+			ImagePlus halfSizeTiff = new ImagePlus();
+			halfSizeTiff.setStack(halfStack);
+			mSR.halfSizeTiff = halfSizeTiff;
+		}
+
+		return mSR;
+	}
+
+	public byte[] getBytePixels(ImageStack nowStack, int slice) {
+
+		Object pixels = nowStack.getPixels(slice);
+		if (pixels instanceof byte[]) return (byte[])pixels;
+
+		//not an 8-bit image.. convert
+		ImageProcessor nowIP = nowStack.getProcessor(slice);
+		int wh = nowIP.getWidth() * nowIP.getHeight();
+		byte[] bytes = new byte[wh];
+		for (int i = 0 ; i < wh ; i++) bytes[i] = (byte)Math.min(255, nowIP.get(i));
+
+		return bytes;
+	}
+
+	private int[][] flat2XY(int[] flat, int xl, int yl) {
+
+		int[][] xy = new int[xl][yl];
+		for (int y = 0 ; y < yl ; y++) for (int x = 0 ; x < xl ; x++) xy[x][y] = flat[y * xl + x];
+
+		return xy;
+	}
+
+}
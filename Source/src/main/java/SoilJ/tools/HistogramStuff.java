@@ -21,6 +21,14 @@ import SoilJ.tools.ObjectDetector.ColCoords3D;
  *along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
@@ -93,7 +101,8 @@ public class HistogramStuff implements PlugIn {
 		
 		InputOutput jIO = new InputOutput();
 		
-		ImageProcessor meanIP = new FloatProcessor(6554, 6554);
+		//only the tiles of the histograms with counts are kept
+		Sparse2DHistogram s2H = null;
 		
 		for (int i = 0 ; i < mFC.myTiffs.length ; i++) {
 			
@@ -107,21 +116,18 @@ public class HistogramStuff implements PlugIn {
 				ImagePlus nowTiff = jIO.openTiff2D(nowTiffPath);
 
 				ImageProcessor nowIP = nowTiff.getProcessor();
+				if (s2H == null) s2H = new Sparse2DHistogram(nowIP.getWidth(), nowIP.getHeight());
+				s2H.add(nowIP);
 				
-				
-				for (int x = 0 ; x < 6554 ; x++) {
-					for (int y = 0 ; y < 6554 ; y++) {
-				
-						double newPixelValue = meanIP.getPixelValue(x, y) + nowIP.getPixelValue(x, y);
-						meanIP.putPixelValue(x, y, newPixelValue);
-						
-					}
-				}
 			}
 			
 		}
 		
-		ImagePlus outTiff = new ImagePlus("Joint2DHistogram", meanIP);
+		ImageProcessor sumIP;
+		if (s2H == null) sumIP = new FloatProcessor(6554, 6554);
+		else sumIP = s2H.getStatisticsImage(Sparse2DHistogram.SUM);
+		
+		ImagePlus outTiff = new ImagePlus("Joint2DHistogram", sumIP);
 		
 		return outTiff;
 		
@@ -171,100 +177,41 @@ public class HistogramStuff implements PlugIn {
 				
 		InputOutput jIO = new InputOutput();
 		
-		ImageProcessor sumIP = new FloatProcessor(6554, 6554);
-		ImageStack all2DHists = new ImageStack(6554, 6554);		
-		
-		int numOfGoodTiffs = 0;
+		//stream the histograms through one sparse accumulator instead of keeping all of them
+		Sparse2DHistogram s2H = null;
 		
 		for (int i = 0 ; i < mFC.myTiffs.length ; i++) {
 			
-			numOfGoodTiffs++;
-				
 			IJ.showStatus("Processing 2D histogram of " + mFC.myTiffs[i]);
 			
 			String nowTiffPath = mFC.myBaseFolder + mFC.pathSep + mFC.myTiffs[i];
 			ImagePlus nowTiff = jIO.openTiff2D(nowTiffPath);
 
 			ImageProcessor nowIP = nowTiff.getProcessor();
+			if (s2H == null) s2H = new Sparse2DHistogram(nowIP.getWidth(), nowIP.getHeight());
+			s2H.add(nowIP);
 			
-			for (int x = 0 ; x < 6554 ; x++) {
-				for (int y = 0 ; y < 6554 ; y++) {
-			
-					double newPixelValue = sumIP.getPixelValue(x, y) + nowIP.getPixelValue(x, y);
-					sumIP.putPixelValue(x, y, newPixelValue);
-					
-				}
-			}
-			
-			all2DHists.addSlice(nowIP);
-						
 		}
 		
-		ImagePlus all2DHistoTiffs = new ImagePlus();
-		all2DHistoTiffs.setStack(all2DHists);
-		ImagePlus outTiff = new ImagePlus("Sum2DHistogram", sumIP);
+		if (s2H == null) return;
 		
-		//save mean Tiff
+		//save sum Tiff
+		ImagePlus outTiff = new ImagePlus("Sum2DHistogram", s2H.getStatisticsImage(Sparse2DHistogram.SUM));
 		mFC.nowTiffPath = mFC.myOutFolder + mFC.pathSep + "SumHistogram2D.tif";
 		jIO.save2DTiff(mFC, outTiff);
-				
-		//calculate mean		
-		ImageProcessor meanIP = new FloatProcessor(6554, 6554);
-		for (int x = 0 ; x < 6554 ; x++) {
-			for (int y = 0 ; y < 6554 ; y++) {
-		
-				double newPixelValue = sumIP.getPixelValue(x, y) / numOfGoodTiffs;
-				meanIP.putPixelValue(x, y, newPixelValue);
-				
-			}
-		}
-		
-		outTiff = new ImagePlus("Mean2DHistogram", meanIP);
 		
 		//save mean Tiff
+		outTiff = new ImagePlus("Mean2DHistogram", s2H.getStatisticsImage(Sparse2DHistogram.MEAN));
 		mFC.nowTiffPath = mFC.myOutFolder + mFC.pathSep + "MeanHistogram2D.tif";
 		jIO.save2DTiff(mFC, outTiff);
 		
-		//Calculate statistics
-		double[][] std = new double[6554][6554];
-		for (int i = 0 ; i < all2DHistoTiffs.getNSlices() ; i++) {
-			
-			all2DHistoTiffs.setPosition(i + 1);
-			ImageProcessor nowIP = all2DHistoTiffs.getProcessor();		
-			
-			IJ.showStatus("Processing 2D histogram of " + mFC.myTiffs[i] + ", step 2");
-			
-			for (int x = 0 ; x < 6554 ; x++) {
-				for (int y = 0 ; y < 6554 ; y++) {
-			
-					double meanPixelValue = meanIP.getPixelValue(x, y);
-					double newPixelValue = Math.pow(nowIP.getPixelValue(x, y) - meanPixelValue, 2);
-					std[x][y] += newPixelValue;
-					
-				}
-			}
-		}
-		
-		//get standard deviation
-		ImageProcessor stdIP = new FloatProcessor(6554, 6554);	
-		ImageProcessor cvIP = new FloatProcessor(6554, 6554);	
-		for (int x = 0 ; x < 6554 ; x++) {
-			for (int y = 0 ; y < 6554 ; y++) {
-		
-				double meanPixelValue = meanIP.getPixelValue(x, y);
-				stdIP.putPixelValue(x, y, Math.sqrt(std[x][y]) / numOfGoodTiffs);
-				cvIP.putPixelValue(x, y, Math.sqrt(std[x][y]) / numOfGoodTiffs / meanPixelValue);
-				
-			}
-		}
-		
 		//save std Tiff
-		outTiff = new ImagePlus("Std2DHistogram", stdIP);
+		outTiff = new ImagePlus("Std2DHistogram", s2H.getStatisticsImage(Sparse2DHistogram.STD));
 		mFC.nowTiffPath = mFC.myOutFolder + mFC.pathSep + "StdHistogram2D.tif";
 		jIO.save2DTiff(mFC, outTiff);
 		
 		//save CV Tiff
-		outTiff = new ImagePlus("CV2DHistogram", cvIP);
+		outTiff = new ImagePlus("CV2DHistogram", s2H.getStatisticsImage(Sparse2DHistogram.CV));
 		mFC.nowTiffPath = mFC.myOutFolder + mFC.pathSep + "CVHistogram2D.tif";
 		jIO.save2DTiff(mFC, outTiff);
 		
@@ -272,37 +219,118 @@ public class HistogramStuff implements PlugIn {
 	
 	public int[][] extract2DHistogram(ImagePlus nowTiff, ImagePlus gradTiff) {
 		
-		int[][] hist2D = new int[256][256];
+		//256 gray value bins over the 16-bit range and 256 gradient bins of 25.6
+		return extract2DHistogram(nowTiff, gradTiff, 256, 65536, 256, 6553.6);
 		
-		for (int z = 0 ; z < nowTiff.getNSlices() ; z++) {
-			
-			IJ.showStatus("Extracting 2D histogram at layer " + (z+1) + "/" + nowTiff.getNSlices());
-			
-			nowTiff.setSlice(z + 1);
-			ImageProcessor mP = nowTiff.getProcessor();
-			
-			gradTiff.setSlice(z + 1);
-			ImageProcessor gP = gradTiff.getProcessor().convertToShort(false);
-			
-			for (int x = 0 ; x < mP.getWidth(); x++) {
-				
-				for (int y = 0 ; y < mP.getHeight(); y++) {
-					
-					int mPix = (int)Math.floor((float)mP.getPixel(x, y) / 256);
-					int gPix = (int)Math.floor((float)gP.getPixel(x, y) / 25.6);
+	}
+	
+	/**
+	 * Joint histogram of gray values and gradients, hist2D[gray bin][gradient bin]. The slices are split into
+	 * slabs that are counted in parallel, each into its own histogram, which are summed up at the end.
+	 * Values beyond the maxima go into the last bins; the gradients are rounded to integers first, as with
+	 * convertToShort(false).
+	 */
+	public int[][] extract2DHistogram(ImagePlus nowTiff, ImagePlus gradTiff, final int grayBins, double maxGrayValue, final int gradientBins, double maxGradient) {
+		
+		final ImageStack nowStack = nowTiff.getStack();
+		final ImageStack gradStack = gradTiff.getStack();
+		final int numberOfSlices = nowTiff.getNSlices();
+		final int numberOfPixels = nowTiff.getWidth() * nowTiff.getHeight();
+		final double grayBinWidth = maxGrayValue / grayBins;
+		final double gradientBinWidth = maxGradient / gradientBins;
+		
+		int numberOfThreads = Math.max(1, Math.min(numberOfSlices, Runtime.getRuntime().availableProcessors()));
+		final int slabThickness = (numberOfSlices + numberOfThreads - 1) / Math.max(1, numberOfThreads);
+		
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+		
+		List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+		for (int t = 0 ; t < numberOfThreads ; t++) {
+			final int firstSlice = t * slabThickness;
+			final int lastSlice = Math.min(numberOfSlices, firstSlice + slabThickness);
+			tasks.add(new Callable<int[]>() {
+				public int[] call() {
 					
-					if (gPix > 255) gPix = 255;
+					int[] partHist = new int[grayBins * gradientBins];
+					int[] grayBin = new int[numberOfPixels];
+					int[] gradientBin = new int[numberOfPixels];
 					
-					hist2D[mPix][gPix]++;
+					for (int z = firstSlice ; z < lastSlice ; z++) {
+						
+						IJ.showStatus("Extracting 2D histogram at layer " + (z+1) + "/" + numberOfSlices);
+						
+						findBins(nowStack.getPixels(z + 1), grayBinWidth, grayBins, false, grayBin);
+						findBins(gradStack.getPixels(z + 1), gradientBinWidth, gradientBins, true, gradientBin);
+						
+						for (int i = 0 ; i < numberOfPixels ; i++) partHist[grayBin[i] * gradientBins + gradientBin[i]]++;
+					}
 					
+					return partHist;
 				}
-			}			
-		}		
+			});
+		}
+		
+		//merge the partial histograms
+		int[][] hist2D = new int[grayBins][gradientBins];
+		try {
+			List<Future<int[]>> results = exec.invokeAll(tasks);
+			for (Future<int[]> result : results) {
+				int[] partHist = result.get();
+				for (int g = 0 ; g < grayBins ; g++) {
+					int[] nowRow = hist2D[g];
+					int offset = g * gradientBins;
+					for (int d = 0 ; d < gradientBins ; d++) nowRow[d] += partHist[offset + d];
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			exec.shutdown();
+		}
 		
 		return hist2D;
 		
 	}
 	
+	/**
+	 * Writes the bin of each pixel of a raw 8-bit, 16-bit or 32-bit slice into bins.
+	 */
+	void findBins(Object pixels, double binWidth, int numberOfBins, boolean roundFloats, int[] bins) {
+		
+		int lastBin = numberOfBins - 1;
+		
+		if (pixels instanceof byte[]) {
+			byte[] nowPixels = (byte[])pixels;
+			for (int i = 0 ; i < bins.length ; i++) bins[i] = Math.min(lastBin, (int)Math.floor((nowPixels[i] & 0xff) / binWidth));
+		}
+		else if (pixels instanceof short[]) {
+			short[] nowPixels = (short[])pixels;
+			for (int i = 0 ; i < bins.length ; i++) bins[i] = Math.min(lastBin, (int)Math.floor((nowPixels[i] & 0xffff) / binWidth));
+		}
+		else if (pixels instanceof float[]) {
+			float[] nowPixels = (float[])pixels;
+			for (int i = 0 ; i < bins.length ; i++) {
+				double value = nowPixels[i];
+				if (roundFloats) {
+					if (value < 0) value = 0;
+					if (value > 65535) value = 65535;
+					value = (int)(value + 0.5);
+				}
+				int bin = (int)Math.floor(value / binWidth);
+				if (bin < 0) bin = 0;
+				bins[i] = Math.min(lastBin, bin);
+			}
+		}
+		else throw new IllegalArgumentException("Only 8-bit, 16-bit and 32-bit grey value images can be binned");
+		
+	}
+	
 	public int findModeFromHistogram(int[] myHist) {
 		
 		int max = 0;
@@ -490,8 +518,8 @@ public class HistogramStuff implements PlugIn {
 			
 			double newValue = 0;
 			
-			double start = i * reCalcFac;
-			double stop = (i + 1) * reCalcFac;
+			double start = lowTh + i * reCalcFac;
+			double stop = lowTh + (i + 1) * reCalcFac;
 							
 			int startj = (int)Math.floor(start);
 			double startFrac = startj + 1 - start;
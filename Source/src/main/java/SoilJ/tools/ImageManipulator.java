@@ -4,7 +4,13 @@ import java.awt.Color;
 import java.awt.Polygon;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.analysis.function.Logistic;
 import org.apache.commons.math3.analysis.function.Logistic.Parametric;
@@ -44,7 +50,6 @@ import ij.gui.Roi;
 import ij.plugin.Filters3D;
 import ij.plugin.GaussianBlur3D;
 import ij.plugin.PlugIn;
-import ij.plugin.Slicer;
 import ij.plugin.filter.GaussianBlur;
 import ij.process.AutoThresholder;
 import ij.process.ByteProcessor;
@@ -149,10 +154,60 @@ public class ImageManipulator implements PlugIn {
 		
 		RoiHandler roi = new RoiHandler();
 		MenuWaiter menu = new MenuWaiter();
+		final SliceView sV = new SliceView();
+		
+		final int w = nowTiff.getWidth();
+		final int h = nowTiff.getHeight();
+		final int d = nowTiff.getNSlices();
+		final ImageStack nowStack = nowTiff.getStack();
+		final ImageStack maskStack = maskTiff.getStack();
+		
+		//extent of the mask in each slice
+		final Object[] cutPixels = new Object[d];
+		final boolean[] hasMask = new boolean[d];
+		final boolean[] hasOutside = new boolean[d];
+		final int[] sliceLeftX = new int[d];
+		final int[] sliceTopY = new int[d];
+		final int[] sliceRightX = new int[d];
+		final int[] sliceBotY = new int[d];
+		
+		IJ.showStatus("Preparing cutout ...");
+		
+		sV.forEachSlice(d, new SliceView.SliceTask() {
+			public void process(int z) {
+				
+				SliceView.Slice nowSlice = sV.wrap(nowStack, z);
+				SliceView.Slice maskSlice = sV.wrap(maskStack, z);
+				SliceView.Slice cutSlice = sV.newSliceLike(nowSlice);
+				
+				sV.copyWhereMaskIsPositive(nowSlice, maskSlice, cutSlice);
+				cutPixels[z] = sV.getPixels(cutSlice);
+				
+				int leftX = -1, topY = -1, rightX = -1, botY = -1;
+				for (int y = 0 ; y < h ; y++) {
+					int row = y * maskSlice.stride;
+					for (int x = 0 ; x < w ; x++) {
+						if (sV.isPositive(maskSlice, row + x)) {
+							hasMask[z] = true;
+							if (leftX < 0 | x < leftX) leftX = x;
+							if (topY < 0) topY = y;
+						}
+						else {
+							hasOutside[z] = true;
+							if (x > 0 && sV.isPositive(maskSlice, row + x - 1) && x > rightX) rightX = x;
+							if (y > 0 && sV.isPositive(maskSlice, row - maskSlice.stride + x)) botY = y;
+						}
+					}
+				}
+				
+				sliceLeftX[z] = leftX;
+				sliceTopY[z] = topY;
+				sliceRightX[z] = rightX;
+				sliceBotY[z] = botY;
+			}
+		});
 		
-		int beforeRightX = 0;
-		int beforeBotY = 0;
-		
+		//combine the slices
 		int topZ = -1;
 		int botZ = -1;
 		int leftX = -1;
@@ -160,57 +215,21 @@ public class ImageManipulator implements PlugIn {
 		int topY = -1;
 		int botY = -1;
 		
-		ImageStack cutStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
+		ImageStack cutStack = new ImageStack(w, h);
 		ImagePlus cutTiff = new ImagePlus();
 		
-		for (int z = 0 ; z < nowTiff.getNSlices() ; z++) {
+		for (int z = 0 ; z < d ; z++) {
 			
-			IJ.showStatus("Preparing cutout in layer " + (z + 1) + "/" + nowTiff.getNSlices());
-			
-			nowTiff.setSlice(z + 1);
-			ImageProcessor nowIP = nowTiff.getProcessor();
-			ImageProcessor cutIP = nowIP.duplicate();
-			
-			maskTiff.setSlice(z + 1);
-			ImageProcessor maskIP = maskTiff.getProcessor();
-							
-			for (int x = 0 ; x < nowTiff.getWidth() ; x++) {				
-				
-				for (int y = 0 ; y < nowTiff.getHeight() ; y++) {
-					
-					int nowPix = nowIP.getPixel(x, y);				
-					int maskPix = maskIP.getPixel(x, y);
-					
-					if (x > 0) beforeRightX = maskIP.getPixel(x - 1, y);
-					else beforeRightX = 0;
-					if (y > 0) beforeBotY = maskIP.getPixel(x, y - 1);
-					else beforeBotY = 0;
-					
-					if (maskPix > 0) {						
-						cutIP.putPixel(x, y, nowPix);						
-						if (topZ < 0) topZ = z + 1;
-						if (leftX < 0) leftX = x;
-						else if (x < leftX) leftX = x;
-						if (topY < 0) topY = y; 
-						else if (y < topY) topY = y;  
-					}	
-					else {
-						cutIP.putPixel(x,y,0);
-						if (topZ > 0 & botZ < 0) botZ = z + 1;
-						else if (z > botZ) botZ = z + 1;
-						if (beforeRightX > 0) {
-							if(rightX < 0) rightX = x;
-							else if (x > rightX) rightX = x;
-						}
-						if (beforeBotY > 0) {
-							if(botY < 0) botY = y;
-							else if (y > botY) botY = y;
-						}
-					}
-				}						
+			if (hasMask[z]) {
+				if (topZ < 0) topZ = z + 1;
+				if (leftX < 0 | sliceLeftX[z] < leftX) leftX = sliceLeftX[z];
+				if (topY < 0 | sliceTopY[z] < topY) topY = sliceTopY[z];
 			}
+			if (hasOutside[z]) botZ = z + 1;
+			if (sliceRightX[z] > rightX) rightX = sliceRightX[z];
+			if (sliceBotY[z] > botY) botY = sliceBotY[z];
 			
-			cutStack.addSlice(cutIP);
+			cutStack.addSlice("", cutPixels[z]);
 			
 		}	
 		
@@ -323,32 +342,23 @@ public class ImageManipulator implements PlugIn {
 	
 	public ImagePlus fuseMasks(ImagePlus virginTiff, ImagePlus eroTiff) {
 		
-		ImageStack fuseStack = new ImageStack(eroTiff.getWidth(), eroTiff.getHeight());
-		
-		for (int z = 0 ; z < eroTiff.getNSlices() ; z++) {
-			
-			virginTiff.setPosition(z + 1);			
-			eroTiff.setPosition(z + 1);
-						
-			ImageProcessor vigIP = virginTiff.getProcessor();			
-			ImageProcessor eroIP = eroTiff.getProcessor();
-			
-			ByteProcessor outIP = new ByteProcessor(vigIP.getWidth(), vigIP.getHeight());
-			
-			for (int x = 0 ; x < outIP.getWidth() ; x++) {
-				for (int y = 0 ; y < outIP.getHeight() ; y++) {
+		final SliceView sV = new SliceView();
+		final ImageStack vigStack = virginTiff.getStack();
+		final ImageStack eroStack = eroTiff.getStack();
+		final int w = eroTiff.getWidth();
+		final int h = eroTiff.getHeight();
+		final Object[] fusePixels = new Object[eroTiff.getNSlices()];
+		
+		sV.forEachSlice(fusePixels.length, new SliceView.SliceTask() {
+			public void process(int z) {
+				SliceView.Slice outSlice = sV.newByteSlice(w, h);
+				sV.fuse(sV.wrap(vigStack, z), sV.wrap(eroStack, z), outSlice);
+				fusePixels[z] = outSlice.bytes;
+			}
+		});
 		
-					int vPix = vigIP.getPixel(x, y);
-					int ePix = eroIP.getPixel(x, y);			
-					
-					int outPix = 0;
-					if (vPix > 0 | ePix > 0) outPix = 255;
-					
-					outIP.putPixel(x, y, outPix);					
-				}
-			}			
-			fuseStack.addSlice(outIP);
-		}
+		ImageStack fuseStack = new ImageStack(w, h);
+		for (int z = 0 ; z < fusePixels.length ; z++) fuseStack.addSlice("", fusePixels[z]);
 		
 		ImagePlus outTiff = new ImagePlus("", fuseStack);
 		
@@ -437,68 +447,156 @@ public class ImageManipulator implements PlugIn {
 		return outTiff;		
 	}
 	
+	/**
+	 * Voxel-wise arithmetic on stacks. The operations work on the pixel arrays of the slices and run slice by
+	 * slice in parallel. 8-bit and 16-bit results are clipped to 0..255 and 0..65535 like ImageJ's putPixel
+	 * does; 32-bit results are not clipped.
+	 */
 	public class StackCalculator {
 		
+		static final int ADD = 0;
+		static final int SUBTRACT = 1;
+		static final int UNSHARP = 2;
+		
 		public ImagePlus add(ImagePlus a, ImagePlus b) {
 			
-			ImageStack outStack = new ImageStack(a.getWidth(), a.getHeight()); 
-			ImagePlus outTiff = new ImagePlus();
+			ImagePlus outTiff = duplicateStack(a);
+			addInPlace(outTiff, b);
 			
-			for (int z = 0 ; z < a.getNSlices() ; z++) {
-				
-				a.setPosition(z + 1);
-				b.setPosition(z + 1);
-				
-				ImageProcessor aIP = a.getProcessor();
-				ImageProcessor bIP = b.getProcessor();
-				
-				ImageProcessor outIP = aIP.duplicate();
-				
-				for (int x = 0 ; x < a.getWidth() ; x++) {
-					for (int y = 0 ; y < a.getHeight() ; y++) {
-						int avox = aIP.getPixel(x, y);
-						int bvox = bIP.getPixel(x, y);
-						outIP.putPixel(x, y, avox + bvox);
-					}
-				}
-				
-				outStack.addSlice(outIP);
+			return outTiff;
+		}
+		
+		public ImagePlus subtract(ImagePlus a, ImagePlus b) {
+			
+			ImagePlus outTiff = duplicateStack(a);
+			subtractInPlace(outTiff, b);
+			
+			return outTiff;
+		}
+		
+		/**
+		 * a = a + b, without a copy of a
+		 */
+		public void addInPlace(ImagePlus a, ImagePlus b) {
+			combine(a.getStack(), b.getStack(), a.getStack(), ADD, 0);
+		}
+		
+		/**
+		 * a = a - b, without a copy of a
+		 */
+		public void subtractInPlace(ImagePlus a, ImagePlus b) {
+			combine(a.getStack(), b.getStack(), a.getStack(), SUBTRACT, 0);
+		}
+		
+		/**
+		 * Sharpens a with its blurred copy in one pass, overwriting the blurred copy with
+		 * a + weight * (a - blurred). For 8-bit and 16-bit images the difference and the weighted difference
+		 * are clipped and rounded in the same way as the subtract, multiply and add steps used to do it.
+		 */
+		public void unsharpMaskInPlace(ImagePlus a, ImagePlus blurred, double weight) {
+			combine(a.getStack(), blurred.getStack(), blurred.getStack(), UNSHARP, weight);
+		}
+		
+		ImagePlus duplicateStack(ImagePlus a) {
+			
+			ImageStack inStack = a.getStack();
+			ImageStack outStack = new ImageStack(a.getWidth(), a.getHeight());
+			for (int z = 1 ; z <= inStack.getSize() ; z++) {
+				ImageProcessor outIP = inStack.getProcessor(z).duplicate();
+				outStack.addSlice(inStack.getSliceLabel(z), outIP);
 			}
 			
+			ImagePlus outTiff = new ImagePlus();
 			outTiff.setStack(outStack);
 			
 			return outTiff;
 		}
 		
-		public ImagePlus subtract(ImagePlus a, ImagePlus b) {
+		void combine(final ImageStack aStack, final ImageStack bStack, final ImageStack outStack, final int operation, final double weight) {
 			
-			ImageStack outStack = new ImageStack(a.getWidth(), a.getHeight()); 
-			ImagePlus outTiff = new ImagePlus();
+			int numberOfSlices = Math.min(aStack.getSize(), bStack.getSize());
+			int numberOfThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), numberOfSlices));
 			
-			for (int z = 0 ; z < a.getNSlices() ; z++) {
-				
-				a.setPosition(z + 1);
-				b.setPosition(z + 1);
-				
-				ImageProcessor aIP = a.getProcessor();
-				ImageProcessor bIP = b.getProcessor();
-				
-				ImageProcessor outIP = aIP.duplicate();
-				
-				for (int x = 0 ; x < a.getWidth() ; x++) {
-					for (int y = 0 ; y < a.getHeight() ; y++) {
-						int avox = aIP.getPixel(x, y);
-						int bvox = bIP.getPixel(x, y);
-						outIP.putPixel(x, y, avox - bvox);
+			ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			for (int z = 1 ; z <= numberOfSlices ; z++) {
+				final int slice = z;
+				tasks.add(new Callable<Boolean>() {
+					public Boolean call() {
+						combineSlice(aStack.getPixels(slice), bStack.getPixels(slice), outStack.getPixels(slice), operation, weight);
+						return true;
 					}
-				}
-				
-				outStack.addSlice(outIP);
+				});
 			}
 			
-			outTiff.setStack(outStack);
+			try {
+				List<Future<Boolean>> results = exec.invokeAll(tasks);
+				for (Future<Boolean> result : results) result.get();
+			}
+			catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+				throw new RuntimeException(e.getCause());
+			}
+			finally {
+				exec.shutdown();
+			}
+		}
+		
+		void combineSlice(Object aPixels, Object bPixels, Object outPixels, int operation, double weight) {
 			
-			return outTiff;
+			if (outPixels instanceof float[]) {
+				float[] out = (float[])outPixels;
+				for (int i = 0 ; i < out.length ; i++) {
+					float av = valueAt(aPixels, i);
+					float bv = valueAt(bPixels, i);
+					switch (operation) {
+						case ADD: out[i] = av + bv; break;
+						case SUBTRACT: out[i] = av - bv; break;
+						default: out[i] = (float)(av + weight * (av - bv)); break;
+					}
+				}
+				return;
+			}
+			
+			int max;
+			if (outPixels instanceof byte[]) max = 255;
+			else if (outPixels instanceof short[]) max = 65535;
+			else throw new IllegalArgumentException("RGB stacks are not supported by the StackCalculator");
+			
+			int n = max == 255 ? ((byte[])outPixels).length : ((short[])outPixels).length;
+			for (int i = 0 ; i < n ; i++) {
+				int av = Math.round(valueAt(aPixels, i));
+				int bv = Math.round(valueAt(bPixels, i));
+				int v;
+				switch (operation) {
+					case ADD: v = av + bv; break;
+					case SUBTRACT: v = av - bv; break;
+					default: {
+						int diff = clip(av - bv, max);
+						v = av + clip((int)Math.round(weight * diff), max);
+						break;
+					}
+				}
+				v = clip(v, max);
+				if (max == 255) ((byte[])outPixels)[i] = (byte)v;
+				else ((short[])outPixels)[i] = (short)v;
+			}
+		}
+		
+		float valueAt(Object pixels, int i) {
+			if (pixels instanceof byte[]) return ((byte[])pixels)[i] & 0xff;
+			if (pixels instanceof short[]) return ((short[])pixels)[i] & 0xffff;
+			if (pixels instanceof float[]) return ((float[])pixels)[i];
+			throw new IllegalArgumentException("RGB stacks are not supported by the StackCalculator");
+		}
+		
+		int clip(int v, int max) {
+			if (v < 0) return 0;
+			if (v > max) return max;
+			return v;
 		}
 		
 	}
@@ -536,26 +634,11 @@ public class ImageManipulator implements PlugIn {
 		ImagePlus zTiff = new ImagePlus();
 		zTiff.setStack(zStack);		
 	
-		//apply 3-D unsharp mask
+		//apply 3-D unsharp mask; the sharpened image is written into the blurred copy
 		ImagePlus blurTiff = zTiff.duplicate();
 		GaussianBlur3D.blur(blurTiff, mMUS.uMaskStandardDeviationXDir, mMUS.uMaskStandardDeviationYDir, mMUS.uMaskStandardDeviationZDir);
-		
-		//calculate difference between blurTiff and original		
-		ImagePlus diffTiff = mSC.subtract(zTiff,blurTiff);
-		
-		//and weighted mask
-		ImageStack weightedStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
-		for (int i = 0 ; i < diffTiff.getNSlices() ; i++) {
-			diffTiff.setPosition(i+1);
-			ImageProcessor nowIP = diffTiff.getProcessor();
-			nowIP.multiply(mMUS.uMaskSharpeningWeight);
-			weightedStack.addSlice(nowIP);
-		}
-		ImagePlus unsharpMask = new ImagePlus();
-		unsharpMask.setStack(weightedStack);
-		
-		//sharpened Image
-		ImagePlus filtTiff = mSC.add(zTiff, unsharpMask);
+		mSC.unsharpMaskInPlace(zTiff, blurTiff, mMUS.uMaskSharpeningWeight);
+		ImagePlus filtTiff = blurTiff;
 		
 		//return filtered 3D image
 		return filtTiff;
@@ -1234,92 +1317,46 @@ public class ImageManipulator implements PlugIn {
 		
 		//init output variables
 		ImagePlus outTiff = new ImagePlus();
-		ImageStack outStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
-		
-		//calculate number of angles needed to paint the whole canvas..
-		double spacing = 2 * Math.PI / jCO.anglesChecked;		
-		float[] sR = new float[standardRadius]; 
-		float[] sA = new float[jCO.anglesChecked + 1];
+		ImageStack nowStack = nowTiff.getStack();
+		int numberOfSlices = nowTiff.getNSlices();
 		
 		//create array for standard radius
+		float[] sR = new float[standardRadius]; 
 		for (int i = 0 ; i < standardRadius ; i++) sR[i] = i + 1;
-		for (int i = 0 ; i < jCO.anglesChecked + 1 ; i++) sA[i] = i;		 
-
-		//sweep over slices
-		for (int i = 0 ; i < nowTiff.getNSlices() ; i++) {
-			
-			IJ.showStatus("Correcting for beam hardening in slice #" + (i + 1) + "/" + nowTiff.getNSlices());
+		
+		//wall radii and correction tables of each slice
+		double[][] wallRadii = new double[numberOfSlices][];
+		final double[] rLower = new double[numberOfSlices];
+		final int[][] cLower = new int[numberOfSlices][standardRadius];
+		final double[][] slope = new double[numberOfSlices][standardRadius];
+		for (int i = 0 ; i < numberOfSlices ; i++) {
 			
-			//set image to next slice
-			nowTiff.setPosition(i+1);
-			ImageProcessor nowIP = nowTiff.getProcessor();
+			wallRadii[i] = PolarLookup.getWallRadii(jCO.xID[i], jCO.yID[i], jCO.xmid[i], jCO.ymid[i], jCO.anglesChecked);
 			
 			//calculate normalized correction functions
-			double rLower = lowerRF.radialProfile[i][3];
+			rLower[i] = lowerRF.radialProfile[i][3];
 			double rUpper = upperRF.radialProfile[i][3];
 			float[] ftotLower = correctionFunctionCalculator(i, myLowerFits, sR);	
 			float[] ftotUpper = correctionFunctionCalculator(i, myUpperFits, sR);
-			
-			//do the correction
-			for (int x = 0 ; x < nowIP.getWidth() ; x++) {
-				for (int y = 0 ; y < nowIP.getHeight() ; y++) {			
-					
-					//get distance of pixel to center
-					float dx = x - (float)jCO.xmid[i];
-					float dy = y - (float)jCO.ymid[i];
-					float nowRadius = (float)Math.sqrt((double)(dx*dx) + (double)(dy*dy));
-					
-					//get angle
-					double alpha = Math.atan(dy/dx);
-					if (dx < 0 & dy >= 0) alpha = 2 * Math.PI + alpha;
-					if (dy < 0) alpha = Math.PI + alpha;
-															
-					//get radius at this angle
-					double dx0 = jCO.xID[i][0] - jCO.xmid[i];
-					double dy0 = jCO.yID[i][0] - jCO.ymid[i];
-					double radiusAtThisAngle = Math.sqrt((dx0*dx0) + (dy0*dy0));;
-					for (double j = 0 ; j < jCO.anglesChecked ; j++) {
-						double nowAngle  = 2 * j / jCO.anglesChecked * Math.PI;
-						if (nowAngle > alpha) {
-							
-							double weight = (nowAngle - alpha) / spacing;							
-							
-							double dx1 = jCO.xID[i][(int)j-1] - jCO.xmid[i];
-							double dx2 = jCO.xID[i][(int)j] - jCO.xmid[i];
-							double dy1 = jCO.yID[i][(int)j-1] - jCO.ymid[i];
-							double dy2 = jCO.yID[i][(int)j] - jCO.ymid[i];
-							double r1 = Math.sqrt((dx1*dx1) + (dy1*dy1));
-							double r2 = Math.sqrt((dx2*dx2) + (dy2*dy2));
-							
-							radiusAtThisAngle = weight * r2 + (1 - weight) * r1;
-							
-							break;
-						}
-					}
-					
-					//check if pixel is within column and if yes apply correction
-					if (nowRadius < radiusAtThisAngle) {
-						
-						int renormalizedRadius = (int)Math.floor(nowRadius / radiusAtThisAngle * standardRadius);
-						int CLower = (int)Math.round(ftotLower[renormalizedRadius]);
-						int CUpper = (int)Math.round(ftotUpper[renormalizedRadius]);
-						
-						float mygray = nowIP.getPixelValue(x, y);
-						int newgray = (int)Math.round(rLower + ((rUpper-rLower)/(CUpper-CLower)) * (mygray - CLower));
-						
-						nowIP.putPixel(x, y, newgray);
-						
-					}			
-				}	
-		
+			for (int r = 0 ; r < standardRadius ; r++) {
+				int CLower = (int)Math.round(ftotLower[r]);
+				int CUpper = (int)Math.round(ftotUpper[r]);
+				cLower[i][r] = CLower;
+				slope[i][r] = (rUpper-rLower[i])/(CUpper-CLower);
 			}
-			
-			//nowTiff.updateAndDraw();
-			//nowTiff.show();
-
-			outStack.addSlice(nowIP);
 		}
 		
+		//do the correction; pixels outside of the wall are left as they are
+		PolarLookup.applyRadialCorrection(nowStack, jCO.xmid, jCO.ymid, wallRadii, jCO.anglesChecked, standardRadius, new PolarLookup.RadialCorrection() {
+			public double correct(int slice, int renormalizedRadius, float mygray) {
+				if (renormalizedRadius < 0) return mygray;
+				int CLower = cLower[slice][renormalizedRadius];
+				return (int)Math.round(rLower[slice] + slope[slice][renormalizedRadius] * (mygray - CLower));
+			}
+		});
+		
+		ImageStack outStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
+		for (int i = 1 ; i <= numberOfSlices ; i++) outStack.addSlice(nowStack.getProcessor(i));
 		outTiff.setStack(outStack);
 		
 		//outTiff.updateAndDraw();
@@ -1335,108 +1372,63 @@ public class ImageManipulator implements PlugIn {
 		
 		//init output variables
 		ImagePlus outTiff = new ImagePlus();
-		ImageStack outStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
-		
-		//calculate number of angles needed to paint the whole canvas..
-		double spacing = 2 * Math.PI / mBDH.anglesChecked;
+		ImageStack nowStack = nowTiff.getStack();
+		int numberOfSlices = nowTiff.getNSlices();
 		int standardRadius = blurIP.getWidth();
-		float[] sR = new float[standardRadius]; 
-		float[] sA = new float[mBDH.anglesChecked + 1];
-		
-		//create array for standardradius
-		for (int i = 0 ; i < standardRadius ; i++) sR[i] = i + 1;
-		for (int i = 0 ; i < mBDH.anglesChecked + 1 ; i++) sA[i] = i;	
 		
 		//load polygon roi of inner perimeter
 		PolygonRoi[] nowRoi = roi.makeMeAPolygonRoiStack("inner", "manual", jCO, 2);
-
-		//sweep over slices
-		for (int i = 0 ; i < nowTiff.getNSlices() ; i++) {
-			
-			IJ.showStatus("Correcting for beam hardening in slice #" + (i + 1) + "/" + nowTiff.getNSlices());
+		
+		//wall radii and correction tables of each slice
+		double[][] wallRadii = new double[numberOfSlices][];
+		final double[] nowReference = new double[numberOfSlices];
+		final double[][] corrFunc = new double[numberOfSlices][standardRadius];
+		final double[][] gammaFunc = new double[numberOfSlices][standardRadius];
+		for (int i = 0 ; i < numberOfSlices ; i++) {
 			
 			//extract X and Y of pRoi		
 			nowRoi[i].fitSpline(mBDH.anglesChecked);
 			Polygon myPoly = nowRoi[i].getPolygon();			
-			int xID[] = myPoly.xpoints;
-			int yID[] = myPoly.ypoints;
-			
-			//set image to next slice
-			nowTiff.setPosition(i+1);
-			ImageProcessor nowIP = nowTiff.getProcessor();
+			double[] xID = new double[mBDH.anglesChecked];
+			double[] yID = new double[mBDH.anglesChecked];
+			for (int j = 0 ; j < mBDH.anglesChecked ; j++) {
+				xID[j] = myPoly.xpoints[j];
+				yID[j] = myPoly.ypoints[j];
+			}
+			wallRadii[i] = PolarLookup.getWallRadii(xID, yID, jCO.xmid[i], jCO.ymid[i], mBDH.anglesChecked);
 			
 			//get matrix brightness reference values for this depth			
-			double[] corrFunc = new double[standardRadius];
-			double nowReference = blurIP.getPixelValue(standardRadius - 1, i);
-			for (int r = 0 ; r < standardRadius ; r++) corrFunc[r] = nowReference / blurIP.getPixelValue(r, i);
+			nowReference[i] = blurIP.getPixelValue(standardRadius - 1, i);
+			for (int r = 0 ; r < standardRadius ; r++) corrFunc[i][r] = nowReference[i] / blurIP.getPixelValue(r, i);
 			
 			//get air-phase gamma reference values for this depth			
-			double[] gammaFunc = new double[standardRadius];
 			double nowRefGamma = gammaIP.getPixelValue(standardRadius - 1, i);
-			double gammaDelta = nowReference - nowRefGamma;
-			for (int r = 0 ; r < standardRadius ; r++) gammaFunc[r] = gammaDelta / (nowReference - gammaIP.getPixelValue(r, i));
-					
-			//do the correction
-			for (int x = 0 ; x < nowIP.getWidth() ; x++) {
-				for (int y = 0 ; y < nowIP.getHeight() ; y++) {			
-					
-					//get distance of pixel to center
-					float dx = x - (float)jCO.xmid[i];
-					float dy = y - (float)jCO.ymid[i];
-					float nowRadius = (float)Math.sqrt((double)(dx*dx) + (double)(dy*dy));
-					
-					//get angle
-					double alpha = Math.atan(dy/dx);
-					if (dx < 0 & dy >= 0) alpha = 2 * Math.PI + alpha;
-					if (dy < 0) alpha = Math.PI + alpha;
-															
-					//get radius at this angle
-					double dx0 = xID[0] - jCO.xmid[i];
-					double dy0 = yID[0] - jCO.ymid[i];
-					double radiusAtThisAngle = Math.sqrt((dx0*dx0) + (dy0*dy0));;
-					for (double j = 0 ; j < mBDH.anglesChecked ; j++) {
-						double nowAngle  = 2 * j / mBDH.anglesChecked * Math.PI;
-						if (nowAngle > alpha) {
-							
-							double weight = (nowAngle - alpha) / spacing;							
-							
-							double dx1 = xID[(int)j-1] - jCO.xmid[i];
-							double dx2 = xID[(int)j] - jCO.xmid[i];
-							double dy1 = yID[(int)j-1] - jCO.ymid[i];
-							double dy2 = yID[(int)j] - jCO.ymid[i];
-							double r1 = Math.sqrt((dx1*dx1) + (dy1*dy1));
-							double r2 = Math.sqrt((dx2*dx2) + (dy2*dy2));
-							
-							radiusAtThisAngle = weight * r2 + (1 - weight) * r1;
-							
-							break;
-						}
-					}
-					
-					//check if pixel is within column and if yes apply correction
-					double corrFactor = 1;
-					double gammaFactor = 1;
-					if (nowRadius < radiusAtThisAngle) {						
-						int renormalizedRadius = (int)Math.floor(nowRadius / radiusAtThisAngle * standardRadius);
-						corrFactor = corrFunc[renormalizedRadius];
-						gammaFactor = gammaFunc[renormalizedRadius];
-					}		
-					
-					//apply beam hardening correction
-					float mygray = nowIP.getPixelValue(x, y);					
-					double newgray = (int)Math.round(corrFactor * mygray);
-					
-					//also apply air-phase gamma correction
-					int newestgray = (int)Math.round(nowReference - (nowReference - newgray) * gammaFactor); 
-					
-					nowIP.putPixel(x, y, newestgray);
-				}	
+			double gammaDelta = nowReference[i] - nowRefGamma;
+			for (int r = 0 ; r < standardRadius ; r++) gammaFunc[i][r] = gammaDelta / (nowReference[i] - gammaIP.getPixelValue(r, i));
+		}
 		
+		//do the correction
+		PolarLookup.applyRadialCorrection(nowStack, jCO.xmid, jCO.ymid, wallRadii, mBDH.anglesChecked, standardRadius, new PolarLookup.RadialCorrection() {
+			public double correct(int slice, int renormalizedRadius, float mygray) {
+				
+				//pixels outside of the column keep factors of 1
+				double corrFactor = 1;
+				double gammaFactor = 1;
+				if (renormalizedRadius >= 0) {
+					corrFactor = corrFunc[slice][renormalizedRadius];
+					gammaFactor = gammaFunc[slice][renormalizedRadius];
+				}
+				
+				//apply beam hardening correction
+				double newgray = (int)Math.round(corrFactor * mygray);
+				
+				//also apply air-phase gamma correction
+				return (int)Math.round(nowReference[slice] - (nowReference[slice] - newgray) * gammaFactor); 
 			}
-	
-			outStack.addSlice(nowIP);
-		}
+		});
 		
+		ImageStack outStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
+		for (int i = 1 ; i <= numberOfSlices ; i++) outStack.addSlice(nowStack.getProcessor(i));
 		outTiff.setStack(outStack);
 		
 		return outTiff;		
@@ -1468,7 +1460,7 @@ public class ImageManipulator implements PlugIn {
 	public ImagePlus putColumnUprightInCenter(ImagePlus nowTiff, ObjectDetector.ColCoords3D prelimCC, MenuWaiter.ColumnFinderMenuReturn jCFS) {
 		
 		ObjectDetector jOD = new ObjectDetector();		
-		Slicer sly = new Slicer();
+		RigidResampler rigid = new RigidResampler();
 		Median jMed = new Median();
 		
 		ObjectDetector.ColCoords3D newCC = jOD.new ColCoords3D();
@@ -1476,100 +1468,20 @@ public class ImageManipulator implements PlugIn {
 		ImagePlus straightTiff = new ImagePlus();
 		ImagePlus outTiff = new ImagePlus();
 		
-		//by-pass the cutting step when re-measuring column wall..
-		//outTiff = nowTiff;
+		int numberOfThreads = Runtime.getRuntime().availableProcessors();
+		double[] center = {(nowTiff.getWidth() - 1) / 2.0, (nowTiff.getHeight() - 1) / 2.0, (nowTiff.getNSlices() - 1) / 2.0};
+		double[][] rotation = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
 		
 		if (prelimCC.tiltTotal > 0.01) {   //if tilting angle is too big then put column straight
 			
-			IJ.showStatus("Putting column straight and moving it to center of canvas, step 1 of 4...");
-			
-			ImagePlus boTiff0 = new ImagePlus();
-			ImageStack boStack0 = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
-		
-			//find tilting angle relative to XY-plane
-			double alpha = prelimCC.tiltInXZ;
-			double beta = prelimCC.tiltInYZ;
-			double dz = 1000;
-			
-			double dx = Math.tan(alpha) * dz;
-			double dy = Math.tan(beta) * dz;
-			double gamma = Math.atan(dx/dy);
-			
-			//correct for ambiguity in atan response			
-			if (dy < 0) gamma = gamma + Math.PI; 
-			
-			//rotate so that the tilting is only in y-direction
-			for (int i = 1 ; i < nowTiff.getNSlices() + 1 ; i++) {
-				
-				nowTiff.setPosition(i);
-				ImageProcessor nowIP = nowTiff.getProcessor();
-				nowIP.setInterpolate(true);
-				double gammaInDegree = gamma * 360 / 2 / Math.PI ;
-				nowIP.rotate(gammaInDegree + 90);
-				
-				boStack0.addSlice(nowIP);
-			}
+			IJ.showStatus("Putting column straight and moving it to center of canvas, step 1 of 2...");
 			
-			boTiff0.setStack(boStack0);			
-						
-			//reslice
-			ImagePlus vertiTiff = sly.reslice(boTiff0);
-						
-			//free memory ..
-			boTiff0.flush();
-			IJ.freeMemory();IJ.freeMemory();
-			
-			IJ.showStatus("Putting column straight and moving it to center of canvas, step 2 of 4...");
-			
-			//put column upright
-			ImagePlus boTiff = new ImagePlus();
-			ImageStack boStack = new ImageStack(vertiTiff.getWidth(), vertiTiff.getHeight());			
-			for (int i = 1 ; i < vertiTiff.getNSlices() + 1 ; i++) {
-				
-				vertiTiff.setPosition(i);
-				ImageProcessor nowIP = vertiTiff.getProcessor();
-				nowIP.setInterpolate(true);
-				double deltaInDegree = prelimCC.tiltTotal * 360 / 2 / Math.PI ;
-				nowIP.rotate(-deltaInDegree);
-				
-				boStack.addSlice(nowIP);
-			}
-
-			//free memory ..
-			vertiTiff.flush();
-			IJ.freeMemory();IJ.freeMemory();
-			
-			//transfer images to boTiff
-			boTiff.setStack(boStack);	
-			
-			//reslice back to XY-plane view
-			ImagePlus straightTiff0 = sly.reslice(boTiff);
-			
-			//free memory from boTiff again..
-			boTiff.flush();
-			IJ.freeMemory();IJ.freeMemory();
-			
-			IJ.showStatus("Putting column straight and moving it to center of canvas, step 3 of 4...");
-			
-			//rotate back to original orientation
-			ImageStack straightStack = new ImageStack(straightTiff0.getWidth(), straightTiff0.getHeight());
-			for (int i = 1 ; i < straightTiff0.getNSlices() + 1 ; i++) {
-				
-				straightTiff0.setPosition(i);
-				ImageProcessor nowIP = straightTiff0.getProcessor();
-				nowIP.setInterpolate(true);
-				double gammaInDegree = gamma * 360 / 2 / Math.PI ;
-				nowIP.rotate(-gammaInDegree - 90);
-				
-				straightStack.addSlice(nowIP);
-			}
+			//all rotations in one matrix, so that the image is only interpolated once
+			rotation = rigid.getUprightRotation(prelimCC);
 			
-			//free memory from straightTiff0 again..
-			straightTiff0.flush();
-			IJ.freeMemory();IJ.freeMemory();
+			int[] dims = {nowTiff.getWidth(), nowTiff.getHeight(), nowTiff.getNSlices()};
+			straightTiff = rigid.resample(nowTiff, rotation, center, new double[]{0, 0, 0}, dims, numberOfThreads);
 			
-			straightTiff.setStack(straightStack);
-
 		}
 		else {
 			straightTiff = nowTiff;
@@ -1583,7 +1495,7 @@ public class ImageManipulator implements PlugIn {
 		newCC = jOD.findOrientationOfPVCOrAluColumn(straightTiff, jCFS, look4PreciseCoords);
 		
 		//move column into the center of the canvas and cut out unnecessary parts of the canvas
-		IJ.showStatus("Putting column straight and moving it to center of canvas, step 4 of 4...");
+		IJ.showStatus("Putting column straight and moving it to center of canvas, step 2 of 2...");
 		double rim = 25;
 		double mRadius = jMed.evaluate(newCC.outerMajorRadius);
 		double toBeLeft = mRadius + rim;
@@ -1592,38 +1504,24 @@ public class ImageManipulator implements PlugIn {
 		if (2 * toBeLeft > straightTiff.getWidth()) toBeLeft = straightTiff.getWidth() / 2;
 		if (2 * toBeLeft > straightTiff.getHeight()) toBeLeft = straightTiff.getHeight() / 2;
 			
-		//do the cutting
+		//the cut-out, as the Roi would have been placed
 		double diameter = 2 * toBeLeft;
-		ImageStack outStack = new ImageStack((int)Math.round(diameter), (int)Math.round(diameter));
-		
-		//Boolean cutSuccessful = true;
 		double XC = straightTiff.getWidth() / 2;
 		double YC = straightTiff.getHeight() / 2;
+		int cutX = (int)(XC - toBeLeft);
+		int cutY = (int)(YC - toBeLeft);
 		
 		double dx = XC - jMed.evaluate(newCC.xmid);
 		double dy = YC - jMed.evaluate(newCC.ymid);
-		for (int i = 1 ; i < straightTiff.getNSlices() + 1 ; i++) {
-			
-			IJ.showStatus("Moving column to center of canvas " + i + "/" + straightTiff.getNSlices());
-			
-			straightTiff.setPosition(i);
-			ImageProcessor nowIP = straightTiff.getProcessor();
-			nowIP.setInterpolate(true);
-			
-			nowIP.translate(dx, dy);
-			
-			Roi cutRoi = new Roi(XC - toBeLeft, YC - toBeLeft, (int)Math.round(diameter), (int)Math.round(diameter));			
-			nowIP.setRoi(cutRoi);
-			ImageProcessor cutIP = nowIP.crop();
-			
-			outStack.addSlice(cutIP);
-		}
 		
 		//free memory from straightTiff again..
-		straightTiff.flush();
+		if (straightTiff != nowTiff) straightTiff.flush();
 		IJ.freeMemory();IJ.freeMemory();
 		
-		outTiff.setStack(outStack);		
+		//rotate, shift and cut the original image in one resampling step
+		double[] offset = {cutX - dx, cutY - dy, 0};
+		int[] outDims = {(int)Math.round(diameter), (int)Math.round(diameter), nowTiff.getNSlices()};
+		outTiff = rigid.resample(nowTiff, rotation, center, offset, outDims, numberOfThreads);
 		
 		//outTiff.updateAndDraw();
 		//outTiff.show();		
@@ -1697,154 +1595,35 @@ public class ImageManipulator implements PlugIn {
 	// binarize
 	///////////////////////////////////////////////
 	
-	public int[] multiOtsu(InputOutput.MyFileCollection mFC, int[] nowHist, MenuWaiter.MultiRegionSegmentation mRS) {
-		
-		//following Liao et al. (2001), Journal of Information Science and Engineering, 17, 713-727
+	public int[] findMultiThresholds(int[] nowHist, MenuWaiter.MultiRegionSegmentation mRS, int criterion) {
 		
-		DisplayThings disp = new DisplayThings();
-		RollerCaster rC = new RollerCaster();
 		HistogramStuff hist = new HistogramStuff();
 		
-		int[] thresholds = new int[mRS.numberOfThresholds];
+		//if desired, scale the 16-bit histogram to 8 bit; the thresholds are scaled back when they are written
+		if (mRS.convert2EightBit) {
+			int[] eightHist = hist.convert16to8BitHistogram(nowHist, mRS.lowerBoundary, mRS.upperBoundary);
+			MultiLevelThresholder mLT = new MultiLevelThresholder(eightHist, 0, 255, criterion);
+			return mLT.findThresholds(mRS.numberOfThresholds);
+		}
 		
-		//if histogram is in 16 bit, scale to 8 bit
-		int[] eightHist = new int[256];
-		if (mRS.convert2EightBit) hist.convert16to8BitHistogram(nowHist, mRS.lowerBoundary, mRS.upperBoundary);
-		else eightHist = nowHist;
+		//else work on the full histogram, restricted to the relevant grayscale range if there is one
+		int firstBin = 1;		//0 is the background
+		int lastBin = nowHist.length - 1;
+		if (nowHist.length > 256 & mRS.upperBoundary > mRS.lowerBoundary) {
+			firstBin = Math.max(firstBin, mRS.lowerBoundary);
+			lastBin = Math.min(lastBin, mRS.upperBoundary);
+		}
 		
-		ImageProcessor P = calcLookUpTableP(eightHist);
-		ImageProcessor S = calcLookUpTableS(P);
+		MultiLevelThresholder mLT = new MultiLevelThresholder(nowHist, firstBin, lastBin, criterion);
+		return mLT.findThresholds(mRS.numberOfThresholds);
 		
-/*		ImagePlus test0 = new ImagePlus("P", P);		
-		test0.draw();test0.show();
+	}
+	
+	public int[] multiOtsu(InputOutput.MyFileCollection mFC, int[] nowHist, MenuWaiter.MultiRegionSegmentation mRS) {
 		
-		ImagePlus test1 = new ImagePlus("S", S);		
-		test1.draw();test1.show();*/
-			
-		//find maximum...
-		double ojMax = 0;
-		switch(mRS.numberOfThresholds) {
-			
-			case 1: 
-				
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					
-					double objectiveFunction = S.getPixelValue(i, 0) * S.getPixelValue(i, 0) / P.getPixelValue(i, 0);					
-					objectiveFunction += S.getPixelValue(255, i) * S.getPixelValue(255, i) / P.getPixelValue(255, i);
-			
-						
-					if (objectiveFunction > ojMax) {
-						ojMax = objectiveFunction;
-						thresholds[0] = i;
-					}
-						
-				}
-				break;
-			
-			case 2: 
-				
-				for (int i = 1 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1 ; j < 256 - 1 ; j++) {										
-												
-							
-						double objectiveFunction = S.getPixelValue(i, 0) * S.getPixelValue(i, 0) / P.getPixelValue(i, 0);
-						objectiveFunction += S.getPixelValue(j, i) * S.getPixelValue(j, i) / P.getPixelValue(j, i);
-						objectiveFunction += S.getPixelValue(255, j) * S.getPixelValue(255, j) / P.getPixelValue(255, j);
-						
-						if (objectiveFunction > ojMax) {
-							ojMax = objectiveFunction;
-							thresholds[0] = i;
-							thresholds[1] = j;
-						}
-							
-					}
-				}
-				break;
-				
-			case 3: 
-			
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1 ; j < 256 - 2 ; j++) {
-						for (int k = j + 1; k < 256 - 1 ; k++) {						
-						
-							double objectiveFunction = S.getPixelValue(i, 0) * S.getPixelValue(i, 0) / P.getPixelValue(i, 0);
-							objectiveFunction += S.getPixelValue(j, i) * S.getPixelValue(j, i) / P.getPixelValue(j, i);
-							objectiveFunction += S.getPixelValue(k, j) * S.getPixelValue(k, j) / P.getPixelValue(k, j);
-							objectiveFunction += S.getPixelValue(255, k) * S.getPixelValue(255, k) / P.getPixelValue(255, k);	
-							
-							if (objectiveFunction > ojMax) {
-								ojMax = objectiveFunction;
-								thresholds[0] = i;
-								thresholds[1] = j;
-								thresholds[2] = k;
-							}
-						}						
-					}
-				}
-				break;
-				
-			case 4: 
-				
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1; j < 256 - 3 ; j++) {
-						for (int k = j + 1; k < 256 - 2 ; k++) {
-							for (int m = k + 1; m < 256 - 1 ; m++) {
-
-								double objectiveFunction = S.getPixelValue(i, 0) * S.getPixelValue(i, 0) / P.getPixelValue(i, 0);
-								objectiveFunction += S.getPixelValue(j, i) * S.getPixelValue(j, i) / P.getPixelValue(j, i);
-								objectiveFunction += S.getPixelValue(k, j) * S.getPixelValue(k, j) / P.getPixelValue(k, j);
-								objectiveFunction += S.getPixelValue(m, k) * S.getPixelValue(m, k) / P.getPixelValue(m, k);	
-								objectiveFunction += S.getPixelValue(255, m) * S.getPixelValue(255, m) / P.getPixelValue(255, m);
-								
-								if (objectiveFunction > ojMax) {
-									ojMax = objectiveFunction;
-									thresholds[0] = i;
-									thresholds[1] = j;
-									thresholds[2] = k;
-									thresholds[3] = m;
-								}
-							}
-						}						
-					}
-				}
-				break;
-				
-			case 5: 
-			
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1; j < 256 - 4 ; j++) {
-						for (int k = j + 1; k < 256 - 3 ; k++) {
-							for (int m = k + 1; m < 256 - 2 ; m++) {
-								for (int n = m + 1 ; n < 256 -1 ; n++) {
-							
-									double objectiveFunction = S.getPixelValue(i, 0) * S.getPixelValue(i, 0) / P.getPixelValue(i, 0);
-									objectiveFunction += S.getPixelValue(j, i) * S.getPixelValue(j, i) / P.getPixelValue(j, i);
-									objectiveFunction += S.getPixelValue(k, j) * S.getPixelValue(k, j) / P.getPixelValue(k, j);
-									objectiveFunction += S.getPixelValue(m, k) * S.getPixelValue(m, k) / P.getPixelValue(m, k);	
-									objectiveFunction += S.getPixelValue(n, m) * S.getPixelValue(n, m) / P.getPixelValue(n, m);
-									objectiveFunction += S.getPixelValue(255, n) * S.getPixelValue(255, n) / P.getPixelValue(255, n);
-									
-									if (objectiveFunction > ojMax) {
-										ojMax = objectiveFunction;
-										thresholds[0] = i;
-										thresholds[1] = j;
-										thresholds[2] = k;
-										thresholds[3] = m;
-										thresholds[4] = n;
-									}
-								}
-							}
-						}						
-					}
-				}				
-				break;
-			
-		}
-
-		//double[] x = new double[256]; for (int i = 0 ; i < x.length ; i++) x[i] = i;
-		//disp.plotHistogram(x, rC.castInt2Double(eightHist), "test", "histogram classes", "frequency");
+		//following Liao et al. (2001), Journal of Information Science and Engineering, 17, 713-727
 		
-		return thresholds;
+		return findMultiThresholds(nowHist, mRS, MultiLevelThresholder.OTSU);
 		
 	}
 	
@@ -1852,150 +1631,7 @@ public class ImageManipulator implements PlugIn {
 		
 		//following S. Schlueter's code from QuantIM
 		
-		DisplayThings disp = new DisplayThings();
-		RollerCaster rC = new RollerCaster();
-		HistogramStuff hist = new HistogramStuff();
-		
-		int[] thresholds = new int[mRS.numberOfThresholds];
-		
-		//if histogram is in 16 bit, scale to 8 bit
-		int[] eightHist = new int[256];
-		if (mRS.convert2EightBit) hist.convert16to8BitHistogram(nowHist, mRS.lowerBoundary, mRS.upperBoundary);
-		else eightHist = nowHist;
-		
-		ImageProcessor P = calcLookUpTableP(eightHist);
-		ImageProcessor S = calcLookUpTableS4MaxEntro(P);
-		
-/*		ImagePlus test0 = new ImagePlus("P", P);		
-		test0.draw();test0.show();
-		
-		ImagePlus test1 = new ImagePlus("S", S);		
-		test1.draw();test1.show();*/
-		
-		//find maximum...
-		double ojMax = 0;
-		switch(mRS.numberOfThresholds) {
-			
-			case 1: 
-				
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-
-					double objectiveFunction = Math.log(P.getPixelValue(i, 0)) - S.getPixelValue(i, 0) / P.getPixelValue(i, 0);					
-					objectiveFunction += Math.log(P.getPixelValue(255, i)) - S.getPixelValue(255, i) / P.getPixelValue(255, i);
-			
-						
-					if (objectiveFunction > ojMax) {
-						ojMax = objectiveFunction;
-						thresholds[0] = i;
-					}
-						
-				}
-				break;
-			
-			case 2: 
-				
-				for (int i = 1 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1 ; j < 256 - 1 ; j++) {										
-												
-							
-						double objectiveFunction = Math.log(P.getPixelValue(i, 0)) - S.getPixelValue(i, 0) / P.getPixelValue(i, 0);
-						objectiveFunction += Math.log(P.getPixelValue(j, i)) - S.getPixelValue(j, i) / P.getPixelValue(j, i);
-						objectiveFunction += Math.log(P.getPixelValue(255, j)) - S.getPixelValue(255, j) / P.getPixelValue(255, j);
-						
-						if (objectiveFunction > ojMax) {
-							ojMax = objectiveFunction;
-							thresholds[0] = i;
-							thresholds[1] = j;
-						}
-							
-					}
-				}
-				break;
-				
-			case 3: 
-			
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1 ; j < 256 - 2 ; j++) {
-						for (int k = j + 1; k < 256 - 1 ; k++) {						
-						
-							double objectiveFunction = Math.log(P.getPixelValue(i, 0)) - S.getPixelValue(i, 0) / P.getPixelValue(i, 0);
-							objectiveFunction += Math.log(P.getPixelValue(j, i)) - S.getPixelValue(j, i) / P.getPixelValue(j, i);
-							objectiveFunction += Math.log(P.getPixelValue(k, j)) - S.getPixelValue(k, j) / P.getPixelValue(k, j);
-							objectiveFunction += Math.log(P.getPixelValue(255, k)) - S.getPixelValue(255, k) / P.getPixelValue(255, k);	
-							
-							if (objectiveFunction > ojMax) {
-								ojMax = objectiveFunction;
-								thresholds[0] = i;
-								thresholds[1] = j;
-								thresholds[2] = k;
-							}
-						}						
-					}
-				}
-				break;
-				
-			case 4: 
-				
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1; j < 256 - 3 ; j++) {
-						for (int k = j + 1; k < 256 - 2 ; k++) {
-							for (int m = k + 1; m < 256 - 1 ; m++) {
-
-								double objectiveFunction = Math.log(P.getPixelValue(i, 0)) - S.getPixelValue(i, 0) / P.getPixelValue(i, 0);
-								objectiveFunction += Math.log(P.getPixelValue(j, i)) - S.getPixelValue(j, i) / P.getPixelValue(j, i);
-								objectiveFunction += Math.log(P.getPixelValue(k, j)) - S.getPixelValue(k, j) / P.getPixelValue(k, j);
-								objectiveFunction += Math.log(P.getPixelValue(m, k)) - S.getPixelValue(m, k) / P.getPixelValue(m, k);	
-								objectiveFunction += Math.log(P.getPixelValue(255, m)) - S.getPixelValue(255, m) / P.getPixelValue(255, m);
-								
-								if (objectiveFunction > ojMax) {
-									ojMax = objectiveFunction;
-									thresholds[0] = i;
-									thresholds[1] = j;
-									thresholds[2] = k;
-									thresholds[3] = m;
-								}
-							}
-						}						
-					}
-				}
-				break;
-				
-			case 5: 
-			
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1; j < 256 - 4 ; j++) {
-						for (int k = j + 1; k < 256 - 3 ; k++) {
-							for (int m = k + 1; m < 256 - 2 ; m++) {
-								for (int n = m + 1 ; n < 256 -1 ; n++) {
-							
-									double objectiveFunction = Math.log(P.getPixelValue(i, 0)) - S.getPixelValue(i, 0) / P.getPixelValue(i, 0);
-									objectiveFunction += Math.log(P.getPixelValue(j, i)) - S.getPixelValue(j, i) / P.getPixelValue(j, i);
-									objectiveFunction += Math.log(P.getPixelValue(k, j)) - S.getPixelValue(k, j) / P.getPixelValue(k, j);
-									objectiveFunction += Math.log(P.getPixelValue(m, k)) - S.getPixelValue(m, k) / P.getPixelValue(m, k);	
-									objectiveFunction += Math.log(P.getPixelValue(n, m)) - S.getPixelValue(n, m) / P.getPixelValue(n, m);
-									objectiveFunction += Math.log(P.getPixelValue(255, n)) - S.getPixelValue(255, n) / P.getPixelValue(255, n);
-									
-									if (objectiveFunction > ojMax) {
-										ojMax = objectiveFunction;
-										thresholds[0] = i;
-										thresholds[1] = j;
-										thresholds[2] = k;
-										thresholds[3] = m;
-										thresholds[4] = n;
-									}
-								}
-							}
-						}						
-					}
-				}				
-				break;
-			
-		}
-
-		//double[] x = new double[256]; for (int i = 0 ; i < x.length ; i++) x[i] = i;
-		//disp.plotHistogram(x, rC.castInt2Double(eightHist), "test", "histogram classes", "frequency");
-		
-		return thresholds;
+		return findMultiThresholds(nowHist, mRS, MultiLevelThresholder.MAX_ENTROPY);
 		
 	}
 	
@@ -2004,336 +1640,10 @@ public class ImageManipulator implements PlugIn {
 		//following S. Schlueter's code from QuantIM which in turn is based on
 		//Kittler & Illingworth (1986): Pattern Recognition, 19(1), 41-47.
 		
-		DisplayThings disp = new DisplayThings();
-		RollerCaster rC = new RollerCaster();
-		HistogramStuff hist = new HistogramStuff();
-		
-		int[] thresholds = new int[mRS.numberOfThresholds];
-		
-		//if histogram is in 16 bit, scale to 8 bit
-		int[] eightHist = new int[256];
-		if (mRS.convert2EightBit) hist.convert16to8BitHistogram(nowHist, mRS.lowerBoundary, mRS.upperBoundary);
-		else eightHist = nowHist;
-		
-		ImageProcessor P = calcLookUpTableP(eightHist);  //lut0 in QuantIM;
-		ImageProcessor logP = calcLookUpTableLogP(eightHist);
-		ImageProcessor S = calcLookUpTableS(P);   //lut1 in QuantIM;
-		ImageProcessor[] S0 = calcLookUpTableS4MinErr(P, S);
-		ImageProcessor logS = S0[1];   // lut2 in QuantIM;
-		
-/*		ImagePlus test0 = new ImagePlus("logP", logP);		
-		test0.draw();test0.show();
-		
-		ImagePlus test1 = new ImagePlus("logS", logS);		
-		test1.draw();test1.show();
-*/
-		
-		//find maximum...
-		double ojMax = 1e20;
-		switch(mRS.numberOfThresholds) {
-			
-			case 1: 
-				
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-
-					double objectiveFunction = P.getPixelValue(i, 0) * (logS.getPixelValue(i, 0) - logP.getPixelValue(i, 0));					
-					objectiveFunction += P.getPixelValue(255, i) * (logS.getPixelValue(255, i) - logP.getPixelValue(255, i));
-			
-						
-					if (objectiveFunction < ojMax) {
-						ojMax = objectiveFunction;
-						thresholds[0] = i;
-					}
-						
-				}
-				break;
-			
-			case 2: 
-				
-				for (int i = 1 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1 ; j < 256 - 1 ; j++) {										
-												
-							
-						double objectiveFunction = P.getPixelValue(i, 0) * (logS.getPixelValue(i, 0) - logP.getPixelValue(i, 0));
-						objectiveFunction += P.getPixelValue(j, i) * (logS.getPixelValue(j, i) - logP.getPixelValue(j, i));
-						objectiveFunction += P.getPixelValue(255, j) * (logS.getPixelValue(255, j) - logP.getPixelValue(255, j));
-						
-						if (objectiveFunction < ojMax) {
-							ojMax = objectiveFunction;
-							thresholds[0] = i;
-							thresholds[1] = j;
-						}
-							
-					}
-				}
-				break;
-				
-			case 3: 
-			
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1 ; j < 256 - 2 ; j++) {
-						for (int k = j + 1; k < 256 - 1 ; k++) {						
-						
-							double objectiveFunction = P.getPixelValue(i, 0) * (logS.getPixelValue(i, 0) - logP.getPixelValue(i, 0));
-							objectiveFunction += P.getPixelValue(j, i) * (logS.getPixelValue(j, i) - logP.getPixelValue(j, i));
-							objectiveFunction += P.getPixelValue(k, j) * (logS.getPixelValue(k, j) - logP.getPixelValue(k, j));
-							objectiveFunction += P.getPixelValue(255, k) * (logS.getPixelValue(255, k) - logP.getPixelValue(255, k));	
-							
-							if (objectiveFunction < ojMax) {
-								ojMax = objectiveFunction;
-								thresholds[0] = i;
-								thresholds[1] = j;
-								thresholds[2] = k;
-							}
-						}						
-					}
-				}
-				break;
-				
-			case 4: 
-				
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1; j < 256 - 3 ; j++) {
-						for (int k = j + 1; k < 256 - 2 ; k++) {
-							for (int m = k + 1; m < 256 - 1 ; m++) {
-
-								double objectiveFunction = P.getPixelValue(i, 0) * (logS.getPixelValue(i, 0) - logP.getPixelValue(i, 0));
-								objectiveFunction += P.getPixelValue(j, i) * (logS.getPixelValue(j, i) - logP.getPixelValue(j, i));
-								objectiveFunction += P.getPixelValue(k, j) * (logS.getPixelValue(k, j) - logP.getPixelValue(k, j));
-								objectiveFunction += P.getPixelValue(m, k) * (logS.getPixelValue(m, k) - logP.getPixelValue(m, k));	
-								objectiveFunction += P.getPixelValue(255, m) * (logS.getPixelValue(255, m) - logP.getPixelValue(255, m));
-								
-								if (objectiveFunction < ojMax) {
-									ojMax = objectiveFunction;
-									thresholds[0] = i;
-									thresholds[1] = j;
-									thresholds[2] = k;
-									thresholds[3] = m;
-								}
-							}
-						}						
-					}
-				}
-				break;
-				
-			case 5: 
-			
-				for (int i = 0 ; i < 256 - mRS.numberOfThresholds ; i++) {
-					for (int j = i + 1; j < 256 - 4 ; j++) {
-						for (int k = j + 1; k < 256 - 3 ; k++) {
-							for (int m = k + 1; m < 256 - 2 ; m++) {
-								for (int n = m + 1 ; n < 256 -1 ; n++) {
-							
-									double objectiveFunction = P.getPixelValue(i, 0) * (logS.getPixelValue(i, 0) - logP.getPixelValue(i, 0));
-									objectiveFunction += P.getPixelValue(j, i) * (logS.getPixelValue(j, i) - logP.getPixelValue(j, i));
-									objectiveFunction += P.getPixelValue(k, j) * (logS.getPixelValue(k, j) - logP.getPixelValue(k, j));
-									objectiveFunction += P.getPixelValue(m, k) * (logS.getPixelValue(m, k) - logP.getPixelValue(m, k));	
-									objectiveFunction += P.getPixelValue(n, m) * (logS.getPixelValue(n, m) - logP.getPixelValue(n, m));
-									objectiveFunction += P.getPixelValue(255, n) * (logS.getPixelValue(255, n) - logP.getPixelValue(255, n));
-									
-									if (objectiveFunction < ojMax) {
-										ojMax = objectiveFunction;
-										thresholds[0] = i;
-										thresholds[1] = j;
-										thresholds[2] = k;
-										thresholds[3] = m;
-										thresholds[4] = n;
-									}
-								}
-							}
-						}						
-					}
-				}				
-				break;
-			
-		}
-
-		//double[] x = new double[256]; for (int i = 0 ; i < x.length ; i++) x[i] = i;
-		//disp.plotHistogram(x, rC.castInt2Double(eightHist), "test", "histogram classes", "frequency");
-		
-		return thresholds;
-		
-	}
-	
-	public ImageProcessor calcLookUpTableP(int[] nowHist) {
-		
-		ImageProcessor P = new FloatProcessor(256, 256);
-		
-		double tiny = 1e-20;
-		double sumHist = tiny;
-		P.putPixelValue(0, 0, sumHist);
-		for (int x = 1 ; x < 256 ; x++) {
-			sumHist += nowHist[x];
-			if (nowHist[x] == 0) sumHist += tiny;
-			P.putPixelValue(x, 0, sumHist);
-		}
-			
-		for (int y = 1  ; y < 256 ; y++) {
-			for (int x = y + 1 ; x < 256 ; x++) {
-				
-				P.putPixelValue(x, y, P.getPixelValue(x, 0) - P.getPixelValue(y, 0));
-				
-			}	
-		}		
-		
-		//get maximal entry and normalize between 0 and 1
-/*		double maxEntry = P.getMax();
-		
-		for (int y = 0  ; y < 256 ; y++) {
-			for (int x = y ; x < 256 ; x++) {
-				
-				double pNow = P.getPixelValue(x, y) / maxEntry; 
-				P.putPixelValue(x, y, pNow);
-				
-			}	
-		}		*/
-		
-			
-		return P;
+		return findMultiThresholds(nowHist, mRS, MultiLevelThresholder.MIN_ERROR);
 		
 	}
 	
-	public ImageProcessor calcLookUpTableLogP(int[] nowHist) {
-		
-		ImageProcessor logP = new FloatProcessor(256, 256);
-		
-		double tiny = 1e-20;
-		double sumHist = 0;
-		logP.putPixelValue(0, 0, sumHist);
-		for (int x = 1 ; x < 256 ; x++) {
-			if (nowHist[x] > 0) sumHist += nowHist[x];
-			else sumHist += tiny;
-			logP.putPixelValue(x, 0, Math.log(sumHist));
-		}
-			
-		for (int y = 1  ; y < 256 ; y++) {
-			for (int x = y + 1 ; x < 256 ; x++) {
-				
-				double P = Math.exp(logP.getPixelValue(x, 0)) - Math.exp(logP.getPixelValue(y, 0));
-				logP.putPixelValue(x, y, Math.log(P));
-				
-			}	
-		}		
-		
-		return logP;
-		
-	}
-	
-	public ImageProcessor calcLookUpTableS(ImageProcessor P) {
-		
-		ImageProcessor S = new FloatProcessor(256, 256);
-		
-		double tiny = 1e-20;
-		double sumS = tiny;
-		S.putPixelValue(0, 0, sumS);
-		for (int x = 1 ; x < 256 ; x++) {
-			sumS += x * (P.getPixelValue(x, 0) - P.getPixelValue(x - 1, 0));
-			S.putPixelValue(x, 0, sumS);
-		}
-			
-		for (int y = 1  ; y < 256 ; y++) {
-			for (int x = y + 1 ; x < 256 ; x++) {
-				
-				S.putPixelValue(x, y, S.getPixelValue(x, 0) - S.getPixelValue(y, 0));
-				
-			}	
-		}		
-		
-		return S;
-		
-	}
-	
-	public ImageProcessor calcLookUpTableS4MaxEntro(ImageProcessor P) {
-		
-		ImageProcessor S = new FloatProcessor(256, 256);
-		double tiny = 1e-20;
-		
-		double sumS = 0;
-		S.putPixelValue(0, 0, sumS);
-		for (int x = 1 ; x < 256 ; x++) {
-			double numAtX = P.getPixelValue(x, 0) - P.getPixelValue(x - 1, 0);
-			if (numAtX > 0) sumS += numAtX * Math.log(numAtX);
-			else sumS += tiny;
-			S.putPixelValue(x, 0, sumS);
-		}
-			
-		for (int y = 1  ; y < 256 ; y++) {
-			for (int x = y + 1 ; x < 256 ; x++) {
-				
-				S.putPixelValue(x, y, S.getPixelValue(x, 0) - S.getPixelValue(y, 0));
-				
-			}	
-		}		
-		
-		return S;
-		
-	}
-	
-	public ImageProcessor[] calcLookUpTableS4MinErr(ImageProcessor P, ImageProcessor S) {
-		
-		ImageProcessor[] S0 = new FloatProcessor[2];
-		ImageProcessor S1 = new FloatProcessor(256, 256);
-		ImageProcessor S2 = new FloatProcessor(256, 256);
-		double tiny = 1d/256d;
-		
-		double sumS = tiny;			
-		S1.putPixelValue(0, 0, Math.log(Math.sqrt(sumS)));	
-		double[] checkS = new double[256];
-		checkS[0] = Math.log(Math.sqrt(tiny));
-		for (int x = 1 ; x < 256 ; x++) {	
-			S1.putPixelValue(x, 0, S.getPixelValue(x, 0) / P.getPixelValue(x, 0));
-			
-			sumS = 0; 			//cm2 in QuantIM	
-			double Px = P.getPixelValue(x, 0);
-			for (int j = 1 ; j <= x ; j++) {
-				double deltaPj = (P.getPixelValue(j, 0) - P.getPixelValue(j - 1, 0));				
-				if (P.getPixelValue(j - 1, 0) < 1e-10) deltaPj = 0;
-				double nowse = S1.getPixelValue(x, 0);
-				sumS += (j - nowse) * (j - nowse) * deltaPj;
-			}
-			sumS /= Px;  //second central moment
-			if (sumS == 0) sumS = tiny;
-			
-			checkS[x] = Math.log(Math.sqrt(sumS));
-			
-			S2.putPixelValue(x, 0, Math.log(Math.sqrt(sumS)));
-			
-		}
-		
-		for (int y = 1  ; y < 256 ; y++) {
-			for (int x = y + 1 ; x < 256 ; x++) {
-								
-				S1.putPixelValue(x, y, (S.getPixelValue(x, 0) - S.getPixelValue(y, 0)) / P.getPixelValue(x, y));
-				
-				sumS = 0; 
-				for (int k = y ; k < x ; k++) {
-					double deltaPk = (P.getPixelValue(k, 0) - P.getPixelValue(k - 1, 0));				
-					if (P.getPixelValue(k - 1, 0) < 1e-10) deltaPk = 0;
-					double nowS1 = S1.getPixelValue(x, y);
-					sumS += (k - nowS1) * (k - nowS1) * deltaPk;
-				}
-				sumS /= P.getPixelValue(x, y);
-				
-				if (sumS == 0) S2.putPixelValue(x, y, Math.log(Math.sqrt(tiny)));
-				else S2.putPixelValue(x, y, Math.log(Math.sqrt(sumS)));
-				
-			}
-		}
-			
-/*		ImagePlus test0 = new ImagePlus("S1", S1);		
-		test0.draw();test0.show();
-		
-		ImagePlus test1 = new ImagePlus("S2", S2);		
-		test1.draw();test1.show();*/
-		
-		S0[0] = S1;
-		S0[1] = S2;
-		
-		return S0;
-		
-	}
-	
-		
 	public ImagePlus[] applyAChosenThresholdingMethod(ImagePlus nowTiff, InputOutput.MyFileCollection mFC, MenuWaiter.ThresholderMenuReturn mTMR, int[] myZ) {
 		
 		String pathSep = "/";
@@ -3340,20 +2650,42 @@ public class ImageManipulator implements PlugIn {
 				
 	}
 	
-	public ImagePlus invertImage(ImagePlus nowTiff, PolygonRoi[] pRoi) {
+	public ImagePlus invertImage(ImagePlus nowTiff, final PolygonRoi[] pRoi) {
 		
 		ImageStack outStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
 		
-		for (int z = 0 ; z < nowTiff.getNSlices() ; z++) {			
-			
-			nowTiff.setPosition(z + 1);
-			
-			PolygonRoi nowRoi = null;
-			if (pRoi != null) nowRoi = pRoi[z];				
-			ImageProcessor nowIP = invertSoilBinary(nowTiff.getProcessor().duplicate(), nowRoi);
+		//16-bit and 32-bit images are inverted with respect to their display range, so leave them to ImageJ
+		if (nowTiff.getBitDepth() != 8) {
+			for (int z = 0 ; z < nowTiff.getNSlices() ; z++) {			
+				
+				nowTiff.setPosition(z + 1);
+				
+				PolygonRoi nowRoi = null;
+				if (pRoi != null) nowRoi = pRoi[z];				
+				ImageProcessor nowIP = invertSoilBinary(nowTiff.getProcessor().duplicate(), nowRoi);
+				
+				outStack.addSlice(nowIP);
+			}		
 			
-			outStack.addSlice(nowIP);
-		}		
+			return new ImagePlus("", outStack);
+		}
+		
+		final SliceView sV = new SliceView();
+		final ImageStack nowStack = nowTiff.getStack();
+		final int w = nowTiff.getWidth();
+		final int h = nowTiff.getHeight();
+		final Object[] outPixels = new Object[nowTiff.getNSlices()];
+		
+		sV.forEachSlice(outPixels.length, new SliceView.SliceTask() {
+			public void process(int z) {
+				SliceView.Slice outSlice = sV.newByteSlice(w, h);
+				sV.invert8Bit(sV.wrap(nowStack, z), outSlice);
+				if (pRoi != null) sV.clearOutside(outSlice, pRoi[z].getMask(), pRoi[z].getBounds());
+				outPixels[z] = outSlice.bytes;
+			}
+		});
+		
+		for (int z = 0 ; z < outPixels.length ; z++) outStack.addSlice("", outPixels[z]);
 		
 		ImagePlus outTiff = new ImagePlus("", outStack);
 		
@@ -3415,48 +2747,65 @@ public class ImageManipulator implements PlugIn {
 	
 	public ImagePlus binarizeLargerThanZero(ImagePlus nowTiff) {
 		
-		ImagePlus binTiff = new ImagePlus();
-		ImageStack binStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
+		final SliceView sV = new SliceView();
+		final ImageStack nowStack = nowTiff.getStack();
+		final Object[] binPixels = new Object[nowTiff.getNSlices()];
 		
-		for (int z = 0 ; z < nowTiff.getNSlices() ; z++) {
-			
-			nowTiff.setPosition(z + 1);
-			
-			ImageProcessor binIP = nowTiff.getProcessor().duplicate().convertToByte(false);
-			
-			for (int x = 0 ; x < binIP.getWidth() ; x++) {
-				for (int y = 0 ; y < binIP.getHeight() ; y++) {
-					
-					int nowPix = binIP.get(x, y);
-					if (nowPix > 0) binIP.putPixel(x, y, 255);
-					
-				}
+		sV.forEachSlice(binPixels.length, new SliceView.SliceTask() {
+			public void process(int z) {
+				ImageProcessor binIP = nowStack.getProcessor(z + 1).duplicate().convertToByte(false);
+				SliceView.Slice binSlice = sV.wrap(binIP);
+				sV.threshold(binSlice, binSlice, 0, 255);
+				binPixels[z] = binSlice.bytes;
 			}
-			
-			binStack.addSlice(binIP);
-		}
+		});
+		
+		ImagePlus binTiff = new ImagePlus();
+		ImageStack binStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
+		for (int z = 0 ; z < binPixels.length ; z++) binStack.addSlice("", binPixels[z]);
 		
 		binTiff.setStack(binStack);
 		
 		return binTiff;		
 	}
 	
-	public ImagePlus binarizeGradientMask(ImagePlus nowTiff, int myThresh) {
+	public ImagePlus binarizeGradientMask(ImagePlus nowTiff, final int myThresh) {
 		
 		ImagePlus outTiff = new ImagePlus();
 		ImageStack outStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());	
 		
-		//create mask for cutting out the rest..
-		for (int i = 0 ; i < nowTiff.getNSlices() ; i++) {
-			nowTiff.setPosition(i+1);		
-		
-			ImageProcessor binIP = nowTiff.getProcessor();
-			binIP.threshold(myThresh);
-			//binIP.dilate();			
-			binIP.multiply(1/255.0);
+		//ImageProcessor.threshold is only well defined for 8-bit images
+		if (nowTiff.getBitDepth() != 8) {
+			for (int i = 0 ; i < nowTiff.getNSlices() ; i++) {
+				nowTiff.setPosition(i+1);		
+			
+				ImageProcessor binIP = nowTiff.getProcessor();
+				binIP.threshold(myThresh);
+				binIP.multiply(1/255.0);
+				
+				outStack.addSlice(binIP);
+			}
+			outTiff.setStack(outStack);
 			
-			outStack.addSlice(binIP);
+			return outTiff;
 		}
+		
+		//create mask for cutting out the rest.. 1 above the threshold, 0 elsewhere
+		final SliceView sV = new SliceView();
+		final ImageStack nowStack = nowTiff.getStack();
+		final int w = nowTiff.getWidth();
+		final int h = nowTiff.getHeight();
+		final Object[] outPixels = new Object[nowTiff.getNSlices()];
+		
+		sV.forEachSlice(outPixels.length, new SliceView.SliceTask() {
+			public void process(int z) {
+				SliceView.Slice outSlice = sV.newByteSlice(w, h);
+				sV.threshold(sV.wrap(nowStack, z), outSlice, myThresh, 1);
+				outPixels[z] = outSlice.bytes;
+			}
+		});
+		
+		for (int i = 0 ; i < outPixels.length ; i++) outStack.addSlice("", outPixels[i]);
 		outTiff.setStack(outStack);
 		
 		return outTiff;		
@@ -3576,26 +2925,26 @@ public class ImageManipulator implements PlugIn {
 		return outIP;
 	}
 	
-	public ImagePlus clearOutside(ImagePlus nowTiff, PolygonRoi[] pRoi) {
+	public ImagePlus clearOutside(ImagePlus nowTiff, final PolygonRoi[] pRoi) {
 		
-		ImagePlus outTiff = new ImagePlus();
-		ImageStack outStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
+		final SliceView sV = new SliceView();
+		final ImageStack nowStack = nowTiff.getStack();
+		final Object[] outPixels = new Object[nowTiff.getNSlices()];
 				
-		//get the stacked histogram		
-		for (int i = 1 ; i < nowTiff.getNSlices() + 1 ; i++) {
-			
-			nowTiff.setPosition(i);		
-			
-			ImageProcessor myIP = nowTiff.getProcessor();
-			ImageProcessor modIP = myIP.duplicate();
-			
-			//cut out everything outside column			
-			modIP.setRoi(pRoi[i - 1]);
-			modIP.setColor(0);
-			modIP.fillOutside(pRoi[i - 1]);
+		//cut out everything outside column			
+		sV.forEachSlice(outPixels.length, new SliceView.SliceTask() {
+			public void process(int z) {
+				SliceView.Slice nowSlice = sV.wrap(nowStack, z);
+				SliceView.Slice modSlice = sV.newSliceLike(nowSlice);
+				System.arraycopy(sV.getPixels(nowSlice), 0, sV.getPixels(modSlice), 0, nowSlice.width * nowSlice.height);
+				sV.clearOutside(modSlice, pRoi[z].getMask(), pRoi[z].getBounds());
+				outPixels[z] = sV.getPixels(modSlice);
+			}
+		});
 		
-			outStack.addSlice(modIP);			
-		}
+		ImagePlus outTiff = new ImagePlus();
+		ImageStack outStack = new ImageStack(nowTiff.getWidth(), nowTiff.getHeight());
+		for (int i = 0 ; i < outPixels.length ; i++) outStack.addSlice("", outPixels[i]);
 		
 		outTiff.setStack("", outStack);		
 		
@@ -3605,48 +2954,18 @@ public class ImageManipulator implements PlugIn {
 	public ImagePlus binaryScale2HalfSize(ImagePlus binTiff) {
 		
 		ImagePlus smallTiff = new ImagePlus();
+		ImageStack binStack = binTiff.getStack();
 		ImageStack smallStack = new ImageStack(binTiff.getWidth() / 2, binTiff.getHeight() / 2);
 		
 		for (int z = 0 ; z < binTiff.getNSlices() - 1; z += 2) {
 			
-			binTiff.setSlice(z + 1);
-			ImageProcessor zIP1 = binTiff.getProcessor(); 
-			binTiff.setSlice(z + 2);
-			ImageProcessor zIP2 = binTiff.getProcessor();
+			//take the pixels from the stack, as the processor of the ImagePlus is the same object for all slices
+			byte[] lowerSlice = (byte[])binStack.getProcessor(z + 1).convertToByte(false).getPixels();
+			byte[] upperSlice = (byte[])binStack.getProcessor(z + 2).convertToByte(false).getPixels();
 			
-			ImageProcessor outIP = new ByteProcessor(smallStack.getWidth(), smallStack.getHeight());
+			byte[] half = binaryVote2HalfSize(lowerSlice, upperSlice, binTiff.getWidth(), binTiff.getHeight());
 			
-			for (int x = 0 ; x < binTiff.getWidth() - 1 ; x += 2) {
-				for (int y = 0 ; y < binTiff.getHeight() - 1 ; y += 2) {
-					
-					int black = 0;
-					int white = 0;
-					
-					int nowPixel = 128;
-					
-					for (int i = 0 ; i < 2 ; i++) {
-						for (int j = 0 ; j < 2 ; j++) {
-							nowPixel = zIP1.get(x + i, y + j);
-							if (nowPixel == 0) black++;
-							if (nowPixel == 255) white++;
-						}
-					}
-					
-					for (int i = 0 ; i < 2 ; i++) {
-						for (int j = 0 ; j < 2 ; j++) {
-							nowPixel = zIP2.get(x + i, y + j);
-							if (nowPixel == 0) black++;
-							if (nowPixel == 255) white++;
-						}
-					}
-					
-					if (black > white) outIP.putPixel(x / 2, y / 2, 0);
-					else outIP.putPixel(x / 2, y / 2, 255);
-					
-				}
-			}
-			
-			smallStack.addSlice(outIP);
+			smallStack.addSlice(new ByteProcessor(smallStack.getWidth(), smallStack.getHeight(), half, null));
 			
 		}
 		
@@ -3656,6 +2975,44 @@ public class ImageManipulator implements PlugIn {
 		
 	}
 	
+	/**
+	 * Majority vote of the 2x2x2 blocks spanned by two consecutive slices of a binary image.
+	 * Odd left-overs in x and y are dropped and ties become white (255).
+	 * 
+	 * @return the pixels of the half-sized slice
+	 */
+	public byte[] binaryVote2HalfSize(byte[] lowerSlice, byte[] upperSlice, int width, int height) {
+		
+		int hxl = width / 2;
+		int hyl = height / 2;
+		
+		byte[] half = new byte[hxl * hyl];
+		
+		for (int y = 0 ; y < hyl ; y++) {
+			for (int x = 0 ; x < hxl ; x++) {
+				
+				int black = 0;
+				int white = 0;
+				
+				for (int j = 0 ; j < 2 ; j++) {
+					int row = (2 * y + j) * width + 2 * x;
+					for (int i = 0 ; i < 2 ; i++) {
+						int a = lowerSlice[row + i] & 0xff;
+						int b = upperSlice[row + i] & 0xff;
+						if (a == 0) black++;
+						if (a == 255) white++;
+						if (b == 0) black++;
+						if (b == 255) white++;
+					}
+				}
+				
+				if (black <= white) half[y * hxl + x] = (byte)255;
+			}
+		}
+		
+		return half;
+	}
+	
 	/*public ImagePlus scaleIsotropicly3D(ImagePlus nowTiff, double scalingFactor) {
 		
 		//probe size of scaled Image
@@ -0,0 +1,287 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * InnerCircleCache is a SoilJ class that keeps the column geometries of the InnerCircle files in memory, so
+ * that the plugins that need the geometry of the same column several times only parse its text file once.
+ * An InnerCircle file may also have a binary twin (the same path with ".bin" appended) holding the parsed
+ * values, so later sessions can skip the parsing, too. The twins are only written on request, with the
+ * plugin ConvertInnerCircles2Binary_ or InputOutput.convertInnerCircle2Binary; reading an InnerCircle file
+ * never writes one. Both the cached geometry and the binary twin are only used as long as the modification
+ * time and the length of the text file are the ones they were made from.
+ *
+ * The text files remain the reference; the binary twins are not listed as InnerCircle files and may be
+ * deleted at any time.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class InnerCircleCache {
+
+	public static final String BINARY_EXTENSION = ".bin";
+
+	static final long MAGIC = 0x536F696C4A494342L;		//"SoilJICB"
+	static final int FORMAT_VERSION = 1;
+	static final int NUMBER_OF_VECTORS = 14;
+
+	static final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+	static class Entry {
+
+		long modified;
+		long length;
+		ObjectDetector.ColCoords3D jCO;
+
+	}
+
+	/**
+	 * @return a copy of the geometry of the InnerCircle file, from memory or from its binary twin, or null
+	 * if the text file has to be parsed
+	 */
+	public static ObjectDetector.ColCoords3D load(String nowGaugePath) {
+
+		File gaugeFile = new File(nowGaugePath);
+		long modified = gaugeFile.lastModified();
+		long length = gaugeFile.length();
+		if (modified == 0) return null;
+
+		String key = gaugeFile.getAbsolutePath();
+		Entry nowEntry = cache.get(key);
+		if (nowEntry != null && nowEntry.modified == modified && nowEntry.length == length) return copy(nowEntry.jCO);
+
+		ObjectDetector.ColCoords3D jCO = readBinary(nowGaugePath + BINARY_EXTENSION, modified, length);
+		if (jCO == null) return null;
+
+		remember(key, modified, length, jCO);
+
+		return copy(jCO);
+	}
+
+	/**
+	 * Remembers the geometry just parsed from the InnerCircle file.
+	 */
+	public static void store(String nowGaugePath, ObjectDetector.ColCoords3D jCO) {
+
+		File gaugeFile = new File(nowGaugePath);
+		long modified = gaugeFile.lastModified();
+		long length = gaugeFile.length();
+		if (modified == 0) return;
+
+		remember(gaugeFile.getAbsolutePath(), modified, length, copy(jCO));
+	}
+
+	/**
+	 * Writes the binary twin of the InnerCircle file the geometry was parsed from.
+	 *
+	 * @return true if the twin could be written
+	 */
+	public static boolean writeTwin(String nowGaugePath, ObjectDetector.ColCoords3D jCO) {
+
+		File gaugeFile = new File(nowGaugePath);
+		long modified = gaugeFile.lastModified();
+		long length = gaugeFile.length();
+		if (modified == 0) return false;
+
+		return writeBinary(nowGaugePath + BINARY_EXTENSION, jCO, modified, length);
+	}
+
+	/**
+	 * Drops the geometry of an InnerCircle file that is about to be overwritten, together with its binary twin.
+	 */
+	public static void forget(String nowGaugePath) {
+
+		cache.remove(new File(nowGaugePath).getAbsolutePath());
+
+		File binaryFile = new File(nowGaugePath + BINARY_EXTENSION);
+		if (binaryFile.exists()) binaryFile.delete();
+	}
+
+	static void remember(String key, long modified, long length, ObjectDetector.ColCoords3D jCO) {
+
+		Entry nowEntry = new Entry();
+		nowEntry.modified = modified;
+		nowEntry.length = length;
+		nowEntry.jCO = jCO;
+
+		cache.put(key, nowEntry);
+	}
+
+	/**
+	 * Copies all that is stored in an InnerCircle file, so that the callers may modify their geometry.
+	 */
+	public static ObjectDetector.ColCoords3D copy(ObjectDetector.ColCoords3D jCO) {
+
+		ObjectDetector jOD = new ObjectDetector();
+		ObjectDetector.ColCoords3D outCO = jOD.new ColCoords3D();
+
+		outCO.tiltInXZ = jCO.tiltInXZ;
+		outCO.tiltInYZ = jCO.tiltInYZ;
+		outCO.tiltTotal = jCO.tiltTotal;
+		outCO.heightOfColumn = jCO.heightOfColumn;
+		outCO.numberOfImputedLayers = jCO.numberOfImputedLayers;
+
+		double[][] vectors = getVectors(jCO);
+		for (int i = 0 ; i < NUMBER_OF_VECTORS ; i++) if (vectors[i] != null) vectors[i] = vectors[i].clone();
+		setVectors(outCO, vectors);
+
+		return outCO;
+	}
+
+	static double[][] getVectors(ObjectDetector.ColCoords3D jCO) {
+		return new double[][]{jCO.xmid, jCO.ymid, jCO.zmid, jCO.ixmid, jCO.iymid,
+				jCO.outerMajorRadius, jCO.innerMajorRadius, jCO.outerMinorRadius, jCO.innerMinorRadius,
+				jCO.wallThickness, jCO.theta, jCO.itheta, jCO.outerR2, jCO.innerR2};
+	}
+
+	static void setVectors(ObjectDetector.ColCoords3D jCO, double[][] vectors) {
+		jCO.xmid = vectors[0];
+		jCO.ymid = vectors[1];
+		jCO.zmid = vectors[2];
+		jCO.ixmid = vectors[3];
+		jCO.iymid = vectors[4];
+		jCO.outerMajorRadius = vectors[5];
+		jCO.innerMajorRadius = vectors[6];
+		jCO.outerMinorRadius = vectors[7];
+		jCO.innerMinorRadius = vectors[8];
+		jCO.wallThickness = vectors[9];
+		jCO.theta = vectors[10];
+		jCO.itheta = vectors[11];
+		jCO.outerR2 = vectors[12];
+		jCO.innerR2 = vectors[13];
+	}
+
+	/**
+	 * Writes the geometry in the binary format: a header with the format, the modification time and the
+	 * length of the text file it stems from and the scalars, followed by the 14 vectors of all layers.
+	 *
+	 * @return true if the file could be written
+	 */
+	public static boolean writeBinary(String binaryPath, ObjectDetector.ColCoords3D jCO, long sourceModified, long sourceLength) {
+
+		File binaryFile = new File(binaryPath);
+		File tmpFile = null;
+
+		try {
+			//write next to the final file and move it there, so that a parallel reader never sees half a file
+			tmpFile = File.createTempFile(binaryFile.getName(), ".tmp", binaryFile.getAbsoluteFile().getParentFile());
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				double[][] vectors = getVectors(jCO);
+				int numberOfLayers = jCO.xmid == null ? 0 : jCO.xmid.length;
+
+				out.writeLong(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(sourceModified);
+				out.writeLong(sourceLength);
+
+				out.writeDouble(jCO.tiltInXZ);
+				out.writeDouble(jCO.tiltInYZ);
+				out.writeDouble(jCO.tiltTotal);
+				out.writeInt(jCO.heightOfColumn);
+				out.writeInt(jCO.numberOfImputedLayers);
+
+				out.writeInt(numberOfLayers);
+				for (int i = 0 ; i < NUMBER_OF_VECTORS ; i++) {
+					for (int j = 0 ; j < numberOfLayers ; j++) out.writeDouble(vectors[i] == null ? 0 : vectors[i][j]);
+				}
+			}
+			finally {
+				out.close();
+			}
+
+			if (binaryFile.exists()) binaryFile.delete();
+			if (tmpFile.renameTo(binaryFile)) return true;
+		}
+		catch (IOException e) {}
+		catch (SecurityException e) {}
+
+		if (tmpFile != null) tmpFile.delete();
+
+		return false;
+	}
+
+	/**
+	 * @return the geometry stored in the binary file, or null if there is none or it does not stem from the
+	 * text file with the given modification time and length
+	 */
+	public static ObjectDetector.ColCoords3D readBinary(String binaryPath, long sourceModified, long sourceLength) {
+
+		File binaryFile = new File(binaryPath);
+		if (!binaryFile.isFile()) return null;
+
+		ByteBuffer buf;
+		try {
+			FileInputStream in = new FileInputStream(binaryFile);
+			try {
+				FileChannel fc = in.getChannel();
+				if (fc.size() > Integer.MAX_VALUE) return null;
+				buf = ByteBuffer.allocate((int)fc.size());
+				while (buf.hasRemaining() && fc.read(buf) >= 0);
+				buf.flip();
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {return null;}
+
+		try {
+			if (buf.getLong() != MAGIC) return null;
+			if (buf.getInt() != FORMAT_VERSION) return null;
+			if (buf.getLong() != sourceModified) return null;
+			if (buf.getLong() != sourceLength) return null;
+
+			ObjectDetector jOD = new ObjectDetector();
+			ObjectDetector.ColCoords3D jCO = jOD.new ColCoords3D();
+
+			jCO.tiltInXZ = buf.getDouble();
+			jCO.tiltInYZ = buf.getDouble();
+			jCO.tiltTotal = buf.getDouble();
+			jCO.heightOfColumn = buf.getInt();
+			jCO.numberOfImputedLayers = buf.getInt();
+
+			int numberOfLayers = buf.getInt();
+			if (numberOfLayers < 0 || (long)numberOfLayers * NUMBER_OF_VECTORS * 8 != buf.remaining()) return null;
+
+			double[][] vectors = new double[NUMBER_OF_VECTORS][numberOfLayers];
+			DoubleBuffer values = buf.asDoubleBuffer();
+			for (int i = 0 ; i < NUMBER_OF_VECTORS ; i++) values.get(vectors[i]);
+			setVectors(jCO, vectors);
+
+			return jCO;
+		}
+		catch (RuntimeException e) {return null;}	//truncated or otherwise broken file
+	}
+
+}
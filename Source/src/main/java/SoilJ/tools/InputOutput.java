@@ -142,6 +142,58 @@ public class InputOutput extends ImagePlus implements PlugIn {
 		
 	}
 	
+	public MyFileCollection copyMyFileCollection(MyFileCollection mFC) {
+		
+		//shallow copy, so that several samples can be worked on at the same time
+		MyFileCollection outFC = new MyFileCollection();
+		
+		outFC.pathSep = mFC.pathSep;
+		
+		outFC.myBaseFolder = mFC.myBaseFolder;
+		outFC.myPreOutFolder = mFC.myPreOutFolder;
+		outFC.myOutFolder = mFC.myOutFolder;
+		outFC.mySurfaceFolder = mFC.mySurfaceFolder;
+		outFC.myCutSurfaceFolder = mFC.myCutSurfaceFolder;
+		outFC.myResultsFolder = mFC.myResultsFolder;
+		outFC.myHistogramFolder = mFC.myHistogramFolder;
+		outFC.myInnerCircleFolder = mFC.myInnerCircleFolder;
+		outFC.myGradientFolder = mFC.myGradientFolder;
+		outFC.myPoreFolder = mFC.myPoreFolder;
+		outFC.myPOMFolder = mFC.myPOMFolder;
+		outFC.myMatrixFolder = mFC.myMatrixFolder;
+		outFC.myMineralFolder = mFC.myMineralFolder;
+		outFC.myFloyWarshallFolder = mFC.myFloyWarshallFolder;
+		
+		outFC.myTiffs = mFC.myTiffs;
+		outFC.mySurfaceFileNames = mFC.mySurfaceFileNames;
+		outFC.myInnerCircleFiles = mFC.myInnerCircleFiles;
+		
+		outFC.nowTiffPath = mFC.nowTiffPath;
+		outFC.fileInfo = mFC.fileInfo;
+		outFC.fileName = mFC.fileName;
+		outFC.colName = mFC.colName;
+		outFC.startSlice = mFC.startSlice;
+		outFC.stopSlice = mFC.stopSlice;
+		outFC.nOfSlices = mFC.nOfSlices;
+		outFC.nowWidth = mFC.nowWidth;
+		outFC.nowHeight = mFC.nowHeight;
+		outFC.bitDepth = mFC.bitDepth;
+		outFC.nowInnerCirclePath = mFC.nowInnerCirclePath;
+		
+		outFC.somethingIsWrong = mFC.somethingIsWrong;
+		outFC.imageHasBeenLoaded = mFC.imageHasBeenLoaded;
+		outFC.eMsg = mFC.eMsg;
+		
+		outFC.nowTiff = mFC.nowTiff;
+		
+		outFC.caliZ = mFC.caliZ;
+		outFC.caliX = mFC.caliX;
+		outFC.caliY = mFC.caliY;
+		
+		return outFC;
+		
+	}
+	
 	public MyFileCollection addCurrentFileInfo8Bit(MyFileCollection mFC) {
 		
 		String pathSep = "/";
@@ -459,6 +511,37 @@ public class InputOutput extends ImagePlus implements PlugIn {
 		return mFC;
 	}	
 	
+	public MyFileCollection fileSelector(File myFile) {
+		
+		//same as above but without dialogs.. a folder means all TIFFs in it, a file only this file
+		
+		MyFileCollection mFC = new MyFileCollection();
+		
+		if (myFile.isDirectory()) {
+			
+			String myPath = myFile.getAbsolutePath().replace('\\', '/');
+			if (myPath.endsWith("/")) myPath = myPath.substring(0, myPath.length() - 1);
+			
+			String[] myTiffs = listTiffsInFolder(myFile);
+			
+			mFC = getAllMyNeededFolders(myPath, myTiffs, "", false, false);
+		}
+		
+		else {
+			
+			String myPath = myFile.getAbsoluteFile().getParent().replace('\\', '/');
+			if (myPath.endsWith("/")) myPath = myPath.substring(0, myPath.length() - 1);
+			
+			String[] myTiff = new String[1]; 
+			myTiff[0] = myFile.getName();
+			
+			mFC = getAllMyNeededFolders(myPath, myTiff, "", false, false);
+			
+		}
+		
+		return mFC;
+	}
+	
 	public String chooseAFolder(String heading) {
 		
 		DirectoryChooser od = new DirectoryChooser(heading);
@@ -1051,6 +1134,12 @@ public class InputOutput extends ImagePlus implements PlugIn {
 	
 	public ImagePlus openTiff3DSomeSlices(MyFileCollection mFC, int[] sampleSlices) {
 		
+		//read the slices slab-wise, reusing the already parsed file info only if it stems from this very file
+		FileInfo[] fI = null;
+		if (fileInfoDescribesFile(mFC.fileInfo, mFC.nowTiffPath)) fI = mFC.fileInfo;
+		ImagePlus slabTiff = openTiff3DSomeSlicesAsSlabs(mFC.nowTiffPath, fI, sampleSlices);
+		if (slabTiff != null) return slabTiff;
+		
 		Opener oT3D = new Opener();
 		ImagePlus nowTiff = new ImagePlus();		
 				
@@ -1079,6 +1168,10 @@ public class InputOutput extends ImagePlus implements PlugIn {
 	
 	public ImagePlus openTiff3DSomeSlices(String nowTiffPath, int width, int height, int[] sampleSlices) {
 		
+		//read the slices slab-wise if possible
+		ImagePlus slabTiff = openTiff3DSomeSlicesAsSlabs(nowTiffPath, null, sampleSlices);
+		if (slabTiff != null) return slabTiff;
+		
 		Opener oT3D = new Opener();
 		ImagePlus nowTiff = new ImagePlus();		
 				
@@ -1102,6 +1195,43 @@ public class InputOutput extends ImagePlus implements PlugIn {
 		
 	}
 	
+	/**
+	 * @return true if the file info has been parsed from the file at nowTiffPath and the file still holds all the slices it describes
+	 */
+	public boolean fileInfoDescribesFile(FileInfo[] fI, String nowTiffPath) {
+		
+		if (fI == null || fI.length == 0 || nowTiffPath == null) return false;
+		if (fI[0].fileName == null || fI[0].directory == null) return false;
+		
+		File nowFile = new File(nowTiffPath);
+		File infoFile = new File(fI[0].directory, fI[0].fileName);
+		if (!nowFile.getAbsoluteFile().equals(infoFile.getAbsoluteFile())) return false;
+		
+		//the file may have been overwritten since its IFDs were parsed
+		TiffSlabReader tSR = new TiffSlabReader(nowTiffPath, fI);
+		long imageSize = (long)fI[0].width * fI[0].height * fI[0].getBytesPerPixel();
+		if (tSR.getNSlices() < 1) return false;
+		if (tSR.getSliceOffset(tSR.getNSlices()) + imageSize > nowFile.length()) return false;
+		
+		return true;
+		
+	}
+	
+	public ImagePlus openTiff3DSomeSlicesAsSlabs(String nowTiffPath, FileInfo[] fI, int[] sampleSlices) {
+		
+		//returns null if the file cannot be read like this (e.g. compressed TIFFs)
+		try {
+			TiffSlabReader tSR = new TiffSlabReader(nowTiffPath, fI);
+			if (!tSR.canRead()) return null;
+			for (int i = 0 ; i < sampleSlices.length ; i++) if (sampleSlices[i] < 1 | sampleSlices[i] > tSR.getNSlices()) return null;
+			return tSR.readSlices(sampleSlices);
+		}
+		catch(Exception e) {
+			return null;
+		}
+		
+	}
+	
 	public ImagePlus openTiff2D(String nowTiffPath) {
 		
 		Opener oT2D = new Opener();
@@ -1135,12 +1265,14 @@ public class InputOutput extends ImagePlus implements PlugIn {
 	
 	public void save2DHistogramAsTiff(MyFileCollection mFC, double[][] histogram2D) {
 		
-		ImageProcessor histAsImage = new FloatProcessor(256, 256);		
+		int grayBins = histogram2D.length;
+		int gradientBins = histogram2D[0].length;
+		ImageProcessor histAsImage = new FloatProcessor(grayBins, gradientBins);		
 				
 		//create Image
 		IJ.showStatus("Compiling histogram topography ...");
-		for (int y = 0 ; y < 256 ; y++) {			
-			for (int x = 0 ; x < 256 ; x++) {			
+		for (int y = 0 ; y < gradientBins ; y++) {			
+			for (int x = 0 ; x < grayBins ; x++) {			
 				double pix2Put = Math.log10(histogram2D[x][y]);
 				if (pix2Put < -10) pix2Put = -10;
 				pix2Put += 10;
@@ -1493,6 +1625,48 @@ public class InputOutput extends ImagePlus implements PlugIn {
         
     }		
 	
+	public boolean writeSubROIVolumeTable(String path, REVAnalyses.REVAnalysesPack revPack, double[] bulkVolume, double[] phaseVolume, double[][] meanIntercepts) {
+		
+		try{
+            
+			//open file
+			FileOutputStream fos = new FileOutputStream(path);
+            Writer w = new BufferedWriter(new OutputStreamWriter(fos));
+            
+            //write header
+        	String myHeader = "ROI\t" + "x1\t" + "x2\t" + "y1\t" + "y2\t" + "z1\t" + "z2\t" + "bulkVolume\t" + "phaseVolume\t" + "phaseVolumeFraction";
+        	if (meanIntercepts != null) myHeader += "\t" + "meanInterceptsX\t" + "meanInterceptsY\t" + "meanInterceptsZ";
+        	w.write(myHeader + "\n");
+                        
+            //write the data
+        	for (int j = 0 ; j < revPack.numberOfROIs ; j++) {
+        		
+        		String outString = revPack.roiName[j] + "\t";
+        		outString += revPack.x1[j] + "\t" + revPack.x2[j] + "\t" + revPack.y1[j] + "\t" + revPack.y2[j] + "\t" + revPack.z1[j] + "\t" + revPack.z2[j] + "\t";
+        		outString += String.format("%1.6e", bulkVolume[j]) + "\t" + String.format("%1.6e", phaseVolume[j]) + "\t";
+        		if (bulkVolume[j] > 0) outString += String.format("%1.4e", phaseVolume[j] / bulkVolume[j]);
+        		else outString += String.format("%1.4e", 0d);
+        		if (meanIntercepts != null) for (int i = 0 ; i < 3 ; i++) outString += "\t" + String.format("%1.6e", meanIntercepts[j][i]);
+        		
+        		//replace comma by period
+        		w.write(outString.replace(',', '.') + "\n");
+        	}
+        	
+        	w.flush();
+            
+            //close file
+            w.close();
+            
+        }catch(Exception e){
+        
+        	return true;
+        	
+        }
+        
+		return false;
+        
+    }
+	
 	public boolean writeClusterMorphoResults(String sampleName, String path, MorphologyAnalyzer.PoreClusterProps mPCP) {
 	       
 		try{
@@ -1749,6 +1923,9 @@ public class InputOutput extends ImagePlus implements PlugIn {
 	
 	public boolean writeInnerCircleVer0(String path, ObjectDetector.ColCoords3D jCO) {
 	       
+		//the file is about to change
+		InnerCircleCache.forget(path);
+		
 		try{
             //open file
 			FileOutputStream fos = new FileOutputStream(path);
@@ -1907,6 +2084,9 @@ public class InputOutput extends ImagePlus implements PlugIn {
 	
 	public boolean writeInnerCircleVer1(String path, ObjectDetector.ColCoords3D jCO) {
 	       
+		//the file is about to change
+		InnerCircleCache.forget(path);
+		
 		try{
             //open file
 			FileOutputStream fos = new FileOutputStream(path);
@@ -2077,6 +2257,27 @@ public class InputOutput extends ImagePlus implements PlugIn {
         
     }*/
 	
+	/**
+	 * Parses an InnerCircle text file of either version and writes its binary twin.
+	 * 
+	 * @return true if the binary file could be written
+	 */
+	public boolean convertInnerCircle2Binary(String nowGaugePath) {
+		
+		//parse the text file, not what might already be known of it
+		InnerCircleCache.forget(nowGaugePath);
+		
+		ObjectDetector.ColCoords3D jCO;
+		int versio = checkInnerCircleFileVersion(nowGaugePath);
+		if (versio < 0) return false;
+		if (versio == 0) jCO = readInnerCircleVer0(nowGaugePath);	
+		else jCO = readInnerCircleVer1(nowGaugePath);
+		if (jCO == null) return false;
+		
+		return InnerCircleCache.writeTwin(nowGaugePath, jCO);
+		
+	}
+	
 	public int checkInnerCircleFileVersion(String nowGaugePath) {
 		
 		int cc = 0;
@@ -2222,6 +2423,10 @@ public class InputOutput extends ImagePlus implements PlugIn {
 	
 	public ObjectDetector.ColCoords3D readInnerCircleVer0(String nowGaugePath) {
 		
+		//take the geometry from the cache or the binary twin of the file if it has not been changed since
+		ObjectDetector.ColCoords3D cachedCO = InnerCircleCache.load(nowGaugePath);
+		if (cachedCO != null) return cachedCO;
+		
 		ObjectDetector jOD = new ObjectDetector();
 		ObjectDetector.ColCoords3D jCO = jOD.new ColCoords3D();
 		
@@ -2330,12 +2535,18 @@ public class InputOutput extends ImagePlus implements PlugIn {
 		jCO.outerR2 = outerR2;
 		jCO.innerR2 = innerR2;
 		
+		InnerCircleCache.store(nowGaugePath, jCO);
+		
 		return jCO;
 		
 	}
 	
 	public ObjectDetector.ColCoords3D readInnerCircleVer1(String nowGaugePath) {
 		
+		//take the geometry from the cache or the binary twin of the file if it has not been changed since
+		ObjectDetector.ColCoords3D cachedCO = InnerCircleCache.load(nowGaugePath);
+		if (cachedCO != null) return cachedCO;
+		
 		ObjectDetector jOD = new ObjectDetector();
 		ObjectDetector.ColCoords3D jCO = jOD.new ColCoords3D();
 		
@@ -2441,6 +2652,8 @@ public class InputOutput extends ImagePlus implements PlugIn {
 		jCO.outerR2 = outerR2;
 		jCO.innerR2 = innerR2;
 		
+		InnerCircleCache.store(nowGaugePath, jCO);
+		
 		return jCO;
 		
 	}
@@ -3517,9 +3730,15 @@ public class InputOutput extends ImagePlus implements PlugIn {
 	
 	public MyFileCollection createFolders4SubROIData(MenuWaiter.PoreSpaceAnalyzerOptions mPSA) {
 		
-		String pathSep = "/";	
-		
 		MyFileCollection mFC = fileSelector("Please choose a file or folder with your image data");
+		
+		return createFolders4SubROIData(mPSA, mFC);
+		
+	}
+	
+	public MyFileCollection createFolders4SubROIData(MenuWaiter.PoreSpaceAnalyzerOptions mPSA, MyFileCollection mFC) {
+		
+		String pathSep = "/";	
 					
 		//create output paths
 		String myPreOutFolder = "";		
@@ -3759,8 +3978,8 @@ public class InputOutput extends ImagePlus implements PlugIn {
 		
 		String savePath = mFC.myOutFolder + mFC.pathSep + mFC.colName;
 		
-		//re-calculate to 16 bit if necessary
-		if (mFC.bitDepth == 16) {
+		//re-calculate to 16 bit if the thresholds were searched in an 8-bit histogram
+		if (mFC.bitDepth == 16 & mRS.convert2EightBit) {
 			for (int i = 0 ; i < myThresholds.length ; i++) { 
 				for (int j = 0 ; j < myThresholds[i].length ; j++) {
 					if (mRS.lowerBoundary > 0 | mRS.upperBoundary > 0) {
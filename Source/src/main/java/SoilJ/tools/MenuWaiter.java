@@ -136,6 +136,8 @@ public class MenuWaiter implements PlugIn {
 
 		public boolean performParticleAnalyses;
 
+		public int numberOfParallelROIs = 1;		//number of sub-ROIs analysed at the same time, 0 for all processors
+
 		public boolean calcVolume;
 		public boolean calcEuler;
 		public boolean calcThickness;
@@ -154,6 +156,12 @@ public class MenuWaiter implements PlugIn {
 	public class Extract2DHistogramOptions {
 		
 		public boolean calcGradientImage;
+		public boolean useSobelGradient = false;		//3-D Sobel filter into a 16-bit image, else the 32-bit process3d.Gradient
+		
+		public int numberOfGrayValueBins = 256;
+		public double maxGrayValue = 65536;
+		public int numberOfGradientBins = 256;
+		public double maxGradient = 6553.6;
 		
 		public ROISelectionOptions mRSO;
 		
@@ -251,6 +259,8 @@ public class MenuWaiter implements PlugIn {
 		public int numberOfBlankSlices2Add;
 		public int numberOfCopiedSlices2Add;
 		
+		//batch mode
+		public int numberOfParallelColumns = 1;
 
 	}
 	
@@ -335,6 +345,7 @@ public class MenuWaiter implements PlugIn {
 		public int numOfCopies;
 		public String mode;
 		public double[] porosityList;
+		public long seed;						//0 for a new seed each time
 
 	}
 	
@@ -609,6 +620,7 @@ public class MenuWaiter implements PlugIn {
 		GenericDialog gd = new GenericDialog("Multi region segmentation");
 	
 		gd.addCheckbox("I am using 16-bit images", true);
+		gd.addCheckbox("Search the thresholds in the full 16-bit histogram (slower, but without binning to 8-bit)", false);
 		gd.addNumericField("Please enter the lower boundary of the relevant grayscale range.", 5000, 0, 6, "");
 		gd.addNumericField("Please enter the upper boundary of the relevant grayscale range.", 20000, 0, 6, "");
 		
@@ -627,7 +639,9 @@ public class MenuWaiter implements PlugIn {
 	    if (gd.wasCanceled()) return null;
 	    else {
  
-	    	mRS.convert2EightBit = gd.getNextBoolean();
+	    	boolean sixteenBit = gd.getNextBoolean();
+	    	boolean fullHistogram = gd.getNextBoolean();
+	    	mRS.convert2EightBit = sixteenBit & !fullHistogram;
 	    	mRS.lowerBoundary = (int)Math.round(gd.getNextNumber());
 	    	mRS.upperBoundary = (int)Math.round(gd.getNextNumber());
 	    	
@@ -997,27 +1011,44 @@ public class MenuWaiter implements PlugIn {
 
 	    	String myChoice = gd.getNextChoice();
 
-	    	if (myChoice.equalsIgnoreCase(items[0])) {
-	    		m3D.operation = "+";
-	    		m3D.operationTag = "Plus";
-	    	}
-
-	    	if (myChoice.equalsIgnoreCase(items[1])) {
-	    		m3D.operation = "-";
-	    		m3D.operationTag = "Minus";
-	    	}
+	    	if (myChoice.equalsIgnoreCase(items[0])) m3D.operation = "+";
+	    	if (myChoice.equalsIgnoreCase(items[1])) m3D.operation = "-";
 
 	    	m3D.useInnerCircle = gd.getNextBoolean();
 
 	    	m3D.filterTag = gd.getNextString();
-	    	if (m3D.filterTag.hashCode() == 0) m3D.filterImages = false;
-	    	else m3D.filterImages = true;
+	    	
+	    	complete3DCalcOptions(m3D);
 
 	      	return m3D;
 	    }
 
 	}
 	
+	public Calc3DMenuReturn getDefault3DCalcOptions() {
+		
+		//same defaults as in show3DCalcDialog
+		Calc3DMenuReturn m3D = new Calc3DMenuReturn();
+		
+		m3D.operation = "-";
+		m3D.useInnerCircle = false;
+		m3D.filterTag = "";
+		
+		return m3D;
+		
+	}
+	
+	public void complete3DCalcOptions(Calc3DMenuReturn m3D) {
+		
+		if (m3D.operation.equals("+")) m3D.operationTag = "Plus";
+		else if (m3D.operation.equals("-")) m3D.operationTag = "Minus";
+		else throw new IllegalArgumentException("Unknown operation '" + m3D.operation + "', only + and - are implemented");
+		
+		if (m3D.filterTag == null || m3D.filterTag.length() == 0) m3D.filterImages = false;
+		else m3D.filterImages = true;
+		
+	}
+	
 	
 
 	public class HistogramMenuReturn {
@@ -1178,12 +1209,18 @@ public class MenuWaiter implements PlugIn {
 		public String lowerTag;
 		public String upperTag;
 		
+		//where the quantiles are sampled if the InnerCircle files are used, one of calibrationSamplingLocations
+		public String lowerSamplingLocation = calibrationSamplingLocations[0];
+		public String upperSamplingLocation = calibrationSamplingLocations[0];
+		
 		public int windowSize;
 		public String lowerSmoothingFilter;
 		public String upperSmoothingFilter;		
 
 	}
 
+	public static final String[] calibrationSamplingLocations = {"inside the column", "outside the column, close to the wall", "outside the column, with distance to the wall"};
+	
 	public CalibrationReferences showCalibrationMenu() {
 
 		MenuWaiter.CalibrationReferences mNR = new CalibrationReferences();
@@ -1210,7 +1247,7 @@ public class MenuWaiter implements PlugIn {
 		String[] hiRef = {"quantile", "wall"};
 		gd.addRadioButtonGroup("How do you want to define you upper reference gray value?", hiRef, 2, 1, hiRef[1]);
 
-		String[] samplingLocation = {"inside the column", "outside the column, close to the wall", "outside the column, with distance to the wall"};
+		String[] samplingLocation = calibrationSamplingLocations;
 
 		String[] smoothingFilter = {"Median", "Mean", "Minimum", "Maximum"};
 		
@@ -1265,10 +1302,6 @@ public class MenuWaiter implements PlugIn {
 		    newGD.addRadioButtonGroup("Choose smoothing method for lower reference profile", smoothingFilter, 2, 2, smoothingFilter[0]);
 		    newGD.addRadioButtonGroup("Choose smoothing method for upper reference profile", smoothingFilter, 2, 2, smoothingFilter[0]);
 		      
-		    //show dialog
-		    String sampleLowerWithinSoil = "";
-		    String sampleUpperWithinSoil = "";
-
 			myReference = "If you are using this plugin please cite the following references: \n\n";
 			newGD.setInsets(40, 0, 0);newGD.addMessage(myReference);
 			myReference = "Koestel, J. 2018. SoilJ: An ImageJ plugin for the semiautomatic processing of three-dimensional X-ray images of soils.\n ";
@@ -1281,57 +1314,12 @@ public class MenuWaiter implements PlugIn {
 	  	    else {
 	  	    	if (mNR.lowRef.equalsIgnoreCase("quantile")) {
 	  	    		mNR.lowerReference = newGD.getNextNumber();
-	  	    		
-	  	    		String mylo = String.format("%1.4f", mNR.lowerReference);
-	  		    	mNR.lowerTag = "Quantile" + mylo.substring(2, 5);
-	  		    	
-	  		    	mNR.sampleLowerWithinSoil = true;
-
-	  		    	if (mNR.useInnerCircle) {
-		  	    		
-	  		    		sampleLowerWithinSoil = newGD.getNextRadioButton();
-		  	    		
-		  		    	if (sampleLowerWithinSoil == samplingLocation[0]) {
-		  		    		mNR.sampleLowerWithinSoil = true;
-		  		    		mNR.lowerTag += "Inside";
-		  		    	}
-		  		    	else {
-		  		    		mNR.sampleLowerWithinSoil = false;
-		  		    		if (sampleLowerWithinSoil == samplingLocation[1]) {	  		    	   		
-		  		    	   		mNR.lowerTag += "Outside";
-		  		    		}
-		  		    		else {
-		  		    			mNR.lowerTag += "FarOutside";
-		  		    		}
-		  		    	}	
-	  	    		}
+	  		    	if (mNR.useInnerCircle) mNR.lowerSamplingLocation = newGD.getNextRadioButton();
 	  	    	}
   	    	
 	  	    	if (mNR.hiRef.equalsIgnoreCase("quantile")) {
 	  	    		mNR.upperReference = newGD.getNextNumber();
-	  	    		
-	  	    		String myup = String.format("%1.4f", mNR.upperReference);
-	  		    	mNR.upperTag = "Quantile" + myup.substring(2, 5);
-	  		    	
-	  		    	mNR.sampleUpperWithinSoil = true;
-
-	  		    	if (mNR.useInnerCircle) {
-	  		    		sampleUpperWithinSoil = newGD.getNextRadioButton();
-	  		    		  		    	
-		  		    	if (sampleUpperWithinSoil == samplingLocation[0]) {
-		  		    		mNR.sampleUpperWithinSoil = true;
-		  		    		mNR.upperTag += "Inside";
-		  		    	}
-		  		    	else {
-		  		    		mNR.sampleUpperWithinSoil = false;
-		  		    		if (sampleUpperWithinSoil == samplingLocation[1]) {	  		    	   		
-		  		    	   		mNR.upperTag += "Outside";
-		  		    		}
-		  		    		else {
-		  		    			mNR.upperTag += "FarOutside";
-		  		    		}
-		  		    	}
-	  		    	}
+	  		    	if (mNR.useInnerCircle) mNR.upperSamplingLocation = newGD.getNextRadioButton();
 	  	    	}
 	  	    	
 	  	    	//read smoothing method
@@ -1343,13 +1331,74 @@ public class MenuWaiter implements PlugIn {
 	  	    }
   	    }
 
-  	    if (mNR.lowRef.equalsIgnoreCase("wall")) mNR.lowerTag = "Wall";
-
-  	    if (mNR.hiRef.equalsIgnoreCase("wall")) mNR.upperTag = "Wall";
+	    completeCalibrationOptions(mNR);
   
 	    return mNR;
 
 	}
+	
+	public CalibrationReferences getDefaultCalibrationOptions() {
+		
+		//same defaults as in showCalibrationMenu
+		CalibrationReferences mNR = new CalibrationReferences();
+		
+		mNR.useInnerCircle = false;
+		mNR.material = "aluminium";
+		
+		mNR.lowerTarget = 5000;
+		mNR.upperTarget = 20000;
+		
+		mNR.lowRef = "quantile";
+		mNR.hiRef = "wall";
+		mNR.lowerReference = 0.001;
+		mNR.upperReference = 0.001;
+		
+		mNR.windowSize = 15;
+		mNR.lowerSmoothingFilter = "Median";
+		mNR.upperSmoothingFilter = "Median";
+		
+		return mNR;
+		
+	}
+	
+	public void completeCalibrationOptions(CalibrationReferences mNR) {
+		
+		//tags and sampling locations that follow from the choices of the user
+		if (mNR.lowRef.equalsIgnoreCase("quantile")) {
+			String mylo = String.format("%1.4f", mNR.lowerReference);
+			mNR.lowerTag = "Quantile" + mylo.substring(2, 5);
+			mNR.sampleLowerWithinSoil = true;
+			if (mNR.useInnerCircle) {
+				mNR.sampleLowerWithinSoil = mNR.lowerSamplingLocation.equals(calibrationSamplingLocations[0]);
+				mNR.lowerTag += getSamplingLocationTag(mNR.lowerSamplingLocation);
+			}
+		}
+		
+		if (mNR.hiRef.equalsIgnoreCase("quantile")) {
+			String myup = String.format("%1.4f", mNR.upperReference);
+			mNR.upperTag = "Quantile" + myup.substring(2, 5);
+			mNR.sampleUpperWithinSoil = true;
+			if (mNR.useInnerCircle) {
+				mNR.sampleUpperWithinSoil = mNR.upperSamplingLocation.equals(calibrationSamplingLocations[0]);
+				mNR.upperTag += getSamplingLocationTag(mNR.upperSamplingLocation);
+			}
+		}
+		
+		if (mNR.lowRef.equalsIgnoreCase("wall")) mNR.lowerTag = "Wall";
+
+		if (mNR.hiRef.equalsIgnoreCase("wall")) mNR.upperTag = "Wall";
+		
+	}
+	
+	private String getSamplingLocationTag(String samplingLocation) {
+		
+		if (samplingLocation.equals(calibrationSamplingLocations[0])) return "Inside";
+		if (samplingLocation.equals(calibrationSamplingLocations[1])) return "Outside";
+		if (samplingLocation.equals(calibrationSamplingLocations[2])) return "FarOutside";
+		
+		throw new IllegalArgumentException("Unknown sampling location '" + samplingLocation + "'");
+		
+	}
 
 	public OMFinderSettingsDEPRECATED showOMFinderMenuDEPRECATED() {
 
@@ -1852,6 +1901,110 @@ public class MenuWaiter implements PlugIn {
 		
 	}
 	
+	public ROISelectionOptions copyROISelectionOptions(ROISelectionOptions mRSO) {
+		
+		ROISelectionOptions outRSO = new ROISelectionOptions();
+		
+		outRSO.choiceOfRoi = mRSO.choiceOfRoi;
+		outRSO.choiceOfZRoi = mRSO.choiceOfZRoi;
+		outRSO.choiceOfXYRoi = mRSO.choiceOfXYRoi;
+		
+		outRSO.cutZPercent = mRSO.cutZPercent;
+		outRSO.cutXYPercent = mRSO.cutXYPercent;
+		
+		outRSO.heightOfRoi = mRSO.heightOfRoi;
+		outRSO.cutAwayFromTop = mRSO.cutAwayFromTop;
+		outRSO.cutAwayFromBottom = mRSO.cutAwayFromBottom;
+		
+		outRSO.cutAwayFromWall = mRSO.cutAwayFromWall;
+		outRSO.cutAwayFromCenter = mRSO.cutAwayFromCenter;
+		
+		outRSO.includeSurfaceTopography = mRSO.includeSurfaceTopography;
+		outRSO.useInnerCircleFiles = mRSO.useInnerCircleFiles;
+		outRSO.cutCanvas = mRSO.cutCanvas;
+		
+		outRSO.imagePhase2BeAnalyzed = mRSO.imagePhase2BeAnalyzed;
+		
+		outRSO.cubeX1 = mRSO.cubeX1;
+		outRSO.cubeX2 = mRSO.cubeX2;
+		outRSO.cubeY1 = mRSO.cubeY1;
+		outRSO.cubeY2 = mRSO.cubeY2;
+		outRSO.cubeZ1 = mRSO.cubeZ1;
+		outRSO.cubeZ2 = mRSO.cubeZ2;
+		
+		outRSO.cylX = mRSO.cylX;
+		outRSO.cylY = mRSO.cylY;
+		outRSO.cylZ1 = mRSO.cylZ1;
+		outRSO.cylZ2 = mRSO.cylZ2;
+		outRSO.cylRadius = mRSO.cylRadius;
+		
+		outRSO.areaOfInterest = mRSO.areaOfInterest;
+		
+		outRSO.saveROI = mRSO.saveROI;
+		
+		return outRSO;
+		
+	}
+	
+	public PoreSpaceAnalyzerOptions copyPoreSpaceAnalyzerOptions(PoreSpaceAnalyzerOptions mPSA) {
+		
+		//the ROI options are copied too, as prepareDesiredRoi writes the area of interest into them
+		PoreSpaceAnalyzerOptions outPSA = new PoreSpaceAnalyzerOptions();
+		
+		outPSA.mRSO = copyROISelectionOptions(mPSA.mRSO);
+		
+		outPSA.includeBreaks = mPSA.includeBreaks;
+		
+		outPSA.imagePhase2BeAnalyzed = mPSA.imagePhase2BeAnalyzed;
+		outPSA.nameOfAnalyzedPhase = mPSA.nameOfAnalyzedPhase;
+		
+		outPSA.removeHoles = mPSA.removeHoles;
+		
+		outPSA.globVolume = mPSA.globVolume;
+		outPSA.globSurface = mPSA.globSurface;
+		outPSA.globThickness = mPSA.globThickness;
+		outPSA.calcCriticalPoreDiameter = mPSA.calcCriticalPoreDiameter;
+		outPSA.calcChi = mPSA.calcChi;
+		outPSA.calcFractal = mPSA.calcFractal;
+		outPSA.globAnisotropy = mPSA.globAnisotropy;
+		outPSA.calcAverageDistance = mPSA.calcAverageDistance;
+		outPSA.calcPercolatingVolume = mPSA.calcPercolatingVolume;
+		outPSA.calcKT87Volume = mPSA.calcKT87Volume;
+		outPSA.calcVolCon2Top = mPSA.calcVolCon2Top;
+		
+		outPSA.performParticleAnalyses = mPSA.performParticleAnalyses;
+		
+		outPSA.calcVolume = mPSA.calcVolume;
+		outPSA.calcSurface = mPSA.calcSurface;
+		outPSA.calcMoments = mPSA.calcMoments;
+		outPSA.calcUnitVectors = mPSA.calcUnitVectors;
+		outPSA.calcEuler = mPSA.calcEuler;
+		outPSA.calcThickness = mPSA.calcThickness;
+		outPSA.calcCorrLength = mPSA.calcCorrLength;
+		outPSA.calcAnisotropy = mPSA.calcAnisotropy;
+		outPSA.calcSkeleton = mPSA.calcSkeleton;
+		outPSA.calcInclination = mPSA.calcInclination;
+		outPSA.calcPercolation = mPSA.calcPercolation;
+		
+		outPSA.plotLabels = mPSA.plotLabels;
+		outPSA.plotThickness = mPSA.plotThickness;
+		outPSA.plotPercolation = mPSA.plotPercolation;
+		outPSA.plotDistanceMap = mPSA.plotDistanceMap;
+		outPSA.plotKTVolume = mPSA.plotKTVolume;
+		outPSA.plotPoresConnected2Top = mPSA.plotPoresConnected2Top;
+		
+		outPSA.includeLoopGeneratorsOnTopAndBottom = mPSA.includeLoopGeneratorsOnTopAndBottom;
+		
+		outPSA.numberOfSlicesAdded = mPSA.numberOfSlicesAdded;
+		outPSA.numberOfBlankSlices2Add = mPSA.numberOfBlankSlices2Add;
+		outPSA.numberOfCopiedSlices2Add = mPSA.numberOfCopiedSlices2Add;
+		
+		outPSA.numberOfParallelColumns = mPSA.numberOfParallelColumns;
+		
+		return outPSA;
+		
+	}
+	
 	public PoreSpaceAnalyzerOptions showPoreSpaceAnalyzerMenu() {
 
 		PoreSpaceAnalyzerOptions mPSAO = new PoreSpaceAnalyzerOptions(); 
@@ -1862,6 +2015,7 @@ public class MenuWaiter implements PlugIn {
 		gd2.addNumericField("Image phase that is analyzed", 255, 0);
 		gd2.addStringField("Name of the image phase that is analyzed", "Pores", 40);
 		gd2.addCheckbox("Do you want to fill holes in the analyzed image phase?", true);
+		gd2.addNumericField("Number of columns analysed at the same time (1 = one after the other, 0 = as many as there are processors)", 1, 0);
 
 		String[] whatIntegralMeasuresShallIInvestigate = new String[]{"Volume","Surface","Critical Diameter","Fractal Dimension","Anisotropy","Distance","Percolating Volume","KT87 Volume","Volume connected to top"};
 		boolean[] myIntChoices = new boolean[]{true,true,true,true,true,true,true,true,true};
@@ -1898,6 +2052,7 @@ public class MenuWaiter implements PlugIn {
 	    	mPSAO.imagePhase2BeAnalyzed = (int)Math.round(gd2.getNextNumber());
 	    	mPSAO.nameOfAnalyzedPhase = gd2.getNextString();
 	    	mPSAO.removeHoles = gd2.getNextBoolean();
+	    	mPSAO.numberOfParallelColumns = (int)Math.round(gd2.getNextNumber());
 	    	
 	    	//global measures
 	    	mPSAO.globVolume = gd2.getNextBoolean();
@@ -1925,20 +2080,7 @@ public class MenuWaiter implements PlugIn {
 			mPSAO.plotKTVolume = gd2.getNextBoolean();
 			mPSAO.plotPoresConnected2Top = gd2.getNextBoolean();
 			
-			mPSAO.performParticleAnalyses = false;
-			if (mPSAO.calcVolume == true ||					
-				mPSAO.calcEuler == true ||
-				mPSAO.calcThickness == true ||					
-				mPSAO.calcPercolation == true ||
-				mPSAO.calcCriticalPoreDiameter == true ||					
-									
-				//plotting options
-				mPSAO.plotLabels == true ||
-				mPSAO.plotPercolation == true ||
-				mPSAO.plotPoresConnected2Top) {
-
-					mPSAO.performParticleAnalyses = true;
-			}
+			completePoreSpaceAnalyzerOptions(mPSAO);
 
 	    }
 
@@ -1946,6 +2088,74 @@ public class MenuWaiter implements PlugIn {
 
 	}
 	
+	public PoreSpaceAnalyzerOptions getDefaultPoreSpaceAnalyzerOptions() {
+		
+		//same defaults as in showPoreSpaceAnalyzerMenu
+		PoreSpaceAnalyzerOptions mPSAO = new PoreSpaceAnalyzerOptions();
+		
+		mPSAO.mRSO = getDefaultROISelectionOptions();
+		
+		mPSAO.imagePhase2BeAnalyzed = 255;
+		mPSAO.nameOfAnalyzedPhase = "Pores";
+		mPSAO.removeHoles = true;
+		
+		mPSAO.globVolume = true;
+		mPSAO.globSurface = true;
+		mPSAO.calcCriticalPoreDiameter = true;
+		mPSAO.calcFractal = true;
+		mPSAO.globAnisotropy = true;
+		mPSAO.calcAverageDistance = true;
+		mPSAO.calcPercolatingVolume = true;
+		mPSAO.calcKT87Volume = true;
+		mPSAO.calcVolCon2Top = true;
+		
+		mPSAO.calcVolume = true;
+		mPSAO.calcSurface = true;
+		mPSAO.calcEuler = true;
+		mPSAO.calcThickness = true;
+		mPSAO.calcPercolation = true;
+		
+		mPSAO.plotThickness = true;
+		
+		return mPSAO;
+		
+	}
+	
+	public ROISelectionOptions getDefaultROISelectionOptions() {
+		
+		//the whole image, as if nothing was cut away in regionOfInterestSelection
+		ROISelectionOptions mRSO = new ROISelectionOptions();
+		
+		mRSO.choiceOfRoi = "Everything!";
+		mRSO.choiceOfZRoi = "everything";
+		mRSO.choiceOfXYRoi = "everything";
+		
+		return mRSO;
+		
+	}
+	
+	public void completePoreSpaceAnalyzerOptions(PoreSpaceAnalyzerOptions mPSAO) {
+		
+		//options that follow from the choices of the user
+		mPSAO.performParticleAnalyses = false;
+		if (mPSAO.calcVolume == true ||					
+			mPSAO.calcEuler == true ||
+			mPSAO.calcThickness == true ||					
+			mPSAO.calcPercolation == true ||
+			mPSAO.calcCriticalPoreDiameter == true ||					
+								
+			//plotting options
+			mPSAO.plotLabels == true ||
+			mPSAO.plotPercolation == true ||
+			mPSAO.plotPoresConnected2Top) {
+
+				mPSAO.performParticleAnalyses = true;
+		}
+		
+		if (mPSAO.numberOfParallelColumns <= 0) mPSAO.numberOfParallelColumns = Runtime.getRuntime().availableProcessors();
+		
+	}
+	
 	public Extract2DHistogramOptions show2DHistogramExtractionMenu() {
 		
 		Extract2DHistogramOptions e2DH = new Extract2DHistogramOptions();		
@@ -1956,6 +2166,13 @@ public class MenuWaiter implements PlugIn {
 		gd.addMessage("The 2D histogram also analyses the gradient of your images!\nPlease be aware that the plugin may not work for image filenames starting with 'Join' or 'POMR'!");
 		
 		gd.addCheckbox("I want to calculate the gradient images on the fly!\n(do not check if you already have calculated them)", false);		
+		gd.addCheckbox("Calculate them with the 3-D Sobel filter as 16-bit images (needs less memory)", e2DH.useSobelGradient);
+		gd.addMessage("Sobel gradients are about an order of magnitude larger than the default 32-bit gradients and are rounded to integers.\nThey are not comparable with gradient images, thresholds or bins from the default gradients!");
+		
+		gd.addNumericField("Number of gray value bins", e2DH.numberOfGrayValueBins, 0, 6, "");
+		gd.addNumericField("Upper end of the gray value bins", e2DH.maxGrayValue, 0, 6, "");
+		gd.addNumericField("Number of gradient bins", e2DH.numberOfGradientBins, 0, 6, "");
+		gd.addNumericField("Upper end of the gradient bins", e2DH.maxGradient, 1, 6, "");
 			
 		//show dialog
 		gd.showDialog();
@@ -1963,6 +2180,20 @@ public class MenuWaiter implements PlugIn {
 		else {
 			
 			e2DH.calcGradientImage = gd.getNextBoolean();
+			e2DH.useSobelGradient = gd.getNextBoolean();
+			
+			e2DH.numberOfGrayValueBins = (int)Math.round(gd.getNextNumber());
+			e2DH.maxGrayValue = gd.getNextNumber();
+			e2DH.numberOfGradientBins = (int)Math.round(gd.getNextNumber());
+			e2DH.maxGradient = gd.getNextNumber();
+			
+			try {
+				complete2DHistogramExtractionOptions(e2DH);
+			}
+			catch (IllegalArgumentException e) {
+				IJ.error(e.getMessage());
+				return null;
+			}
 			
 		}				
 
@@ -1974,6 +2205,26 @@ public class MenuWaiter implements PlugIn {
 		
 	}
 	
+	public Extract2DHistogramOptions getDefault2DHistogramExtractionOptions() {
+		
+		//same defaults as in show2DHistogramExtractionMenu
+		Extract2DHistogramOptions e2DH = new Extract2DHistogramOptions();
+		
+		e2DH.calcGradientImage = false;
+		e2DH.mRSO = getDefaultROISelectionOptions();
+		
+		return e2DH;
+		
+	}
+	
+	public void complete2DHistogramExtractionOptions(Extract2DHistogramOptions e2DH) {
+		
+		if (e2DH.numberOfGrayValueBins < 1 | e2DH.numberOfGradientBins < 1 | !(e2DH.maxGrayValue > 0) | !(e2DH.maxGradient > 0)) {
+			throw new IllegalArgumentException("The numbers of bins and the upper ends of the bins must be larger than 0!");
+		}
+		
+	}
+	
 
 	
 	public REVAnalyzerOptions showREVAnalyzerMenu() {
@@ -2360,11 +2611,15 @@ public class MenuWaiter implements PlugIn {
 		gd2.setInsets(20, 200, 0);gd2.addMessage("\nWhich images shall I save?");
 		gd2.setInsets(0, 200, 0);gd2.addCheckboxGroup(3, 3, whichImagesShallIPlot, myPlotChoices);
 
+		gd2.setInsets(20, 200, 0);gd2.addNumericField("Number of sub-ROIs analysed in parallel (0 for all processors)", 1, 0);
+
 		//show dialog
 		gd2.showDialog();
 	    if (gd2.wasCanceled()) return null;
 	    else {
 
+	    	mRA.numberOfParallelROIs = (int)Math.round(gd2.getNextNumber());
+
 	    	//global measures
 	    	mRA.globVolume = gd2.getNextBoolean();
 			mRA.globThickness = gd2.getNextBoolean();
@@ -2386,23 +2641,7 @@ public class MenuWaiter implements PlugIn {
 			mRA.plotThickness = gd2.getNextBoolean();
 			mRA.plotPercolation = gd2.getNextBoolean();
 
-			mRA.performParticleAnalyses = false;
-			if (mRA.calcVolume == true ||
-					mRA.calcEuler == true ||
-					mRA.calcThickness == true ||
-					mRA.calcAnisotropy == true ||
-					mRA.calcPercolation == true ||
-					mRA.calcCriticalPoreDiameter == true ||
-
-					//plotting options
-					mRA.plotLabels == true ||
-					mRA.plotVolume == true ||
-					mRA.plotThickness == true ||
-					mRA.plotPercolation == true) {
-
-				mRA.performParticleAnalyses = true;
-
-			}
+			completeREVAnalyzerOptions(mRA);
 
 	    }
 
@@ -2411,6 +2650,81 @@ public class MenuWaiter implements PlugIn {
 	    return mRA;
 
 	}
+	
+	public REVAnalyzerOptions getDefaultREVAnalyzerOptions() {
+		
+		//same defaults as in showREVAnalyzerMenu
+		REVAnalyzerOptions mRA = new REVAnalyzerOptions();
+		
+		mRA.choiceOfRoi = "Cuboid";
+		mRA.choiceOfMethod = "Sub-ROIs by division";
+		
+		mRA.cubeX1 = 175;
+		mRA.cubeX2 = 575;
+		mRA.cubeY1 = 175;
+		mRA.cubeY2 = 575;
+		mRA.cubeZ1 = 300;
+		mRA.cubeZ2 = 700;
+		
+		mRA.startDivNumber = 1;
+		mRA.stopDivNumber = 8;
+		mRA.stepNumber = 10;
+		
+		mRA.moveEdgeX = 250;
+		mRA.moveEdgeY = 250;
+		mRA.moveEdgeZ = 250;
+		mRA.movesX = 10;
+		mRA.movesY = 10;
+		mRA.movesZ = 10;
+		
+		mRA.globVolume = true;
+		mRA.globThickness = true;
+		mRA.calcFractal = true;
+		mRA.globAnisotropy = true;
+		
+		mRA.calcVolume = true;
+		mRA.calcEuler = true;
+		mRA.calcThickness = true;
+		mRA.calcAnisotropy = true;
+		mRA.calcPercolation = true;
+		mRA.calcCriticalPoreDiameter = true;
+		
+		mRA.plotBinary = true;
+		mRA.plotLabels = true;
+		mRA.plotThickness = true;
+		
+		return mRA;
+		
+	}
+	
+	public void completeREVAnalyzerOptions(REVAnalyzerOptions mRA) {
+		
+		if (!mRA.choiceOfRoi.equalsIgnoreCase("Cuboid")) throw new IllegalArgumentException("Only cuboid ROIs are implemented, not '" + mRA.choiceOfRoi + "'");
+		
+		//options that follow from the choices of the user
+		mRA.edgeX = mRA.cubeX2 - mRA.cubeX1;
+		mRA.edgeY = mRA.cubeY2 - mRA.cubeY1;
+		mRA.edgeZ = mRA.cubeZ2 - mRA.cubeZ1;
+		
+		mRA.performParticleAnalyses = false;
+		if (mRA.calcVolume == true ||
+				mRA.calcEuler == true ||
+				mRA.calcThickness == true ||
+				mRA.calcAnisotropy == true ||
+				mRA.calcPercolation == true ||
+				mRA.calcCriticalPoreDiameter == true ||
+
+				//plotting options
+				mRA.plotLabels == true ||
+				mRA.plotVolume == true ||
+				mRA.plotThickness == true ||
+				mRA.plotPercolation == true) {
+
+			mRA.performParticleAnalyses = true;
+
+		}
+		
+	}
 
 	public class WRCCalculatorMenu {
 
@@ -2485,13 +2799,7 @@ public class MenuWaiter implements PlugIn {
 	    }
 	    
 	    //calculate the highest reasonable tension to consider
-		double capillaryConstant4MicroMeter = 1.48e7;
-		double maximalTensionInMicrometer = capillaryConstant4MicroMeter / mWRC.resolutionInMicroMeter;
-		double maxTensionInCM = maximalTensionInMicrometer / 10000;
-		double reasonableTension = maxTensionInCM;
-	    if (mWRC.choiceOfWRCType.equalsIgnoreCase("drainage")) {
-	    	reasonableTension = maxTensionInCM;
-	    }
+		double reasonableTension = getHighestReasonableTension(mWRC);
 	    
 	    //construct objects
 	    GenericDialog gd2 = new GenericDialog("Water retention curve calculator - Tension steps 1/2");
@@ -2513,17 +2821,7 @@ public class MenuWaiter implements PlugIn {
 	    else {
 	    	tensionStepNumber = (int)Math.round(gd2.getNextNumber());
 	    }
-	    double[] tensionSteps = new double[tensionStepNumber]; 	    
-	    
-	    //assign tension steps
-	    double stepSize = (reasonableTension + mWRC.columnHeight) / (tensionStepNumber);
-	    tensionSteps[0] = reasonableTension;
-	    if (tensionStepNumber == 2) {	    
-	    	tensionSteps[1] = stepSize - mWRC.columnHeight;
-	    }
-	    if (tensionStepNumber > 2) for (int i = 1 ; i < tensionStepNumber ; i++) {
-	    	tensionSteps[i] = (tensionStepNumber - i) * stepSize - mWRC.columnHeight;
-	    }
+	    double[] tensionSteps = getDefaultTensionSteps(mWRC, tensionStepNumber);
 	    
 	    //construct objects
 	    GenericDialog gd3 = new GenericDialog("Water retention curve calculator - Tension steps 2/2");
@@ -2556,6 +2854,64 @@ public class MenuWaiter implements PlugIn {
 	    
 		return mWRC;
 	}
+	
+	public WRCCalculatorMenu getDefaultWRCOptions() {
+		
+		//same defaults as in showWRCMenu
+		WRCCalculatorMenu mWRC = new WRCCalculatorMenu();
+		
+		mWRC.choiceOfWRCType = "drainage";
+		mWRC.resolutionInMicroMeter = 40;
+		mWRC.columnHeight = 5;
+		mWRC.wettingAngle = 0;
+		mWRC.hasSurfaceFiles = false;
+		
+		mWRC.saveAirImages = false;
+		mWRC.saveWaterImages = false;
+		
+		return mWRC;
+		
+	}
+	
+	public void completeWRCOptions(WRCCalculatorMenu mWRC) {
+		
+		//the five tension steps proposed by showWRCMenu if none are given
+		if (mWRC.tensionSteps == null || mWRC.tensionSteps.length == 0) mWRC.tensionSteps = getDefaultTensionSteps(mWRC, 5);
+		
+	}
+	
+	public double getHighestReasonableTension(WRCCalculatorMenu mWRC) {
+		
+		double capillaryConstant4MicroMeter = 1.48e7;
+		double maximalTensionInMicrometer = capillaryConstant4MicroMeter / mWRC.resolutionInMicroMeter;
+		double maxTensionInCM = maximalTensionInMicrometer / 10000;
+		double reasonableTension = maxTensionInCM;
+	    if (mWRC.choiceOfWRCType.equalsIgnoreCase("drainage")) {
+	    	reasonableTension = maxTensionInCM;
+	    }
+	    
+	    return reasonableTension;
+		
+	}
+	
+	public double[] getDefaultTensionSteps(WRCCalculatorMenu mWRC, int tensionStepNumber) {
+		
+		double reasonableTension = getHighestReasonableTension(mWRC);
+		double[] tensionSteps = new double[tensionStepNumber];
+		
+	    //assign tension steps
+	    double stepSize = (reasonableTension + mWRC.columnHeight) / (tensionStepNumber);
+	    tensionSteps[0] = reasonableTension;
+	    if (tensionStepNumber == 2) {	    
+	    	tensionSteps[1] = stepSize - mWRC.columnHeight;
+	    }
+	    if (tensionStepNumber > 2) for (int i = 1 ; i < tensionStepNumber ; i++) {
+	    	tensionSteps[i] = (tensionStepNumber - i) * stepSize - mWRC.columnHeight;
+	    }
+	    
+	    return tensionSteps;
+		
+	}
 
 	public class ColumnFinderMenuReturn {
 
@@ -2607,6 +2963,9 @@ public class MenuWaiter implements PlugIn {
 		public int maxFittingAttempts;		//attempts allowed to fiddle with "airWallContrast" and "wallSoilStdContrastThreshold" to find the edge
 		public int maxNumberOfOutliers4PerimeterFits;
 
+		//number of sample slices searched for the walls at the same time, 0 for all processors
+		public int numberOfParallelSlices = 1;
+
 	}
 
 	public ColumnFinderMenuReturn showColumnStraightenerMenu() {
@@ -2791,6 +3150,8 @@ public class MenuWaiter implements PlugIn {
 			gd2.addNumericField("Maximal number of outliers during ellipse-fit", 10, 0, 6, "");
 			gd2.addNumericField("Minumum R2 required for successful ellipse-fit", 0.9995, 5, 6, "");
 		}
+		
+		gd2.addNumericField("Number of slices searched in parallel (0 for all processors)", 1, 0);
 			
 		gd2.addCheckbox("Visualize column wall finds", false);
 
@@ -2817,13 +3178,9 @@ public class MenuWaiter implements PlugIn {
 				mCFS.fixedWallGrayValue = (int)gd2.getNextNumber();
 				mCFS.stdFixedWallGrayValue = (int)gd2.getNextNumber();
 			}
-			else {
-				mCFS.airWallContrast = 0.3;//(float)gd2.getNextNumber();
-				mCFS.stdThreshold = 1;//(float)gd2.getNextNumber();
-			}
-
-			// get parameters to find inner edge
-			if (mCFS.isAlu) mCFS.wallSoilStdContrastThreshold = 500;//gd2.getNextNumber();
+			
+			//fixed parameters for the outer and inner edge
+			completeColumnFinderOptions(mCFS);
 
 			//get parameters to check whether the wall is there
 			if (!mCFS.isSteel) {
@@ -2839,12 +3196,57 @@ public class MenuWaiter implements PlugIn {
 				mCFS.r2Thresh = gd2.getNextNumber();
 			}
 
+			mCFS.numberOfParallelSlices = (int)Math.round(gd2.getNextNumber());
 			mCFS.debug = gd2.getNextBoolean();
 			
 			return mCFS;
 		}
 	}
 
+	public ColumnFinderMenuReturn getDefaultColumnFinderOptions() {
+		
+		//same defaults as in showColumnFinderDialog
+		ColumnFinderMenuReturn mCFS = new ColumnFinderMenuReturn();
+		
+		mCFS.doAResliceFirst = false;
+		mCFS.putColumnStraight = true;
+		mCFS.isAlreadyNormalized = false;
+		mCFS.hasBevel = true;
+		mCFS.try2FindColumnTopAndBottom = true;
+		
+		mCFS.isSteel = false;
+		mCFS.isPVC = false;
+		mCFS.isAlu = true;
+		
+		mCFS.topOfColumn = 1;
+		mCFS.bottomOfColumn = 1;
+		mCFS.fixedWallGrayValue = 1000;
+		mCFS.stdFixedWallGrayValue = 150;
+		
+		mCFS.ratioBetweenInnerAndOuterRadius = 0.75;
+		mCFS.maxCVOfWallThickness = 0.14;
+		mCFS.CVWallBrightnessThresh = 0.14;
+		mCFS.percentToleratedDifference = 0.5;
+		mCFS.medianFilter2D = 0;
+		mCFS.maxFittingAttempts = 10;
+		mCFS.maxNumberOfOutliers4PerimeterFits = 10;
+		mCFS.r2Thresh = 0.9995;
+		
+		return mCFS;
+		
+	}
+	
+	public void completeColumnFinderOptions(ColumnFinderMenuReturn mCFS) {
+		
+		if (!mCFS.isAlreadyNormalized) {
+			mCFS.airWallContrast = 0.3;
+			mCFS.stdThreshold = 1;
+		}
+		
+		if (mCFS.isAlu) mCFS.wallSoilStdContrastThreshold = 500;
+		
+	}
+	
 	public ColumnFinderMenuReturn showTuneThreshold4ColumnDetectionMenu(ApproximateColumnIllumination aCI) {
 
 		//construct objects
@@ -2904,6 +3306,7 @@ public class MenuWaiter implements PlugIn {
 		gd.addNumericField("In case you chose 'Gaussian around pc', please give me a relative standard deviation! ", 0.1f, 3, 5, "");
 
 		gd.addNumericField("How many copies of this random field do you want to create? ", 1, 0, 4, "");
+		gd.addNumericField("Random seed for reproducible fields (0 for a new seed each time) ", 0, 0, 10, "");
 
 		String myReference = "If you are using this plugin please cite the following references: \n\n";
 		gd.setInsets(40, 0, 0);gd.addMessage(myReference);
@@ -2948,6 +3351,7 @@ public class MenuWaiter implements PlugIn {
 				}
 	    	}
 	    	mRCG.numOfCopies = (int)Math.round(gd.getNextNumber());
+	    	mRCG.seed = (long)gd.getNextNumber();
 	    }
 
 		return mRCG;
@@ -3100,11 +3504,39 @@ public class MenuWaiter implements PlugIn {
 	    	mTMR.save3DImage = gd.getNextBoolean();
 	    	mTMR.save4Evaluation = gd.getNextBoolean();
 	    	mTMR.save4GeoDict = gd.getNextBoolean();
+	    	
+	    	completeThresholdingOptions(mTMR);
 
 	      	return mTMR;
 	    }
 	}
 	
+	public ThresholderMenuReturn getDefaultThresholdingOptions() {
+		
+		//same defaults as in showThresholdingDialog, i.e. a constant threshold whose values are set by the caller
+		ThresholderMenuReturn mTMR = new ThresholderMenuReturn();
+		
+		mTMR.useInnerCircle = false;
+		mTMR.setMaxgray2Wallgray = true;
+		
+		mTMR.myPrimaryMethod = null;
+		mTMR.mySecondaryMethod = AutoThresholder.Method.IJ_IsoData;
+		
+		mTMR.save3DImage = false;
+		mTMR.save4Evaluation = true;
+		mTMR.save4GeoDict = false;
+		
+		return mTMR;
+		
+	}
+	
+	public void completeThresholdingOptions(ThresholderMenuReturn mTMR) {
+		
+		//no primary thresholding algorithm stands for a user defined threshold
+		mTMR.useConstantThreshold = mTMR.myPrimaryMethod == null;
+		
+	}
+	
 	public SelectFiles showFileSelectionMenu(File file) {
 
 		//construct objects
@@ -23,7 +23,9 @@ package SoilJ.tools;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
 import java.util.Vector;
@@ -122,6 +124,7 @@ public class MorphologyAnalyzer implements PlugIn {
 	
 	public class FloydWarshallReturn {
 		
+		//when filled by runDijkstraAlgorithm, only the row of the start vertex of the shortest path is filled in the three matrices 
 		public double[][] adjacencyMatrix;
 		public double[][] distanceMatrix;
 		public int[][] predecessorMatrix;	
@@ -257,27 +260,25 @@ public class MorphologyAnalyzer implements PlugIn {
 	public ImagePlus extractSpecificPoreLabels(ImagePlus idImp, ArrayList<Integer> percolatingClusters) {
 		
 		ImageStack outStack = new ImageStack(idImp.getWidth(), idImp.getHeight());
+		ImageStack idStack = idImp.getStack();
+		int wh = idImp.getWidth() * idImp.getHeight();
+		
+		//look-up table of the desired labels
+		BitSet wantedLabels = makeLabelSet(percolatingClusters);
 				
 		for (int z = 1 ; z <= idImp.getNSlices() ; z++) {
 			
 			IJ.showStatus("Extracting percolating clusters in slice " + z + "/" + idImp.getNSlices());
 		
-			ImageProcessor binIP = new ByteProcessor(idImp.getWidth(), idImp.getHeight());
-			idImp.setPosition(z);
-			ImageProcessor idIP = idImp.getProcessor();
+			ImageProcessor idIP = idStack.getProcessor(z);
+			byte[] binPixels = new byte[wh];
 			
-			for (int x = 0 ; x < binIP.getWidth() ; x++) {
-				
-				for (int y = 0 ; y < binIP.getWidth() ; y++) {
-					
-					int id = (int)Math.round(idIP.getPixelValue(x, y));
-					if (percolatingClusters.contains(id)) binIP.putPixel(x, y, 255);
-					else binIP.putPixel(x, y, 0);
-					
-				}
-				
+			for (int i = 0 ; i < wh ; i++) {
+				int id = Math.round(idIP.getf(i));
+				if (isInLabelSet(wantedLabels, id)) binPixels[i] = (byte)255;
 			}
 			
+			ImageProcessor binIP = new ByteProcessor(idImp.getWidth(), idImp.getHeight(), binPixels, null);
 			outStack.addSlice(binIP);
 			
 		}
@@ -527,6 +528,7 @@ public class MorphologyAnalyzer implements PlugIn {
 	public ArrayList<Integer> check4TouchingTheBottom(ImagePlus nowTiff, ImagePlus surfTiff) {
 	
 		ArrayList<Integer> conBot = new ArrayList<Integer>();
+		BitSet foundLabels = new BitSet();
 		
 		String pathSep = "/";
 	
@@ -564,7 +566,7 @@ public class MorphologyAnalyzer implements PlugIn {
 											nowTiff.setPosition(stackHeight - (myVox + i));
 											ImageProcessor nowIP = nowTiff.getProcessor();
 											int nPixel = (int)nowIP.getPixelValue(x + ix, y + iy);										
-											if (nPixel > 0) if (!conBot.contains(nPixel)) conBot.add(nPixel);										
+											if (nPixel > 0) if (!foundLabels.get(nPixel)) {foundLabels.set(nPixel); conBot.add(nPixel);}										
 										}
 									} 
 									if (n > 0 & n < myVox) {
@@ -572,14 +574,14 @@ public class MorphologyAnalyzer implements PlugIn {
 											nowTiff.setPosition(stackHeight - (myVox - i));
 											ImageProcessor nowIP = nowTiff.getProcessor();
 											int nPixel = (int)nowIP.getPixelValue(x + ix, y + iy);								
-											if (nPixel > 0) if (!conBot.contains(nPixel)) conBot.add(nPixel);										
+											if (nPixel > 0) if (!foundLabels.get(nPixel)) {foundLabels.set(nPixel); conBot.add(nPixel);}										
 										}
 									}
 									if (n == myVox) {										
 										nowTiff.setPosition(stackHeight - myVox);
 										ImageProcessor nowIP = nowTiff.getProcessor();
 										int nPixel = (int)nowIP.getPixelValue(x + ix, y + iy);								
-										if (nPixel > 0) if (!conBot.contains(nPixel)) conBot.add(nPixel);
+										if (nPixel > 0) if (!foundLabels.get(nPixel)) {foundLabels.set(nPixel); conBot.add(nPixel);}
 									}											
 								}
 							}
@@ -601,7 +603,7 @@ public class MorphologyAnalyzer implements PlugIn {
 					IJ.showStatus("Finding pore clusters connected to the bottom surface in kilo-pixel " + (cc / 1000) + "/" + (iW * iH / 1000));
 					
 					int nPixel = (int)nowIP.getPixelValue(x, y);										
-					if (nPixel > 0) if (!conBot.contains(nPixel)) conBot.add(nPixel);	
+					if (nPixel > 0) if (!foundLabels.get(nPixel)) {foundLabels.set(nPixel); conBot.add(nPixel);}	
 				}
 			}	
 		}
@@ -613,6 +615,7 @@ public class MorphologyAnalyzer implements PlugIn {
 	public ArrayList<Integer> check4TouchingTheTop(ImagePlus nowTiff, ImagePlus surfTiff) {
 	
 		ArrayList<Integer> conTop = new ArrayList<Integer>();
+		BitSet foundLabels = new BitSet();
 		
 		String pathSep = "/";
 		
@@ -647,7 +650,7 @@ public class MorphologyAnalyzer implements PlugIn {
 											nowTiff.setPosition(myVox + i);
 											ImageProcessor nowIP = nowTiff.getProcessor();
 											int nPixel = (int)nowIP.getPixelValue(x + ix, y + iy);							
-											if (nPixel > 0) if (!conTop.contains(nPixel)) conTop.add(nPixel);										
+											if (nPixel > 0) if (!foundLabels.get(nPixel)) {foundLabels.set(nPixel); conTop.add(nPixel);}										
 										}
 									} 
 									if (n > 0 & n < myVox) {
@@ -655,14 +658,14 @@ public class MorphologyAnalyzer implements PlugIn {
 											nowTiff.setPosition(myVox - i);
 											ImageProcessor nowIP = nowTiff.getProcessor();
 											int nPixel = (int)nowIP.getPixelValue(x + ix, y + iy);								
-											if (nPixel > 0) if (!conTop.contains(nPixel)) conTop.add(nPixel);										
+											if (nPixel > 0) if (!foundLabels.get(nPixel)) {foundLabels.set(nPixel); conTop.add(nPixel);}										
 										}
 									}									
 									if (n == myVox) {										
 										nowTiff.setPosition(myVox);
 										ImageProcessor nowIP = nowTiff.getProcessor();
 										int nPixel = (int)nowIP.getPixelValue(x + ix, y + iy);								
-										if (nPixel > 0) if (!conTop.contains(nPixel)) conTop.add(nPixel);
+										if (nPixel > 0) if (!foundLabels.get(nPixel)) {foundLabels.set(nPixel); conTop.add(nPixel);}
 									}									
 								}
 							}
@@ -685,7 +688,7 @@ public class MorphologyAnalyzer implements PlugIn {
 					IJ.showStatus("Finding pore clusters connected to the top surface in kilo-pixel " + (cc / 1000) + "/" + (iW * iH / 1000));
 				
 					int nPixel = (int)nowIP.getPixelValue(x, y);							
-					if (nPixel > 0) if (!conTop.contains(nPixel)) conTop.add(nPixel);
+					if (nPixel > 0) if (!foundLabels.get(nPixel)) {foundLabels.set(nPixel); conTop.add(nPixel);}
 				}
 			}
 		}
@@ -694,6 +697,22 @@ public class MorphologyAnalyzer implements PlugIn {
 		
 	}
 
+	public BitSet makeLabelSet(List<Integer> labels) {
+		
+		//membership table for cluster labels.. replaces ArrayList.contains in the per-voxel loops
+		BitSet labelSet = new BitSet();
+		for (int label : labels) if (label >= 0) labelSet.set(label);
+		
+		return labelSet;
+		
+	}
+	
+	public boolean isInLabelSet(BitSet labelSet, int label) {
+		
+		return label >= 0 && labelSet.get(label);
+		
+	}
+
 	public boolean[] checkForPercolatingClusters(int nParticles, ArrayList<Integer> conTop, ArrayList<Integer> conBot) {
 			
 			int i;		
@@ -712,10 +731,8 @@ public class MorphologyAnalyzer implements PlugIn {
 			//IJ.showStatus("Pinning down percolating clusters ...");
 					
 			//find percolating clusters
-			ArrayList<Integer> conPerk= new ArrayList<Integer>();
-	        for (int temp : conTop) {
-	        	if (conBot.contains(temp)) conPerk.add(temp);
-	        }
+			BitSet conPerk = makeLabelSet(conTop);
+			conPerk.and(makeLabelSet(conBot));
 					
 			//writing touches to cluster properties
 			int numOfCluster = nParticles;
@@ -723,7 +740,7 @@ public class MorphologyAnalyzer implements PlugIn {
 			
 			//init touching information
 			for (i = 1 ; i < isPercolating.length + 1; i++) {
-				if (conPerk.contains(i)) isPercolating[i - 1] = true;
+				if (conPerk.get(i)) isPercolating[i - 1] = true;
 				else isPercolating[i - 1] = false;
 			}
 		
@@ -732,6 +749,12 @@ public class MorphologyAnalyzer implements PlugIn {
 	
 	public FractalProperties calculateFractalProperties(RoiHandler.ColumnRoi colRoi, MenuWaiter.PoreSpaceAnalyzerOptions mPSA) {
 		
+		return calculateFractalProperties(colRoi, mPSA, null);
+		
+	}
+	
+	public FractalProperties calculateFractalProperties(RoiHandler.ColumnRoi colRoi, MenuWaiter.PoreSpaceAnalyzerOptions mPSA, FusedScanner.ScanResults mSR) {
+		
 		FractalProperties myFracs = new FractalProperties();
 		HistogramStuff hist = new HistogramStuff();
 		Dilate_ dil = new Dilate_();
@@ -751,21 +774,26 @@ public class MorphologyAnalyzer implements PlugIn {
 		
 		for (int i = 0 ; i < l.length ; i++) {
 	
-			//scale if necessary
-			if (l[i] > 1) {				
-				copyTiff = jIM.binaryScale2HalfSize(copyTiff);
+			//scale if necessary.. the first scaling may already have been done during the fused scan
+			if (l[i] > 1) {
+				if (i == 1 && mSR != null && mSR.halfSizeTiff != null) copyTiff = mSR.halfSizeTiff;
+				else copyTiff = jIM.binaryScale2HalfSize(copyTiff);
 			}
 			
 			//copyTiff.updateAndDraw();
 			//copyTiff.show();
 			
 			//pore volume		
-			int[] myHist = hist.sampleHistogram(copyTiff);
-			volBC[i] = myHist[255];
+			int[] myHist;
+			if (i == 0 && mSR != null && mSR.histogram != null) volBC[i] = mSR.histogram[255];
+			else {
+				myHist = hist.sampleHistogram(copyTiff);
+				volBC[i] = myHist[255];
+			}
 			
 			//interface (surfaces)
 			ImagePlus dilTiff = dil.dilate(copyTiff, 255, true);
-			dilTiff = sC.subtract(dilTiff, copyTiff);
+			sC.subtractInPlace(dilTiff, copyTiff);
 			
 			//dilTiff.updateAndDraw();
 			//dilTiff.show();
@@ -819,149 +847,42 @@ public class MorphologyAnalyzer implements PlugIn {
 		// OUTSIDE ROI VOXEL STATISTICS WORK ONLY FOR FAIRLY CIRCULAR COLUMNS //
 		/////////////////////////////////////////////////////////////////////		
 		
-		AndAllTheRest aatr = new AndAllTheRest();
-		RollerCaster rC = new RollerCaster();
+		FusedScanner fus = new FusedScanner();
+		FusedScanner.ScanOptions mSO = fus.new ScanOptions();
+		mSO.sampleHistogram = false;
+		mSO.countIntercepts = true;
+		
+		//count intercepts in the vertical, horizontal and skewed directions
+		FusedScanner.ScanResults mSR = fus.scan(nowTiff, mSO);
+		
+		return compileAnisotropyResults(mSR, area);
+	}
+	
+	public AnisotropyResults compileAnisotropyResults(FusedScanner.ScanResults mSR, double area) {
+		
 		TailoredMaths maths = new TailoredMaths();
 		
 		AnisotropyResults aRe = new AnisotropyResults();
 		
-		int xl = nowTiff.getWidth();
-		int yl = nowTiff.getHeight();
-		int zl = nowTiff.getNSlices();
-			
-		int[][] interCountZ = new int[xl][yl];
-		int[][] interCountX = new int[zl][yl];
-		int[][] interCountY = new int[xl][zl];
-		int[][] interCountXY = new int[xl][yl];
-		int[][] interCountYX = new int[xl][yl];
-
-		int[][] interCountDXZ = new int[xl][yl];
-		int[][] interCountDYZ = new int[xl][yl];
-		int[][] interCountDXYZ = new int[xl][yl];
-		int[][] interCountDYXZ = new int[xl][yl];
-		
-		int[][] interCountUXZ = new int[xl][yl];
-		int[][] interCountUYZ = new int[xl][yl];
-		int[][] interCountUXYZ = new int[xl][yl];
-		int[][] interCountUYXZ = new int[xl][yl];
-		
-		int oldPixel = 0;
-		int uldPixel = 0;
-		
-		ImageProcessor nowIP = null;
-		ImageProcessor oldIP = null;
-		ImageProcessor uldIP = null;
-		
-/*		double xCent = 0;
-		double yCent = 0;
-		double radius = 0;
-		int outSideCount = 0;*/
-			
-		//count intercepts in the vertical and horizontal directions
-		for (int z = 0 ; z < nowTiff.getNSlices() ; z++) {		
-			
-			nowTiff.setSlice(z+1);
-			nowIP = nowTiff.getProcessor();
-			ImageProcessor newIP = nowIP.duplicate();
-			
-			if (z > 0) {
-				nowTiff.setSlice(z);
-				oldIP = nowTiff.getProcessor();
-			}
-			
-			if (z < nowTiff.getNSlices() - 1) {
-				nowTiff.setSlice(z + 2);
-				uldIP = nowTiff.getProcessor();
-			}
-			
-			//calculate center of innerCircle
-		/*	if (mPSA.useInnerCircleFiles) {
-				int[] nowRoiXCoords = nowRoi[z].getXCoordinates();
-				int[] nowRoiYCoords = nowRoi[z].getYCoordinates();
-				xCent = StatUtils.mean(rC.castInt2Double(nowRoiXCoords));
-				yCent = StatUtils.mean(rC.castInt2Double(nowRoiYCoords));
-				double xRadDist = nowRoiXCoords[0] - xCent;
-				double yRadDist = nowRoiYCoords[0] - yCent;
-				radius = Math.sqrt(xRadDist * xRadDist + yRadDist * yRadDist);
-			}*/
-			
-			for (int x = 0 ; x < xl ; x++) {
-				for (int y = 0 ; y < yl ; y++) {
-					
-					int nowPixel = newIP.getPixel(x, y);
-					
-					//vertical
-					if (z > 0) oldPixel = oldIP.getPixel(x, y);
-					else oldPixel = nowPixel;
-					if (nowPixel != oldPixel) {
-						interCountZ[x][y]++;
-					}
+		int xl = mSR.xl;
+		int yl = mSR.yl;
+		int zl = mSR.zl;
+		
+		int[][] interCountZ = mSR.interCountZ;
+		int[][] interCountX = mSR.interCountX;
+		int[][] interCountY = mSR.interCountY;
+		int[][] interCountXY = mSR.interCountXY;
+		int[][] interCountYX = mSR.interCountYX;
 
-					//horizontal X
-					if (x > 0) oldPixel = newIP.getPixel(x - 1, y);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountX[z][y]++;
-					
-					//horizontal Y
-					if (y > 0) oldPixel = newIP.getPixel(x, y - 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountY[x][z]++;
-					
-					//horizontal XY
-					if (x > 0 & y > 0) oldPixel = newIP.getPixel(x - 1, y - 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountXY[x][y]++;
-					
-					//horizontal YX
-					if (x > 0 & y < yl - 1) oldPixel = newIP.getPixel(x - 1, y + 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountYX[x][y]++;
-					
-					//skew 8 ones downwards  
-					//XZ
-					if (z > 0 & x > 0) oldPixel = oldIP.getPixel(x - 1, y);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountDXZ[x][y]++;
-					
-					//YZ
-					if (z > 0 & y > 0) oldPixel = oldIP.getPixel(x, y - 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountDYZ[x][y]++;
-					
-					//XYZ
-					if (z > 0 & x > 0 & y > 0) oldPixel = oldIP.getPixel(x - 1, y - 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountDXYZ[x][y]++;
-					
-					//YXZ
-					if (z > 0 & x > 0 & y < yl - 1) oldPixel = oldIP.getPixel(x - 1, y + 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountDYXZ[x][y]++;
-					
-					//skew 8 ones upwards  
-					//XZ
-					if (z < nowTiff.getNSlices() - 1 & x > 0) oldPixel = uldIP.getPixel(x - 1, y);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountUXZ[x][y]++;
-					
-					//YZ
-					if (z < nowTiff.getNSlices() - 1 & y > 0) oldPixel = uldIP.getPixel(x, y - 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountUYZ[x][y]++;
-					
-					//XYZ
-					if (z < nowTiff.getNSlices() - 1 & x > 0 & y > 0) oldPixel = uldIP.getPixel(x - 1, y - 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountUXYZ[x][y]++;
-					
-					//YXZ
-					if (z < nowTiff.getNSlices() - 1 & x > 0 & y < yl - 1) oldPixel = uldIP.getPixel(x - 1, y + 1);
-					else  oldPixel = nowPixel;
-					if (nowPixel != oldPixel) interCountUYXZ[x][y]++;
-					
-				}				
-			}	
-		}
+		int[][] interCountDXZ = mSR.interCountDXZ;
+		int[][] interCountDYZ = mSR.interCountDYZ;
+		int[][] interCountDXYZ = mSR.interCountDXYZ;
+		int[][] interCountDYXZ = mSR.interCountDYXZ;
+		
+		int[][] interCountUXZ = mSR.interCountUXZ;
+		int[][] interCountUYZ = mSR.interCountUYZ;
+		int[][] interCountUXYZ = mSR.interCountUXYZ;
+		int[][] interCountUYXZ = mSR.interCountUYXZ;
 				
 		//correction factors
 		double corrLine = 1;
@@ -997,7 +918,7 @@ public class MorphologyAnalyzer implements PlugIn {
 		if (horMean == 0) horMean = 1;
 		if (horMax == 0) horMax = 1;
 		
-		double weightedZMean = aRe.z[1] / nowTiff.getNSlices();
+		double weightedZMean = aRe.z[1] / zl;
 		double weightedXYMean = horMean / Math.sqrt(area);
 		
 		//calculate anisotropy
@@ -1016,6 +937,21 @@ public class MorphologyAnalyzer implements PlugIn {
 	}
 	
 	public double calculateCriticalPoreDiameter(ImagePlus distTiff, int maxVol, ImagePlus surfTiff, InputOutput.MyFileCollection mFC) {
+		
+		PercolationEngine perc = new PercolationEngine();
+		
+		//add the pore voxels sorted by their distance values until the top and bottom get connected.. 
+		//gives the exact radius the bisection below converges to, but with a single labelling
+		double criticalPoreRadius = perc.findCriticalPoreRadius(distTiff, surfTiff);
+		
+		//too many pore voxels for the int-indexed union-find
+		if (criticalPoreRadius < 0) return calculateCriticalPoreDiameterByBisection(distTiff, maxVol, surfTiff, mFC);
+		
+		return 2 * criticalPoreRadius;
+		
+	}
+	
+	public double calculateCriticalPoreDiameterByBisection(ImagePlus distTiff, int maxVol, ImagePlus surfTiff, InputOutput.MyFileCollection mFC) {
 	
 		double criticalPoreRadius = 0;
 		
@@ -1110,6 +1046,7 @@ public class MorphologyAnalyzer implements PlugIn {
 	public ImagePlus extractPercolatingThicknesses(ImagePlus thickTiff, ImagePlus labelTiff, ArrayList<Integer> percolatingClusters, int startZ) {
 			
 		ArrayList<Double> poreDiameters = new ArrayList<Double>();		//unique pore diameters
+		BitSet percolatingSet = makeLabelSet(percolatingClusters);
 	
 		//init image of just the percolating clusters..
 		ImagePlus thickPC = new ImagePlus();
@@ -1134,7 +1071,7 @@ public class MorphologyAnalyzer implements PlugIn {
 					
 					//check if pixel is contained in a percolating cluster
 					int nowCluster = (int)clustIP.getPixelValue(x, y);
-					if (percolatingClusters.contains(nowCluster)) {																
+					if (isInLabelSet(percolatingSet, nowCluster)) {																
 						
 						double nowPixel = nowIP.getPixelValue(x, y);
 						outIP.putPixelValue(x, y, nowPixel); 
@@ -1171,6 +1108,7 @@ public class MorphologyAnalyzer implements PlugIn {
 	public ImagePlus extractPercolatingDistances(ImagePlus distTiff, ImagePlus labelTiff, ArrayList<Integer> percolatingClusters, int startZ) {
 		
 		ArrayList<Double> poreDiameters = new ArrayList<Double>();		//unique pore diameters
+		BitSet percolatingSet = makeLabelSet(percolatingClusters);
 	
 		//init image of just the percolating clusters..
 		ImagePlus thickPC = new ImagePlus();
@@ -1195,7 +1133,7 @@ public class MorphologyAnalyzer implements PlugIn {
 					
 					//check if pixel is contained in a percolating cluster
 					int nowCluster = (int)clustIP.getPixelValue(x, y);
-					if (percolatingClusters.contains(nowCluster)) {																
+					if (isInLabelSet(percolatingSet, nowCluster)) {																
 						
 						double nowPixel = nowIP.getPixelValue(x, y);
 						outIP.putPixelValue(x, y, nowPixel); 
@@ -1247,8 +1185,16 @@ public class MorphologyAnalyzer implements PlugIn {
 	}
 	
 	public BoneJParticles parallelParticleAnalyzer(ImagePlus nowTiff, double minVol, double maxVol) {
+		
+		//the union-find backend yields the same labels as the chunk-and-stitch one, but faster
+		return parallelParticleAnalyzer(nowTiff, minVol, maxVol, JParticleCounter.UNION_FIND);
+		
+	}
+	
+	public BoneJParticles parallelParticleAnalyzer(ImagePlus nowTiff, double minVol, double maxVol, int labelMethod) {
 				
 		JParticleCounter jJPA = new JParticleCounter();
+		jJPA.setLabelMethod(labelMethod);
 		BoneJParticles myPartyBones = new BoneJParticles(); 
 		
 		//input parameters for particle analyzer
@@ -1453,7 +1399,7 @@ public class MorphologyAnalyzer implements PlugIn {
 		FloydWarshallReturn[] mFWR = new FloydWarshallReturn[mCG.percolating.size()];  
 		for (int i = 0 ; i < mCG.percolating.size() ; i++) {
 			try {
-				mFWR[i] = runFloydWarshallAlgorithm(mPG[mCG.percolating.get(i)], distTiff.getNSlices(), mSO.numberOfSlicesAdded);
+				mFWR[i] = runDijkstraAlgorithm(mPG[mCG.percolating.get(i)], distTiff.getNSlices(), mSO.numberOfSlicesAdded);
 			}
 			catch (Exception e) {
 				mFWR[i] = null;
@@ -1919,50 +1865,22 @@ public class MorphologyAnalyzer implements PlugIn {
 		}
 
 		//also remember if a Vertex touches the top..
-		ArrayList<Integer> touchesTop = new ArrayList<Integer>();
-		ArrayList<Integer> touchesBottom = new ArrayList<Integer>();
-		ArrayList<Vertex> topVertices = new ArrayList<Vertex>();
-		ArrayList<Vertex> bottomVertices = new ArrayList<Vertex>();
+		graph.findTopAndBottomVertices(numberOfLastSlice, numberOfSlicesAdded);
+		ArrayList<Integer> touchesTop = graph.touchesTop;
+		ArrayList<Integer> touchesBottom = graph.touchesBottom;
+		ArrayList<Vertex> topVertices = graph.topVerts;
+		ArrayList<Vertex> bottomVertices = graph.botVerts;
 		
-		int cc=0;
 		for (PlusEdge edge : edgeList) {
 			
-			cc++;
-			
 			v1 = edge.getV1();
 			v2 = edge.getV2();
 			
 			if (v1 == null | v2 == null) IJ.error("Damn!!!");
 			
 			// use the index of the vertices as the index in the matrix			
-			row = vertexList.indexOf(v1);		
-			
-			if (vertexIsConnected2TopAndBottom(v1, numberOfLastSlice, numberOfSlicesAdded) == 1) {			
-				if(!touchesTop.contains(row)) {
-					touchesTop.add(row);
-					topVertices.add(v1);
-				}
-			}			
-			if (vertexIsConnected2TopAndBottom(v1, numberOfLastSlice, numberOfSlicesAdded) == 2) {
-				if (!touchesBottom.contains(row)) {
-					touchesBottom.add(row);
-					bottomVertices.add(v1);
-				}
-			}
-			
-			column = vertexList.indexOf(v2);			
-			if (vertexIsConnected2TopAndBottom(v2, numberOfLastSlice, numberOfSlicesAdded) == 1) {
-				if (!touchesTop.contains(column)) {
-					touchesTop.add(column);
-					topVertices.add(v2);
-				}
-			}
-			if (vertexIsConnected2TopAndBottom(v2, numberOfLastSlice, numberOfSlicesAdded) == 2) {
-				if (!touchesBottom.contains(column)) {
-					touchesBottom.add(column);
-					bottomVertices.add(v2);
-				}
-			}
+			row = graph.getVertexIndex(v1);		
+			column = graph.getVertexIndex(v2);
 			
 			//if(column == -1)
 			//{
@@ -2080,7 +1998,7 @@ public class MorphologyAnalyzer implements PlugIn {
 		for (int i = 0 ; i < top2BottomConnection.length ; i++) {
 			for (int j = 0 ; j < top2BottomConnection[i].length ; j++) {
 				if (top2BottomConnection[i][j] == shortestPath) {
-					mRP = reconstructPathFromFloydWarshallResults(predecessorMatrix, touchesTop.get(i), touchesBottom.get(j), edgeList, vertexList, numberOfLastSlice, numberOfSlicesAdded);
+					mRP = reconstructPathFromFloydWarshallResults(predecessorMatrix, touchesTop.get(i), touchesBottom.get(j), graph, numberOfLastSlice, numberOfSlicesAdded);
 				}
 			}
 		}
@@ -2099,8 +2017,163 @@ public class MorphologyAnalyzer implements PlugIn {
 
 	}
 	
+	public FloydWarshallReturn runDijkstraAlgorithm(PlusGraph graph, int numberOfLastSlice, int numberOfSlicesAdded) {
+		
+		//finds the same paths of least hydraulic resistance as runFloydWarshallAlgorithm, but only from the vertices 
+		//touching the top and with Dijkstra's algorithm on an adjacency list.. so that large networks do not need 
+		//the dense n x n matrices anymore
+		
+		//output structure
+		FloydWarshallReturn mFWR = new FloydWarshallReturn();
+		
+		ArrayList<PlusEdge> edgeList = graph.plusEdge;
+		ArrayList<Vertex> vertexList = graph.getVertices();
+		int numberOfVertices = vertexList.size();
+		
+		//remember if a Vertex touches the top or the bottom.. in the same order as in runFloydWarshallAlgorithm
+		graph.findTopAndBottomVertices(numberOfLastSlice, numberOfSlicesAdded);
+		ArrayList<Integer> touchesTop = graph.touchesTop;
+		ArrayList<Integer> touchesBottom = graph.touchesBottom;
+		ArrayList<Vertex> topVertices = graph.topVerts;
+		ArrayList<Vertex> bottomVertices = graph.botVerts;
+		
+		//assemble edge arrays
+		int[] from = new int[edgeList.size()];
+		int[] to = new int[edgeList.size()];
+		double[] resistance = new double[edgeList.size()];
+		double[] length = new double[edgeList.size()];
+		
+		for (int e = 0 ; e < edgeList.size() ; e++) {
+			
+			PlusEdge edge = edgeList.get(e);
+			Vertex v1 = edge.getV1();
+			Vertex v2 = edge.getV2();
+			
+			if (v1 == null | v2 == null) IJ.error("Damn!!!");
+			
+			int row = graph.getVertexIndex(v1);
+			int column = graph.getVertexIndex(v2);
+			
+			from[e] = row;
+			to[e] = column;
+			resistance[e] = edge.constrictionFactor;  //resistance weighted length
+			length[e] = edge.getLength() - edge.lengthReduction;  //get length but correct for the added slices 
+		}
+		
+		mFWR.topVertices = topVertices;
+		mFWR.bottomVertices = bottomVertices;
+		mFWR.touchesTop = touchesTop;
+		mFWR.touchesBottom = touchesBottom;
+		
+		final SparseGraphPaths sGP = new SparseGraphPaths(numberOfVertices, from, to, resistance, length);
+		
+		// find the connections from top to bottom, one Dijkstra run per top vertex
+		final double[][] top2BottomConnection = new double[touchesTop.size()][touchesBottom.size()];
+		final double[][] top2BottomDistance = new double[touchesTop.size()][touchesBottom.size()];
+		final int[] topIndices = new int[touchesTop.size()];
+		final int[] botIndices = new int[touchesBottom.size()];
+		for (int i = 0 ; i < topIndices.length ; i++) topIndices[i] = touchesTop.get(i);
+		for (int i = 0 ; i < botIndices.length ; i++) botIndices[i] = touchesBottom.get(i);
+		
+		IJ.showStatus("Searching paths of least resistance from " + topIndices.length + " top vertices ...");
+		
+		int numberOfThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (int i = 0 ; i < topIndices.length ; i++) {
+			final int ro = i;
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					SparseGraphPaths.PathTree mPT = sGP.runDijkstra(topIndices[ro]);
+					for (int co = 0 ; co < botIndices.length ; co++) {
+						top2BottomConnection[ro][co] = mPT.weight[botIndices[co]];
+						top2BottomDistance[ro][co] = mPT.length[botIndices[co]];
+					}
+					return true;
+				}
+			});
+		}
+		try {
+			List<Future<Boolean>> results = exec.invokeAll(tasks);
+			for (Future<Boolean> result : results) result.get();
+		} 
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} 
+		catch (ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			exec.shutdown();
+		}
+		
+		//find the shortest one.. the last one wins if there are several, like in runFloydWarshallAlgorithm
+		double shortestPath = Double.POSITIVE_INFINITY;
+		for (int i = 0 ; i < top2BottomConnection.length ; i++) {
+			for (int j = 0 ; j < top2BottomConnection[i].length ; j++) {
+				if (top2BottomConnection[i][j] < shortestPath) shortestPath = top2BottomConnection[i][j];
+			}
+		}
+		int bestTop = -1;
+		int bestBot = -1;
+		for (int i = 0 ; i < top2BottomConnection.length ; i++) {
+			for (int j = 0 ; j < top2BottomConnection[i].length ; j++) {
+				if (top2BottomConnection[i][j] == shortestPath) {
+					bestTop = i;
+					bestBot = j;
+				}
+			}
+		}
+		
+		//trace back the shortest path
+		double[][] adjacencyMatrix = new double[numberOfVertices][];
+		double[][] distanceMatrix = new double[numberOfVertices][];
+		int[][] predecessorMatrix = new int[numberOfVertices][];
+		ReconstructedPath mRP = new ReconstructedPath();
+		if (bestTop >= 0) {
+			SparseGraphPaths.PathTree mPT = sGP.runDijkstra(topIndices[bestTop]);
+			adjacencyMatrix[topIndices[bestTop]] = mPT.weight;
+			distanceMatrix[topIndices[bestTop]] = mPT.length;
+			predecessorMatrix[topIndices[bestTop]] = mPT.predecessor;
+			mRP = reconstructPathFromFloydWarshallResults(predecessorMatrix, topIndices[bestTop], botIndices[bestBot], graph, numberOfLastSlice, numberOfSlicesAdded);
+		}
+		
+		// and deliver it..
+		mFWR.adjacencyMatrix = adjacencyMatrix;
+		mFWR.distanceMatrix = distanceMatrix;
+		mFWR.predecessorMatrix = predecessorMatrix;
+		
+		mFWR.top2BottomConnection = top2BottomConnection;
+		mFWR.top2BottomEuklideanConnection = top2BottomDistance;
+		
+		mFWR.edgeList = edgeList;
+		mFWR.vertexList = vertexList;
+				
+		mFWR.shortestPath = shortestPath;
+		mFWR.shortest = mRP;
+		
+		return mFWR;
+		
+	}
+	
 	public ReconstructedPath reconstructPathFromFloydWarshallResults(int[][] predecessorMatrix, int startIndex, int endIndex, ArrayList<PlusEdge> edgeList, ArrayList<Vertex> vertexList, int numberOfLastSlice, int numberOfSlicesAdded) {
 		
+		//wrap the lists into a graph so that the edges can be looked up per vertex
+		PlusGraph nowGraph = new PlusGraph();
+		nowGraph.plusEdge = edgeList;
+		for (Vertex nowVert : vertexList) nowGraph.addVertex(nowVert);
+		nowGraph.indexVertices();
+		
+		return reconstructPathFromFloydWarshallResults(predecessorMatrix, startIndex, endIndex, nowGraph, numberOfLastSlice, numberOfSlicesAdded);
+		
+	}
+	
+	public ReconstructedPath reconstructPathFromFloydWarshallResults(int[][] predecessorMatrix, int startIndex, int endIndex, PlusGraph graph, int numberOfLastSlice, int numberOfSlicesAdded) {
+		
+		ArrayList<PlusEdge> edgeList = graph.plusEdge;
+		ArrayList<Vertex> vertexList = graph.getVertices();
+		if (graph.incidentEdges == null) graph.indexVertices();
+		
 		/**
 		 * Reconstruction and visualisation of the longest shortest path found by the APSP warshall algorithm
 		 *  
@@ -2137,8 +2210,10 @@ public class MorphologyAnalyzer implements PlugIn {
 			Double lengthtest = Double.POSITIVE_INFINITY;
 			PlusEdge shortestedge = null;
 
-			// search all edges for a combination of the two vertices
-			for (PlusEdge edge : edgeList) {
+			// search all edges of the end vertex for a combination of the two vertices
+			for (int e : graph.incidentEdges[b]) {
+				
+				PlusEdge edge = edgeList.get(e);
 
 				if ((edge.getV1()==predecessor && edge.getV2()==endvertex) || (edge.getV1()==endvertex && edge.getV2()==predecessor))
 				{
@@ -2334,15 +2409,15 @@ public class MorphologyAnalyzer implements PlugIn {
 				double[] area = new double[slabVoxels.size()];
 				
 				//check whether this slab voxel is in the added stack and remove it if true
-				ArrayList<Integer> toRemove = new ArrayList<Integer>();
+				boolean[] toRemove = new boolean[slabVoxels.size()];
 				for (int k = 0 ; k < slabVoxels.size() ; k++) {
-					if (slabVoxels.get(k).z < numberOfLayersAdded) toRemove.add(k);
-					if (slabVoxels.get(k).z >= distTiff.getNSlices() - numberOfLayersAdded) toRemove.add(k); 
+					if (slabVoxels.get(k).z < numberOfLayersAdded) toRemove[k] = true;
+					if (slabVoxels.get(k).z >= distTiff.getNSlices() - numberOfLayersAdded) toRemove[k] = true; 
 				}
 
 				for (int k = 0 ; k < slabVoxels.size() ; k++) {
 			
-					if (toRemove.contains(k)) {
+					if (toRemove[k]) {
 						nowEdge.distance.add(bigDistance);	
 						area[k] = bigArea;
 						lengthReduction++;
@@ -2419,6 +2494,19 @@ public class MorphologyAnalyzer implements PlugIn {
 		//init some very basic variables..		
 		String nowImageName = mFC.colName;
 		
+		/////////////////////////////////////////////////////////////////
+		//scan the image once for the phase volume, the intercepts and the first box-counting scale
+		/////////////////////////////////////////////////////////////////
+		
+		IJ.showStatus("Scanning the pore-space image ...");
+		
+		FusedScanner fus = new FusedScanner();
+		FusedScanner.ScanOptions mSO = fus.new ScanOptions();
+		mSO.sampleHistogram = true;
+		mSO.countIntercepts = mPSA.globAnisotropy;
+		mSO.scale2HalfSize = mPSA.calcFractal;
+		FusedScanner.ScanResults mSR = fus.scan(colRoi.nowTiff, mSO);
+		
 		//create output folders and save statistics		
 		IJ.showStatus("Creating directories for the pore-cluster properties ...");
 		String myOutFolder = "Stats";
@@ -2438,7 +2526,7 @@ public class MorphologyAnalyzer implements PlugIn {
 		
 		if (mPSA.calcFractal == true) {
 			
-			FractalProperties myFP = calculateFractalProperties(colRoi, mPSA);		
+			FractalProperties myFP = calculateFractalProperties(colRoi, mPSA, mSR);		
 
 			myP.surfaceFractalDimension = myFP.surfaceFractalDim;
 			
@@ -2456,7 +2544,7 @@ public class MorphologyAnalyzer implements PlugIn {
 
 			AnisotropyResults arreArre = new AnisotropyResults(); 
 			
-			arreArre = calculateAnisotropy(colRoi.nowTiff, mPSA.mRSO.areaOfInterest);
+			arreArre = compileAnisotropyResults(mSR, mPSA.mRSO.areaOfInterest);
 			myP.vertHorzAnisotropy = arreArre.ani;
 			myP.aniDirection = arreArre.aniDirection;
 			myP.horizontalAnisotropy = arreArre.horAni;
@@ -2474,7 +2562,8 @@ public class MorphologyAnalyzer implements PlugIn {
 		
 		IJ.showStatus("Calculating macroporosities ...");
 		
-		if (myP.phaseVolume == 0) myP.phaseVolume = macroPoreVolume(colRoi.nowTiff);		
+		if (myP.phaseVolume == 0) myP.phaseVolume = mSR.phaseVolume;
+		mSR = null;		
 		
 		double[] bulkSoilVolume = {0, 0, 0, 0};
 		ImagePlus surfTiff = new ImagePlus();
@@ -2549,10 +2638,12 @@ public class MorphologyAnalyzer implements PlugIn {
 			//calculate percolating clusters ... needs the other parameters.. and is needed for following parameters			
 			ArrayList<Integer> conTop = check4TouchingTheTop(labelTiff, surfTiff);	
 			ArrayList<Integer> conBot = check4TouchingTheBottom(labelTiff, surfTiff);
+			BitSet conTopSet = makeLabelSet(conTop);
+			BitSet conBotSet = makeLabelSet(conBot);
 			boolean[] cTop = new boolean[numOfObjects];
-			for (int i = 1 ; i < numOfObjects + 1; i++) if (conTop.contains(i)) cTop[i-1] = true;
+			for (int i = 1 ; i < numOfObjects + 1; i++) if (conTopSet.get(i)) cTop[i-1] = true;
 			boolean[] cBot = new boolean[numOfObjects];
-			for (int i = 1 ; i < numOfObjects + 1; i++) if (conBot.contains(i)) cBot[i-1] = true;
+			for (int i = 1 ; i < numOfObjects + 1; i++) if (conBotSet.get(i)) cBot[i-1] = true;
 			boolean[] isPercolating = checkForPercolatingClusters(numOfObjects, conTop, conBot);
 			
 			//free memory	
@@ -2929,6 +3020,7 @@ public class MorphologyAnalyzer implements PlugIn {
 		//collect all percolating clusters
 		ArrayList<Integer> percolatingClusters = new ArrayList<Integer>();
 		for (int i = 0 ; i < laP.length ; i++) if (laP[i] == true) percolatingClusters.add(i + 1);
+		BitSet percolatingSet = makeLabelSet(percolatingClusters);
 		
 		//remove all isolated clusters
 		ImageStack outStack = new ImageStack(laParLaTiff.getWidth(), laParLaTiff.getHeight());
@@ -2943,7 +3035,7 @@ public class MorphologyAnalyzer implements PlugIn {
 				for (int y = 0 ; y < nowIP.getHeight() ; y++) {
 					
 					int nowPix = (int)Math.round(nowIP.getPixelValue(x, y));
-					if (percolatingClusters.contains(nowPix)) outIP.putPixel(x, y, 255);
+					if (isInLabelSet(percolatingSet, nowPix)) outIP.putPixel(x, y, 255);
 					else outIP.putPixel(x, y, 0);
 					
 				}
@@ -3236,6 +3328,16 @@ public class MorphologyAnalyzer implements PlugIn {
 		public ArrayList<Vertex> topVerts = null;
 		public ArrayList<Vertex> botVerts = null;
 		
+		//lookup tables, built once per graph by indexVertices and findTopAndBottomVertices
+		public IdentityHashMap<Vertex, Integer> vertexIndex = null;
+		public int[][] incidentEdges = null;		//indices in plusEdge of the edges touching each vertex, in ascending order
+		public boolean[] isTopVertex = null;
+		public boolean[] isBotVertex = null;
+		public ArrayList<Integer> touchesTop = null;		//vertex indices in the order they first appear in plusEdge
+		public ArrayList<Integer> touchesBottom = null;
+		int classifiedLastSlice = -1;
+		int classifiedAddedSlices = -1;
+		
 		public PlusGraph() {
 			
 			super();
@@ -3252,6 +3354,89 @@ public class MorphologyAnalyzer implements PlugIn {
 			return this.plusVertex;			
 		}
 		
+		public void indexVertices() {
+			
+			ArrayList<Vertex> vertexList = getVertices();
+			
+			//the first one wins, like in vertexList.indexOf
+			vertexIndex = new IdentityHashMap<Vertex, Integer>();
+			for (int i = vertexList.size() - 1 ; i >= 0 ; i--) vertexIndex.put(vertexList.get(i), i);
+			
+			//collect the edges touching each vertex
+			int[] degree = new int[vertexList.size()];
+			int[][] ends = new int[plusEdge.size()][2];
+			for (int e = 0 ; e < plusEdge.size() ; e++) {
+				ends[e][0] = getVertexIndex(plusEdge.get(e).getV1());
+				ends[e][1] = getVertexIndex(plusEdge.get(e).getV2());
+				if (ends[e][0] >= 0) degree[ends[e][0]]++;
+				if (ends[e][1] >= 0 & ends[e][1] != ends[e][0]) degree[ends[e][1]]++;
+			}
+			incidentEdges = new int[vertexList.size()][];
+			for (int i = 0 ; i < degree.length ; i++) incidentEdges[i] = new int[degree[i]];
+			int[] fill = new int[vertexList.size()];
+			for (int e = 0 ; e < plusEdge.size() ; e++) {
+				if (ends[e][0] >= 0) {incidentEdges[ends[e][0]][fill[ends[e][0]]] = e; fill[ends[e][0]]++;}
+				if (ends[e][1] >= 0 & ends[e][1] != ends[e][0]) {incidentEdges[ends[e][1]][fill[ends[e][1]]] = e; fill[ends[e][1]]++;}
+			}
+			
+			//classification is outdated now
+			classifiedLastSlice = -1;
+			classifiedAddedSlices = -1;
+			
+		}
+		
+		public int getVertexIndex(Vertex nowVert) {
+			
+			if (vertexIndex == null) indexVertices();
+			
+			Integer index = vertexIndex.get(nowVert);
+			if (index == null) return -1;
+			else return index;
+			
+		}
+		
+		public void findTopAndBottomVertices(int numberOfLastSlice, int numberOfAddedSlices) {
+			
+			if (vertexIndex == null) indexVertices();
+			
+			//nothing to do if already done for the same geometry
+			if (numberOfLastSlice == classifiedLastSlice & numberOfAddedSlices == classifiedAddedSlices) return;
+			
+			int numberOfVertices = getVertices().size();
+			isTopVertex = new boolean[numberOfVertices];
+			isBotVertex = new boolean[numberOfVertices];
+			touchesTop = new ArrayList<Integer>();
+			touchesBottom = new ArrayList<Integer>();
+			topVerts = new ArrayList<Vertex>();
+			botVerts = new ArrayList<Vertex>();
+			
+			//each vertex is checked only once.. vertices missing in the vertex list are skipped
+			boolean[] checked = new boolean[numberOfVertices];
+			for (PlusEdge edge : plusEdge) {
+				Vertex[] ends = {edge.getV1(), edge.getV2()};
+				for (Vertex nowVert : ends) {
+					int index = getVertexIndex(nowVert);
+					if (index < 0 || checked[index]) continue;
+					checked[index] = true;
+					int connection = vertexIsConnected2TopAndBottom(nowVert, numberOfLastSlice, numberOfAddedSlices);
+					if (connection == 1) {
+						isTopVertex[index] = true;
+						touchesTop.add(index);
+						topVerts.add(nowVert);
+					}
+					if (connection == 2) {
+						isBotVertex[index] = true;
+						touchesBottom.add(index);
+						botVerts.add(nowVert);
+					}
+				}
+			}
+			
+			classifiedLastSlice = numberOfLastSlice;
+			classifiedAddedSlices = numberOfAddedSlices;
+			
+		}
+		
 	}
 	
 	public class ROIMorphoProps {
@@ -3560,49 +3745,10 @@ public class MorphologyAnalyzer implements PlugIn {
 			
 			PlusGraph nowGraph = mPG[i];
 			
-			ArrayList<PlusEdge> edgeList = nowGraph.plusEdge;
-			ArrayList<Vertex> vertexList = nowGraph.getVertices();
-			
-			//also remember if a Vertex touches the top..
-			ArrayList<Integer> touchesTop = new ArrayList<Integer>();
-			ArrayList<Integer> touchesBottom = new ArrayList<Integer>();
-			
-			int cc=0;
-			for (PlusEdge edge : edgeList) {
-				
-				cc++;
-				
-				Vertex v1 = edge.getV1();
-				Vertex v2 = edge.getV2();
-				
-				if (v1 == null | v2 == null) IJ.error("Damn!!!");
-				
-				// use the index of the vertices as the index in the matrix			
-				int row = vertexList.indexOf(v1);		
-				
-				if (vertexIsConnected2TopAndBottom(v1, numberOfLastSlice, numberOfAddedSlices) == 1) {			
-					if(!touchesTop.contains(row)) {
-						touchesTop.add(row);	
-					}
-				}			
-				if (vertexIsConnected2TopAndBottom(v1, numberOfLastSlice, numberOfAddedSlices) == 2) {
-					if (!touchesBottom.contains(row)) {
-						touchesBottom.add(row);						
-					}
-				}
-				
-				int column = vertexList.indexOf(v2);			
-				if (vertexIsConnected2TopAndBottom(v2, numberOfLastSlice, numberOfAddedSlices) == 1) {
-					if (!touchesTop.contains(column)) {
-						touchesTop.add(column);						
-					}
-				}
-				if (vertexIsConnected2TopAndBottom(v2, numberOfLastSlice, numberOfAddedSlices) == 2) {
-					if (!touchesBottom.contains(column)) {
-						touchesBottom.add(column);						
-					}
-				}
-			}
+			//remember if a Vertex touches the top..
+			nowGraph.findTopAndBottomVertices(numberOfLastSlice, numberOfAddedSlices);
+			ArrayList<Integer> touchesTop = nowGraph.touchesTop;
+			ArrayList<Integer> touchesBottom = nowGraph.touchesBottom;
 			
 			if (touchesTop.size() > 0 & touchesBottom.size() > 0) mCG.percolating.add(i);
 			if (touchesTop.size() > 0 & touchesBottom.size() == 0) mCG.con2Top.add(i);
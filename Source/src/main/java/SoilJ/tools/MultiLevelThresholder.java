@@ -0,0 +1,171 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MultiLevelThresholder is a SoilJ class that finds any number of thresholds in a 1-D histogram. All three
+ * criteria (Otsu, maximum entropy and minimum error) are sums of terms that only depend on one class at a
+ * time, so the optimal thresholds can be found by dynamic programming over the histogram bins in
+ * O(numberOfThresholds * L^2) operations instead of trying all O(L^numberOfThresholds) combinations. The
+ * class terms are calculated from prefix sums, so histograms with 65536 bins can be used directly.
+ *
+ * Otsu: Liao et al. (2001), Journal of Information Science and Engineering, 17, 713-727
+ * MaxEntropy: Kapur et al. (1985), as in S. Schlueter's QuantIM
+ * MinError: Kittler & Illingworth (1986): Pattern Recognition, 19(1), 41-47, as in S. Schlueter's QuantIM
+ *
+ * @author John Koestel
+ *
+ */
+
+public class MultiLevelThresholder {
+
+	public static final int OTSU = 0;
+	public static final int MAX_ENTROPY = 1;
+	public static final int MIN_ERROR = 2;
+
+	int criterion;
+	int firstBin;
+	int numberOfBins;
+
+	//prefix sums over the bins firstBin .. firstBin + numberOfBins - 1, entry 0 is 0
+	double[] p;			//frequencies
+	double[] s;			//bin * frequency
+	double[] q;			//bin^2 * frequency
+	double[] e;			//frequency * log(frequency)
+
+	/**
+	 * @param nowHist the histogram
+	 * @param firstBin lowest bin that is considered
+	 * @param lastBin highest bin that is considered
+	 * @param criterion OTSU, MAX_ENTROPY or MIN_ERROR
+	 */
+	public MultiLevelThresholder(int[] nowHist, int firstBin, int lastBin, int criterion) {
+
+		if (criterion != OTSU && criterion != MAX_ENTROPY && criterion != MIN_ERROR) throw new IllegalArgumentException("Unknown thresholding criterion " + criterion);
+
+		firstBin = Math.max(0, firstBin);
+		lastBin = Math.min(nowHist.length - 1, lastBin);
+
+		//empty bins at the ends cannot change the result, so skip them
+		while (firstBin < lastBin && nowHist[firstBin] <= 0) firstBin++;
+		while (lastBin > firstBin && nowHist[lastBin] <= 0) lastBin--;
+
+		this.criterion = criterion;
+		this.firstBin = firstBin;
+		this.numberOfBins = Math.max(0, lastBin - firstBin + 1);
+
+		p = new double[numberOfBins + 1];
+		s = new double[numberOfBins + 1];
+		q = new double[numberOfBins + 1];
+		e = new double[numberOfBins + 1];
+
+		for (int i = 0 ; i < numberOfBins ; i++) {
+			double bin = firstBin + i;
+			double h = Math.max(0, nowHist[firstBin + i]);
+			p[i + 1] = p[i] + h;
+			s[i + 1] = s[i] + bin * h;
+			q[i + 1] = q[i] + bin * bin * h;
+			e[i + 1] = e[i] + (h > 0 ? h * Math.log(h) : 0);
+		}
+	}
+
+	/**
+	 * Cost of a class holding the bins from .. to - 1 (counted from firstBin). The thresholds minimize the
+	 * sum of the costs, so the terms of the maximized criteria enter with a negative sign.
+	 */
+	double classCost(int from, int to) {
+
+		double nowP = p[to] - p[from];
+		if (nowP <= 0) return 0;
+
+		double nowS = s[to] - s[from];
+
+		switch (criterion) {
+
+			case OTSU:
+				return -nowS * nowS / nowP;
+
+			case MAX_ENTROPY:
+				return -(Math.log(nowP) - (e[to] - e[from]) / nowP);
+
+			default:
+				double mean = nowS / nowP;
+				double variance = (q[to] - q[from]) / nowP - mean * mean;
+				if (variance < 1d / 256d) variance = 1d / 256d;		//same floor as in QuantIM
+				return nowP * (0.5 * Math.log(variance) - Math.log(nowP));
+		}
+	}
+
+	/**
+	 * @param numberOfThresholds number of thresholds, i.e. number of classes - 1
+	 * @return the thresholds as histogram bins, each being the highest bin of the class below it
+	 */
+	public int[] findThresholds(int numberOfThresholds) {
+
+		int[] thresholds = new int[numberOfThresholds];
+		if (numberOfThresholds < 1) return thresholds;
+		if (numberOfBins < numberOfThresholds + 1) throw new IllegalArgumentException("Cannot find " + numberOfThresholds + " thresholds in a histogram with " + numberOfBins + " classes");
+
+		int L = numberOfBins;
+
+		//cost[t] = lowest cost of splitting the bins 0 .. t - 1 into c + 1 classes
+		double[] cost = new double[L + 1];
+		double[] newCost = new double[L + 1];
+		int[][] lastCut = new int[numberOfThresholds + 1][L + 1];
+
+		for (int t = 1 ; t <= L ; t++) cost[t] = classCost(0, t);
+
+		for (int c = 1 ; c <= numberOfThresholds ; c++) {
+
+			//the c + 1 classes need at least c + 1 bins, the remaining classes need the rest
+			int minT = c + 1;
+			int maxT = (c == numberOfThresholds) ? L : L - (numberOfThresholds - c);
+
+			for (int t = minT ; t <= maxT ; t++) {
+
+				double best = Double.POSITIVE_INFINITY;
+				int bestCut = c;
+				for (int cut = c ; cut < t ; cut++) {
+					double nowCost = cost[cut] + classCost(cut, t);
+					if (nowCost < best) {
+						best = nowCost;
+						bestCut = cut;
+					}
+				}
+				newCost[t] = best;
+				lastCut[c][t] = bestCut;
+			}
+
+			double[] swap = cost;
+			cost = newCost;
+			newCost = swap;
+		}
+
+		//walk back from the last bin
+		int t = L;
+		for (int c = numberOfThresholds ; c >= 1 ; c--) {
+			t = lastCut[c][t];
+			thresholds[c - 1] = firstBin + t - 1;
+		}
+
+		return thresholds;
+	}
+
+}
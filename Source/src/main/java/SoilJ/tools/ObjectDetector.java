@@ -22,10 +22,19 @@ package SoilJ.tools;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.stat.StatUtils;
 import org.apache.commons.math3.stat.descriptive.rank.Median;
 
+import SoilJ.copiedTools.JSobelConvolution;
 import SoilJ.tools.HistogramStuff.IlluminationInfo;
 import SoilJ.tools.MorphologyAnalyzer.BoneJParticles;
 import Utilities.Counter3D;
@@ -348,9 +357,28 @@ public class ObjectDetector implements PlugIn {
 	
 	public ImagePlus createGradientImage(InputOutput.MyFileCollection mFC, ImagePlus myTiff) {
 		
+		return createGradientImage(mFC, myTiff, false);
+		
+	}
+	
+	/**
+	 * @param useSobel if true, the 3-D Sobel filter is streamed slab-wise through the image and written into a
+	 * 16-bit image; else the 32-bit gradient of process3d.Gradient is calculated for the whole image (default).
+	 * The Sobel magnitudes are about an order of magnitude larger and rounded to integers, so they cannot be compared with
+	 * the process3d.Gradient images or with thresholds and histogram bins derived from them
+	 */
+	public ImagePlus createGradientImage(InputOutput.MyFileCollection mFC, ImagePlus myTiff, boolean useSobel) {
+		
 		InputOutput jIO = new InputOutput();
 		
-		ImagePlus gradTiff = Gradient.calculateGrad(myTiff, false);
+		ImagePlus gradTiff;
+		if (useSobel) {
+			JSobelConvolution jSC = new JSobelConvolution();
+			gradTiff = jSC.getMeWhatIWant(myTiff, true, Runtime.getRuntime().availableProcessors());
+			if (gradTiff == null) return null;		//RGB images
+			gradTiff.setCalibration(myTiff.getCalibration());
+		}
+		else gradTiff = Gradient.calculateGrad(myTiff, false);
 
 		jIO.tiffSaver(mFC.myGradientFolder, mFC.fileName, gradTiff);
 		
@@ -3656,6 +3684,92 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 		
 	}	
 	
+	/**
+	 * Copy of sample slice i, with the zero values filled and median filtered as set in jCFS, ready for findColumnWalls2D.
+	 */
+	public ImageProcessor prepareSlice4WallFinding(ImageStack nowStack, int i, MenuWaiter.ColumnFinderMenuReturn jCFS, RankFilters rF) {
+		
+		//get a copy of the slice
+		ImageProcessor myIP = nowStack.getProcessor(i+1).duplicate();		
+		
+		//fill zero values with background if image is not already calibrated...
+		if (!jCFS.isAlreadyNormalized) {
+		
+			ImageProcessor zeroIP = myIP.duplicate(); 			
+			zeroIP.threshold(1);
+			zeroIP.dilate();
+			
+			ArrayList<Integer> fringeVoxels = new ArrayList<Integer>();
+			for (int x = 0 ; x < zeroIP.getWidth() ; x++) {
+				for (int y = 0 ; y < zeroIP.getHeight() ; y++) {
+					int oldP = (int)Math.round(myIP.getPixelValue(x, y));
+					int newP = (int)Math.round(zeroIP.getPixelValue(x, y));
+					if (oldP > 0 & newP >0) fringeVoxels.add((int)Math.round(myIP.getPixelValue(x, y)));					
+				}
+			}
+			double[] fillValue = new double[fringeVoxels.size()];
+			for (int j = 0 ; j < fringeVoxels.size() ; j++) fillValue[j] = fringeVoxels.get(j);
+			int meanFillValue = (int)Math.round(StatUtils.mean(fillValue));
+			myIP.min(meanFillValue);
+		}
+		
+		//apply an addition median filter		
+		if (jCFS.medianFilter2D > 0) rF.rank(myIP, jCFS.medianFilter2D, RankFilters.MEDIAN);
+		
+		return myIP;
+		
+	}
+	
+	/**
+	 * Finds the column walls of all sample slices at the same time. Unlike the sequential search in
+	 * findColumnWalls3D, every slice starts from the same seed coordinates, so that the result neither
+	 * depends on the order in which the slices are finished nor on the number of threads.
+	 * 
+	 * @param seedCoords start coordinates of all slices; they are only read
+	 * @return the found coordinates, in the order of the sample slices
+	 */
+	public ColCoords2D[] findColumnWalls2DInParallel(final ImageStack nowStack, final ColCoords2D seedCoords, final MenuWaiter.ColumnFinderMenuReturn jCFS, final int[] sampleSlices, int numberOfThreads) {
+		
+		int colHeight = nowStack.getSize();
+		final ColCoords2D[] found = new ColCoords2D[colHeight];
+		
+		numberOfThreads = Math.max(1, Math.min(numberOfThreads, colHeight));
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (int i = 0 ; i < colHeight ; i++) {
+			final int nowSlice = i;
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() {
+					
+					IJ.showStatus("Searching column outlines in slice " + (sampleSlices[nowSlice] + 1) + " ...");
+					
+					ImageProcessor myIP = prepareSlice4WallFinding(nowStack, nowSlice, jCFS, new RankFilters());
+					found[nowSlice] = findColumnWalls2D(sampleSlices[nowSlice], myIP, seedCoords, jCFS);
+					
+					return true;
+				}
+			});
+		}
+		
+		try {
+			List<Future<Boolean>> results = exec.invokeAll(tasks);
+			for (Future<Boolean> result : results) result.get();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			exec.shutdown();
+		}
+		
+		return found;
+		
+	}
+	
 	public ColCoords3D findColumnWalls3D(ImagePlus nowTiff, ColCoords3D prelimCC, MenuWaiter.ColumnFinderMenuReturn jCFS, int[] sampleSlices) {
 
 		RankFilters rF=new RankFilters();
@@ -3693,48 +3807,36 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 		bestCoords.airWallContrast = jCFS.airWallContrast;
 		bestCoords.wallSoilStdContrastThreshold = jCFS.wallSoilStdContrastThreshold;
 					
-		//re-find the column's outer wall		
-		for (int i = 0 ; i < colHeight ; i++) {  
-			
-			IJ.showStatus("Searching column outlines in slice " + (sampleSlices[i] + 1) + " ...");
-							
-			//set tiff to the correct position and get Processor etc..
-			nowTiff.setPosition(i+1);
-			ImageProcessor myIP = nowTiff.getProcessor().duplicate();		
-			
-			//fill zero values with background if image is not already calibrated...
-			if (!jCFS.isAlreadyNormalized) {
-			
-				ImageProcessor zeroIP = myIP.duplicate(); 			
-				zeroIP.threshold(1);
-				zeroIP.dilate();
+		//number of slices searched at the same time
+		int numberOfThreads = jCFS.numberOfParallelSlices;
+		if (numberOfThreads <= 0) numberOfThreads = Runtime.getRuntime().availableProcessors();
+		
+		//the visualization shows the finds of one slice after the other and may be switched off in between
+		if (jCFS.debug | jCFS.showFit | jCFS.showRadialProfiles) numberOfThreads = 1;
+		
+		//re-find the column's outer wall
+		ColCoords2D[] found;
+		if (numberOfThreads > 1) found = findColumnWalls2DInParallel(nowTiff.getStack(), bestCoords, jCFS, sampleSlices, numberOfThreads);
+		else {
+			found = new ColCoords2D[colHeight];
+			for (int i = 0 ; i < colHeight ; i++) {
 				
-				ArrayList<Integer> fringeVoxels = new ArrayList<Integer>();
-				for (int x = 0 ; x < zeroIP.getWidth() ; x++) {
-					for (int y = 0 ; y < zeroIP.getHeight() ; y++) {
-						int oldP = (int)Math.round(myIP.getPixelValue(x, y));
-						int newP = (int)Math.round(zeroIP.getPixelValue(x, y));
-						if (oldP > 0 & newP >0) fringeVoxels.add((int)Math.round(myIP.getPixelValue(x, y)));					
-					}
-				}
-				double[] fillValue = new double[fringeVoxels.size()];
-				for (int j = 0 ; j < fringeVoxels.size() ; j++) fillValue[j] = fringeVoxels.get(j);
-				int meanFillValue = (int)Math.round(StatUtils.mean(fillValue));
-				myIP.min(meanFillValue);
+				IJ.showStatus("Searching column outlines in slice " + (sampleSlices[i] + 1) + " ...");
+				
+				ImageProcessor myIP = prepareSlice4WallFinding(nowTiff.getStack(), i, jCFS, rF);
+				
+				//find the wall and start the next slice from there if the column is found
+				found[i] = findColumnWalls2D(sampleSlices[i], myIP, bestCoords, jCFS);
+				if (found[i].columnIsAtThisDepth) bestCoords = found[i];
 			}
+		}
+		
+		for (int i = 0 ; i < colHeight ; i++) {
 			
-			//ImagePlus tesImg = new ImagePlus("", myIP);
-			//tesImg.show();
-			
-			//apply an addition median filter		
-			if (jCFS.medianFilter2D > 0) rF.rank(myIP, jCFS.medianFilter2D, RankFilters.MEDIAN);
+			ColCoords2D i2D = found[i];
 			
-			//find the wall;
-			ColCoords2D i2D = findColumnWalls2D(sampleSlices[i], myIP, bestCoords, jCFS);
-											
 			//transfer fitting results to vectors for export
 			columnIsAtThisDepth[i] = i2D.columnIsAtThisDepth;
-			if (i2D.columnIsAtThisDepth) bestCoords = i2D;
 			
 			xCenter[i] = i2D.xCenter;
 			yCenter[i] = i2D.yCenter;
@@ -4625,9 +4727,73 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 		
 	}
 	
+	/**
+	 * Sweeps once through the slices of a stack and finds for each (x, y) the first slice in which the pixel
+	 * is larger than 0. Only pixels that have not been hit yet are visited and the sweep stops as soon as
+	 * all pixels were hit.
+	 *
+	 * @param nowStack the stack
+	 * @param fromBottom if true, the sweep starts at the last slice, as if the stack had been flipped
+	 * @return number of slices from the start of the sweep to the first hit (index y * width + x), -1 if never hit
+	 */
+	public int[] findFirstHitDepths(ImageStack nowStack, boolean fromBottom) {
+		
+		SliceView sV = new SliceView();
+		
+		int numberOfSlices = nowStack.getSize();
+		int numberOfPixels = nowStack.getWidth() * nowStack.getHeight();
+		
+		int[] depth = new int[numberOfPixels];
+		Arrays.fill(depth, -1);
+		
+		//indices of the pixels that have not been hit yet
+		int[] open = new int[numberOfPixels];
+		for (int j = 0 ; j < numberOfPixels ; j++) open[j] = j;
+		int numberOfOpen = numberOfPixels;
+		
+		for (int k = 0 ; k < numberOfSlices & numberOfOpen > 0 ; k++) {
+			
+			int z = fromBottom ? numberOfSlices - 1 - k : k;
+			SliceView.Slice nowSlice = sV.wrap(nowStack, z);
+			
+			int stillOpen = 0;
+			if (nowSlice.bitDepth == 8) {
+				byte[] pixels = nowSlice.bytes;
+				for (int j = 0 ; j < numberOfOpen ; j++) {
+					int index = open[j];
+					if (pixels[index] != 0) depth[index] = k;
+					else open[stillOpen++] = index;
+				}
+			}
+			else {
+				for (int j = 0 ; j < numberOfOpen ; j++) {
+					int index = open[j];
+					if (sV.isPositive(nowSlice, index)) depth[index] = k;
+					else open[stillOpen++] = index;
+				}
+			}
+			numberOfOpen = stillOpen;
+		}
+		
+		return depth;
+		
+	}
+	
+	/**
+	 * @return the stack position (starting at 1) of slice i counted from the top or from the bottom; like
+	 * ImagePlus.setPosition, positions beyond the stack are clamped to its first or last slice
+	 */
+	int sliceFromSide(ImageStack nowStack, int i, boolean fromBottom) {
+		
+		int numberOfSlices = nowStack.getSize();
+		int position = Math.max(1, Math.min(numberOfSlices, i + 1));
+		
+		return fromBottom ? numberOfSlices + 1 - position : position;
+		
+	}
+	
 	public ImageProcessor findSurfaceSubroutine(ImagePlus nowTiff0, int minimumObjectThickness, String topOrBottom) {
 				
-		ImageManipulator jIM = new ImageManipulator();
 		DisplayThings disp = new DisplayThings();
 		RollerCaster rC = new RollerCaster();
 		MorphologyAnalyzer mA = new MorphologyAnalyzer();
@@ -4646,21 +4812,16 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 		
 		ImageStack inverseStack = new ImageStack(nowTiff0.getWidth(), nowTiff0.getHeight());
 		ImagePlus inverseTop = new ImagePlus();
-		ImagePlus nowTiff = new ImagePlus();
-	
-		if (topOrBottom.contentEquals("bottom")) {
-			nowTiff = jIM.flipTiff(nowTiff0);
-			//for (i = pRoi0.length - 1; i >= 0 ; i--) pRoi[pRoi0.length - 1 - i] = pRoi0[i];			
-		} else {
-			//pRoi = pRoi0;
-			nowTiff = nowTiff0;
-		}
+		ImagePlus nowTiff = nowTiff0;
+		
+		//the bottom surface is searched from the last slice upwards; slice i counts from the side searched from
+		ImageStack nowStack = nowTiff.getStack();
+		boolean fromBottom = topOrBottom.contentEquals("bottom");
 		
 		//make ROI mask of first slice: all pixels that are already 0 will not be considered 
 		Selection mS = new Selection(); 
 		ThresholdToSelection mT2S = new ThresholdToSelection();
-		nowTiff.setSlice(1);
-		ImageProcessor firstSlice = nowTiff.getProcessor().duplicate();
+		ImageProcessor firstSlice = nowStack.getProcessor(sliceFromSide(nowStack, 0, fromBottom)).duplicate();
 		firstSlice.dilate();
 		firstSlice.setThreshold(0, 0, ImageProcessor.NO_LUT_UPDATE);				
 		Roi fRoi = mT2S.convert(firstSlice);		
@@ -4673,8 +4834,7 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 			
 			IJ.showStatus("Finding approximate location of soil top surface #" + (i + 1) + "/" + nowTiff.getNSlices());
 			
-			nowTiff.setPosition(i + 1);			
-			ImageProcessor myIP = nowTiff.getProcessor();		
+			ImageProcessor myIP = nowStack.getProcessor(sliceFromSide(nowStack, i, fromBottom));		
 			
 			myIP.setRoi(fRoi);		//only consider canvas that had been airfilled in the fisrt slice
 			int[] myHist = myIP.getHistogram();
@@ -4690,13 +4850,14 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 		if (approximateTopSurface > 400) startSlice = approximateTopSurface - 400;
 		stopSlice = approximateTopSurface + 300;
 		
-		//create inverse of binary 
-		for (i = startSlice ; i < stopSlice ; i++) {
+		//create inverse of binary, keeping the slices in the order of the image
+		for (int k = 0 ; k < stopSlice - startSlice ; k++) {
 			
-			IJ.showStatus("Inverting slice #" + (i + 1 - startSlice) + "/" + (stopSlice - startSlice));
+			i = fromBottom ? stopSlice - 1 - k : startSlice + k;
 			
-			nowTiff.setPosition(i + 1);
-			ImageProcessor invIP = nowTiff.getProcessor().duplicate(); 
+			IJ.showStatus("Inverting slice #" + (k + 1) + "/" + (stopSlice - startSlice));
+			
+			ImageProcessor invIP = nowStack.getProcessor(sliceFromSide(nowStack, i, fromBottom)).duplicate(); 
 			
 			invIP.invert();
 			invIP.setRoi(fRoi);
@@ -4734,46 +4895,15 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 				
 		IJ.freeMemory();IJ.freeMemory();
 		
-		//create xy grid
+		//find the soil surface: first non-zero voxel in each column of the purified stack
+		IJ.showStatus("Searching the soil surface ...");
+		int[] firstHit = findFirstHitDepths(purifiedTop.getStack(), fromBottom);
+		
+		//transfer results to image, 0 where nothing was found
 		ImageProcessor outIP = new ShortProcessor(nowTiff.getWidth(), nowTiff.getHeight());
-		int[][] xy = new int[outIP.getWidth()][outIP.getHeight()];
-		for (int x = 0 ; x < outIP.getWidth() ; x++) {
-			for (int y = 0 ; y < outIP.getHeight() ; y++) {
-				xy[x][y] = 0;
-			}
-		}
-	
-		//find the soil surface		
-		int latestValue = 0;
-		for (int x = 0 ; x < purifiedTop.getWidth() ; x++) {
-			for (int y = 0 ; y < purifiedTop.getHeight() ; y++) {
-				
-				IJ.showStatus("Searching in pixel (x | y) = " + x + ", " + y + " ... found surface at depth " + latestValue + " vx");
-				
-				pixelLoop:
-				for (int z = 0 ; z < purifiedTop.getNSlices() ; z++) {
-				
-					purifiedTop.setPosition(z+1);
-					ImageProcessor myIP = purifiedTop.getProcessor();
-					
-					int thisImgPixel = myIP.getPixel(x, y);
-					
-					if (thisImgPixel > 0) {						
-						int theValue2Put = z + startSlice;
-						xy[x][y] = theValue2Put;	
-						latestValue = theValue2Put;
-						break pixelLoop;		
-					}
-				}		
-			}
-		}
-
-		//transfer results to image		
-		for (int x = 0 ; x < outIP.getWidth() ; x++) {
-			for (int y = 0 ; y < outIP.getHeight() ; y++) {
-				if (xy[x][y] == 9999) xy[x][y] = 0;
-				outIP.putPixelValue(x, y, xy[x][y]);
-			}			
+		short[] outPixels = (short[])outIP.getPixels();
+		for (i = 0 ; i < outPixels.length ; i++) {
+			if (firstHit[i] >= 0) outPixels[i] = (short)(firstHit[i] + startSlice);
 		}
 		
 		//calculate ruggedness of surface
@@ -5394,6 +5524,7 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 		//get label image and check it for connections to the top surface
 		ArrayList<Integer> connected = null;
 		if (mWRC.choiceOfWRCType.equalsIgnoreCase("drainage")) connected = mA.check4TouchingTheTop(particleLabelTiff, surfTiff);	
+		BitSet connectedSet = mA.makeLabelSet(connected);
 			
 		//particleLabelTiff.updateAndDraw();
 		//particleLabelTiff.show();
@@ -5412,7 +5543,7 @@ public ColCoords3D findClosestXYSlice2Bottom(InputOutput.MyFileCollection mFC, C
 			for (int x = 0 ; x < outIP.getWidth() ; x++) {
 				for (int y = 0 ; y < outIP.getHeight(); y++) {
 					int nowPix = (int)Math.round(nowIP.getPixelValue(x, y));
-					if (connected.contains(nowPix)) outIP.putPixel(x, y, 255);
+					if (mA.isInLabelSet(connectedSet, nowPix)) outIP.putPixel(x, y, 255);
 					else outIP.putPixel(x, y, 0);					
 				}
 			}
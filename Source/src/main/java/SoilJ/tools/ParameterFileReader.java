@@ -0,0 +1,195 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ij.plugin.PlugIn;
+
+/**
+ * ParameterFileReader is a SoilJ class that reads the option records of the SoilJ menus from a text file, so
+ * that the tools can be run without any dialog. The file consists of sections named after the option records,
+ * each holding lines of the form 'fieldName = value'. Empty lines and lines starting with '#' are skipped.
+ *
+ * [Run]
+ * plugin = PoreSpaceAnalyzer
+ * input = /data/columns
+ *
+ * [ROISelectionOptions]
+ * choiceOfRoi = Everything!
+ *
+ * [PoreSpaceAnalyzerOptions]
+ * calcFractal = false
+ *
+ * @author John Koestel
+ *
+ */
+
+public class ParameterFileReader implements PlugIn {
+
+	public void run(String arg) {
+		//ok, this is not needed..
+	}
+
+	public class ParameterFile {
+
+		public String path;
+		public LinkedHashMap<String, LinkedHashMap<String, String>> sections = new LinkedHashMap<String, LinkedHashMap<String, String>>();
+
+	}
+
+	public ParameterFile readParameterFile(String path) throws IOException {
+
+		ParameterFile mPF = new ParameterFile();
+		mPF.path = path;
+
+		//entries before the first section go into the 'Run' section
+		String nowSection = "Run";
+		mPF.sections.put(nowSection, new LinkedHashMap<String, String>());
+
+		BufferedReader br = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = br.readLine()) != null) {
+
+				lineNumber++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+
+				if (line.startsWith("[") && line.endsWith("]")) {
+					nowSection = line.substring(1, line.length() - 1).trim();
+					if (!mPF.sections.containsKey(nowSection)) mPF.sections.put(nowSection, new LinkedHashMap<String, String>());
+					continue;
+				}
+
+				int equalSign = line.indexOf('=');
+				if (equalSign < 1) throw new IOException("Cannot read line " + lineNumber + " of " + path + ": " + line);
+
+				String key = line.substring(0, equalSign).trim();
+				String value = line.substring(equalSign + 1).trim();
+				mPF.sections.get(nowSection).put(key, value);
+			}
+		}
+		finally {
+			br.close();
+		}
+
+		return mPF;
+
+	}
+
+	public boolean hasSection(ParameterFile mPF, String section) {
+		return mPF.sections.containsKey(section);
+	}
+
+	public String getValue(ParameterFile mPF, String section, String key, String defaultValue) {
+
+		Map<String, String> entries = mPF.sections.get(section);
+		if (entries == null || !entries.containsKey(key)) return defaultValue;
+
+		return entries.get(key);
+
+	}
+
+	/**
+	 * Writes the entries of a section into the public fields of an option record with the same names.
+	 * Fields that are not mentioned keep their values.
+	 *
+	 * @param record the option record, e.g. a MenuWaiter.PoreSpaceAnalyzerOptions
+	 * @param mPF the parameter file
+	 * @param section the name of the section
+	 */
+	public void fillRecord(Object record, ParameterFile mPF, String section) {
+
+		Map<String, String> entries = mPF.sections.get(section);
+		if (entries == null) return;
+
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+
+			Field nowField = null;
+			try {
+				nowField = record.getClass().getField(entry.getKey());
+			}
+			catch (NoSuchFieldException e) {
+				throw new IllegalArgumentException("Unknown option '" + entry.getKey() + "' in section [" + section + "] of " + mPF.path);
+			}
+			if (Modifier.isStatic(nowField.getModifiers()) || Modifier.isFinal(nowField.getModifiers())) {
+				throw new IllegalArgumentException("Option '" + entry.getKey() + "' in section [" + section + "] cannot be set");
+			}
+
+			try {
+				setField(record, nowField, entry.getValue());
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Cannot read the value '" + entry.getValue() + "' of option '" + entry.getKey() + "' in section [" + section + "] of " + mPF.path);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Option '" + entry.getKey() + "' in section [" + section + "] cannot be set");
+			}
+		}
+	}
+
+	private void setField(Object record, Field nowField, String value) throws IllegalAccessException {
+
+		Class<?> type = nowField.getType();
+
+		if (type == boolean.class) {
+			if (value.equalsIgnoreCase("true") || value.equals("1")) nowField.setBoolean(record, true);
+			else if (value.equalsIgnoreCase("false") || value.equals("0")) nowField.setBoolean(record, false);
+			else throw new NumberFormatException(value);
+		}
+		else if (type == int.class) nowField.setInt(record, Integer.parseInt(value));
+		else if (type == long.class) nowField.setLong(record, Long.parseLong(value));
+		else if (type == float.class) nowField.setFloat(record, Float.parseFloat(value));
+		else if (type == double.class) nowField.setDouble(record, Double.parseDouble(value));
+		else if (type == String.class) nowField.set(record, value);
+		else if (type == int[].class) {
+			String[] parts = value.split("[,\\s]+");
+			int[] numbers = new int[parts.length];
+			for (int i = 0 ; i < parts.length ; i++) numbers[i] = Integer.parseInt(parts[i]);
+			nowField.set(record, numbers);
+		}
+		else if (type == double[].class) {
+			String[] parts = value.split("[,\\s]+");
+			double[] numbers = new double[parts.length];
+			for (int i = 0 ; i < parts.length ; i++) numbers[i] = Double.parseDouble(parts[i]);
+			nowField.set(record, numbers);
+		}
+		else if (type.isEnum()) {
+			//e.g. the thresholding methods; 'none' stands for no method
+			Object constant = null;
+			if (!value.equalsIgnoreCase("none")) {
+				for (Object nowConstant : type.getEnumConstants()) if (((Enum<?>)nowConstant).name().equalsIgnoreCase(value)) constant = nowConstant;
+				if (constant == null) throw new NumberFormatException(value);
+			}
+			nowField.set(record, constant);
+		}
+		else throw new IllegalArgumentException("Options of type " + type.getSimpleName() + " cannot be read from a parameter file (" + nowField.getName() + ")");
+
+	}
+
+}
@@ -0,0 +1,276 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.plugin.PlugIn;
+import ij.process.ImageProcessor;
+
+/**
+ * PercolationEngine is a SoilJ class for percolation analyses that work in one sweep through the image.
+ * Voxels are added in descending order of their distance-map value into a union-find with two virtual
+ * nodes for the top and the bottom of the sample. The critical pore radius is the value of the voxel
+ * that connects the two virtual nodes. Connectivity (26-neighbourhood) and the definition of top and
+ * bottom contacts are the same as in MorphologyAnalyzer.parallelParticleAnalyzer and
+ * MorphologyAnalyzer.check4TouchingTheTop/Bottom.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class PercolationEngine implements PlugIn {
+
+	public static final byte TOUCHES_TOP = 1;
+	public static final byte TOUCHES_BOT = 2;
+
+	//largest number of pore voxels whose compact indices, plus the two virtual nodes, fit into int arrays
+	public static final long MAX_PORE_VOXELS = Integer.MAX_VALUE - 10;
+
+	public void run(String arg) {
+		//ok, this is not needed..
+	}
+
+	/**
+	 * Finds the largest distance-map value at which voxels with a value larger or equal to it form
+	 * a cluster connecting the top and the bottom of the sample.
+	 *
+	 * @param distTiff distance map (or any other 3-D map where 0 means solid)
+	 * @param surfTiff soil surface image as used in check4TouchingTheTop, or null if the top and bottom slices are the boundaries
+	 * @return the critical pore radius, 0 if the pore space does not percolate at all, or -1 if there are
+	 * more than MAX_PORE_VOXELS pore voxels and the radius has to be found in another way
+	 */
+	public double findCriticalPoreRadius(ImagePlus distTiff, ImagePlus surfTiff) {
+
+		int w = distTiff.getWidth();
+		int h = distTiff.getHeight();
+		int d = distTiff.getNSlices();
+		int wh = w * h;
+
+		ImageStack distStack = distTiff.getStack();
+
+		//give each pore voxel a compact index
+		IJ.showStatus("Indexing pore voxels for the percolation analysis ...");
+		int[][] voxelIndex = new int[d][];
+		int numberOfPoreVoxels = 0;
+		for (int z = 0 ; z < d ; z++) {
+			ImageProcessor nowIP = distStack.getProcessor(z + 1);
+			int[] nowIndex = new int[wh];
+			for (int i = 0 ; i < wh ; i++) {
+				if (nowIP.getf(i) > 0) {
+					
+					//the indices, the sort keys and the union-find are int-indexed arrays
+					if (numberOfPoreVoxels >= MAX_PORE_VOXELS) return -1;
+					
+					nowIndex[i] = numberOfPoreVoxels;
+					numberOfPoreVoxels++;
+				}
+				else nowIndex[i] = -1;
+			}
+			voxelIndex[z] = nowIndex;
+		}
+
+		if (numberOfPoreVoxels == 0) return 0;
+
+		//sort voxels by their values, the value sits in the upper 32 bit and the index in the lower ones
+		//(the bit pattern of a positive float sorts in the same order as the float itself)
+		long[] sortKeys = new long[numberOfPoreVoxels];
+		int[] voxelPosition = new int[numberOfPoreVoxels];
+		int[] sliceStart = new int[d + 1];
+		int cc = 0;
+		for (int z = 0 ; z < d ; z++) {
+			ImageProcessor nowIP = distStack.getProcessor(z + 1);
+			int[] nowIndex = voxelIndex[z];
+			sliceStart[z] = cc;
+			for (int i = 0 ; i < wh ; i++) {
+				if (nowIndex[i] >= 0) {
+					sortKeys[cc] = ((long)Float.floatToIntBits(nowIP.getf(i)) << 32) | (nowIndex[i] & 0xffffffffL);
+					voxelPosition[cc] = i;
+					cc++;
+				}
+			}
+		}
+		sliceStart[d] = cc;
+		IJ.showStatus("Sorting pore voxels by their distance to the pore walls ...");
+		Arrays.parallelSort(sortKeys);
+
+		//get top and bottom contacts
+		byte[][] contacts = findTopAndBottomContacts(w, h, d, surfTiff);
+
+		//init union-find, -1 means not yet added
+		int topNode = numberOfPoreVoxels;
+		int botNode = numberOfPoreVoxels + 1;
+		int[] parent = new int[numberOfPoreVoxels + 2];
+		Arrays.fill(parent, -1);
+		parent[topNode] = topNode;
+		parent[botNode] = botNode;
+
+		//add voxels in descending order until top and bottom are connected
+		for (int j = numberOfPoreVoxels - 1 ; j >= 0 ; j--) {
+
+			int nowVox = (int)(sortKeys[j] & 0xffffffffL);
+			int i = voxelPosition[nowVox];
+			int z = findSlice(sliceStart, nowVox);
+			int x = i % w;
+			int y = i / w;
+
+			parent[nowVox] = nowVox;
+
+			//join with neighbours that were already added
+			for (int vZ = Math.max(0, z - 1) ; vZ <= Math.min(d - 1, z + 1) ; vZ++) {
+				int[] nowIndex = voxelIndex[vZ];
+				for (int vY = Math.max(0, y - 1) ; vY <= Math.min(h - 1, y + 1) ; vY++) {
+					for (int vX = Math.max(0, x - 1) ; vX <= Math.min(w - 1, x + 1) ; vX++) {
+						int neighbour = nowIndex[vY * w + vX];
+						if (neighbour >= 0 && parent[neighbour] >= 0) union(parent, nowVox, neighbour);
+					}
+				}
+			}
+
+			//join with top and bottom
+			if (contacts[z] != null) {
+				if ((contacts[z][i] & TOUCHES_TOP) != 0) union(parent, nowVox, topNode);
+				if ((contacts[z][i] & TOUCHES_BOT) != 0) union(parent, nowVox, botNode);
+			}
+
+			if (find(parent, topNode) == find(parent, botNode)) {
+				return Float.intBitsToFloat((int)(sortKeys[j] >>> 32));
+			}
+
+			if (j % 1000000 == 0) IJ.showStatus("Finding critical pore diameter, " + ((numberOfPoreVoxels - j) / 1000000) + "/" + (numberOfPoreVoxels / 1000000) + " mega-voxels added ...");
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Marks all voxels that check4TouchingTheTop and check4TouchingTheBottom look at when deciding whether a
+	 * cluster touches the top or the bottom of the sample. Slices without any contact stay null.
+	 *
+	 * @return byte flags per slice and pixel, TOUCHES_TOP and/or TOUCHES_BOT
+	 */
+	public byte[][] findTopAndBottomContacts(int w, int h, int d, ImagePlus surfTiff) {
+
+		byte[][] contacts = new byte[d][];
+
+		if (surfTiff == null) {
+			contacts[0] = new byte[w * h];
+			Arrays.fill(contacts[0], TOUCHES_TOP);
+			if (d == 1) Arrays.fill(contacts[0], (byte)(TOUCHES_TOP | TOUCHES_BOT));
+			else {
+				contacts[d - 1] = new byte[w * h];
+				Arrays.fill(contacts[d - 1], TOUCHES_BOT);
+			}
+			return contacts;
+		}
+
+		ImageStack surfStack = surfTiff.getStack();
+		ImageProcessor surIP = surfStack.getProcessor(1);
+		ImageProcessor botIP = surfStack.getProcessor(2);
+
+		for (int x = 0 ; x < w ; x++) {
+			for (int y = 0 ; y < h ; y++) {
+
+				int myTop = surIP.getPixel(x, y);
+				int myBot = botIP.getPixel(x, y);
+
+				//same (diagonal) neighbourhood as in check4TouchingTheTop and check4TouchingTheBottom
+				for (int ix = -1 ; ix < 2 ; ix++) {
+					for (int iy = -1 ; iy < 2 ; iy++) {
+						if (ix != 0 & iy != 0) {
+
+							int nx = x + ix;
+							int ny = y + iy;
+
+							if (myTop > 0) {
+								int n = surIP.getPixel(nx, ny);
+								if (n > myTop) for (int i = 0 ; i < n - myTop ; i++) markContact(contacts, nx, ny, myTop + i - 1, w, h, TOUCHES_TOP);
+								if (n > 0 & n < myTop) for (int i = 0 ; i < myTop - n ; i++) markContact(contacts, nx, ny, myTop - i - 1, w, h, TOUCHES_TOP);
+								if (n == myTop) markContact(contacts, nx, ny, myTop - 1, w, h, TOUCHES_TOP);
+							}
+
+							if (myBot > 0) {
+								int n = botIP.getPixel(nx, ny);
+								if (n > myBot) for (int i = 0 ; i < n - myBot ; i++) markContact(contacts, nx, ny, d - (myBot + i) - 1, w, h, TOUCHES_BOT);
+								if (n > 0 & n < myBot) for (int i = 0 ; i < myBot - n ; i++) markContact(contacts, nx, ny, d - (myBot - i) - 1, w, h, TOUCHES_BOT);
+								if (n == myBot) markContact(contacts, nx, ny, d - myBot - 1, w, h, TOUCHES_BOT);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		return contacts;
+	}
+
+	private int findSlice(int[] sliceStart, int compactIndex) {
+
+		//last slice whose first compact index is not larger than compactIndex
+		int lo = 0;
+		int hi = sliceStart.length - 2;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (sliceStart[mid] <= compactIndex) lo = mid;
+			else hi = mid - 1;
+		}
+
+		return lo;
+	}
+
+	private void markContact(byte[][] contacts, int x, int y, int z, int w, int h, byte flag) {
+
+		//positions outside the stack are ignored
+		if (z < 0 | z >= contacts.length) return;
+		if (x < 0 | y < 0 | x >= w | y >= h) return;
+
+		if (contacts[z] == null) contacts[z] = new byte[w * h];
+		contacts[z][y * w + x] |= flag;
+
+	}
+
+	public static int find(int[] parent, int i) {
+
+		//path halving
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+
+		return i;
+	}
+
+	public static void union(int[] parent, int a, int b) {
+
+		int rootA = find(parent, a);
+		int rootB = find(parent, b);
+
+		if (rootA == rootB) return;
+
+		//let the larger index be the root so that the virtual top and bottom nodes always stay roots
+		if (rootA < rootB) parent[rootA] = rootB;
+		else parent[rootB] = rootA;
+
+	}
+
+}
@@ -0,0 +1,222 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ij.IJ;
+import ij.ImageStack;
+
+/**
+ * PolarLookup is a SoilJ class that holds the polar coordinates of all pixels of a slice around a column
+ * center: the distance to the center, the angle bin of the wall points and the weight between the two wall
+ * points of that bin. The radius of the column wall in the direction of any pixel then costs one lookup
+ * instead of a scan over all wall points. A lookup only depends on the center, so it is reused for all
+ * consecutive slices with the same center.
+ *
+ * The angles, bins and weights are calculated exactly as in the former loops of the beam hardening
+ * corrections, so the corrected images do not change.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class PolarLookup {
+
+	/**
+	 * Correction of one gray value, given the slice (starting at 0) and the renormalized radius of the pixel
+	 * (0 .. standardRadius - 1, or -1 outside of the column wall).
+	 */
+	public interface RadialCorrection {
+		double correct(int slice, int renormalizedRadius, float gray);
+	}
+
+	int width;
+	int height;
+	double xmid;
+	double ymid;
+	int anglesChecked;
+
+	float[] radius;		//distance to the center
+	int[] bin;			//wall point behind the pixel's angle, 0 if the first wall point is used as is
+	double[] weight;	//weight of that wall point, the one before gets 1 - weight
+
+	public PolarLookup(int width, int height, double xmid, double ymid, int anglesChecked) {
+
+		this.width = width;
+		this.height = height;
+		this.xmid = xmid;
+		this.ymid = ymid;
+		this.anglesChecked = anglesChecked;
+
+		radius = new float[width * height];
+		bin = new int[width * height];
+		weight = new double[width * height];
+
+		double spacing = 2 * Math.PI / anglesChecked;
+
+		for (int y = 0 ; y < height ; y++) {
+			for (int x = 0 ; x < width ; x++) {
+
+				int i = y * width + x;
+
+				//get distance of pixel to center
+				float dx = x - (float)xmid;
+				float dy = y - (float)ymid;
+				radius[i] = (float)Math.sqrt((double)(dx*dx) + (double)(dy*dy));
+
+				//get angle
+				double alpha = Math.atan(dy/dx);
+				if (dx < 0 & dy >= 0) alpha = 2 * Math.PI + alpha;
+				if (dy < 0) alpha = Math.PI + alpha;
+
+				//first wall point with a larger angle; start near it and correct for rounding
+				int j = 0;
+				if (alpha >= 0) {
+					j = (int)Math.min(anglesChecked - 1, Math.max(0, Math.floor(alpha / spacing)));
+					while (j > 0 && wallAngle(j - 1) > alpha) j--;
+					while (j < anglesChecked && !(wallAngle(j) > alpha)) j++;
+					if (j == anglesChecked) j = 0;
+				}
+				if (j > 0) {
+					bin[i] = j;
+					weight[i] = (wallAngle(j) - alpha) / spacing;
+				}
+			}
+		}
+	}
+
+	double wallAngle(double j) {
+		return 2 * j / anglesChecked * Math.PI;
+	}
+
+	public boolean fits(int width, int height, double xmid, double ymid, int anglesChecked) {
+		return width == this.width && height == this.height && xmid == this.xmid && ymid == this.ymid && anglesChecked == this.anglesChecked;
+	}
+
+	/**
+	 * @return distances of the wall points to the center
+	 */
+	public static double[] getWallRadii(double[] xID, double[] yID, double xmid, double ymid, int anglesChecked) {
+		double[] wallRadii = new double[anglesChecked];
+		for (int j = 0 ; j < anglesChecked ; j++) {
+			double dx = xID[j] - xmid;
+			double dy = yID[j] - ymid;
+			wallRadii[j] = Math.sqrt((dx*dx) + (dy*dy));
+		}
+		return wallRadii;
+	}
+
+	/**
+	 * @return renormalized radius of pixel i, i.e. its distance to the center in units of the wall radius in
+	 * its direction times standardRadius, or -1 if it is not inside the wall
+	 */
+	public int getRenormalizedRadius(int i, double[] wallRadii, int standardRadius) {
+
+		double radiusAtThisAngle;
+		int j = bin[i];
+		if (j == 0) radiusAtThisAngle = wallRadii[0];
+		else radiusAtThisAngle = weight[i] * wallRadii[j] + (1 - weight[i]) * wallRadii[j - 1];
+
+		float nowRadius = radius[i];
+		if (nowRadius < radiusAtThisAngle) return (int)Math.floor(nowRadius / radiusAtThisAngle * standardRadius);
+
+		return -1;
+	}
+
+	/**
+	 * Applies a radial correction to all slices of the stack, in place. The slices are split into slabs that
+	 * are corrected in parallel, each slab reusing its lookup as long as the center does not move.
+	 * 8-bit and 16-bit results are clipped like ImageProcessor.putPixel does.
+	 *
+	 * @param wallRadii wall radii of each slice as given by getWallRadii
+	 */
+	public static void applyRadialCorrection(final ImageStack nowStack, final double[] xmid, final double[] ymid, final double[][] wallRadii, final int anglesChecked, final int standardRadius, final RadialCorrection corr) {
+
+		final int numberOfSlices = nowStack.getSize();
+		int numberOfThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), numberOfSlices));
+		final int slabThickness = (numberOfSlices + numberOfThreads - 1) / numberOfThreads;
+
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (int t = 0 ; t < numberOfThreads ; t++) {
+			final int firstSlice = t * slabThickness;
+			final int lastSlice = Math.min(numberOfSlices, firstSlice + slabThickness);
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() {
+
+					int w = nowStack.getWidth();
+					int h = nowStack.getHeight();
+					PolarLookup nowLookup = null;
+
+					for (int z = firstSlice ; z < lastSlice ; z++) {
+
+						IJ.showStatus("Correcting for beam hardening in slice #" + (z + 1) + "/" + numberOfSlices);
+
+						if (nowLookup == null || !nowLookup.fits(w, h, xmid[z], ymid[z], anglesChecked)) nowLookup = new PolarLookup(w, h, xmid[z], ymid[z], anglesChecked);
+
+						Object pixels = nowStack.getPixels(z + 1);
+						for (int i = 0 ; i < w * h ; i++) {
+							int renormalizedRadius = nowLookup.getRenormalizedRadius(i, wallRadii[z], standardRadius);
+							if (pixels instanceof short[]) {
+								short[] p = (short[])pixels;
+								int v = (int)corr.correct(z, renormalizedRadius, p[i] & 0xffff);
+								p[i] = (short)Math.max(0, Math.min(65535, v));
+							}
+							else if (pixels instanceof byte[]) {
+								byte[] p = (byte[])pixels;
+								int v = (int)corr.correct(z, renormalizedRadius, p[i] & 0xff);
+								p[i] = (byte)Math.max(0, Math.min(255, v));
+							}
+							else {
+								float[] p = (float[])pixels;
+								p[i] = (float)corr.correct(z, renormalizedRadius, p[i]);
+							}
+						}
+					}
+
+					return true;
+				}
+			});
+		}
+
+		try {
+			List<Future<Boolean>> results = exec.invokeAll(tasks);
+			for (Future<Boolean> result : results) result.get();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			exec.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.plugin.PlugIn;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * RigidResampler is a SoilJ class that rotates and shifts a 3-D image in one go. Each output voxel is mapped
+ * back into the source image by one 3 x 3 rotation matrix and an offset and is interpolated trilinearly, so
+ * the image is only interpolated once, however many rotations the matrix is composed of. The output slices
+ * are calculated in parallel; each of them only reads the slab of source slices it actually needs.
+ *
+ * The mapping is source = center + M * (output + offset - center), with all coordinates in voxels and z
+ * starting at 0. Output voxels that map outside the source image are set to 0.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class RigidResampler implements PlugIn {
+
+	public void run(String arg) {
+		//ok, this is not needed..
+	}
+
+	/**
+	 * Rotation matrix that puts a tilted column upright. It is composed of the same three rotations that
+	 * ImageManipulator.putColumnUprightInCenter used to apply one after the other with reslices in between:
+	 * a rotation in the XY-plane so that the tilt lies in one plane, the tilt correction in the XZ-plane and
+	 * the rotation back.
+	 */
+	public double[][] getUprightRotation(ObjectDetector.ColCoords3D prelimCC) {
+
+		//find tilting angle relative to XY-plane, as before
+		double dz = 1000;
+		double dx = Math.tan(prelimCC.tiltInXZ) * dz;
+		double dy = Math.tan(prelimCC.tiltInYZ) * dz;
+		double gamma = Math.atan(dx/dy);
+		if (dy < 0) gamma = gamma + Math.PI;
+
+		//ImageProcessor.rotate(angle) samples the source at the angle -angle, and the XY-rotations were done
+		//with gamma + 90 degrees before and -(gamma + 90) degrees after the tilt correction by -tiltTotal
+		double theta = gamma + Math.PI / 2;
+
+		double[][] before = rotationInXY(-theta);
+		double[][] tilt = rotationInXZ(prelimCC.tiltTotal);
+		double[][] after = rotationInXY(theta);
+
+		//the output is mapped back through the last rotation first
+		return multiply(before, multiply(tilt, after));
+	}
+
+	double[][] rotationInXY(double a) {
+		double ca = Math.cos(a), sa = Math.sin(a);
+		return new double[][]{{ca, -sa, 0}, {sa, ca, 0}, {0, 0, 1}};
+	}
+
+	double[][] rotationInXZ(double a) {
+		double ca = Math.cos(a), sa = Math.sin(a);
+		return new double[][]{{ca, 0, -sa}, {0, 1, 0}, {sa, 0, ca}};
+	}
+
+	double[][] multiply(double[][] a, double[][] b) {
+		double[][] c = new double[3][3];
+		for (int i = 0 ; i < 3 ; i++) for (int j = 0 ; j < 3 ; j++) for (int k = 0 ; k < 3 ; k++) c[i][j] += a[i][k] * b[k][j];
+		return c;
+	}
+
+	/**
+	 * @param nowTiff 8-bit, 16-bit or 32-bit source image
+	 * @param rotation the matrix M, mapping output to source directions
+	 * @param center the fix point of the rotation in source coordinates
+	 * @param offset added to the output coordinates before they are rotated, e.g. to cut out a part of the image
+	 * @param outDims width, height and number of slices of the output image
+	 * @return the resampled image
+	 */
+	public ImagePlus resample(ImagePlus nowTiff, double[][] rotation, double[] center, double[] offset, int[] outDims, int numberOfThreads) {
+
+		final ImageStack srcStack = nowTiff.getStack();
+		if (srcStack.getPixels(1) instanceof int[]) throw new IllegalArgumentException("RGB images cannot be resampled");
+
+		final double[][] m = rotation;
+		final double[] c = center;
+		final double[] o = offset;
+		final int outW = outDims[0];
+		final int outH = outDims[1];
+		int outD = outDims[2];
+
+		final Object[] outPixels = new Object[outD];
+
+		numberOfThreads = Math.max(1, Math.min(numberOfThreads, outD));
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (int z = 0 ; z < outD ; z++) {
+			final int nowZ = z;
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() {
+					outPixels[nowZ] = resampleSlice(srcStack, m, c, o, outW, outH, nowZ);
+					return true;
+				}
+			});
+		}
+
+		try {
+			List<Future<Boolean>> results = exec.invokeAll(tasks);
+			for (Future<Boolean> result : results) result.get();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			exec.shutdown();
+		}
+
+		ImageStack outStack = new ImageStack(outW, outH);
+		for (int z = 0 ; z < outD ; z++) {
+			ImageProcessor outIP;
+			if (outPixels[z] instanceof byte[]) outIP = new ByteProcessor(outW, outH, (byte[])outPixels[z]);
+			else if (outPixels[z] instanceof short[]) outIP = new ShortProcessor(outW, outH, (short[])outPixels[z], null);
+			else outIP = new FloatProcessor(outW, outH, (float[])outPixels[z]);
+			outStack.addSlice(outIP);
+			outPixels[z] = null;
+		}
+
+		ImagePlus outTiff = new ImagePlus();
+		outTiff.setStack(outStack);
+		outTiff.setCalibration(nowTiff.getCalibration());
+
+		return outTiff;
+	}
+
+	Object resampleSlice(ImageStack srcStack, double[][] m, double[] c, double[] o, int outW, int outH, int z) {
+
+		int w = srcStack.getWidth();
+		int h = srcStack.getHeight();
+		int d = srcStack.getSize();
+
+		//source position of the output voxel (0, 0, z) and the steps along x and y
+		double qx = o[0] - c[0], qy = o[1] - c[1], qz = z + o[2] - c[2];
+		double sx0 = c[0] + m[0][0] * qx + m[0][1] * qy + m[0][2] * qz;
+		double sy0 = c[1] + m[1][0] * qx + m[1][1] * qy + m[1][2] * qz;
+		double sz0 = c[2] + m[2][0] * qx + m[2][1] * qy + m[2][2] * qz;
+
+		//slab of source slices hit by this output slice, with one slice to spare for rounding errors
+		double zA = sz0, zB = sz0 + m[2][0] * (outW - 1), zC = sz0 + m[2][1] * (outH - 1), zD = zB + m[2][1] * (outH - 1);
+		int firstSlice = Math.max(0, (int)Math.floor(Math.min(Math.min(zA, zB), Math.min(zC, zD))) - 1);
+		int lastSlice = Math.min(d - 1, (int)Math.ceil(Math.max(Math.max(zA, zB), Math.max(zC, zD))) + 1);
+		Object[] slab = new Object[Math.max(0, lastSlice - firstSlice + 1)];
+		for (int s = 0 ; s < slab.length ; s++) slab[s] = srcStack.getPixels(firstSlice + s + 1);
+
+		Object type = srcStack.getPixels(1);
+		float[] values = new float[outW * outH];
+
+		for (int y = 0 ; y < outH ; y++) {
+
+			double sx = sx0 + m[0][1] * y;
+			double sy = sy0 + m[1][1] * y;
+			double sz = sz0 + m[2][1] * y;
+
+			for (int x = 0 ; x < outW ; x++, sx += m[0][0], sy += m[1][0], sz += m[2][0]) {
+
+				//outside of the source image
+				if (sx < -1e-6 || sy < -1e-6 || sz < -1e-6 || sx > w - 1 + 1e-6 || sy > h - 1 + 1e-6 || sz > d - 1 + 1e-6) continue;
+
+				int x0 = Math.min(w - 1, Math.max(0, (int)Math.floor(sx)));
+				int y0 = Math.min(h - 1, Math.max(0, (int)Math.floor(sy)));
+				int z0 = Math.min(d - 1, Math.max(0, (int)Math.floor(sz)));
+				int x1 = Math.min(w - 1, x0 + 1);
+				int y1 = Math.min(h - 1, y0 + 1);
+				int z1 = Math.min(d - 1, z0 + 1);
+				double fx = Math.max(0, sx - x0), fy = Math.max(0, sy - y0), fz = Math.max(0, sz - z0);
+
+				double vBelow = bilinear(slab[z0 - firstSlice], w, x0, x1, y0, y1, fx, fy);
+				double vAbove = fz > 0 ? bilinear(slab[z1 - firstSlice], w, x0, x1, y0, y1, fx, fy) : vBelow;
+
+				values[y * outW + x] = (float)(vBelow + fz * (vAbove - vBelow));
+			}
+		}
+
+		//convert to the type of the source, rounding as ImageJ does
+		if (type instanceof byte[]) {
+			byte[] out = new byte[values.length];
+			for (int i = 0 ; i < values.length ; i++) out[i] = (byte)(int)(values[i] + 0.5f);
+			return out;
+		}
+		if (type instanceof short[]) {
+			short[] out = new short[values.length];
+			for (int i = 0 ; i < values.length ; i++) out[i] = (short)(int)(values[i] + 0.5f);
+			return out;
+		}
+
+		return values;
+	}
+
+	double bilinear(Object pixels, int w, int x0, int x1, int y0, int y1, double fx, double fy) {
+
+		double v00 = voxel(pixels, y0 * w + x0), v10 = voxel(pixels, y0 * w + x1);
+		double v01 = voxel(pixels, y1 * w + x0), v11 = voxel(pixels, y1 * w + x1);
+
+		double top = v00 + fx * (v10 - v00);
+		double bottom = v01 + fx * (v11 - v01);
+
+		return top + fy * (bottom - top);
+	}
+
+	double voxel(Object pixels, int i) {
+		if (pixels instanceof byte[]) return ((byte[])pixels)[i] & 0xff;
+		if (pixels instanceof short[]) return ((short[])pixels)[i] & 0xffff;
+		return ((float[])pixels)[i];
+	}
+
+}
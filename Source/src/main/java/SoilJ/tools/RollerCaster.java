@@ -108,6 +108,8 @@ public class RollerCaster implements PlugIn {
 			outGraph.addVertex(newVert);
 		}
 		
+		outGraph.indexVertices();
+		
 		return outGraph;
 	}
 	
@@ -141,6 +143,8 @@ public class RollerCaster implements PlugIn {
 			outGraph.addVertex(nowVert);
 		}
 		
+		outGraph.indexVertices();
+		
 		return outGraph;
 	}
 	
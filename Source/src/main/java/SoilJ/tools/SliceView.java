@@ -0,0 +1,271 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ij.ImageStack;
+import ij.plugin.PlugIn;
+import ij.process.ImageProcessor;
+
+/**
+ * SliceView is a SoilJ class that gives direct access to the pixel arrays of the slices of a stack, so that
+ * point operations do not need to go through getPixel and putPixel for every voxel. All kernels walk
+ * through the slices row by row (y outer, x inner), i.e. along the memory layout of the ImageJ arrays, and
+ * the slices of a stack can be processed in parallel with forEachSlice.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class SliceView implements PlugIn {
+
+	public void run(String arg) {
+		//ok, this is not needed..
+	}
+
+	public class Slice {
+
+		public int width;
+		public int height;
+		public int stride;			//distance between the starts of two rows in the array
+		public int bitDepth;		//8, 16 or 32
+
+		public byte[] bytes;		//only the array of the bit depth is set
+		public short[] shorts;
+		public float[] floats;
+
+	}
+
+	public interface SliceTask {
+		void process(int z);
+	}
+
+	public Slice wrap(Object pixels, int width, int height) {
+
+		Slice mS = new Slice();
+		mS.width = width;
+		mS.height = height;
+		mS.stride = width;
+
+		if (pixels instanceof byte[]) {
+			mS.bitDepth = 8;
+			mS.bytes = (byte[])pixels;
+		}
+		else if (pixels instanceof short[]) {
+			mS.bitDepth = 16;
+			mS.shorts = (short[])pixels;
+		}
+		else if (pixels instanceof float[]) {
+			mS.bitDepth = 32;
+			mS.floats = (float[])pixels;
+		}
+		else throw new IllegalArgumentException("Only 8-bit, 16-bit and 32-bit grey value slices can be wrapped");
+
+		return mS;
+	}
+
+	public Slice wrap(ImageProcessor ip) {
+		return wrap(ip.getPixels(), ip.getWidth(), ip.getHeight());
+	}
+
+	/**
+	 * @param nowStack the stack
+	 * @param z slice number, starting at 0
+	 * @return the slice, sharing the array of the stack
+	 */
+	public Slice wrap(ImageStack nowStack, int z) {
+		return wrap(nowStack.getPixels(z + 1), nowStack.getWidth(), nowStack.getHeight());
+	}
+
+	public Slice newByteSlice(int width, int height) {
+		return wrap(new byte[width * height], width, height);
+	}
+
+	public Slice newSliceLike(Slice src) {
+		if (src.bitDepth == 8) return wrap(new byte[src.width * src.height], src.width, src.height);
+		if (src.bitDepth == 16) return wrap(new short[src.width * src.height], src.width, src.height);
+		return wrap(new float[src.width * src.height], src.width, src.height);
+	}
+
+	public Object getPixels(Slice mS) {
+		if (mS.bitDepth == 8) return mS.bytes;
+		if (mS.bitDepth == 16) return mS.shorts;
+		return mS.floats;
+	}
+
+	/**
+	 * Runs task.process(z) for z = 0 .. numberOfSlices - 1 on all processors. The tasks must not share
+	 * ImageProcessors, i.e. they should work on arrays obtained via wrap(ImageStack, int).
+	 */
+	public void forEachSlice(int numberOfSlices, final SliceTask task) {
+
+		int numberOfThreads = Math.max(1, Math.min(numberOfSlices, Runtime.getRuntime().availableProcessors()));
+		if (numberOfThreads == 1) {
+			for (int z = 0 ; z < numberOfSlices ; z++) task.process(z);
+			return;
+		}
+
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (int z = 0 ; z < numberOfSlices ; z++) {
+			final int nowZ = z;
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() {
+					task.process(nowZ);
+					return true;
+				}
+			});
+		}
+
+		try {
+			List<Future<Boolean>> results = exec.invokeAll(tasks);
+			for (Future<Boolean> result : results) result.get();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			exec.shutdown();
+		}
+	}
+
+	///////////////////////////////////////////
+	// kernels
+	///////////////////////////////////////////
+
+	/**
+	 * @return true if the pixel is larger than 0, in the same way as ImageProcessor.getPixel(x, y) > 0
+	 */
+	public boolean isPositive(Slice mS, int index) {
+		if (mS.bitDepth == 8) return mS.bytes[index] != 0;
+		if (mS.bitDepth == 16) return mS.shorts[index] != 0;
+		return mS.floats[index] > 0;
+	}
+
+	/**
+	 * Writes 'high' into dst where src is larger than level and 0 elsewhere. dst is an 8-bit slice, src and dst
+	 * may be the same.
+	 */
+	public void threshold(Slice src, Slice dst, double level, int high) {
+
+		byte hi = (byte)high;
+
+		for (int y = 0 ; y < src.height ; y++) {
+			int s = y * src.stride;
+			int d = y * dst.stride;
+			int end = s + src.width;
+			if (src.bitDepth == 8) for ( ; s < end ; s++, d++) dst.bytes[d] = (src.bytes[s] & 0xff) > level ? hi : 0;
+			else if (src.bitDepth == 16) for ( ; s < end ; s++, d++) dst.bytes[d] = (src.shorts[s] & 0xffff) > level ? hi : 0;
+			else for ( ; s < end ; s++, d++) dst.bytes[d] = src.floats[s] > level ? hi : 0;
+		}
+	}
+
+	/**
+	 * dst = 255 where a or b are larger than 0, dst = 0 elsewhere. dst is an 8-bit slice.
+	 */
+	public void fuse(Slice a, Slice b, Slice dst) {
+
+		for (int y = 0 ; y < dst.height ; y++) {
+			int ia = y * a.stride;
+			int ib = y * b.stride;
+			int d = y * dst.stride;
+			for (int x = 0 ; x < dst.width ; x++, ia++, ib++, d++) {
+				dst.bytes[d] = (isPositive(a, ia) | isPositive(b, ib)) ? (byte)255 : 0;
+			}
+		}
+	}
+
+	/**
+	 * dst = 255 - src for 8-bit slices. src and dst may be the same.
+	 */
+	public void invert8Bit(Slice src, Slice dst) {
+
+		for (int y = 0 ; y < src.height ; y++) {
+			int s = y * src.stride;
+			int d = y * dst.stride;
+			int end = s + src.width;
+			for ( ; s < end ; s++, d++) dst.bytes[d] = (byte)(255 - (src.bytes[s] & 0xff));
+		}
+	}
+
+	/**
+	 * Copies src into dst where the mask is larger than 0 and writes 0 elsewhere. src and dst have the same bit depth.
+	 */
+	public void copyWhereMaskIsPositive(Slice src, Slice mask, Slice dst) {
+
+		for (int y = 0 ; y < src.height ; y++) {
+			int s = y * src.stride;
+			int m = y * mask.stride;
+			int d = y * dst.stride;
+			for (int x = 0 ; x < src.width ; x++, s++, m++, d++) {
+				boolean inside = isPositive(mask, m);
+				if (src.bitDepth == 8) dst.bytes[d] = inside ? src.bytes[s] : 0;
+				else if (src.bitDepth == 16) dst.shorts[d] = inside ? src.shorts[s] : 0;
+				else dst.floats[d] = inside ? src.floats[s] : 0;
+			}
+		}
+	}
+
+	/**
+	 * Sets all pixels outside a ROI mask to 0.
+	 *
+	 * @param mS the slice
+	 * @param roiMask mask of the ROI as returned by Roi.getMask(), may be null for rectangles
+	 * @param bounds bounding rectangle of the ROI
+	 */
+	public void clearOutside(Slice mS, ImageProcessor roiMask, Rectangle bounds) {
+
+		byte[] maskPixels = null;
+		if (roiMask != null) maskPixels = (byte[])roiMask.getPixels();
+
+		for (int y = 0 ; y < mS.height ; y++) {
+
+			int row = y * mS.stride;
+			int my = y - bounds.y;
+			boolean rowInside = my >= 0 & my < bounds.height;
+
+			for (int x = 0 ; x < mS.width ; x++) {
+
+				int mx = x - bounds.x;
+				boolean inside = rowInside && mx >= 0 && mx < bounds.width;
+				if (inside && maskPixels != null) inside = maskPixels[my * bounds.width + mx] != 0;
+				if (inside) continue;
+
+				if (mS.bitDepth == 8) mS.bytes[row + x] = 0;
+				else if (mS.bitDepth == 16) mS.shorts[row + x] = 0;
+				else mS.floats[row + x] = 0;
+			}
+		}
+	}
+
+}
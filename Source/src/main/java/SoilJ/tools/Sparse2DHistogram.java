@@ -0,0 +1,244 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Sparse2DHistogram is a SoilJ class that collects the bin-wise statistics (sum, mean, standard deviation
+ * and CV) of many 2-D histograms of the same size, one histogram after the other. The bins are grouped in
+ * tiles of TILE x TILE bins, and a tile is only allocated when one of the histograms has a non-zero count in
+ * it, so the large empty parts of a 2-D histogram do not take up memory.
+ *
+ * Each bin keeps a Welford mean and sum of squared deviations of its non-zero counts. The zero counts of the
+ * histograms that did not hit a bin are merged in only when the statistics are read, with the pairwise
+ * update of Chan et al. (1979), so adding a histogram only touches its non-zero bins.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class Sparse2DHistogram {
+
+	public static final int TILE = 64;
+
+	public static final int SUM = 0;
+	public static final int MEAN = 1;
+	public static final int STD = 2;
+	public static final int CV = 3;
+
+	int width;
+	int height;
+	int tilesX;
+	int tilesY;
+
+	Tile[] tiles;
+
+	int numberOfHistograms;
+
+	class Tile {
+
+		int[] nonZero = new int[TILE * TILE];			//number of histograms with a non-zero count in the bin
+		double[] mean = new double[TILE * TILE];		//mean of the non-zero counts
+		double[] m2 = new double[TILE * TILE];			//sum of squared deviations of the non-zero counts
+
+	}
+
+	public Sparse2DHistogram(int width, int height) {
+
+		this.width = width;
+		this.height = height;
+		tilesX = (width + TILE - 1) / TILE;
+		tilesY = (height + TILE - 1) / TILE;
+		tiles = new Tile[tilesX * tilesY];
+
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNumberOfHistograms() {
+		return numberOfHistograms;
+	}
+
+	public int getNumberOfAllocatedTiles() {
+		int cc = 0;
+		for (int i = 0 ; i < tiles.length ; i++) if (tiles[i] != null) cc++;
+		return cc;
+	}
+
+	/**
+	 * Adds one histogram, given as image with the first axis as x.
+	 */
+	public void add(ImageProcessor nowIP) {
+
+		if (nowIP.getWidth() != width | nowIP.getHeight() != height) throw new IllegalArgumentException("2D histogram of " + nowIP.getWidth() + " x " + nowIP.getHeight() + " bins does not match the " + width + " x " + height + " bins of the others");
+
+		Object pixels = nowIP.getPixels();
+		float[] counts = null;
+		if (pixels instanceof float[]) counts = (float[])pixels;
+
+		for (int y = 0 ; y < height ; y++) {
+			int row = y * width;
+			for (int x = 0 ; x < width ; x++) {
+				double value = counts != null ? counts[row + x] : nowIP.getf(row + x);
+				if (value != 0) addToBin(x, y, value);
+			}
+		}
+
+		numberOfHistograms++;
+
+	}
+
+	/**
+	 * Adds one histogram, given as hist2D[x][y].
+	 */
+	public void add(int[][] hist2D) {
+
+		if (hist2D.length != width || (width > 0 && hist2D[0].length != height)) throw new IllegalArgumentException("2D histogram does not match the " + width + " x " + height + " bins of the others");
+
+		for (int x = 0 ; x < width ; x++) {
+			for (int y = 0 ; y < height ; y++) {
+				if (hist2D[x][y] != 0) addToBin(x, y, hist2D[x][y]);
+			}
+		}
+
+		numberOfHistograms++;
+
+	}
+
+	void addToBin(int x, int y, double value) {
+
+		int t = (y / TILE) * tilesX + x / TILE;
+		Tile nowTile = tiles[t];
+		if (nowTile == null) {
+			nowTile = new Tile();
+			tiles[t] = nowTile;
+		}
+
+		int i = (y % TILE) * TILE + x % TILE;
+
+		//Welford update
+		int k = ++nowTile.nonZero[i];
+		double delta = value - nowTile.mean[i];
+		nowTile.mean[i] += delta / k;
+		nowTile.m2[i] += delta * (value - nowTile.mean[i]);
+
+	}
+
+	/**
+	 * @return {sum, mean, sum of squared deviations} of the bin over all added histograms
+	 */
+	public double[] getBinStatistics(int x, int y) {
+
+		double[] stats = new double[3];
+
+		Tile nowTile = tiles[(y / TILE) * tilesX + x / TILE];
+		if (nowTile == null || numberOfHistograms == 0) return stats;
+
+		int i = (y % TILE) * TILE + x % TILE;
+		double k = nowTile.nonZero[i];
+		double n = numberOfHistograms;
+		double nowMean = nowTile.mean[i];
+
+		//merge the k non-zero counts with the n - k zeros
+		stats[0] = k * nowMean;
+		stats[1] = k * nowMean / n;
+		stats[2] = nowTile.m2[i] + nowMean * nowMean * k * (n - k) / n;
+
+		return stats;
+
+	}
+
+	public double getSum(int x, int y) {
+		return getBinStatistics(x, y)[0];
+	}
+
+	public double getMean(int x, int y) {
+		return getBinStatistics(x, y)[1];
+	}
+
+	/**
+	 * @return population standard deviation of the bin
+	 */
+	public double getStd(int x, int y) {
+		if (numberOfHistograms == 0) return 0;
+		return Math.sqrt(getBinStatistics(x, y)[2] / numberOfHistograms);
+	}
+
+	public double getCV(int x, int y) {
+		double[] stats = getBinStatistics(x, y);
+		return Math.sqrt(stats[2] / numberOfHistograms) / stats[1];
+	}
+
+	/**
+	 * @param statistic SUM, MEAN, STD or CV
+	 * @return the statistic of all bins as 32-bit image
+	 */
+	public ImageProcessor getStatisticsImage(int statistic) {
+
+		float[] out = new float[width * height];
+		double n = numberOfHistograms;
+
+		//bins that were never hit have a CV of 0 / 0
+		if (statistic == CV) Arrays.fill(out, Float.NaN);
+
+		for (int t = 0 ; t < tiles.length ; t++) {
+
+			Tile nowTile = tiles[t];
+			if (nowTile == null) continue;
+
+			int x0 = (t % tilesX) * TILE;
+			int y0 = (t / tilesX) * TILE;
+
+			for (int j = 0 ; j < TILE && y0 + j < height ; j++) {
+				for (int i = 0 ; i < TILE && x0 + i < width ; i++) {
+
+					int b = j * TILE + i;
+					double k = nowTile.nonZero[b];
+					double nowMean = nowTile.mean[b];
+					double m2 = nowTile.m2[b] + nowMean * nowMean * k * (n - k) / n;
+
+					double value;
+					switch (statistic) {
+						case SUM: value = k * nowMean; break;
+						case MEAN: value = k * nowMean / n; break;
+						case STD: value = Math.sqrt(m2 / n); break;
+						default: value = Math.sqrt(m2 / n) / (k * nowMean / n); break;
+					}
+
+					out[(y0 + j) * width + x0 + i] = (float)value;
+				}
+			}
+		}
+
+		return new FloatProcessor(width, height, out);
+
+	}
+
+}
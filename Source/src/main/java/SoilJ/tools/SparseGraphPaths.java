@@ -0,0 +1,202 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+/**
+ * SparseGraphPaths is a SoilJ class for shortest paths in sparse, undirected graphs such as pore-network
+ * skeletons. The graph is stored as an adjacency list in compressed sparse row (CSR) arrays and the
+ * paths are found with Dijkstra's algorithm on a primitive binary heap. Memory and run time grow with
+ * the number of edges instead of with the square or cube of the number of vertices.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class SparseGraphPaths {
+
+	int numNodes;
+	int[] offsets;
+	int[] targets;
+	double[] weights;
+	double[] lengths;
+
+	public class PathTree {
+
+		public int source;
+		public double[] weight;			//summed up weights (e.g. resistances) from the source
+		public double[] length;			//summed up lengths along the same paths
+		public int[] predecessor;		//predecessor of each vertex on its path from the source, -1 if none
+
+	}
+
+	/**
+	 * Builds the CSR arrays of an undirected graph. Self loops are ignored.
+	 *
+	 * @param numNodes number of vertices
+	 * @param from first vertex of each edge
+	 * @param to second vertex of each edge
+	 * @param weight weight of each edge, used for finding the shortest path
+	 * @param length length of each edge, summed up along the shortest path
+	 */
+	public SparseGraphPaths(int numNodes, int[] from, int[] to, double[] weight, double[] length) {
+
+		this.numNodes = numNodes;
+
+		//count the neighbours
+		int[] degree = new int[numNodes];
+		for (int i = 0 ; i < from.length ; i++) {
+			if (from[i] == to[i]) continue;
+			degree[from[i]]++;
+			degree[to[i]]++;
+		}
+
+		offsets = new int[numNodes + 1];
+		for (int i = 0 ; i < numNodes ; i++) offsets[i + 1] = offsets[i] + degree[i];
+
+		targets = new int[offsets[numNodes]];
+		weights = new double[offsets[numNodes]];
+		lengths = new double[offsets[numNodes]];
+
+		//fill in both directions
+		int[] fill = Arrays.copyOf(offsets, numNodes);
+		for (int i = 0 ; i < from.length ; i++) {
+
+			int a = from[i];
+			int b = to[i];
+			if (a == b) continue;
+
+			targets[fill[a]] = b;
+			weights[fill[a]] = weight[i];
+			lengths[fill[a]] = length[i];
+			fill[a]++;
+
+			targets[fill[b]] = a;
+			weights[fill[b]] = weight[i];
+			lengths[fill[b]] = length[i];
+			fill[b]++;
+		}
+	}
+
+	public int getNumberOfNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from one source vertex.
+	 *
+	 * @param source index of the source vertex
+	 * @return weights, lengths and predecessors of the shortest paths to all vertices
+	 */
+	public PathTree runDijkstra(int source) {
+
+		PathTree mPT = new PathTree();
+
+		double[] dist = new double[numNodes];
+		double[] len = new double[numNodes];
+		int[] pred = new int[numNodes];
+		boolean[] done = new boolean[numNodes];
+
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(len, Double.POSITIVE_INFINITY);
+		Arrays.fill(pred, -1);
+
+		dist[source] = 0;
+		len[source] = 0;
+
+		//binary heap with lazy deletion
+		int heapCapacity = Math.max(16, targets.length / 2 + 1);
+		double[] heapKeys = new double[heapCapacity];
+		int[] heapNodes = new int[heapCapacity];
+		int heapSize = 0;
+
+		heapKeys[0] = 0;
+		heapNodes[0] = source;
+		heapSize = 1;
+
+		while (heapSize > 0) {
+
+			//pop
+			int u = heapNodes[0];
+			double du = heapKeys[0];
+			heapSize--;
+			if (heapSize > 0) {
+				double lastKey = heapKeys[heapSize];
+				int lastNode = heapNodes[heapSize];
+				int i = 0;
+				while (true) {
+					int child = 2 * i + 1;
+					if (child >= heapSize) break;
+					if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+					if (heapKeys[child] >= lastKey) break;
+					heapKeys[i] = heapKeys[child];
+					heapNodes[i] = heapNodes[child];
+					i = child;
+				}
+				heapKeys[i] = lastKey;
+				heapNodes[i] = lastNode;
+			}
+
+			if (done[u] || du > dist[u]) continue;
+			done[u] = true;
+
+			//relax the neighbours
+			for (int e = offsets[u] ; e < offsets[u + 1] ; e++) {
+
+				int v = targets[e];
+				if (done[v]) continue;
+
+				double dv = du + weights[e];
+				if (dv < dist[v]) {
+
+					dist[v] = dv;
+					len[v] = len[u] + lengths[e];
+					pred[v] = u;
+
+					//push
+					if (heapSize == heapKeys.length) {
+						heapKeys = Arrays.copyOf(heapKeys, 2 * heapKeys.length);
+						heapNodes = Arrays.copyOf(heapNodes, 2 * heapNodes.length);
+					}
+					int i = heapSize;
+					heapSize++;
+					while (i > 0) {
+						int parent = (i - 1) / 2;
+						if (heapKeys[parent] <= dv) break;
+						heapKeys[i] = heapKeys[parent];
+						heapNodes[i] = heapNodes[parent];
+						i = parent;
+					}
+					heapKeys[i] = dv;
+					heapNodes[i] = v;
+				}
+			}
+		}
+
+		mPT.source = source;
+		mPT.weight = dist;
+		mPT.length = len;
+		mPT.predecessor = pred;
+
+		return mPT;
+	}
+
+}
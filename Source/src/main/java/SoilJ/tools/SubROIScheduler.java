@@ -0,0 +1,254 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.plugin.PlugIn;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * SubROIScheduler is a SoilJ class that runs the tailoredPoreSpaceAnalyzer on the cuboid sub-ROIs of a REV
+ * analysis at the same time. Each sub-ROI gets its own copy of the file collection and of the options, and
+ * its voxels are copied directly from the pixel arrays of the shared stack, which is only read. The results
+ * of each sub-ROI go into files of their own. Like in the ColumnBatchScheduler, a sub-ROI is only started
+ * when its estimated memory demand fits into the heap that is still free.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class SubROIScheduler implements PlugIn {
+
+	public void run(String arg) {
+		//ok, this is not needed..
+	}
+
+	public class SubROITask {
+
+		public int roiNumber;
+		public InputOutput.MyFileCollection mFC;
+		public MenuWaiter.PoreSpaceAnalyzerOptions mPSA;
+
+		//the cuboid, x1 <= x < x2 etc.
+		public int x1, x2, y1, y2, z1, z2;
+
+		public long estimatedBytes;
+
+	}
+
+	/**
+	 * Prepares the options and the cuboid of each sub-ROI. The x and y edges are the bounds of the ROI made by
+	 * RoiHandler.makeMeAnIndependentRoi, i.e. the same as in prepareDesiredRoi; a bottom z of 0 stands for
+	 * the last slice.
+	 */
+	public ArrayList<SubROITask> planSubROIs(InputOutput.MyFileCollection mFC, MenuWaiter.PoreSpaceAnalyzerOptions mPSA, REVAnalyses.REVAnalysesPack revPack, ImagePlus nowTiff) {
+
+		InputOutput jIO = new InputOutput();
+		MenuWaiter menu = new MenuWaiter();
+		RoiHandler roi = new RoiHandler();
+		ColumnBatchScheduler cBS = new ColumnBatchScheduler();
+
+		int[] imageDimensions = {nowTiff.getWidth(), nowTiff.getHeight()};
+		int numberOfSlices = nowTiff.getNSlices();
+
+		ArrayList<SubROITask> tasks = new ArrayList<SubROITask>();
+
+		for (int j = 0 ; j < revPack.numberOfROIs ; j++) {
+
+			SubROITask mST = new SubROITask();
+			mST.roiNumber = j;
+
+			mST.mFC = jIO.copyMyFileCollection(mFC);
+			mST.mFC.colName = revPack.roiName[j];
+
+			mST.mPSA = menu.copyPoreSpaceAnalyzerOptions(mPSA);
+			mST.mPSA.mRSO.cubeX1 = revPack.x1[j];mST.mPSA.mRSO.cubeX2 = revPack.x2[j];
+			mST.mPSA.mRSO.cubeY1 = revPack.y1[j];mST.mPSA.mRSO.cubeY2 = revPack.y2[j];
+			mST.mPSA.mRSO.cubeZ1 = revPack.z1[j];mST.mPSA.mRSO.cubeZ2 = revPack.z2[j];
+			mST.mPSA.mRSO.choiceOfRoi = "Cuboid";
+
+			Rectangle bounds = roi.makeMeAnIndependentRoi(imageDimensions, mST.mPSA.mRSO).getBounds();
+			mST.x1 = Math.max(0, bounds.x);
+			mST.x2 = Math.min(imageDimensions[0], bounds.x + bounds.width);
+			mST.y1 = Math.max(0, bounds.y);
+			mST.y2 = Math.min(imageDimensions[1], bounds.y + bounds.height);
+			mST.z1 = Math.max(0, revPack.z1[j]);
+			mST.z2 = revPack.z2[j] == 0 ? numberOfSlices : Math.min(numberOfSlices, revPack.z2[j]);
+
+			//same area of interest as prepareDesiredRoi would have set
+			mST.mPSA.mRSO.areaOfInterest = (mST.mPSA.mRSO.cubeX2 - mST.mPSA.mRSO.cubeX1) * (mST.mPSA.mRSO.cubeY2 - mST.mPSA.mRSO.cubeY1);
+
+			long numberOfVoxels = (long)Math.max(0, mST.x2 - mST.x1) * Math.max(0, mST.y2 - mST.y1) * Math.max(0, mST.z2 - mST.z1);
+			mST.estimatedBytes = cBS.estimateBytesPerSample(numberOfVoxels, mPSA);
+
+			tasks.add(mST);
+		}
+
+		return tasks;
+
+	}
+
+	/**
+	 * Copies the cuboid out of the stack. Only the pixel arrays of the stack are read, so this can be called
+	 * from several threads at the same time.
+	 */
+	public ImagePlus cutCuboid(ImageStack nowStack, int x1, int x2, int y1, int y2, int z1, int z2) {
+
+		int w = Math.max(0, x2 - x1);
+		int h = Math.max(0, y2 - y1);
+		int srcW = nowStack.getWidth();
+
+		ImageStack outStack = new ImageStack(w, h);
+
+		for (int z = z1 ; z < z2 ; z++) {
+
+			Object src = nowStack.getPixels(z + 1);
+			ImageProcessor outIP;
+
+			if (src instanceof byte[]) outIP = new ByteProcessor(w, h, new byte[w * h], null);
+			else if (src instanceof short[]) outIP = new ShortProcessor(w, h, new short[w * h], null);
+			else if (src instanceof float[]) outIP = new FloatProcessor(w, h, new float[w * h]);
+			else throw new IllegalArgumentException("Only 8-bit, 16-bit and 32-bit grey value stacks can be cut");
+
+			Object dst = outIP.getPixels();
+			for (int y = 0 ; y < h ; y++) System.arraycopy(src, (y1 + y) * srcW + x1, dst, y * w, w);
+
+			outStack.addSlice(outIP);
+		}
+
+		ImagePlus outTiff = new ImagePlus();
+		outTiff.setStack(outStack);
+
+		return outTiff;
+
+	}
+
+	/**
+	 * Analyses all cuboid sub-ROIs of revPack, numberOfParallelROIs at most at the same time.
+	 *
+	 * @return the names of the sub-ROIs that were analysed and of those that failed
+	 */
+	public ColumnBatchScheduler.BatchReport runSubROIs(InputOutput.MyFileCollection mFC, MenuWaiter.PoreSpaceAnalyzerOptions mPSA, REVAnalyses.REVAnalysesPack revPack, ImagePlus nowTiff, int numberOfParallelROIs) {
+
+		ColumnBatchScheduler cBS = new ColumnBatchScheduler();
+		final ColumnBatchScheduler.BatchReport mBR = cBS.new BatchReport();
+
+		ArrayList<SubROITask> plans = planSubROIs(mFC, mPSA, revPack, nowTiff);
+		if (plans.isEmpty()) return mBR;
+
+		final ImageStack nowStack = nowTiff.getStack();
+
+		//heap budget in megabytes
+		Runtime rt = Runtime.getRuntime();
+		long freeHeap = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+		final int budgetMB = (int)Math.max(1, Math.min(Integer.MAX_VALUE, ColumnBatchScheduler.HEAP_SHARE * freeHeap / ColumnBatchScheduler.MEGABYTE));
+		final Semaphore heapBudget = new Semaphore(budgetMB, true);
+
+		if (numberOfParallelROIs <= 0) numberOfParallelROIs = rt.availableProcessors();
+		int numberOfThreads = Math.max(1, Math.min(numberOfParallelROIs, plans.size()));
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (final SubROITask mST : plans) {
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+
+					//sub-ROIs larger than the whole budget are run alone
+					int slotsMB = (int)Math.max(1, Math.min(budgetMB, mST.estimatedBytes / ColumnBatchScheduler.MEGABYTE));
+					heapBudget.acquire(slotsMB);
+
+					try {
+						IJ.showStatus("Analysing sub-ROI " + mST.mFC.colName + " ...");
+						analyzeSubROI(mST, nowStack);
+						synchronized (mBR) {
+							mBR.finished.add(mST.mFC.colName);
+						}
+					}
+					catch (Throwable t) {
+						synchronized (mBR) {
+							mBR.failed.add(mST.mFC.colName);
+							mBR.failureMessages.add(t.toString());
+						}
+						IJ.log("Analysis of " + mST.mFC.colName + " failed: " + t.toString());
+					}
+					finally {
+						heapBudget.release(slotsMB);
+					}
+
+					return true;
+				}
+			});
+		}
+
+		try {
+			List<Future<Boolean>> results = exec.invokeAll(tasks);
+			for (Future<Boolean> result : results) result.get();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			exec.shutdown();
+		}
+
+		IJ.log("Analysed " + mBR.finished.size() + " of " + plans.size() + " sub-ROIs.");
+		for (int i = 0 ; i < mBR.failed.size() ; i++) IJ.log("Failed: " + mBR.failed.get(i) + " (" + mBR.failureMessages.get(i) + ")");
+
+		return mBR;
+
+	}
+
+	public void analyzeSubROI(SubROITask mST, ImageStack nowStack) {
+
+		InputOutput jIO = new InputOutput();
+		RoiHandler roi = new RoiHandler();
+		MorphologyAnalyzer morph = new MorphologyAnalyzer();
+
+		//cut roi
+		RoiHandler.ColumnRoi colRoi = roi.new ColumnRoi();
+		colRoi.nowTiff = cutCuboid(nowStack, mST.x1, mST.x2, mST.y1, mST.y2, mST.z1, mST.z2);
+		colRoi.area = mST.mPSA.mRSO.areaOfInterest;
+
+		if (mST.mPSA.mRSO.saveROI) jIO.tiffSaver(mST.mFC.myPreOutFolder, mST.mFC.colName + ".tif", colRoi.nowTiff);
+
+		//apply analyzes
+		morph.tailoredPoreSpaceAnalyzer(mST.roiNumber, mST.mFC, colRoi, mST.mPSA);
+
+	}
+
+}
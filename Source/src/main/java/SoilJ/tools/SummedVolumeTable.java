@@ -0,0 +1,226 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+
+/**
+ * SummedVolumeTable is a SoilJ class that holds 3-D integral images (summed-volume tables) of a binary
+ * 8-bit stack: one for the phase voxels (255) and, if desired, one for the phase changes along each of the
+ * x, y and z axes. The phase volume and the number of intercepts of any cuboid can then be read from 8
+ * table entries, no matter how large the cuboid is. This is meant for the REV analyses, where the same
+ * image is cut into thousands of overlapping sub-ROIs.
+ *
+ * The cuboids are given as x1 <= x < x2, y1 <= y < y2 and z1 <= z < z2 (z starting at 0), i.e. in the
+ * same way as the edges of the sub-ROIs in REVAnalyses. The intercepts are counted as in FusedScanner, so
+ * a phase change is only counted if both voxels are inside the cuboid.
+ *
+ * Each table needs 4 bytes per voxel of the covered box, i.e. 16 bytes per voxel with the interface tables.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class SummedVolumeTable {
+
+	//covered box of the image
+	int offX;
+	int offY;
+	int offZ;
+	int w;
+	int h;
+	int d;
+
+	//tables with (w + 1) * (h + 1) * (d + 1) entries; entry (x, y, z) is the sum over all voxels below x, y and z
+	int[] phase;
+	int[] interX;
+	int[] interY;
+	int[] interZ;
+
+	/**
+	 * @return the number of bytes of all tables of the box
+	 */
+	public static long estimateBytes(int width, int height, int depth, boolean countInterfaces) {
+		
+		long entries = (long)(width + 1) * (long)(height + 1) * (long)(depth + 1);
+		int numberOfTables = countInterfaces ? 4 : 1;
+		
+		return 4L * numberOfTables * entries;
+	}
+
+	/**
+	 * @return true if a table of the box fits into a Java array and all tables fit into the share of the free
+	 * heap that ColumnBatchScheduler hands out, too
+	 */
+	public static boolean canHold(int width, int height, int depth, boolean countInterfaces) {
+		
+		if ((long)(width + 1) * (long)(height + 1) * (long)(depth + 1) > Integer.MAX_VALUE - 8) return false;
+		
+		Runtime rt = Runtime.getRuntime();
+		long freeHeap = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+		
+		return estimateBytes(width, height, depth, countInterfaces) <= ColumnBatchScheduler.HEAP_SHARE * freeHeap;
+	}
+
+	/**
+	 * Builds the tables for the box x1 <= x < x2, y1 <= y < y2, z1 <= z < z2 of the image.
+	 *
+	 * @param nowTiff binary 8-bit image (255 = phase)
+	 * @param countInterfaces also build the tables of the phase changes along x, y and z
+	 */
+	public SummedVolumeTable(ImagePlus nowTiff, int x1, int x2, int y1, int y2, int z1, int z2, boolean countInterfaces) {
+
+		int imgW = nowTiff.getWidth();
+		int imgH = nowTiff.getHeight();
+		ImageStack nowStack = nowTiff.getStack();
+
+		offX = Math.max(0, x1);
+		offY = Math.max(0, y1);
+		offZ = Math.max(0, z1);
+		w = Math.max(0, Math.min(imgW, x2) - offX);
+		h = Math.max(0, Math.min(imgH, y2) - offY);
+		d = Math.max(0, Math.min(nowTiff.getNSlices(), z2) - offZ);
+
+		if ((long)(w + 1) * (long)(h + 1) * (long)(d + 1) > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("The box of " + w + " x " + h + " x " + d + " voxels is too large for a summed-volume table");
+
+		int tw = w + 1;
+		int twh = tw * (h + 1);
+
+		phase = new int[twh * (d + 1)];
+		if (countInterfaces) {
+			interX = new int[phase.length];
+			interY = new int[phase.length];
+			interZ = new int[phase.length];
+		}
+
+		byte[] prev = offZ > 0 ? (byte[])nowStack.getPixels(offZ) : null;
+
+		for (int z = 0 ; z < d ; z++) {
+
+			IJ.showStatus("Building summed-volume table for slice " + (z + 1) + "/" + d + " ...");
+
+			byte[] cur = (byte[])nowStack.getPixels(offZ + z + 1);
+			int now = (z + 1) * twh;
+
+			for (int y = 0 ; y < h ; y++) {
+
+				int row = (offY + y) * imgW + offX;
+				int t = now + (y + 1) * tw + 1;
+				int tUp = t - tw;
+
+				//running row sums
+				int sumPhase = 0, sumX = 0, sumY = 0, sumZ = 0;
+
+				for (int x = 0 ; x < w ; x++, t++, tUp++) {
+
+					int p = row + x;
+					byte v = cur[p];
+
+					sumPhase += (v & 0xff) == 255 ? 1 : 0;
+
+					//2-D prefix sum of this slice plus the table of the slice below
+					phase[t] = sumPhase + phase[tUp] - phase[tUp - twh] + phase[t - twh];
+
+					if (countInterfaces) {
+
+						//phase changes with the voxel before, also across the edges of the box, so that
+						//a query can decide which of them lie inside the cuboid
+						if (offX + x > 0 && cur[p - 1] != v) sumX++;
+						if (offY + y > 0 && cur[p - imgW] != v) sumY++;
+						if (prev != null && prev[p] != v) sumZ++;
+
+						interX[t] = sumX + interX[tUp] - interX[tUp - twh] + interX[t - twh];
+						interY[t] = sumY + interY[tUp] - interY[tUp - twh] + interY[t - twh];
+						interZ[t] = sumZ + interZ[tUp] - interZ[tUp - twh] + interZ[t - twh];
+					}
+				}
+			}
+
+			prev = cur;
+		}
+	}
+
+	/**
+	 * Sum of a table over the cuboid, in image coordinates; the cuboid is clipped to the covered box.
+	 */
+	long sum(int[] table, int x1, int x2, int y1, int y2, int z1, int z2) {
+
+		x1 = Math.max(0, x1 - offX); x2 = Math.min(w, x2 - offX);
+		y1 = Math.max(0, y1 - offY); y2 = Math.min(h, y2 - offY);
+		z1 = Math.max(0, z1 - offZ); z2 = Math.min(d, z2 - offZ);
+		if (x1 >= x2 | y1 >= y2 | z1 >= z2) return 0;
+
+		int tw = w + 1;
+		int twh = tw * (h + 1);
+
+		int a = z2 * twh, b = z1 * twh;
+		int c = y2 * tw, e = y1 * tw;
+
+		long upper = (long)table[a + c + x2] - table[a + c + x1] - table[a + e + x2] + table[a + e + x1];
+		long lower = (long)table[b + c + x2] - table[b + c + x1] - table[b + e + x2] + table[b + e + x1];
+
+		return upper - lower;
+	}
+
+	public long getPhaseVolume(int x1, int x2, int y1, int y2, int z1, int z2) {
+		return sum(phase, x1, x2, y1, y2, z1, z2);
+	}
+
+	/**
+	 * @return number of phase changes along the lines in x-direction of the cuboid
+	 */
+	public long getInterceptsX(int x1, int x2, int y1, int y2, int z1, int z2) {
+		if (interX == null) throw new IllegalStateException("The interface tables were not built");
+		return sum(interX, x1 + 1, x2, y1, y2, z1, z2);
+	}
+
+	public long getInterceptsY(int x1, int x2, int y1, int y2, int z1, int z2) {
+		if (interY == null) throw new IllegalStateException("The interface tables were not built");
+		return sum(interY, x1, x2, y1 + 1, y2, z1, z2);
+	}
+
+	public long getInterceptsZ(int x1, int x2, int y1, int y2, int z1, int z2) {
+		if (interZ == null) throw new IllegalStateException("The interface tables were not built");
+		return sum(interZ, x1, x2, y1, y2, z1 + 1, z2);
+	}
+
+	/**
+	 * @return mean number of intercepts per line along x, y and z; the same as the means of the x, y and z
+	 * directions in MorphologyAnalyzer.compileAnisotropyResults
+	 */
+	public double[] getMeanIntercepts(int x1, int x2, int y1, int y2, int z1, int z2) {
+
+		double nx = Math.max(0, Math.min(w + offX, x2) - Math.max(offX, x1));
+		double ny = Math.max(0, Math.min(h + offY, y2) - Math.max(offY, y1));
+		double nz = Math.max(0, Math.min(d + offZ, z2) - Math.max(offZ, z1));
+
+		double[] means = new double[3];
+		if (nx * ny * nz == 0) return means;
+
+		means[0] = getInterceptsX(x1, x2, y1, y2, z1, z2) / (ny * nz);
+		means[1] = getInterceptsY(x1, x2, y1, y2, z1, z2) / (nx * nz);
+		means[2] = getInterceptsZ(x1, x2, y1, y2, z1, z2) / (nx * ny);
+
+		return means;
+	}
+
+}
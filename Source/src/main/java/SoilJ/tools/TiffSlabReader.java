@@ -0,0 +1,208 @@
+package SoilJ.tools;
+
+/**
+ *SoilJ.tools is a collection of classes for SoilJ,
+ *a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileInfo;
+import ij.io.Opener;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * TiffSlabReader is a SoilJ class that reads a selection of slices from an uncompressed 3-D TIFF.
+ * The IFD chain is parsed only once (or taken from MyFileCollection.fileInfo), the slice offsets are
+ * derived from it and runs of consecutive slices are read as one slab through a single FileChannel.
+ * Compressed or otherwise unusual files are reported as not readable, so that the caller can fall back
+ * to ImageJ's Opener.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class TiffSlabReader {
+
+	//maximal number of bytes read with one positional read
+	public static final long MAX_SLAB_BYTES = 256L * 1024L * 1024L;
+
+	String path;
+	FileInfo[] fI;
+
+	int width;
+	int height;
+	int bytesPerPixel;
+	int nSlices;
+
+	public TiffSlabReader(String path, FileInfo[] fileInfo) {
+
+		this.path = path;
+		this.fI = fileInfo;
+
+		//parse the IFDs if nobody has done it before
+		if (fI == null) fI = Opener.getTiffFileInfo(path);
+
+		if (fI != null && fI.length > 0) {
+			width = fI[0].width;
+			height = fI[0].height;
+			bytesPerPixel = fI[0].getBytesPerPixel();
+			if (fI.length == 1) nSlices = fI[0].nImages;
+			else nSlices = fI.length;
+		}
+	}
+
+	/**
+	 * @return true if all slices are stored uncompressed as 8-bit, 16-bit unsigned or 32-bit float gray values
+	 */
+	public boolean canRead() {
+
+		if (fI == null || fI.length == 0) return false;
+
+		for (int i = 0 ; i < fI.length ; i++) {
+			FileInfo nowFI = fI[i];
+			if (nowFI.compression > FileInfo.COMPRESSION_NONE) return false;
+			if (nowFI.fileType != FileInfo.GRAY8 && nowFI.fileType != FileInfo.GRAY16_UNSIGNED && nowFI.fileType != FileInfo.GRAY32_FLOAT) return false;
+			if (nowFI.fileType != fI[0].fileType) return false;
+			if (nowFI.width != width || nowFI.height != height) return false;
+			if (nowFI.whiteIsZero) return false;
+			if (nowFI.stripOffsets != null && nowFI.stripOffsets.length > 1 && !stripsAreContiguous(nowFI)) return false;
+		}
+
+		return true;
+	}
+
+	public int getNSlices() {
+		return nSlices;
+	}
+
+	/**
+	 * @param slice slice number, starting with 1 like in Opener.openImage(path, n)
+	 * @return the position of the first pixel of this slice in the file
+	 */
+	public long getSliceOffset(int slice) {
+
+		long imageSize = (long)width * height * bytesPerPixel;
+
+		if (fI.length == 1) return fI[0].getOffset() + (long)(slice - 1) * (imageSize + (long)fI[0].gapBetweenImages);
+
+		FileInfo nowFI = fI[slice - 1];
+		if (nowFI.stripOffsets != null && nowFI.stripOffsets.length > 0) return nowFI.stripOffsets[0] & 0xffffffffL;
+		else return nowFI.getOffset();
+
+	}
+
+	/**
+	 * Reads the desired slices. Consecutive slices that lie back to back in the file are read as one slab.
+	 *
+	 * @param sampleSlices slice numbers, starting with 1
+	 * @return the stack with the desired slices
+	 */
+	public ImagePlus readSlices(int[] sampleSlices) throws IOException {
+
+		ImageStack outStack = new ImageStack(width, height);
+		long imageSize = (long)width * height * bytesPerPixel;
+		int maxSlicesPerSlab = (int)Math.max(1, MAX_SLAB_BYTES / imageSize);
+
+		try (FileChannel fc = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+
+			int i = 0;
+			while (i < sampleSlices.length) {
+
+				//find the run of slices that can be read in one go
+				int runLength = 1;
+				long runStart = getSliceOffset(sampleSlices[i]);
+				while (i + runLength < sampleSlices.length && runLength < maxSlicesPerSlab
+						&& sampleSlices[i + runLength] == sampleSlices[i + runLength - 1] + 1
+						&& getSliceOffset(sampleSlices[i + runLength]) == runStart + runLength * imageSize) runLength++;
+
+				IJ.showStatus("Reading slices " + sampleSlices[i] + " to " + sampleSlices[i + runLength - 1] + " ...");
+
+				ByteBuffer slab = ByteBuffer.allocate((int)(runLength * imageSize));
+				long position = runStart;
+				while (slab.hasRemaining()) {
+					int bytesRead = fc.read(slab, position);
+					if (bytesRead < 0) throw new IOException("Unexpected end of file in " + path);
+					position += bytesRead;
+				}
+				slab.flip();
+				if (fI[0].intelByteOrder) slab.order(ByteOrder.LITTLE_ENDIAN);
+				else slab.order(ByteOrder.BIG_ENDIAN);
+
+				//cut the slab into slices
+				for (int j = 0 ; j < runLength ; j++) {
+					slab.position((int)(j * imageSize));
+					outStack.addSlice(decodeSlice(slab));
+				}
+
+				i += runLength;
+			}
+		}
+
+		ImagePlus nowTiff = new ImagePlus();
+		nowTiff.setStack(outStack);
+
+		return nowTiff;
+	}
+
+	private ImageProcessor decodeSlice(ByteBuffer slab) {
+
+		int wh = width * height;
+
+		switch (fI[0].fileType) {
+			case FileInfo.GRAY16_UNSIGNED : {
+				short[] pixels = new short[wh];
+				slab.asShortBuffer().get(pixels);
+				return new ShortProcessor(width, height, pixels, null);
+			}
+			case FileInfo.GRAY32_FLOAT : {
+				float[] pixels = new float[wh];
+				slab.asFloatBuffer().get(pixels);
+				return new FloatProcessor(width, height, pixels, null);
+			}
+			default : {
+				byte[] pixels = new byte[wh];
+				slab.get(pixels);
+				return new ByteProcessor(width, height, pixels, null);
+			}
+		}
+	}
+
+	private boolean stripsAreContiguous(FileInfo nowFI) {
+
+		long nextOffset = nowFI.stripOffsets[0] & 0xffffffffL;
+		for (int i = 0 ; i < nowFI.stripOffsets.length ; i++) {
+			if ((nowFI.stripOffsets[i] & 0xffffffffL) != nextOffset) return false;
+			if (nowFI.stripLengths == null) return false;
+			nextOffset += nowFI.stripLengths[i] & 0xffffffffL;
+		}
+
+		return true;
+	}
+
+}
@@ -25,6 +25,7 @@ import ij.ImageStack;
 import ij.plugin.PlugIn;
 import ij.process.AutoThresholder;
 import ij.process.ImageProcessor;
+import SoilJ.tools.DrainageEngine;
 import SoilJ.tools.HistogramStuff;
 import SoilJ.tools.ImageManipulator;
 import SoilJ.tools.InputOutput;
@@ -62,22 +63,11 @@ public class CalculateWaterRetention_ extends ImagePlus implements PlugIn  {
 		
 		//construct biggish objects
 		InputOutput jIO = new InputOutput();		
-		ObjectDetector jOD = new ObjectDetector();
-		ImageManipulator jIM = new ImageManipulator();
 		MenuWaiter menu = new MenuWaiter();
-		HistogramStuff hist = new HistogramStuff();
 		
-		// init variables
-		int i;
-		MenuWaiter.WRCCalculatorMenu mWRC = menu.new WRCCalculatorMenu();
-		mWRC = menu.showWRCMenu();
+		MenuWaiter.WRCCalculatorMenu mWRC = menu.showWRCMenu();
 		if (mWRC == null) return;
 		
-		//construct image related objects
-		ImagePlus nowTiff;  //input
-		ImagePlus airTiff;  //zwischiput
-		ImagePlus waterTiff;  //output
-		
 		//read base folder and number of 3D images
 	    String[] myTiffs = null;String myBaseFolder = null;
 	    while (myTiffs == null) {
@@ -88,6 +78,31 @@ public class CalculateWaterRetention_ extends ImagePlus implements PlugIn  {
 				IJ.error("Please choose a folder with TIFF images or cancel. Thank you.");	
 			}
 		}
+	    
+	    calculateWaterRetention(mWRC, myBaseFolder);
+	    
+	}
+	
+	public void calculateWaterRetention(MenuWaiter.WRCCalculatorMenu mWRC, String myBaseFolder) {
+		
+		String pathSep = "/";
+		
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();		
+		ObjectDetector jOD = new ObjectDetector();
+		ImageManipulator jIM = new ImageManipulator();
+		HistogramStuff hist = new HistogramStuff();
+		
+		// init variables
+		int i;
+		
+		//construct image related objects
+		ImagePlus nowTiff;  //input
+		ImagePlus airTiff;  //zwischiput
+		ImagePlus waterTiff;  //output
+		
+		String[] myTiffs = jIO.listTiffsInFolder(new File(myBaseFolder));
+		if (myTiffs == null) throw new IllegalArgumentException("There are no TIFF images in " + myBaseFolder);
 		String myTiffName;
 		String myOutFolder = "WaterRetentionData";
 						
@@ -161,11 +176,18 @@ public class CalculateWaterRetention_ extends ImagePlus implements PlugIn  {
 			
 			IJ.error("Does not take sirface topography into account for now. Sorry.");
 			
+			//drain the column for all tension steps at once
+			DrainageEngine dE = new DrainageEngine();
+			DrainageEngine.DrainageResult mDR = null;
+			if (mWRC.choiceOfWRCType.equalsIgnoreCase("drainage")) mDR = dE.drain(nowTiff, null, mWRC);
+			
 			//find water-filled pores
 			for (int j = 0 ; j < mWRC.tensionSteps.length ; j++) {
 				
-				//extract air-filled pores
-				airTiff = jOD.extractAirFilledPores(mWRC.tensionSteps[j], nowTiff, null, mWRC, mFC);
+				//extract air-filled pores (steps with cut-offs below 2 voxels, and all steps of columns with too many
+				//pore voxels for the drainage sweep, are still done one by one)
+				if (mDR != null && mDR.solved[j]) airTiff = dE.getAirFilledPores(mDR, j, nowTiff.getWidth(), nowTiff.getHeight());
+				else airTiff = jOD.extractAirFilledPores(mWRC.tensionSteps[j], nowTiff, null, mWRC, mFC);
 				
 				//airTiff.updateAndDraw();
 				//airTiff.show();
@@ -50,18 +50,10 @@ public class CalibrateGrayValues_ extends ImagePlus implements PlugIn  {
 		
 		//construct biggish objects
 		InputOutput jIO = new InputOutput();		
-		ImageManipulator jIM = new ImageManipulator();	
 		MenuWaiter menu = new MenuWaiter();
 		
 		MenuWaiter.CalibrationReferences myNR;
 		
-		// init variables
-		int i;
-		
-		//construct image related objects
-		ImagePlus nowTiff = new ImagePlus();		
-		ImagePlus outTiff = new ImagePlus();
-		
 		//ask for threshold choice
 		myNR = menu.showCalibrationMenu();
 		if (myNR == null) return;
@@ -69,6 +61,25 @@ public class CalibrateGrayValues_ extends ImagePlus implements PlugIn  {
 		//read file or files
 		InputOutput.MyFileCollection mFC = jIO.fileSelector("Please choose a file or folder with your image data");
 		
+		calibrateColumns(myNR, mFC);
+		
+	}
+	
+	public void calibrateColumns(MenuWaiter.CalibrationReferences myNR, InputOutput.MyFileCollection mFC) {
+		
+		String pathSep = "/";
+		
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();		
+		ImageManipulator jIM = new ImageManipulator();	
+		
+		// init variables
+		int i;
+		
+		//construct image related objects
+		ImagePlus nowTiff = new ImagePlus();		
+		ImagePlus outTiff = new ImagePlus();
+		
 		//add inner circle folder location if necessary
 		if (myNR.useInnerCircle) {
 			mFC = jIO.addInnerCircleFolder(mFC);
@@ -0,0 +1,83 @@
+package SoilJ_;
+
+/**
+ *SoilJ is a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.plugin.PlugIn;
+import SoilJ.tools.InputOutput;
+
+import java.io.File;
+
+/**
+ * ConvertInnerCircles2Binary is a SoilJ plugin that writes the binary twins of the InnerCircle files in a folder
+ * (see InnerCircleCache), so that later sessions do not need to parse the text files again. The text files are
+ * not changed. Files of steel columns are skipped.
+ *
+ * @author John Koestel
+ *
+ */
+
+public class ConvertInnerCircles2Binary_ extends ImagePlus implements PlugIn  {
+
+	public void run(String arg) {
+
+		// set the plugins.dir property to make the plugin appear in the Plugins menu
+		Class<?> clazz = ConvertInnerCircles2Binary_.class;
+		String url = clazz.getResource("/" + clazz.getName().replace('.', '/') + ".class").toString();
+		String pluginsDir = url.substring(5, url.length() - clazz.getName().length() - 6);
+		System.setProperty("plugins.dir", pluginsDir);
+
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();
+
+		//read the folder with the InnerCircle files
+		String myGaugeFolder = jIO.chooseAFolder("Please choose the folder with your InnerCircle files");
+		if (myGaugeFolder == null) return;
+
+		convertInnerCircles(jIO.listInnerCircleFiles(myGaugeFolder, ""));
+
+	}
+
+	/**
+	 * @return the number of InnerCircle files whose binary twins could be written
+	 */
+	public int convertInnerCircles(String[] myGauges) {
+
+		InputOutput jIO = new InputOutput();
+
+		int numberOfConverted = 0;
+		for (int i = 0 ; i < myGauges.length ; i++) {
+
+			if (new File(myGauges[i]).getName().contains("Steel")) continue;
+
+			IJ.showStatus("Converting InnerCircle file " + (i + 1) + "/" + myGauges.length + " ...");
+
+			if (jIO.convertInnerCircle2Binary(myGauges[i])) numberOfConverted++;
+			else IJ.log("Could not convert " + myGauges[i]);
+
+		}
+
+		IJ.log("Wrote the binary twins of " + numberOfConverted + " InnerCircle files.");
+
+		return numberOfConverted;
+
+	}
+
+}
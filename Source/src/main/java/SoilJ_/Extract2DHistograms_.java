@@ -54,42 +54,45 @@ public class Extract2DHistograms_ extends ImagePlus implements PlugIn  {
 		
 		//construct biggish objects
 		InputOutput jIO = new InputOutput();		
-		ObjectDetector jOD = new ObjectDetector();
 		MenuWaiter menu = new MenuWaiter();
+		
+		MenuWaiter.Extract2DHistogramOptions e2DH = menu.show2DHistogramExtractionMenu();
+		if (e2DH == null) return;
+	  	    
+	    //select file or files
+	  	InputOutput.MyFileCollection mFC = jIO.fileSelector("Please choose a file or folder with your image data");
+	  	
+	  	//ask for the gradient files if they are neither calculated nor found in the folder 'Gradients'
+	    if (!e2DH.calcGradientImage && !jIO.testIfFolderIsPresent(new File(mFC.myBaseFolder), "Gradients")) {
+	    	mFC.myGradientFolder = jIO.chooseAFolder("Please choose the folder with your gradient image data");
+	    	if (mFC.myGradientFolder == null) return;
+	    }
+	    
+	    extract2DHistograms(e2DH, mFC);
+	    
+	}
+	
+	public void extract2DHistograms(MenuWaiter.Extract2DHistogramOptions e2DH, InputOutput.MyFileCollection mFC) {
+		
+		String pathSep = "/";
+		
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();		
+		ObjectDetector jOD = new ObjectDetector();
 		RoiHandler roi = new RoiHandler();
 		HistogramStuff hist = new HistogramStuff();
 		
 		// init variables
 		int i;
-		MenuWaiter.Extract2DHistogramOptions e2DH = menu.new Extract2DHistogramOptions();
-		e2DH = menu.show2DHistogramExtractionMenu();
-		if (e2DH == null) return;
 		MenuWaiter.ROISelectionOptions mRSO = e2DH.mRSO;
-	  	    
-	    //select file or files
-	  	InputOutput.MyFileCollection mFC = jIO.fileSelector("Please choose a file or folder with your image data");
 	  	
-	  	//create also select gradient files 
-	  	String myGradFolder;
+	  	//create or find the folder with the gradient files
+	  	String myGradFolder = mFC.myGradientFolder;
 	    if (e2DH.calcGradientImage) {
 	    	myGradFolder = mFC.myBaseFolder + pathSep + "Gradients";
 	    	new File(myGradFolder).mkdir();		
 	    }
-	    if (!e2DH.calcGradientImage) {
-	    	if (jIO.testIfFolderIsPresent(new File(mFC.myBaseFolder), "Gradients")) {
-	    		myGradFolder = mFC.myBaseFolder + pathSep + "Gradients";
-	    	}
-	    	else {	    	
-	    		myGradFolder = null;
-				while (myGradFolder == null) {
-					myGradFolder = jIO.chooseAFolder("Please choose the folder with your gradient image data");
-					if (myGradFolder == null) return;
-					
-					//remember gradient folder
-					mFC.myGradientFolder = myGradFolder;
-				}		
-	    	}
-	    }		    
+	    if (myGradFolder == null) myGradFolder = mFC.myBaseFolder + pathSep + "Gradients";
 	    
 		//add inner circle folder location if necessary
 		if (mRSO.useInnerCircleFiles) {
@@ -149,10 +152,15 @@ public class Extract2DHistograms_ extends ImagePlus implements PlugIn  {
   
 		
 		//saveOutPut 2D histogram
-		double[][] out2DHist = new double[256][256];   //b16 == 256 * 256
+		int grayBins = e2DH.numberOfGrayValueBins;
+		int gradientBins = e2DH.numberOfGradientBins;
+		double[][] out2DHist = new double[grayBins][gradientBins];
 				
 
 		
+		//remember gradient folder
+		mFC.myGradientFolder = myGradFolder;
+		
 		//loop over 3D images			
 		for (i = 0 ; i < mFC.myTiffs.length ; i++) {  
 			//assign current TIFF
@@ -164,7 +172,7 @@ public class Extract2DHistograms_ extends ImagePlus implements PlugIn  {
 			//load or create gradient Image
 			ImagePlus gradTiff = new ImagePlus();	
 			if (e2DH.calcGradientImage) {
-				gradTiff = jOD.createGradientImage(mFC, jIO.openTiff3D(mFC));
+				gradTiff = jOD.createGradientImage(mFC, jIO.openTiff3D(mFC), e2DH.useSobelGradient);
 			}
 			try {
 				mFC.nowTiffPath = mFC.myGradientFolder + pathSep + mFC.fileName;
@@ -183,14 +191,14 @@ public class Extract2DHistograms_ extends ImagePlus implements PlugIn  {
 			IJ.freeMemory();IJ.freeMemory();	
 			
 			//do the cutting
-			int[][] hist2D = hist.extract2DHistogram(nowRoi.nowTiff, gradRoi.nowTiff);
+			int[][] hist2D = hist.extract2DHistogram(nowRoi.nowTiff, gradRoi.nowTiff, grayBins, e2DH.maxGrayValue, gradientBins, e2DH.maxGradient);
 			double sumEntries = 0;
-			for (int j = 0 ; j < 256 ; j++) sumEntries += hist2D[j][0]; 
+			for (int j = 0 ; j < grayBins ; j++) sumEntries += hist2D[j][0]; 
 			
 			//add to overall histogram
-			double[][] indieHist = new double[256][256];
-			for (int x = 0 ; x < 256 ; x++) {
-				for (int y = 0 ; y < 256 ; y++) {
+			double[][] indieHist = new double[grayBins][gradientBins];
+			for (int x = 0 ; x < grayBins ; x++) {
+				for (int y = 0 ; y < gradientBins ; y++) {
 					out2DHist[x][y] += (double)hist2D[x][y] / (2 * sumEntries);
 					indieHist[x][y] = (double)hist2D[x][y] / (2 * sumEntries);
 				}
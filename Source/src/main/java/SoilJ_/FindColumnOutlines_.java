@@ -48,13 +48,7 @@ public class FindColumnOutlines_ extends ImagePlus implements PlugIn  {
 		
 		//construct biggish objects
 		InputOutput jIO = new InputOutput();		
-		ObjectDetector jOD = new ObjectDetector();
 		MenuWaiter menu = new MenuWaiter();
-		DisplayThings disp = new DisplayThings();
-		ImageManipulator jIM = new ImageManipulator();
-				
-		// init variables
-		int i;
 					
 		//get details on PVC column finding
 		MenuWaiter.ColumnFinderMenuReturn jCFS = menu.new ColumnFinderMenuReturn(); 
@@ -63,6 +57,23 @@ public class FindColumnOutlines_ extends ImagePlus implements PlugIn  {
 		
 		//read file or files
 		InputOutput.MyFileCollection mFC = jIO.fileSelector("Please choose a file or folder with your image data");
+		
+		findColumnOutlines(jCFS, mFC);
+		
+	}
+	
+	public void findColumnOutlines(MenuWaiter.ColumnFinderMenuReturn jCFS, InputOutput.MyFileCollection mFC) {
+		
+		String pathSep = "/";
+		
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();		
+		ObjectDetector jOD = new ObjectDetector();
+		DisplayThings disp = new DisplayThings();
+		ImageManipulator jIM = new ImageManipulator();
+				
+		// init variables
+		int i;
 	 		
 		//create output folder 
 		String myOutFolderName = "WallCoordinateIdentified";
@@ -49,19 +49,36 @@ public class ImageSegmentation_ extends ImagePlus implements PlugIn  {
 		
 		//construct biggish objects
 		InputOutput jIO = new InputOutput();		
-		ImageManipulator jIM = new ImageManipulator();
 		MenuWaiter menu = new MenuWaiter();
 		
-		//construct image related objects
-		ImagePlus nowTiff = new ImagePlus();		
-		ImagePlus[] outTiff = {null, null, null};
-
 		//ask for threshold choice
 		MenuWaiter.ThresholderMenuReturn mTMR = menu.showThresholdingDialog();
 		if (mTMR == null) return;
 		
 		//select file or files
 	  	InputOutput.MyFileCollection mFC = jIO.fileSelector("Please choose a file or folder with your image data");
+	  	
+	  	//ask for the constant thresholds
+	  	if (mTMR.useConstantThreshold == true) {
+	  		mTMR = menu.showManualThresholdingDialog(mTMR);
+	  		if (mTMR == null) return;
+	  	}
+	  	
+	  	segmentColumns(mTMR, mFC);
+	  	
+	}
+	
+	public void segmentColumns(MenuWaiter.ThresholderMenuReturn mTMR, InputOutput.MyFileCollection mFC) {
+		
+		String pathSep = "/";
+		
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();		
+		ImageManipulator jIM = new ImageManipulator();
+		
+		//construct image related objects
+		ImagePlus nowTiff = new ImagePlus();		
+		ImagePlus[] outTiff = {null, null, null};
 	 
 		//add inner circle folder location if necessary
 		if (mTMR.useInnerCircle) {
@@ -72,7 +89,6 @@ public class ImageSegmentation_ extends ImagePlus implements PlugIn  {
 		String myOutPath = null;		
 		if (mTMR.useConstantThreshold == true) {
 			
-			mTMR = menu.showManualThresholdingDialog(mTMR);
 			String thresholds = "";
 			if (mTMR.minThreshold > 0) thresholds = "" + mTMR.minThreshold;
 			if (mTMR.maxThreshold > 0 & thresholds.equalsIgnoreCase("")) thresholds = "" + mTMR.maxThreshold;
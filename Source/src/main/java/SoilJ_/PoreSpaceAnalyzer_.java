@@ -21,6 +21,7 @@ package SoilJ_;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.plugin.PlugIn;
+import SoilJ.tools.ColumnBatchScheduler;
 import SoilJ.tools.ImageManipulator;
 import SoilJ.tools.InputOutput;
 import SoilJ.tools.MenuWaiter;
@@ -58,11 +59,6 @@ public class PoreSpaceAnalyzer_ extends ImagePlus implements PlugIn  {
 		//construct biggish objects
 		InputOutput jIO = new InputOutput();	
 		MenuWaiter menu = new MenuWaiter();
-		RoiHandler roi = new RoiHandler();
-		MorphologyAnalyzer morph = new MorphologyAnalyzer();		
-		
-		// init variables
-		int i;
 		
 		//tell me what I should do!
 		MenuWaiter.PoreSpaceAnalyzerOptions mPSA = menu.showPoreSpaceAnalyzerMenu();
@@ -70,7 +66,28 @@ public class PoreSpaceAnalyzer_ extends ImagePlus implements PlugIn  {
 		
 		//create Folder structure
 		InputOutput.MyFileCollection mFC = jIO.createFolders4SubROIData(mPSA);
-					
+		
+		analyzeColumns(mPSA, mFC);
+		
+	}
+	
+	public void analyzeColumns(MenuWaiter.PoreSpaceAnalyzerOptions mPSA, InputOutput.MyFileCollection mFC) {
+		
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();	
+		RoiHandler roi = new RoiHandler();
+		MorphologyAnalyzer morph = new MorphologyAnalyzer();		
+		
+		// init variables
+		int i;
+
+		//analyse several columns at the same time if desired
+		if (mPSA.numberOfParallelColumns > 1 & mFC.myTiffs.length > 1) {
+			ColumnBatchScheduler cBS = new ColumnBatchScheduler();
+			cBS.runBatch(mFC, mPSA, mPSA.numberOfParallelColumns);
+			return;
+		}
+
 		//loop over 3D images
 		for (i = 0 ; i < mFC.myTiffs.length ; i++) {  //myTiffs.length
 			
@@ -0,0 +1,280 @@
+package SoilJ_;
+
+/**
+ *SoilJ is a collection of ImageJ plugins for the semi-automatized processing of 3-D X-ray images of soil columns
+ *Copyright 2014 2015 2016 2017 John Koestel
+ *
+ *This program is free software: you can redistribute it and/or modify
+ *it under the terms of the GNU General Public License as published by
+ *the Free Software Foundation, either version 3 of the License, or
+ *(at your option) any later version.
+ *
+ *This program is distributed in the hope that it will be useful,
+ *but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *GNU General Public License for more details.
+ *
+ *You should have received a copy of the GNU General Public License
+ *along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+import SoilJ.tools.InputOutput;
+import SoilJ.tools.MenuWaiter;
+import SoilJ.tools.ParameterFileReader;
+
+/**
+ * SoilJHeadless runs SoilJ plugins without ImageJ GUI and without dialogs. The options that the dialogs
+ * would ask for are read from parameter files (see ParameterFileReader).
+ *
+ * java -cp SoilJ.jar:ij.jar:... SoilJ_.SoilJHeadless params1.txt [params2.txt ...]
+ * java -cp SoilJ.jar:ij.jar:... SoilJ_.SoilJHeadless --worker
+ *
+ * In worker mode, the paths of the parameter files are read from the standard input, one per line, and
+ * 'done <path>' or 'failed <path>: <reason>' is written to the standard output after each of them.
+ *
+ * The 'plugin' entry of the [Run] section names one of the plugins in SUPPORTED_PLUGINS. These have their
+ * dialogs split from their work and defaults for all options (MenuWaiter.getDefault...Options). The option
+ * records are filled from the sections named after them, e.g. [ThresholderMenuReturn] for ImageSegmentation.
+ * The 'input' entry is the image file or folder; ThreeDCalculator also needs 'inputB', the folder with the
+ * images B, and Extract2DHistograms may be given a 'gradientFolder'. ConvertInnerCircles2Binary has no options;
+ * its 'input' is an InnerCircle file or a folder of them. All other plugins are rejected, because they still
+ * ask for their options and files inside run().
+ *
+ * @author John Koestel
+ *
+ */
+
+public class SoilJHeadless {
+
+	public static final String[] SUPPORTED_PLUGINS = {"PoreSpaceAnalyzer", "FindColumnOutlines", "CalibrateGrayValues", "ImageSegmentation",
+			"Extract2DHistograms", "SubScaleAnalyzer", "CalculateWaterRetention", "ThreeDCalculator", "ConvertInnerCircles2Binary"};
+
+	public static void main(String[] args) throws Exception {
+
+		//no X server needed
+		System.setProperty("java.awt.headless", "true");
+
+		if (args.length == 0) {
+			System.out.println("Usage: SoilJHeadless <parameter file> [<parameter file> ...] or SoilJHeadless --worker");
+			System.exit(1);
+		}
+
+		SoilJHeadless sJH = new SoilJHeadless();
+		int numberOfFailures = 0;
+
+		if (args[0].equals("--worker")) {
+
+			BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0) continue;
+				if (!sJH.runParameterFile(line)) numberOfFailures++;
+				System.out.flush();
+			}
+
+		}
+		else {
+			for (int i = 0 ; i < args.length ; i++) if (!sJH.runParameterFile(args[i])) numberOfFailures++;
+		}
+
+		System.exit(numberOfFailures > 0 ? 2 : 0);
+
+	}
+
+	public boolean runParameterFile(String path) {
+
+		try {
+
+			ParameterFileReader pFR = new ParameterFileReader();
+			ParameterFileReader.ParameterFile mPF = pFR.readParameterFile(path);
+
+			String plugin = pFR.getValue(mPF, "Run", "plugin", null);
+			String input = pFR.getValue(mPF, "Run", "input", null);
+			if (plugin == null) throw new IllegalArgumentException("No 'plugin' given in section [Run]");
+			if (input == null) throw new IllegalArgumentException("No 'input' file or folder given in section [Run]");
+			if (!new File(input).exists()) throw new IllegalArgumentException("Input " + input + " does not exist");
+
+			if (plugin.equalsIgnoreCase("PoreSpaceAnalyzer")) runPoreSpaceAnalyzer(pFR, mPF, new File(input));
+			else if (plugin.equalsIgnoreCase("FindColumnOutlines")) runFindColumnOutlines(pFR, mPF, new File(input));
+			else if (plugin.equalsIgnoreCase("CalibrateGrayValues")) runCalibrateGrayValues(pFR, mPF, new File(input));
+			else if (plugin.equalsIgnoreCase("ImageSegmentation")) runImageSegmentation(pFR, mPF, new File(input));
+			else if (plugin.equalsIgnoreCase("Extract2DHistograms")) runExtract2DHistograms(pFR, mPF, new File(input));
+			else if (plugin.equalsIgnoreCase("SubScaleAnalyzer")) runSubScaleAnalyzer(pFR, mPF, new File(input));
+			else if (plugin.equalsIgnoreCase("CalculateWaterRetention")) runCalculateWaterRetention(pFR, mPF, new File(input));
+			else if (plugin.equalsIgnoreCase("ThreeDCalculator")) runThreeDCalculator(pFR, mPF, new File(input));
+			else if (plugin.equalsIgnoreCase("ConvertInnerCircles2Binary")) runConvertInnerCircles2Binary(new File(input));
+			else throw new IllegalArgumentException("Plugin " + plugin + " has no parameter file options and cannot be run headless. Plugins that can: " + String.join(", ", SUPPORTED_PLUGINS));
+
+			System.out.println("done " + path);
+			return true;
+
+		}
+		catch (Throwable t) {
+			System.out.println("failed " + path + ": " + t.toString());
+			return false;
+		}
+
+	}
+
+	public void runPoreSpaceAnalyzer(ParameterFileReader pFR, ParameterFileReader.ParameterFile mPF, File input) {
+
+		InputOutput jIO = new InputOutput();
+		MenuWaiter menu = new MenuWaiter();
+
+		//start with the defaults of the dialogs and overwrite them with the parameter file
+		MenuWaiter.PoreSpaceAnalyzerOptions mPSA = menu.getDefaultPoreSpaceAnalyzerOptions();
+		pFR.fillRecord(mPSA, mPF, "PoreSpaceAnalyzerOptions");
+		pFR.fillRecord(mPSA.mRSO, mPF, "ROISelectionOptions");
+		menu.completePoreSpaceAnalyzerOptions(mPSA);
+
+		//create Folder structure
+		InputOutput.MyFileCollection mFC = jIO.createFolders4SubROIData(mPSA, jIO.fileSelector(input));
+
+		PoreSpaceAnalyzer_ pSA = new PoreSpaceAnalyzer_();
+		pSA.analyzeColumns(mPSA, mFC);
+
+	}
+
+	public void runFindColumnOutlines(ParameterFileReader pFR, ParameterFileReader.ParameterFile mPF, File input) {
+
+		InputOutput jIO = new InputOutput();
+		MenuWaiter menu = new MenuWaiter();
+
+		//start with the defaults of the dialogs and overwrite them with the parameter file
+		MenuWaiter.ColumnFinderMenuReturn jCFS = menu.getDefaultColumnFinderOptions();
+		pFR.fillRecord(jCFS, mPF, "ColumnFinderMenuReturn");
+		menu.completeColumnFinderOptions(jCFS);
+
+		FindColumnOutlines_ fCO = new FindColumnOutlines_();
+		fCO.findColumnOutlines(jCFS, jIO.fileSelector(input));
+
+	}
+
+	public void runCalibrateGrayValues(ParameterFileReader pFR, ParameterFileReader.ParameterFile mPF, File input) {
+
+		InputOutput jIO = new InputOutput();
+		MenuWaiter menu = new MenuWaiter();
+
+		MenuWaiter.CalibrationReferences myNR = menu.getDefaultCalibrationOptions();
+		pFR.fillRecord(myNR, mPF, "CalibrationReferences");
+		menu.completeCalibrationOptions(myNR);
+
+		CalibrateGrayValues_ cGV = new CalibrateGrayValues_();
+		cGV.calibrateColumns(myNR, jIO.fileSelector(input));
+
+	}
+
+	public void runImageSegmentation(ParameterFileReader pFR, ParameterFileReader.ParameterFile mPF, File input) {
+
+		InputOutput jIO = new InputOutput();
+		MenuWaiter menu = new MenuWaiter();
+
+		MenuWaiter.ThresholderMenuReturn mTMR = menu.getDefaultThresholdingOptions();
+		pFR.fillRecord(mTMR, mPF, "ThresholderMenuReturn");
+		menu.completeThresholdingOptions(mTMR);
+
+		ImageSegmentation_ iS = new ImageSegmentation_();
+		iS.segmentColumns(mTMR, jIO.fileSelector(input));
+
+	}
+
+	public void runExtract2DHistograms(ParameterFileReader pFR, ParameterFileReader.ParameterFile mPF, File input) {
+
+		InputOutput jIO = new InputOutput();
+		MenuWaiter menu = new MenuWaiter();
+
+		MenuWaiter.Extract2DHistogramOptions e2DH = menu.getDefault2DHistogramExtractionOptions();
+		pFR.fillRecord(e2DH, mPF, "Extract2DHistogramOptions");
+		pFR.fillRecord(e2DH.mRSO, mPF, "ROISelectionOptions");
+		menu.complete2DHistogramExtractionOptions(e2DH);
+
+		//the gradient images are expected in the folder 'Gradients' next to the images if no other folder is given
+		InputOutput.MyFileCollection mFC = jIO.fileSelector(input);
+		String gradientFolder = pFR.getValue(mPF, "Run", "gradientFolder", null);
+		if (gradientFolder != null) {
+			if (!new File(gradientFolder).isDirectory()) throw new IllegalArgumentException("Gradient folder " + gradientFolder + " does not exist");
+			mFC.myGradientFolder = gradientFolder;
+		}
+
+		Extract2DHistograms_ e2D = new Extract2DHistograms_();
+		e2D.extract2DHistograms(e2DH, mFC);
+
+	}
+
+	public void runSubScaleAnalyzer(ParameterFileReader pFR, ParameterFileReader.ParameterFile mPF, File input) {
+
+		InputOutput jIO = new InputOutput();
+		MenuWaiter menu = new MenuWaiter();
+
+		MenuWaiter.REVAnalyzerOptions mRA = menu.getDefaultREVAnalyzerOptions();
+		pFR.fillRecord(mRA, mPF, "REVAnalyzerOptions");
+		menu.completeREVAnalyzerOptions(mRA);
+
+		SubScaleAnalyzer_ sSA = new SubScaleAnalyzer_();
+		sSA.analyzeSubROIs(mRA, jIO.fileSelector(input));
+
+	}
+
+	public void runCalculateWaterRetention(ParameterFileReader pFR, ParameterFileReader.ParameterFile mPF, File input) {
+
+		MenuWaiter menu = new MenuWaiter();
+
+		MenuWaiter.WRCCalculatorMenu mWRC = menu.getDefaultWRCOptions();
+		pFR.fillRecord(mWRC, mPF, "WRCCalculatorMenu");
+		menu.completeWRCOptions(mWRC);
+
+		CalculateWaterRetention_ cWR = new CalculateWaterRetention_();
+		cWR.calculateWaterRetention(mWRC, getFolderPath(input));
+
+	}
+
+	public void runThreeDCalculator(ParameterFileReader pFR, ParameterFileReader.ParameterFile mPF, File input) {
+
+		MenuWaiter menu = new MenuWaiter();
+
+		String inputB = pFR.getValue(mPF, "Run", "inputB", null);
+		if (inputB == null) throw new IllegalArgumentException("No 'inputB' folder given in section [Run]");
+
+		MenuWaiter.Calc3DMenuReturn m3D = menu.getDefault3DCalcOptions();
+		pFR.fillRecord(m3D, mPF, "Calc3DMenuReturn");
+		menu.complete3DCalcOptions(m3D);
+
+		ThreeDCalculator_ tDC = new ThreeDCalculator_();
+		tDC.calculateColumns(m3D, getFolderPath(input), getFolderPath(new File(inputB)));
+
+	}
+
+	public void runConvertInnerCircles2Binary(File input) {
+
+		InputOutput jIO = new InputOutput();
+
+		String[] myGauges;
+		if (input.isDirectory()) myGauges = jIO.listInnerCircleFiles(input.getAbsolutePath(), "");
+		else myGauges = new String[]{input.getAbsolutePath()};
+
+		ConvertInnerCircles2Binary_ cIC = new ConvertInnerCircles2Binary_();
+		int numberOfConverted = cIC.convertInnerCircles(myGauges);
+		if (numberOfConverted == 0) throw new IllegalArgumentException("No InnerCircle file could be converted in " + input.getPath());
+
+	}
+
+	/**
+	 * @return the path of the folder with a trailing separator, as returned by the folder dialogs of ImageJ
+	 */
+	public String getFolderPath(File folder) {
+
+		if (!folder.isDirectory()) throw new IllegalArgumentException(folder.getPath() + " is not a folder");
+
+		String myPath = folder.getAbsolutePath().replace('\\', '/');
+		if (!myPath.endsWith("/")) myPath += "/";
+
+		return myPath;
+
+	}
+
+}
@@ -27,6 +27,8 @@ import SoilJ.tools.MenuWaiter;
 import SoilJ.tools.MorphologyAnalyzer;
 import SoilJ.tools.REVAnalyses;
 import SoilJ.tools.RoiHandler;
+import SoilJ.tools.SubROIScheduler;
+import SoilJ.tools.SummedVolumeTable;
 
 import java.io.File;
 
@@ -42,12 +44,6 @@ public class SubScaleAnalyzer_ extends ImagePlus implements PlugIn  {
 
 	public void run(String arg) {
 
-		String pathSep = "\\";
-		
-		//probe operating system and adjust pathSep if necessary
-		String myOS = System.getProperty("os.name");
-		if (myOS.equalsIgnoreCase("Linux")) pathSep = "/";
-		
 		// set the plugins.dir property to make the plugin appear in the Plugins menu
 		Class<?> clazz = PoreSpaceAnalyzer_.class;
 		String url = clazz.getResource("/" + clazz.getName().replace('.', '/') + ".class").toString();
@@ -57,23 +53,38 @@ public class SubScaleAnalyzer_ extends ImagePlus implements PlugIn  {
 		//construct biggish objects
 		InputOutput jIO = new InputOutput();
 		MenuWaiter menu = new MenuWaiter();
+		
+		//shall I cut away something?
+		MenuWaiter.REVAnalyzerOptions mRA = menu.showREVAnalyzerMenu();
+		if (mRA == null) return;
+			
+		//select file or files
+	  	InputOutput.MyFileCollection mFC = jIO.fileSelector("Please choose a file or folder with your image data");
+	  	
+	  	analyzeSubROIs(mRA, mFC);
+	  	
+	}
+	
+	public void analyzeSubROIs(MenuWaiter.REVAnalyzerOptions mRA, InputOutput.MyFileCollection mFC) {
+		
+		String pathSep = "\\";
+		
+		//probe operating system and adjust pathSep if necessary
+		String myOS = System.getProperty("os.name");
+		if (myOS.equalsIgnoreCase("Linux")) pathSep = "/";
+		
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();
 		RoiHandler roi = new RoiHandler();
 		MorphologyAnalyzer morph = new MorphologyAnalyzer();
 		
 		// init variables
 		int i;
 		
-		//shall I cut away something?
-		MenuWaiter.REVAnalyzerOptions mRA = menu.showREVAnalyzerMenu();
-		if (mRA == null) return;
-		
 		if (mRA != null) {						//check whether mRA has returned reasonable values
 		
 			//construct image related objects
 			ImagePlus nowTiff = new ImagePlus();
-			
-			//select file or files
-		  	InputOutput.MyFileCollection mFC = jIO.fileSelector("Please choose a file or folder with your image data");
 		  						
 			//create output paths
 			String myPreOutFolder = "";
@@ -126,6 +137,23 @@ public class SubScaleAnalyzer_ extends ImagePlus implements PlugIn  {
 				
 				mFC.myTiffs = revPack.roiName;
 				
+				//if only volumes are asked for, read them from summed-volume tables instead of cutting out each sub-ROI,
+				//as long as the tables fit into the heap; the interface tables are not needed for the volumes
+				if (onlyVolumesRequested(mRA, mPSA, nowTiff)) {
+					int[] box = findBoundingBox(revPack, nowTiff);
+					if (SummedVolumeTable.canHold(box[1] - box[0], box[3] - box[2], box[5] - box[4], false)) {
+						analyzeSubROIVolumes(mFC, nowTiff, revPack, box, false);
+						continue;
+					}
+				}
+				
+				//cuboids are cut directly from the stack, so that several of them can be analysed at the same time
+				if (mRA.choiceOfRoi.equals("Cuboid")) {
+					SubROIScheduler sRS = new SubROIScheduler();
+					sRS.runSubROIs(mFC, mPSA, revPack, nowTiff, mRA.numberOfParallelROIs);
+					continue;
+				}
+				
 				//loop over all ROIs
 				for (int j = 0 ; j < revPack.numberOfROIs ; j++) {
 					
@@ -144,4 +172,90 @@ public class SubScaleAnalyzer_ extends ImagePlus implements PlugIn  {
 			}
 		}
 	}
+	
+	public boolean onlyVolumesRequested(MenuWaiter.REVAnalyzerOptions mRA, MenuWaiter.PoreSpaceAnalyzerOptions mPSA, ImagePlus nowTiff) {
+		
+		if (!mRA.choiceOfRoi.equals("Cuboid")) return false;
+		if (nowTiff.getBitDepth() != 8) return false;
+		if (mPSA.removeHoles) return false;
+		
+		return !mRA.globThickness & !mRA.calcFractal & !mRA.globAnisotropy & !mRA.performParticleAnalyses;
+		
+	}
+	
+	/**
+	 * @return x1, x2, y1, y2, z1, z2 of the box holding all sub-ROIs; an upper edge of 0 stands for the image edge as in RoiHandler
+	 */
+	public int[] findBoundingBox(REVAnalyses.REVAnalysesPack revPack, ImagePlus nowTiff) {
+		
+		int[] box = {Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0};
+		
+		for (int j = 0 ; j < revPack.numberOfROIs ; j++) {
+			int[] nowROI = getSubROI(revPack, j, nowTiff);
+			for (int i = 0 ; i < 6 ; i += 2) {
+				box[i] = Math.min(box[i], nowROI[i]);
+				box[i + 1] = Math.max(box[i + 1], nowROI[i + 1]);
+			}
+		}
+		
+		for (int i = 0 ; i < 6 ; i += 2) if (box[i] > box[i + 1]) box[i] = box[i + 1];
+		
+		return box;
+	}
+	
+	public int[] getSubROI(REVAnalyses.REVAnalysesPack revPack, int j, ImagePlus nowTiff) {
+		
+		int x2 = revPack.x2[j] == 0 ? nowTiff.getWidth() : revPack.x2[j];
+		int y2 = revPack.y2[j] == 0 ? nowTiff.getHeight() : revPack.y2[j];
+		int z2 = revPack.z2[j] == 0 ? nowTiff.getNSlices() : revPack.z2[j];
+		
+		int[] nowROI = {Math.max(0, revPack.x1[j]), Math.min(nowTiff.getWidth(), x2),
+				Math.max(0, revPack.y1[j]), Math.min(nowTiff.getHeight(), y2),
+				Math.max(0, revPack.z1[j]), Math.min(nowTiff.getNSlices(), z2)};
+		
+		return nowROI;
+	}
+	
+	/**
+	 * @param countInterfaces also build the interface tables and write the mean intercepts of each sub-ROI
+	 */
+	public void analyzeSubROIVolumes(InputOutput.MyFileCollection mFC, ImagePlus nowTiff, REVAnalyses.REVAnalysesPack revPack, int[] box, boolean countInterfaces) {
+		
+		String pathSep = "/";
+		
+		InputOutput jIO = new InputOutput();
+		MorphologyAnalyzer morph = new MorphologyAnalyzer();
+		
+		//build the tables once for the whole image
+		SummedVolumeTable sVT = new SummedVolumeTable(nowTiff, box[0], box[1], box[2], box[3], box[4], box[5], countInterfaces);
+		
+		String myOutPath = mFC.myPreOutFolder + pathSep + "Stats";
+		new File(myOutPath).mkdir();
+		
+		double[] bulkVolume = new double[revPack.numberOfROIs];
+		double[] phaseVolume = new double[revPack.numberOfROIs];
+		double[][] meanIntercepts = countInterfaces ? new double[revPack.numberOfROIs][] : null;
+		
+		for (int j = 0 ; j < revPack.numberOfROIs ; j++) {
+			
+			IJ.showStatus("Querying sub-ROI " + (j + 1) + "/" + revPack.numberOfROIs + " ...");
+			
+			int[] r = getSubROI(revPack, j, nowTiff);
+			
+			bulkVolume[j] = (double)Math.max(0, r[1] - r[0]) * Math.max(0, r[3] - r[2]) * Math.max(0, r[5] - r[4]);
+			phaseVolume[j] = sVT.getPhaseVolume(r[0], r[1], r[2], r[3], r[4], r[5]);
+			if (countInterfaces) meanIntercepts[j] = sVT.getMeanIntercepts(r[0], r[1], r[2], r[3], r[4], r[5]);
+			
+			//same file as written by tailoredPoreSpaceAnalyzer
+			MorphologyAnalyzer.ROIMorphoProps myP = morph.new ROIMorphoProps();
+			myP.roiBulkVolume = bulkVolume[j];
+			myP.phaseVolume = phaseVolume[j];
+			if (bulkVolume[j] > 0) myP.phaseVolumeFraction = phaseVolume[j] / bulkVolume[j];
+			
+			jIO.writeROIMorphoResults(revPack.roiName[j], myOutPath + pathSep + revPack.roiName[j] + ".roi", myP);
+		}
+		
+		jIO.writeSubROIVolumeTable(myOutPath + pathSep + "SubROIVolumes.txt", revPack, bulkVolume, phaseVolume, meanIntercepts);
+		
+	}
 }
\ No newline at end of file
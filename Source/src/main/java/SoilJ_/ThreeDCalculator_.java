@@ -47,11 +47,32 @@ public class ThreeDCalculator_ extends ImagePlus implements PlugIn  {
 		
 		//construct biggish objects
 		InputOutput jIO = new InputOutput();		
-		ImageManipulator jIM = new ImageManipulator();
 		MenuWaiter menu = new MenuWaiter();
+		
+		//read base folders
+		String myBaseFolderA = jIO.chooseAFolder("Please choose the folder with image A ..");
+		if (myBaseFolderA == null) return;
+		
+		String myBaseFolderB = jIO.chooseAFolder("Please choose the folder with image B ..");
+		if (myBaseFolderB == null) return;
+		
+		//ask for threshold choice
+		MenuWaiter.Calc3DMenuReturn m3D = menu.show3DCalcDialog(myBaseFolderA, myBaseFolderB);
+		if (m3D == null) return;
+		
+		calculateColumns(m3D, myBaseFolderA, myBaseFolderB);
+		
+	}
+	
+	public void calculateColumns(MenuWaiter.Calc3DMenuReturn m3D, String myBaseFolderA, String myBaseFolderB) {
+		
+		String pathSep = "/";
+		
+		//construct biggish objects
+		InputOutput jIO = new InputOutput();		
+		ImageManipulator jIM = new ImageManipulator();
 						
 		// init variables
-		MenuWaiter.Calc3DMenuReturn m3D;
 		int i;
 		
 		//construct image related objects
@@ -59,14 +80,8 @@ public class ThreeDCalculator_ extends ImagePlus implements PlugIn  {
 		ImagePlus nowTiffB = new ImagePlus();
 		ImagePlus outTiff = new ImagePlus();;
 		
-		//read base folder and number of 3D images
-		String myBaseFolderA = jIO.chooseAFolder("Please choose the folder with image A ..");
+		//read number of 3D images
 		String[] myTiffs0 = jIO.listTiffsInFolder(new File(myBaseFolderA));
-		
-		String myBaseFolderB = jIO.chooseAFolder("Please choose the folder with image B ..");
-		
-		//ask for threshold choice
-		m3D = menu.show3DCalcDialog(myBaseFolderA, myBaseFolderB);
 	
 		//if not all tiffs shall be thresholded
 		String[] myTiffs = null;